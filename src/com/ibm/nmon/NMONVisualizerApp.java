@@ -3,16 +3,21 @@ package com.ibm.nmon;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 
+import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.TimeZone;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import java.util.Properties;
 
 import org.slf4j.Logger;
 
 import com.ibm.nmon.data.DataSetListener;
 import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataSetCache;
 import com.ibm.nmon.data.SystemDataSet;
 
 import com.ibm.nmon.data.transform.name.HostRenamer;
@@ -27,6 +32,7 @@ import com.ibm.nmon.util.ParserLog;
 import com.ibm.nmon.util.TimeFormatCache;
 import com.ibm.nmon.util.TimeZoneFactory;
 import com.ibm.nmon.file.CombinedFileFilter;
+import com.ibm.nmon.file.FileCatalog;
 
 /**
  * Main application base class responsible for parsing and managing {@link DataSet DataSets} and {@link AnalysisRecord
@@ -39,16 +45,16 @@ import com.ibm.nmon.file.CombinedFileFilter;
 public abstract class NMONVisualizerApp implements IntervalListener {
     protected final Logger logger = org.slf4j.LoggerFactory.getLogger(getClass());
 
-    private final NMONParser nmonParser;
-    private final VerboseGCParser gcParser;
-    private final IOStatParser iostatParser;
-    private final JSONParser jsonParser;
-    private final HATJParser hatJParser;
-    private final PerfmonParser perfmonParser;
-    private final TopasOutParser topasoutParser;
-    private final FIOParser fioParser;
-    private final ZPoolIOStatParser zpoolParser;
-    private final JMeterAggregateParser jMeterParser;
+    // parsers are not thread safe, so each thread that parses gets its own set
+    private final ThreadLocal<Parsers> parsers = new ThreadLocal<Parsers>() {
+        @Override
+        protected Parsers initialValue() {
+            return new Parsers();
+        }
+    };
+
+    // only ask for additional data about one file at a time
+    private final Object promptLock = new Object();
 
     private HostRenamer hostRenamer;
 
@@ -59,11 +65,31 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
     private TimeZone displayTimeZone;
 
+    // data is added by the thread calling parse() but followed files are updated with invokeDataUpdate(), so
+    // analysisRecords, its indexes and the system time range are only accessed while holding this lock
+    // merges into a SystemDataSet synchronize on the data set instead so the lock is not held while merging
+    private final Object dataLock = new Object();
+
     private final Map<SystemDataSet, AnalysisRecord> analysisRecords = new java.util.TreeMap<SystemDataSet, AnalysisRecord>();
 
+    // indexes into analysisRecords; SystemDataSet hostnames cannot be changed
+    private final Map<String, SystemDataSet> dataSetsByHost = new java.util.HashMap<String, SystemDataSet>();
+    private final Map<String, SystemDataSet> dataSetsBySourceFile = new java.util.HashMap<String, SystemDataSet>();
+
+    // only parse data inside this interval from NMON files
+    private Interval parseInterval = Interval.DEFAULT;
+    private TypeProjection parseProjection = TypeProjection.ALL;
+
     private long minSystemTime = 0;
     private long maxSystemTime = Long.MAX_VALUE;
 
+    // the time range of NMON files parsed with an explicit parse interval, including the data that was not parsed
+    private final Map<String, long[]> fileTimeRanges = new java.util.HashMap<String, long[]>();
+
+    // files that are still being written and are checked periodically for new data
+    private final Map<String, Follower> followers = new java.util.HashMap<String, Follower>();
+    private java.util.Timer followTimer;
+
     private final Properties properties = new Properties();
     protected final PropertyChangeSupport propertyChangeSupport;
 
@@ -72,17 +98,6 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         // since it creates the parent logger
         ParserLog.getInstance();
 
-        nmonParser = new NMONParser();
-        gcParser = new VerboseGCParser();
-        iostatParser = new IOStatParser();
-        jsonParser = new JSONParser();
-        hatJParser = new HATJParser();
-        perfmonParser = new PerfmonParser();
-        topasoutParser = new TopasOutParser(nmonParser);
-        fioParser = new FIOParser();
-        zpoolParser = new ZPoolIOStatParser();
-        jMeterParser = new JMeterAggregateParser();
-
         TimeZone defaultTz = TimeZone.getDefault();
 
         // use the timezone names from TimeZoneFactory, if possible
@@ -111,6 +126,16 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
         setProperty("scaleProcessesByCPUs", "true");
 
+        setProperty("parseThreads", Runtime.getRuntime().availableProcessors());
+
+        // seconds
+        setProperty("followInterval", 60);
+
+        // empty to disable caching
+        setProperty("parseCacheDirectory", "");
+
+        setProperty("parseCurrentIntervalOnly", "false");
+
         // requires access to AnalysisRecords
         com.ibm.nmon.data.matcher.TopProcessMatcher.setApp(this);
     }
@@ -132,58 +157,507 @@ public abstract class NMONVisualizerApp implements IntervalListener {
     public final void parse(String fileToParse, TimeZone timeZone) throws Exception {
         fileToParse = fileToParse.replace('\\', '/');
 
-        // skipped already parsed files
-        for (SystemDataSet systemData : analysisRecords.keySet()) {
-            if (systemData.containsSourceFile(fileToParse)) {
+        if (isParsed(fileToParse)) {
+            return;
+        }
+
+        Interval parseInterval = getParseInterval();
+        FileCatalog.Entry entry = null;
+
+        if (!Interval.DEFAULT.equals(this.parseInterval)) {
+            entry = FileCatalog.scanFile(fileToParse, timeZone);
+
+            if (!entry.overlaps(parseInterval)) {
+                parseInterval = Interval.DEFAULT;
+            }
+        }
+
+        DataSet data = parseData(fileToParse, timeZone, getParseThreads(), parseInterval);
+
+        if (data != null) {
+            addTimeRange(fileToParse, entry);
+            dataSetsAdded(java.util.Collections.singleton(addData(fileToParse, data)));
+        }
+    }
+
+    /**
+     * <p>
+     * Parse multiple files concurrently, using up to <code>parseThreads</code> threads.
+     * </p>
+     * <p>
+     * Each file is parsed independently but the parsed data is added to the application on the calling thread, in
+     * the order given, so the resulting {@link SystemDataSet SystemDataSets} are the same as calling
+     * {@link #parse(String, TimeZone)} for each file. Errors do not stop parsing; they are logged and passed to the
+     * listener, if any.
+     * </p>
+     * <p>
+     * Events are coalesced for the whole batch: after all the files have been added, the system time range and the
+     * default interval are updated once and {@link DataSetListener#dataAdded(DataSet) dataAdded()} is fired once for
+     * each data set that was created or changed, in the order they were first added to.
+     * </p>
+     * <p>
+     * When there are fewer files than threads, the remaining threads are used to parse large NMON files in chunks.
+     * </p>
+     * <p>
+     * If a {@link #getParseInterval() parse interval} is set, the files are first cataloged. Files whose data is
+     * entirely outside the current interval are not parsed. Files outside an interval given to
+     * {@link #setParseInterval(Interval)} are parsed completely.
+     * </p>
+     * 
+     * @see FileParseListener
+     * @see NMONParser#setParseThreads(int)
+     */
+    public final void parse(List<String> filesToParse, final TimeZone timeZone, FileParseListener listener) {
+        // remove duplicates and already parsed files
+        Set<String> toParse = new java.util.LinkedHashSet<String>();
+
+        for (String fileToParse : filesToParse) {
+            fileToParse = fileToParse.replace('\\', '/');
+
+            if (!isParsed(fileToParse)) {
+                toParse.add(fileToParse);
+            }
+        }
+
+        if (toParse.isEmpty()) {
+            return;
+        }
+
+        int parseThreads = getParseThreads();
+        final Map<String, FileCatalog.Entry> catalog = catalogFiles(toParse, timeZone, parseThreads);
+
+        int threads = Math.min(parseThreads, toParse.size());
+        // split any remaining threads across the files so large single files can be parsed in chunks
+        final int fileThreads = Math.max(1, parseThreads / threads);
+
+        ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threads,
+                new java.util.concurrent.ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Parser-" + (++count));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        List<Future<ParseResult>> results = new java.util.ArrayList<Future<ParseResult>>(toParse.size());
+        Set<SystemDataSet> added = new java.util.LinkedHashSet<SystemDataSet>();
+
+        try {
+            for (final String fileToParse : toParse) {
+                results.add(executor.submit(new java.util.concurrent.Callable<ParseResult>() {
+                    @Override
+                    public ParseResult call() {
+                        ParserLog log = ParserLog.getInstance();
+                        log.setCurrentFilename(fileToParse);
+
+                        DataSet data = null;
+                        Interval parseInterval = getParseInterval();
+                        FileCatalog.Entry entry = catalog.get(fileToParse);
+
+                        if ((entry != null) && !entry.overlaps(parseInterval)) {
+                            if (Interval.DEFAULT.equals(NMONVisualizerApp.this.parseInterval)) {
+                                logger.debug("skipping {}; it has no data in the parse interval", fileToParse);
+                                return new ParseResult(fileToParse, null, null, null);
+                            }
+                            else {
+                                parseInterval = Interval.DEFAULT;
+                            }
+                        }
+
+                        try {
+                            data = parseData(fileToParse, timeZone, fileThreads, parseInterval);
+                        }
+                        catch (Exception e) {
+                            log.getLogger().error("could not parse " + fileToParse, e);
+                        }
+
+                        return new ParseResult(fileToParse, data, entry, log.hasData() ? log.getMessages() : null);
+                    }
+                }));
+            }
+
+            // merge on this thread in the requested order so results do not depend on which parse finishes first
+            ParserLog log = ParserLog.getInstance();
+
+            for (Future<ParseResult> future : results) {
+                ParseResult result = null;
+
+                try {
+                    result = future.get();
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                catch (java.util.concurrent.ExecutionException ee) {
+                    // call() catches all Exceptions so this is an Error; do not hide it
+                    throw new IllegalStateException("parsing failed", ee.getCause());
+                }
+
+                log.setCurrentFilename(result.filename);
+
+                if (result.data != null) {
+                    try {
+                        addTimeRange(result.filename, result.entry);
+                        added.add(addData(result.filename, result.data));
+                    }
+                    catch (Exception e) {
+                        log.getLogger().error("could not parse " + result.filename, e);
+                    }
+                }
+
+                String errors = result.errors;
+
+                if (log.hasData()) {
+                    errors = errors == null ? log.getMessages() : errors + log.getMessages();
+                }
+
+                if (listener != null) {
+                    listener.fileParsed(result.filename, errors);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+
+            // data already added is kept even if parsing fails, so always notify listeners
+            dataSetsAdded(added);
+        }
+    }
+
+    private Map<String, FileCatalog.Entry> catalogFiles(Set<String> files, TimeZone timeZone, int threads) {
+        if (Interval.DEFAULT.equals(getParseInterval())) {
+            return java.util.Collections.emptyMap();
+        }
+
+        Map<String, FileCatalog.Entry> catalog = new java.util.HashMap<String, FileCatalog.Entry>();
+
+        for (FileCatalog.Entry entry : FileCatalog.scan(new java.util.ArrayList<String>(files), timeZone, threads)
+                .getEntries()) {
+            catalog.put(entry.getFilename(), entry);
+        }
+
+        return catalog;
+    }
+
+    // an explicit parse interval only limits what is read from the file; the system times still cover the whole file
+    private void addTimeRange(String fileToParse, FileCatalog.Entry entry) {
+        // other file types are always parsed completely
+        if ((entry == null) || !"NMON".equals(entry.getType()) || !entry.hasTimes()
+                || Interval.DEFAULT.equals(parseInterval)) {
+            return;
+        }
+
+        synchronized (dataLock) {
+            fileTimeRanges.put(fileToParse, new long[] { entry.getStartTime(), entry.getEndTime() });
+        }
+    }
+
+    /**
+     * @return the number of threads to use for parsing; also used by {@link ReportGenerator} to create charts
+     */
+    protected final int getParseThreads() {
+        try {
+            return Math.max(1, Integer.parseInt(getProperty("parseThreads")));
+        }
+        catch (NumberFormatException nfe) {
+            logger.warn("invalid value '{}' for parseThreads; using 1", getProperty("parseThreads"));
+            return 1;
+        }
+    }
+
+    private int getFollowInterval() {
+        try {
+            return Math.max(1, Integer.parseInt(getProperty("followInterval")));
+        }
+        catch (NumberFormatException nfe) {
+            logger.warn("invalid value '{}' for followInterval; using 60", getProperty("followInterval"));
+            return 60;
+        }
+    }
+
+    /**
+     * <p>
+     * Parse an NMON file that is still being written and check it for new data every <code>followInterval</code>
+     * seconds. Only the new data is parsed; it is appended to the existing data set and listeners are notified with
+     * {@link DataSetListener#dataAppended(DataSet) dataAppended()}.
+     * </p>
+     * <p>
+     * The last snapshot in the file is not added until NMON starts writing the next one or
+     * {@link #stopFollowing(String)} is called. If the file has already been parsed, only the data written since then
+     * is added.
+     * </p>
+     * 
+     * @throws IllegalArgumentException if the file is not an NMON file
+     */
+    public final void follow(String fileToFollow, TimeZone timeZone) throws Exception {
+        final String file = fileToFollow.replace('\\', '/');
+
+        if (!CombinedFileFilter.getInstance(false).getNMONFileFilter().accept(file)) {
+            throw new IllegalArgumentException(file + " is not an NMON file; only NMON files can be followed");
+        }
+
+        if (isFollowing(file)) {
+            return;
+        }
+
+        NMONParser parser = new NMONParser();
+        parser.setParseThreads(getParseThreads());
+
+        DataSet data = parser.startTail(file, timeZone, getBooleanProperty("scaleProcessesByCPUs"));
+
+        final Follower follower = new Follower(parser);
+        follower.task = new java.util.TimerTask() {
+            @Override
+            public void run() {
+                checkForNewData(file, follower);
+            }
+        };
+
+        synchronized (followers) {
+            if (followers.containsKey(file)) {
+                // followed by another thread while parsing
+                parser.stopTail();
+                return;
+            }
+
+            followers.put(file, follower);
+
+            if (followTimer == null) {
+                followTimer = new java.util.Timer("FileFollower", true);
+            }
+
+            long period = getFollowInterval() * 1000L;
+            followTimer.schedule(follower.task, period, period);
+        }
+
+        updateFollowedData(file, follower, data);
+    }
+
+    /**
+     * Stop checking the given file for new data. Any data written since the last check, including the last snapshot,
+     * is added to the data set.
+     */
+    public final void stopFollowing(String fileToFollow) throws java.io.IOException {
+        String file = fileToFollow.replace('\\', '/');
+        Follower follower = null;
+
+        synchronized (followers) {
+            follower = followers.remove(file);
+        }
+
+        if (follower == null) {
+            return;
+        }
+
+        follower.task.cancel();
+
+        DataSet appended = null;
+        DataSet last = null;
+
+        synchronized (follower) {
+            try {
+                appended = follower.parser.parseAppended();
+            }
+            finally {
+                // null if parseAppended() failed
+                last = follower.parser.stopTail();
+            }
+        }
+
+        updateFollowedData(file, follower, appended);
+        updateFollowedData(file, follower, last);
+    }
+
+    public final boolean isFollowing(String file) {
+        synchronized (followers) {
+            return followers.containsKey(file.replace('\\', '/'));
+        }
+    }
+
+    public final Iterable<String> getFollowedFiles() {
+        synchronized (followers) {
+            return new java.util.ArrayList<String>(followers.keySet());
+        }
+    }
+
+    // called on the timer thread
+    private void checkForNewData(String file, Follower follower) {
+        DataSet data = null;
+
+        synchronized (follower) {
+            if (follower.discarded || !follower.parser.isTailing()) {
+                return;
+            }
+
+            try {
+                data = follower.parser.parseAppended();
+            }
+            catch (Exception e) {
+                logger.error("could not parse new data in " + file + "; it will no longer be followed", e);
+
+                synchronized (followers) {
+                    followers.remove(file);
+                }
+
+                follower.task.cancel();
                 return;
             }
         }
 
+        updateFollowedData(file, follower, data);
+    }
+
+    // stop following without adding any more data
+    private void discardFollowers(Iterable<String> files) {
+        for (String file : files) {
+            Follower follower = null;
+
+            synchronized (followers) {
+                follower = followers.remove(file);
+            }
+
+            if (follower != null) {
+                follower.task.cancel();
+
+                synchronized (follower) {
+                    follower.discarded = true;
+                    follower.parser.stopTail();
+                }
+            }
+        }
+    }
+
+    private void updateFollowedData(final String file, final Follower follower, final DataSet data) {
+        if (data == null) {
+            return;
+        }
+
+        invokeDataUpdate(new Runnable() {
+            @Override
+            public void run() {
+                // data may have been removed while the file was being parsed
+                if (!follower.discarded) {
+                    appendData(file, data);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run an update to the parsed data. Data for followed files is parsed on a separate thread; this method allows
+     * subclasses (i.e. the gui) to update the data and fire the resulting events in another thread. It is also used to
+     * fire the events for newly parsed data. By default, the update is run immediately.
+     */
+    protected void invokeDataUpdate(Runnable update) {
+        update.run();
+    }
+
+    private boolean isParsed(String fileToParse) {
+        synchronized (dataLock) {
+            return dataSetsBySourceFile.containsKey(fileToParse);
+        }
+    }
+
+    // parse a single file without modifying any application state
+    // this may be called from multiple threads concurrently
+    // returns null if the file should be skipped
+    private DataSet parseData(String fileToParse, TimeZone timeZone, int fileThreads, Interval parseInterval)
+            throws Exception {
+        Parsers parsers = this.parsers.get();
         DataSet data = null;
+
+        // set for file types that can be cached, to the parser settings that change the parsed data
+        String cacheOptions = null;
+        DataSet cached = null;
+
+        boolean scaleProcessesByCPUs = getBooleanProperty("scaleProcessesByCPUs");
+        String timeZoneId = timeZone == null ? "" : timeZone.getID();
+
+        parsers.nmonParser.setParseThreads(fileThreads);
+        parsers.jMeterParser.setParseThreads(fileThreads);
+        parsers.nmonParser.setProjection(parseProjection);
+        parsers.perfmonParser.setProjection(parseProjection);
+        // snapshot indexes are kept with the cached data
+        parsers.nmonParser.setIndexDirectory(getParseCache() == null ? null : getParseCache().getDirectory());
+
         CombinedFileFilter filter = CombinedFileFilter.getInstance(false);
 
         if (filter.getTopasOutFileFilter().accept(fileToParse)) {
-            data = topasoutParser.parse(fileToParse, timeZone, getBooleanProperty("scaleProcessesByCPUs"));
+            cacheOptions = "topasout," + timeZoneId + ',' + scaleProcessesByCPUs + getProjectionCacheOption();
+            data = cached = loadCachedData(fileToParse, cacheOptions);
+
+            if (data == null) {
+                data = parsers.topasoutParser.parse(fileToParse, timeZone, scaleProcessesByCPUs);
+            }
         }
         else if (filter.getNMONFileFilter().accept(fileToParse)) {
-            data = nmonParser.parse(fileToParse, timeZone, getBooleanProperty("scaleProcessesByCPUs"));
+            cacheOptions = "nmon," + timeZoneId + ',' + scaleProcessesByCPUs + getProjectionCacheOption();
+
+            if (!Interval.DEFAULT.equals(parseInterval)) {
+                cacheOptions += "," + parseInterval.getStart() + '-' + parseInterval.getEnd();
+            }
+
+            data = cached = loadCachedData(fileToParse, cacheOptions);
+
+            if (data == null) {
+                data = parsers.nmonParser.parse(fileToParse, timeZone, scaleProcessesByCPUs, parseInterval);
+            }
         }
         else if (filter.getGCFileFilter().accept(fileToParse)) {
             // GC data does not have a hostname or JVM name so get it before parsing
-            String[] values = getDataForGCParse(fileToParse);
+            String[] values = null;
+
+            synchronized (promptLock) {
+                values = getDataForGCParse(fileToParse);
+            }
 
             if (values == null) {
                 logger.info("skipping file '{}'", fileToParse);
-                return;
+                return null;
             }
             else if (values.length < 2) {
                 logger.error("need both hostname and JVM name to parse GC data, only {} provided",
                         java.util.Arrays.toString(values));
-                return;
+                return null;
             }
             else {
-                data = gcParser.parse(fileToParse, timeZone, values[0], values[1]);
+                cacheOptions = "gc," + timeZoneId + ',' + values[0] + ',' + values[1];
+                data = cached = loadCachedData(fileToParse, cacheOptions);
+
+                if (data == null) {
+                    data = parsers.gcParser.parse(fileToParse, timeZone, values[0], values[1]);
+                }
             }
         }
         else if (filter.getZPoolIOStatOutFileFilter().accept(fileToParse)) {
-            data = zpoolParser.parse(fileToParse);
+            data = parsers.zpoolParser.parse(fileToParse);
 
-            data.setHostname(getDataForZPoolIOStatParse(fileToParse));
+            synchronized (promptLock) {
+                data.setHostname(getDataForZPoolIOStatParse(fileToParse));
+            }
         }
         else if (filter.getIOStatFileFilter().accept(fileToParse)) {
             // IOStat data may have a hostname and time zone so get it after parsing
-            data = iostatParser.parse(fileToParse, getDisplayTimeZone());
+            data = parsers.iostatParser.parse(fileToParse, getDisplayTimeZone());
 
             String hostname = data.getHostname();
             boolean verifyData = "AIX".equals(((com.ibm.nmon.data.BasicDataSet) data).getMetadata("OS"));
 
             // assume AIX, which also needs a parsed date
             if (hostname.equals(IOStatParser.DEFAULT_HOSTNAME) || verifyData) {
-                Object[] values = getDataForIOStatParse(fileToParse, hostname);
+                Object[] values = null;
+
+                synchronized (promptLock) {
+                    values = getDataForIOStatParse(fileToParse, hostname);
+                }
 
                 if (values == null) {
                     logger.info("skipping file '{}'", fileToParse);
-                    return;
+                    return null;
                 }
 
                 hostname = (String) values[0];
@@ -205,19 +679,28 @@ public abstract class NMONVisualizerApp implements IntervalListener {
             }
         }
         else if (filter.getJSONFileFilter().accept(fileToParse)) {
-            data = jsonParser.parse(fileToParse);
+            cacheOptions = "json";
+            data = cached = loadCachedData(fileToParse, cacheOptions);
+
+            if (data == null) {
+                data = parsers.jsonParser.parse(fileToParse);
+            }
         }
         else if (filter.getHATJFileFilter().accept(fileToParse)) {
-            data = hatJParser.parse(fileToParse);
+            data = parsers.hatJParser.parse(fileToParse);
 
             String hostname = data.getHostname();
 
             if (hostname.equals(HATJParser.DEFAULT_HOSTNAME)) {
-                Object[] values = getDataForHATJParse(fileToParse, hostname);
+                Object[] values = null;
+
+                synchronized (promptLock) {
+                    values = getDataForHATJParse(fileToParse, hostname);
+                }
 
                 if (values == null) {
                     logger.info("skipping file '{}'", fileToParse);
-                    return;
+                    return null;
                 }
 
                 hostname = (String) values[0];
@@ -225,53 +708,237 @@ public abstract class NMONVisualizerApp implements IntervalListener {
             }
         }
         else if (filter.getJMeterFileFilter().accept(fileToParse)) {
-            data = jMeterParser.parse(fileToParse);
+            cacheOptions = "jmeter";
+            data = cached = loadCachedData(fileToParse, cacheOptions);
+
+            if (data == null) {
+                data = parsers.jMeterParser.parse(fileToParse);
+            }
         }
         else if (filter.getPerfmonFileFilter().accept(fileToParse)) {
-            data = perfmonParser.parse(fileToParse, getBooleanProperty("scaleProcessesByCPUs"));
+            cacheOptions = "perfmon," + scaleProcessesByCPUs + getProjectionCacheOption();
+            data = cached = loadCachedData(fileToParse, cacheOptions);
+
+            if (data == null) {
+                data = parsers.perfmonParser.parse(fileToParse, scaleProcessesByCPUs);
+            }
         }
         else if (filter.getFIOFileFilter().accept(fileToParse)) {
-            data = fioParser.parse(fileToParse, timeZone);
+            cacheOptions = "fio," + timeZoneId;
+            data = cached = loadCachedData(fileToParse, cacheOptions);
+
+            if (data == null) {
+                data = parsers.fioParser.parse(fileToParse, timeZone);
+            }
         }
         else {
             throw new IllegalArgumentException("cannot parse " + fileToParse + ": unknown file type");
         }
 
         if (data.getRecordCount() == 0) {
-            throw new IllegalArgumentException(fileToParse + " does not appear to contain any data");
+            if ((data instanceof com.ibm.nmon.data.NMONDataSet) && !Interval.DEFAULT.equals(parseInterval)) {
+                if (!Interval.DEFAULT.equals(this.parseInterval)) {
+                    // the file's host is still included, as it would be without a parse interval
+                    return parseData(fileToParse, timeZone, fileThreads, Interval.DEFAULT);
+                }
+
+                throw new IllegalArgumentException(fileToParse + " does not contain any data for the interval "
+                        + TimeFormatCache.formatInterval(parseInterval));
+            }
+            else {
+                throw new IllegalArgumentException(fileToParse + " does not appear to contain any data");
+            }
+        }
+
+        if ((cacheOptions != null) && (data != cached)) {
+            saveCachedData(fileToParse, cacheOptions, data);
+        }
+
+        return data;
+    }
+
+    /**
+     * Only parse the snapshots inside the given interval from NMON files. Other file types are always parsed
+     * completely. Use {@link Interval#DEFAULT} to parse all the data, which is the default.
+     * <p>
+     * This only limits what is read. Files without any data in the interval are parsed completely and the
+     * {@link #getMinSystemTime() system times} include the data outside the interval, so the data sets and the
+     * default interval are the same as when parsing all the data. Processes are only known from the snapshots that
+     * are parsed so their start times, and which processes are aggregated by name, can still differ.
+     * </p>
+     * 
+     * @see NMONParser#parse(String, TimeZone, boolean, Interval)
+     */
+    public final void setParseInterval(Interval parseInterval) {
+        this.parseInterval = parseInterval == null ? Interval.DEFAULT : parseInterval;
+    }
+
+    /**
+     * @return the interval to parse from NMON files; the interval given to {@link #setParseInterval(Interval)}, if
+     *         any, otherwise the current interval if the <code>parseCurrentIntervalOnly</code> property is set
+     */
+    public final Interval getParseInterval() {
+        if (!Interval.DEFAULT.equals(parseInterval)) {
+            return parseInterval;
+        }
+        else if (getBooleanProperty("parseCurrentIntervalOnly")) {
+            return intervalManager.getCurrentInterval();
+        }
+        else {
+            return Interval.DEFAULT;
+        }
+    }
+
+    /**
+     * Only create the given data types when parsing NMON, Topas and Perfmon files. Other file types are always parsed
+     * completely. Use {@link TypeProjection#ALL} to parse all the data, which is the default.
+     * 
+     * @see NMONParser#setProjection(TypeProjection)
+     * @see PerfmonParser#setProjection(TypeProjection)
+     */
+    public final void setParseProjection(TypeProjection parseProjection) {
+        this.parseProjection = parseProjection == null ? TypeProjection.ALL : parseProjection;
+    }
+
+    public final TypeProjection getParseProjection() {
+        return parseProjection;
+    }
+
+    // projected data must not be cached under the same key as complete data
+    private String getProjectionCacheOption() {
+        return parseProjection.includesAll() ? "" : "," + parseProjection;
+    }
+
+    /**
+     * @return the cache for parsed data or <code>null</code> if the <code>parseCacheDirectory</code> property is not
+     *         set
+     */
+    private DataSetCache getParseCache() {
+        String directory = getProperty("parseCacheDirectory");
+
+        if ((directory == null) || "".equals(directory)) {
+            return null;
+        }
+        else {
+            return new DataSetCache(new java.io.File(directory));
+        }
+    }
+
+    // returns null if the file is not cached; errors are logged and ignored so the file is parsed normally
+    private DataSet loadCachedData(String fileToParse, String cacheOptions) {
+        DataSetCache cache = getParseCache();
+
+        if (cache == null) {
+            return null;
         }
 
+        long start = System.nanoTime();
+
+        try {
+            DataSet data = cache.load(fileToParse, cacheOptions);
+
+            if ((data != null) && logger.isDebugEnabled()) {
+                logger.debug("loaded cached data for '{}' in {} ms", fileToParse,
+                        (System.nanoTime() - start) / 1000000);
+            }
+
+            return data;
+        }
+        catch (Exception e) {
+            logger.warn("could not load cached data for '" + fileToParse + "'; it will be parsed again", e);
+            return null;
+        }
+    }
+
+    private void saveCachedData(String fileToParse, String cacheOptions, DataSet data) {
+        DataSetCache cache = getParseCache();
+
+        if (cache == null) {
+            return;
+        }
+
+        try {
+            cache.save(fileToParse, cacheOptions, data);
+        }
+        catch (Exception e) {
+            logger.warn("could not cache parsed data for '" + fileToParse + "' in " + cache.getDirectory(), e);
+        }
+    }
+
+    // add parsed data to the application
+    // listeners are not notified; callers must call dataSetsAdded() with the returned data set
+    private SystemDataSet addData(String fileToParse, DataSet data) {
         // rename the host
         hostRenamer.rename(data);
 
-        // find an existing data set for the host
         SystemDataSet systemData = null;
 
-        for (SystemDataSet toSearch : analysisRecords.keySet()) {
-            if (toSearch.getHostname().equals(data.getHostname())) {
-                systemData = toSearch;
-                break;
+        synchronized (dataLock) {
+            // find an existing data set for the host
+            systemData = dataSetsByHost.get(data.getHostname());
+
+            // create the data set if none exists
+            if (systemData == null) {
+                systemData = new SystemDataSet(data.getHostname());
+
+                AnalysisRecord record = new AnalysisRecord(systemData);
+                record.setInterval(intervalManager.getCurrentInterval());
+
+                analysisRecords.put(systemData, record);
+                dataSetsByHost.put(systemData.getHostname(), systemData);
             }
         }
 
-        // create the data set if none exists
+        // add the parsed data to the system data set
+        synchronized (systemData) {
+            systemData.addData(fileToParse, data);
+        }
+
+        synchronized (dataLock) {
+            dataSetsBySourceFile.put(fileToParse, systemData);
+        }
+
+        return systemData;
+    }
+
+    // add data parsed from a followed file
+    private void appendData(String file, DataSet data) {
+        SystemDataSet systemData = null;
+
+        synchronized (dataLock) {
+            systemData = dataSetsBySourceFile.get(file);
+        }
+
         if (systemData == null) {
-            systemData = new SystemDataSet(data.getHostname());
+            // nothing was added when the file was first followed; i.e. there was only a single snapshot
+            if (data.getRecordCount() > 0) {
+                dataSetsAdded(java.util.Collections.singleton(addData(file, data)));
+            }
 
-            AnalysisRecord record = new AnalysisRecord(systemData);
-            record.setInterval(intervalManager.getCurrentInterval());
+            return;
+        }
 
-            analysisRecords.put(systemData, record);
+        synchronized (systemData) {
+            systemData.appendData(file, data);
         }
 
-        // add the parsed data to the system data set
-        systemData.addData(fileToParse, data);
+        boolean timesChanged = false;
+
+        synchronized (dataLock) {
+            timesChanged = extendMinAndMaxSystemTime(java.util.Collections.singleton(systemData));
+        }
 
-        recalculateMinAndMaxSystemTime();
+        // setting the current interval rebuilds everything so only update the time range that DEFAULT covers
+        if (timesChanged && intervalManager.getCurrentInterval().equals(Interval.DEFAULT)) {
+            TimeFormatCache.setDefaultIntervalRange(getMinSystemTime(), getMaxSystemTime());
+        }
 
-        fireDataAdded(systemData);
+        fireDataAppended(systemData);
     }
 
+    /*
+     * The getDataFor*Parse methods may be called from multiple parser threads but are never called concurrently.
+     */
     protected String[] getDataForGCParse(String fileToParse) {
         // hostname and JVM name default to the file name
         int idx = fileToParse.lastIndexOf('/');
@@ -304,6 +971,36 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         return new Object[] { HATJParser.DEFAULT_HOSTNAME };
     }
 
+    // update the time range once for all the added data sets, then notify listeners of each one
+    // events are fired with invokeDataUpdate() so the gui does not handle them on the parsing thread
+    private void dataSetsAdded(final Set<SystemDataSet> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+
+        boolean changed = false;
+
+        synchronized (dataLock) {
+            changed = extendMinAndMaxSystemTime(added);
+        }
+
+        final boolean timesChanged = changed;
+
+        invokeDataUpdate(new Runnable() {
+            @Override
+            public void run() {
+                if (timesChanged && intervalManager.getCurrentInterval().equals(Interval.DEFAULT)) {
+                    TimeFormatCache.setDefaultIntervalRange(getMinSystemTime(), getMaxSystemTime());
+                    intervalManager.setCurrentInterval(Interval.DEFAULT);
+                }
+
+                for (SystemDataSet systemData : added) {
+                    fireDataAdded(systemData);
+                }
+            }
+        });
+    }
+
     // this is a separate function in order to allow subclasses (i.e. the gui) to run parsing in
     // another thread yet still fire the data added event in the main thread
     protected void fireDataAdded(DataSet data) {
@@ -312,6 +1009,18 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         }
     }
 
+    protected void fireDataAppended(DataSet data) {
+        AnalysisRecord record = getAnalysis(data);
+
+        if (record != null) {
+            record.dataAppended();
+        }
+
+        for (DataSetListener listener : listeners) {
+            listener.dataAppended(data);
+        }
+    }
+
     public final void setHostRenamer(HostRenamer hostRenamer) {
         if (hostRenamer != null) {
             this.hostRenamer = hostRenamer;
@@ -338,10 +1047,27 @@ public abstract class NMONVisualizerApp implements IntervalListener {
     }
 
     public final void removeDataSet(DataSet data) {
-        if (analysisRecords.remove(data) != null) {
+        if (data instanceof SystemDataSet) {
+            discardFollowers(((SystemDataSet) data).getSourceFiles());
+        }
+
+        boolean removed = false;
+        boolean empty = false;
+
+        synchronized (dataLock) {
+            removed = analysisRecords.remove(data) != null;
+
+            if (removed) {
+                removeFromIndexes((SystemDataSet) data);
+            }
+
+            empty = analysisRecords.isEmpty();
+        }
+
+        if (removed) {
             recalculateMinAndMaxSystemTime();
 
-            if (analysisRecords.isEmpty()) {
+            if (empty) {
                 for (DataSetListener listener : listeners) {
                     listener.dataCleared();
                 }
@@ -355,12 +1081,23 @@ public abstract class NMONVisualizerApp implements IntervalListener {
     }
 
     public final void updateDataSet(SystemDataSet data) {
-        if (analysisRecords.remove(data) != null) {
-            AnalysisRecord record = new AnalysisRecord(data);
-            record.setInterval(intervalManager.getCurrentInterval());
+        boolean updated = false;
 
-            analysisRecords.put(data, record);
+        synchronized (dataLock) {
+            updated = analysisRecords.remove(data) != null;
 
+            if (updated) {
+                AnalysisRecord record = new AnalysisRecord(data);
+                record.setInterval(intervalManager.getCurrentInterval());
+
+                analysisRecords.put(data, record);
+
+                // the data may now contain source files from another data set
+                addToIndexes(data);
+            }
+        }
+
+        if (updated) {
             recalculateMinAndMaxSystemTime();
 
             for (DataSetListener listener : listeners) {
@@ -370,39 +1107,91 @@ public abstract class NMONVisualizerApp implements IntervalListener {
     }
 
     public final void clearDataSets() {
-        minSystemTime = 0;
-        maxSystemTime = Long.MAX_VALUE;
+        discardFollowers(getFollowedFiles());
+
+        synchronized (dataLock) {
+            minSystemTime = 0;
+            maxSystemTime = Long.MAX_VALUE;
 
-        TimeFormatCache.setDefaultIntervalRange(minSystemTime, maxSystemTime);
+            fileTimeRanges.clear();
+        }
+
+        TimeFormatCache.setDefaultIntervalRange(0, Long.MAX_VALUE);
         intervalManager.setCurrentInterval(Interval.DEFAULT);
 
-        analysisRecords.clear();
+        synchronized (dataLock) {
+            analysisRecords.clear();
+            dataSetsByHost.clear();
+            dataSetsBySourceFile.clear();
+        }
 
         for (DataSetListener listener : listeners) {
             listener.dataCleared();
         }
     }
 
+    /**
+     * @return a copy of the current data sets, since data may be added by another thread while it is iterated
+     */
     public final Iterable<SystemDataSet> getDataSets() {
-        return java.util.Collections.unmodifiableSet(analysisRecords.keySet());
+        synchronized (dataLock) {
+            return java.util.Collections.unmodifiableList(new java.util.ArrayList<SystemDataSet>(analysisRecords
+                    .keySet()));
+        }
+    }
+
+    /**
+     * @return the data set for the given host or <code>null</code> if no data has been parsed for the host
+     */
+    public final SystemDataSet getDataSet(String hostname) {
+        synchronized (dataLock) {
+            return dataSetsByHost.get(hostname);
+        }
+    }
+
+    private void addToIndexes(SystemDataSet data) {
+        dataSetsByHost.put(data.getHostname(), data);
+
+        for (String sourceFile : data.getSourceFiles()) {
+            dataSetsBySourceFile.put(sourceFile, data);
+        }
+    }
+
+    private void removeFromIndexes(SystemDataSet data) {
+        if (dataSetsByHost.get(data.getHostname()) == data) {
+            dataSetsByHost.remove(data.getHostname());
+        }
+
+        // check every file since files with the same start time are not in getSourceFiles()
+        for (java.util.Iterator<SystemDataSet> i = dataSetsBySourceFile.values().iterator(); i.hasNext();) {
+            if (i.next() == data) {
+                i.remove();
+            }
+        }
     }
 
     public final int getDataSetCount() {
-        return analysisRecords.size();
+        synchronized (dataLock) {
+            return analysisRecords.size();
+        }
     }
 
     /**
      * @return the minimum time defined by any parsed DataSet or 0 if nothing has been parsed
      */
     public final long getMinSystemTime() {
-        return minSystemTime;
+        synchronized (dataLock) {
+            return minSystemTime;
+        }
     }
 
     /**
      * @return the maximum time defined by any parsed DataSet or <code>Long.MAX_VALUE</code> if nothing has been parsed
      */
     public final long getMaxSystemTime() {
-        return maxSystemTime;
+        synchronized (dataLock) {
+            return maxSystemTime;
+        }
     }
 
     public final IntervalManager getIntervalManager() {
@@ -410,7 +1199,9 @@ public abstract class NMONVisualizerApp implements IntervalListener {
     }
 
     public final AnalysisRecord getAnalysis(DataSet data) {
-        return analysisRecords.get(data);
+        synchronized (dataLock) {
+            return analysisRecords.get(data);
+        }
     }
 
     public final String getProperty(String name) {
@@ -455,20 +1246,36 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         propertyChangeSupport.firePropertyChange(name, old, value);
     }
 
-    // update the start and end times when new DataSets are added
+    // update the start and end times when DataSets are removed or changed
     // this may change the meaning of Interval.DEFAULT so update that if necessary
     private void recalculateMinAndMaxSystemTime() {
+        boolean timesChanged = false;
+
+        synchronized (dataLock) {
+            timesChanged = updateMinAndMaxSystemTime();
+        }
+
+        if (timesChanged && intervalManager.getCurrentInterval().equals(Interval.DEFAULT)) {
+            TimeFormatCache.setDefaultIntervalRange(getMinSystemTime(), getMaxSystemTime());
+            intervalManager.setCurrentInterval(Interval.DEFAULT);
+        }
+    }
+
+    // return true if the min or max time changed; must hold dataLock
+    private boolean updateMinAndMaxSystemTime() {
         if (analysisRecords.size() > 0) {
             long minStart = Long.MAX_VALUE;
             long maxEnd = Long.MIN_VALUE;
 
-            for (DataSet data : analysisRecords.keySet()) {
-                if (data.getStartTime() < minStart) {
-                    minStart = data.getStartTime();
+            for (SystemDataSet data : analysisRecords.keySet()) {
+                long[] range = getTimeRange(data);
+
+                if (range[0] < minStart) {
+                    minStart = range[0];
                 }
 
-                if (data.getEndTime() > maxEnd) {
-                    maxEnd = data.getEndTime();
+                if (range[1] > maxEnd) {
+                    maxEnd = range[1];
                 }
             }
 
@@ -484,11 +1291,70 @@ public abstract class NMONVisualizerApp implements IntervalListener {
                 update = true;
             }
 
-            if (update && intervalManager.getCurrentInterval().equals(Interval.DEFAULT)) {
-                TimeFormatCache.setDefaultIntervalRange(minSystemTime, maxSystemTime);
-                intervalManager.setCurrentInterval(Interval.DEFAULT);
+            return update;
+        }
+        else {
+            // nothing has been parsed; extendMinAndMaxSystemTime() must not include removed data
+            minSystemTime = 0;
+            maxSystemTime = Long.MAX_VALUE;
+
+            return false;
+        }
+    }
+
+    // extend the start and end times to include the given data sets without checking every data set
+    // adding data can only extend the time range; return true if the min or max time changed; must hold dataLock
+    private boolean extendMinAndMaxSystemTime(Iterable<SystemDataSet> added) {
+        // nothing was parsed before these data sets were added
+        boolean empty = (minSystemTime == 0) && (maxSystemTime == Long.MAX_VALUE);
+
+        long minStart = empty ? Long.MAX_VALUE : minSystemTime;
+        long maxEnd = empty ? Long.MIN_VALUE : maxSystemTime;
+
+        for (SystemDataSet data : added) {
+            long[] range = getTimeRange(data);
+
+            if (range[0] < minStart) {
+                minStart = range[0];
+            }
+
+            if (range[1] > maxEnd) {
+                maxEnd = range[1];
             }
         }
+
+        boolean update = false;
+
+        if (minStart != minSystemTime) {
+            minSystemTime = minStart;
+            update = true;
+        }
+
+        if (maxEnd != maxSystemTime) {
+            maxSystemTime = maxEnd;
+            update = true;
+        }
+
+        return update;
+    }
+
+    // the data set's start and end times, extended to the whole of any files parsed with a parse interval
+    // must hold dataLock
+    private long[] getTimeRange(SystemDataSet data) {
+        long[] times = new long[] { data.getStartTime(), data.getEndTime() };
+
+        if (!fileTimeRanges.isEmpty()) {
+            for (String sourceFile : data.getSourceFiles()) {
+                long[] range = fileTimeRanges.get(sourceFile);
+
+                if (range != null) {
+                    times[0] = Math.min(times[0], range[0]);
+                    times[1] = Math.max(times[1], range[1]);
+                }
+            }
+        }
+
+        return times;
     }
 
     @Override
@@ -504,8 +1370,10 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
     @Override
     public void currentIntervalChanged(Interval interval) {
-        for (AnalysisRecord record : analysisRecords.values()) {
-            record.setInterval(interval);
+        synchronized (dataLock) {
+            for (AnalysisRecord record : analysisRecords.values()) {
+                record.setInterval(interval);
+            }
         }
     }
 
@@ -533,4 +1401,42 @@ public abstract class NMONVisualizerApp implements IntervalListener {
     public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener) {
         propertyChangeSupport.removePropertyChangeListener(propertyName, listener);
     }
+
+    private static final class Parsers {
+        private final NMONParser nmonParser = new NMONParser();
+        private final VerboseGCParser gcParser = new VerboseGCParser();
+        private final IOStatParser iostatParser = new IOStatParser();
+        private final JSONParser jsonParser = new JSONParser();
+        private final HATJParser hatJParser = new HATJParser();
+        private final PerfmonParser perfmonParser = new PerfmonParser();
+        private final TopasOutParser topasoutParser = new TopasOutParser(nmonParser);
+        private final FIOParser fioParser = new FIOParser();
+        private final ZPoolIOStatParser zpoolParser = new ZPoolIOStatParser();
+        private final JMeterAggregateParser jMeterParser = new JMeterAggregateParser();
+    }
+
+    private static final class Follower {
+        private final NMONParser parser;
+        private java.util.TimerTask task;
+        // set when the data set is removed; any data still being parsed must not be added
+        private volatile boolean discarded;
+
+        Follower(NMONParser parser) {
+            this.parser = parser;
+        }
+    }
+
+    private static final class ParseResult {
+        private final String filename;
+        private final DataSet data;
+        private final FileCatalog.Entry entry;
+        private final String errors;
+
+        ParseResult(String filename, DataSet data, FileCatalog.Entry entry, String errors) {
+            this.filename = filename;
+            this.data = data;
+            this.entry = entry;
+            this.errors = errors;
+        }
+    }
 }
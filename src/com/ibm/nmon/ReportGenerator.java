@@ -12,6 +12,9 @@ import java.io.FileWriter;
 
 import java.util.Date;
 import java.text.SimpleDateFormat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.text.ParseException;
 
 import org.jfree.chart.ChartUtilities;
@@ -20,6 +23,8 @@ import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.Plot;
 import org.jfree.chart.plot.XYPlot;
 
+import com.ibm.nmon.parser.FileParseListener;
+
 import com.ibm.nmon.util.ParserLog;
 
 import com.ibm.nmon.interval.Interval;
@@ -47,6 +52,7 @@ import com.ibm.nmon.util.TimeHelper;
 
 import com.ibm.nmon.util.FileHelper;
 import com.ibm.nmon.file.CombinedFileFilter;
+import com.ibm.nmon.file.FileCatalog;
 
 public final class ReportGenerator extends NMONVisualizerApp {
     private static final SimpleDateFormat FILE_TIME_FORMAT = new SimpleDateFormat("HHmmss");
@@ -80,6 +86,9 @@ public final class ReportGenerator extends NMONVisualizerApp {
         String formatFile = "";
         String renamerFile = "";
         String intervalsFile = "";
+        String cacheDirectory = "";
+
+        List<String> hosts = new java.util.ArrayList<String>();
 
         boolean summaryCharts = true;
         boolean dataSetCharts = true;
@@ -93,6 +102,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
         int granularity = -1;
         int width = -1;
         int height = -1;
+        int threads = -1;
 
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
@@ -236,6 +246,42 @@ public final class ReportGenerator extends NMONVisualizerApp {
                                     System.err.println("Height" + " value " + args[i] + " must be an integer");
                                 }
                             }
+                            else if ("threads".equals(param)) {
+                                ++i;
+
+                                if (i > args.length) {
+                                    System.err.println("Thread count" + " must be specified for " + '-' + '-'
+                                            + "threads");
+                                    return;
+                                }
+
+                                try {
+                                    threads = Integer.parseInt(args[i]);
+                                }
+                                catch (NumberFormatException e) {
+                                    System.err.println("Thread count" + " value " + args[i] + " must be an integer");
+                                }
+                            }
+                            else if ("cache".equals(param)) {
+                                ++i;
+
+                                if (i > args.length) {
+                                    System.err.println("directory must be specified for " + '-' + '-' + "cache");
+                                    return;
+                                }
+
+                                cacheDirectory = args[i];
+                            }
+                            else if ("host".equals(param)) {
+                                ++i;
+
+                                if (i > args.length) {
+                                    System.err.println("host must be specified for " + '-' + '-' + "host");
+                                    return;
+                                }
+
+                                hosts.add(args[i]);
+                            }
                             else if ("mf".equals(param)) {
                                 ++i;
 
@@ -331,6 +377,12 @@ public final class ReportGenerator extends NMONVisualizerApp {
         generator.outputDirectory = outputDirectory.isDirectory() ? outputDirectory : outputDirectory.getParentFile();
         generator.writeChartData = writeChartData;
 
+        if (threads > 0) {
+            generator.setProperty("parseThreads", threads);
+        }
+
+        generator.setProperty("parseCacheDirectory", cacheDirectory);
+
         // parse intervals
         if (!"".equals(intervalsFile)) {
             try {
@@ -355,7 +407,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             }
         }
 
-        generator.factory.setFormatter(chartFormatter);
+        generator.chartFormatter = chartFormatter;
 
         if (!"".equals(renamerFile)) {
             try {
@@ -368,6 +420,33 @@ public final class ReportGenerator extends NMONVisualizerApp {
             }
         }
 
+        // with a single interval, there is no need to parse data outside of it
+        if ("".equals(intervalsFile)
+                && ((startTime != Interval.DEFAULT.getStart()) || (endTime != Interval.DEFAULT.getEnd()))) {
+            try {
+                generator.setParseInterval(new Interval(startTime, endTime));
+            }
+            catch (IllegalArgumentException iae) {
+                // invalid times are reported by createIntervalIfNecessary()
+            }
+        }
+
+        // raw data includes every type; otherwise, only parse the types needed for the charts
+        if (createCharts && !writeRawData) {
+            generator.projectCharts(summaryCharts, dataSetCharts);
+        }
+
+        // only parse files for the requested hosts; catalog the files rather than parsing all of them
+        if (!hosts.isEmpty()) {
+            filesToParse = FileCatalog.scan(filesToParse, generator.getDisplayTimeZone(), generator.getParseThreads())
+                    .select(hosts, Interval.DEFAULT);
+
+            if (filesToParse.isEmpty()) {
+                System.err.println("no files found for host(s) " + hosts);
+                return;
+            }
+        }
+
         // parse files
         generator.parse(filesToParse);
 
@@ -426,7 +505,19 @@ public final class ReportGenerator extends NMONVisualizerApp {
 
     private final GranularityHelper granularityHelper;
 
-    private final ChartFactory factory;
+    // charts are created concurrently, so each thread needs its own builders
+    private final ThreadLocal<ChartFactory> factories = new ThreadLocal<ChartFactory>() {
+        @Override
+        protected ChartFactory initialValue() {
+            ChartFactory factory = new ChartFactory(ReportGenerator.this);
+            factory.setFormatter(chartFormatter);
+
+            return factory;
+        }
+    };
+
+    private ChartFormatter chartFormatter = new ChartFormatter();
+
     private final ReportCache cache;
 
     private final List<String> customSummaryCharts;
@@ -455,7 +546,6 @@ public final class ReportGenerator extends NMONVisualizerApp {
         this.width = width;
         this.height = height;
 
-        factory = new ChartFactory(this);
         cache = new ReportCache();
 
         granularityHelper = new GranularityHelper(this);
@@ -490,14 +580,32 @@ public final class ReportGenerator extends NMONVisualizerApp {
         }
     }
 
+    private void projectCharts(boolean summaryCharts, boolean dataSetCharts) {
+        List<String> keys = new java.util.ArrayList<String>();
+
+        if (summaryCharts) {
+            keys.add(ReportCache.DEFAULT_SUMMARY_CHARTS_KEY);
+        }
+
+        if (dataSetCharts) {
+            keys.add(ReportCache.DEFAULT_DATASET_CHARTS_KEY);
+        }
+
+        keys.addAll(customSummaryCharts);
+        keys.addAll(customDataCharts);
+        keys.addAll(multiplexedFieldCharts);
+        keys.addAll(multiplexedTypeCharts);
+
+        setParseProjection(cache.getProjection(keys));
+    }
+
     private void parse(List<String> filesToParse) {
         // avoid logging parsing errors to console
         ParserLog log = ParserLog.getInstance();
         java.util.logging.Logger.getLogger(log.getLogger().getName()).setUseParentHandlers(false);
 
-        Map<String, String> errors = new java.util.LinkedHashMap<String, String>();
-
-        System.out.println("Parsing NMON files...");
+        final Map<String, String> errors = new java.util.LinkedHashMap<String, String>();
+        List<String> toParse = new java.util.ArrayList<String>(filesToParse.size());
 
         for (String fileToParse : filesToParse) {
             // ignore ReportGenerator error log files from previous executions
@@ -510,31 +618,28 @@ public final class ReportGenerator extends NMONVisualizerApp {
                 continue;
             }
 
-            System.out.print("\t" + fileToParse + "... ");
-            System.out.flush();
+            toParse.add(fileToParse);
+        }
 
-            log.setCurrentFilename(fileToParse);
+        System.out.println("Parsing NMON files...");
 
-            try {
-                parse(fileToParse, getDisplayTimeZone());
+        // files are parsed concurrently; output is in order as each file's data is added
+        parse(toParse, getDisplayTimeZone(), new FileParseListener() {
+            @Override
+            public void fileParsed(String filename, String messages) {
+                System.out.print("\t" + filename + "... ");
 
-                if (log.hasData()) {
+                if (messages != null) {
                     System.out.println("Complete with errors!");
+                    errors.put(filename, messages);
                 }
                 else {
                     System.out.println("Complete");
                 }
-            }
-            catch (Exception e) {
-                log.getLogger().error("could not parse " + fileToParse, e);
-                System.out.println("Complete with errors!");
-                // continue parsing other files
-            }
 
-            if (log.hasData()) {
-                errors.put(log.getCurrentFilename(), log.getMessages());
+                System.out.flush();
             }
-        }
+        });
 
         System.out.println("Parsing complete!");
 
@@ -619,162 +724,150 @@ public final class ReportGenerator extends NMONVisualizerApp {
 
         System.out.println("Writing charts to " + chartsDirectory.getAbsolutePath());
 
-        if (summaryCharts) {
-            chartsCreated += createSummaryCharts("Creating summary charts", ReportCache.DEFAULT_SUMMARY_CHARTS_KEY,
-                    chartsDirectory);
-        }
+        // charts are created and saved concurrently; progress is output in the same order as the charts are submitted
+        ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(getParseThreads(),
+                new java.util.concurrent.ThreadFactory() {
+                    private int count = 0;
 
-        if (dataSetCharts) {
-            for (DataSet data : getDataSets()) {
-                chartsCreated += createDataSetCharts("Creating charts for " + data.getHostname(),
-                        ReportCache.DEFAULT_DATASET_CHARTS_KEY, chartsDirectory, data);
-            }
-        }
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ChartWriter-" + (++count));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
 
-        for (String file : customSummaryCharts) {
-            chartsCreated += createSummaryCharts("Creating  charts for " + file, file, chartsDirectory);
-        }
+        List<ChartBatch> batches = new java.util.ArrayList<ChartBatch>();
 
-        for (String file : customDataCharts) {
-            for (DataSet data : getDataSets()) {
-                chartsCreated += createDataSetCharts("Creating charts for " + file + " (" + data.getHostname() + ")",
-                        file, chartsDirectory, data);
+        try {
+            if (summaryCharts) {
+                batches.add(createSummaryCharts(executor, "Creating summary charts",
+                        ReportCache.DEFAULT_SUMMARY_CHARTS_KEY, chartsDirectory));
             }
-        }
 
-        for (String file : multiplexedFieldCharts) {
-            for (DataSet data : getDataSets()) {
-                chartsCreated += multiplexChartsAcrossFields(
-                        "Multiplexing charts for " + file + " (" + data.getHostname() + ") across " + "fields", file,
-                        chartsDirectory, data);
+            if (dataSetCharts) {
+                for (DataSet data : getDataSets()) {
+                    batches.add(createDataSetCharts(executor, "Creating charts for " + data.getHostname(),
+                            ReportCache.DEFAULT_DATASET_CHARTS_KEY, chartsDirectory, data));
+                }
             }
-        }
 
-        for (String file : multiplexedTypeCharts) {
-            for (DataSet data : getDataSets()) {
-                chartsCreated += multiplexChartsAcrossTypes(
-                        "Multiplexing charts for " + file + " (" + data.getHostname() + ") across " + "types", file,
-                        chartsDirectory, data);
+            for (String file : customSummaryCharts) {
+                batches.add(createSummaryCharts(executor, "Creating  charts for " + file, file, chartsDirectory));
             }
-        }
-
-        // remove charts directory if nothing was output
-        if (chartsCreated == 0) {
-            chartsDirectory.delete();
-        }
-    }
-
-    private int createSummaryCharts(String message, String key, File chartsDirectory) {
-        int chartsCreated = 0;
-
-        Iterable<? extends DataSet> dataSets = getDataSets();
-        List<BaseChartDefinition> report = cache.getReport(key, dataSets);
-
-        if (!report.isEmpty()) {
-            System.out.print("\t" + message + " ");
-            System.out.flush();
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, chartsDirectory)) {
-                    ++chartsCreated;
+            for (String file : customDataCharts) {
+                for (DataSet data : getDataSets()) {
+                    batches.add(createDataSetCharts(executor,
+                            "Creating charts for " + file + " (" + data.getHostname() + ")", file, chartsDirectory,
+                            data));
                 }
             }
 
-            System.out.println(" Complete (" + chartsCreated + '/' + report.size() + ")");
-        }
-
-        return chartsCreated;
-    }
+            for (String file : multiplexedFieldCharts) {
+                for (DataSet data : getDataSets()) {
+                    List<BaseChartDefinition> report = cache.multiplexChartsAcrossFields(file, data, true);
 
-    private int createDataSetCharts(String message, String key, File chartsDirectory, DataSet data) {
-        int chartsCreated = 0;
-
-        Iterable<? extends DataSet> dataSets = java.util.Collections.singletonList(data);
-        List<BaseChartDefinition> report = cache.getReport(key, dataSets);
-
-        if (!report.isEmpty()) {
-            System.out.print("\t" + message + " ");
-            System.out.flush();
+                    batches.add(submitCharts(executor,
+                            "Multiplexing charts for " + file + " (" + data.getHostname() + ") across " + "fields",
+                            report, java.util.Collections.singletonList(data), chartsDirectory, data));
+                }
+            }
 
-            File datasetDirectory = new File(chartsDirectory, data.getHostname());
-            datasetDirectory.mkdir();
+            for (String file : multiplexedTypeCharts) {
+                for (DataSet data : getDataSets()) {
+                    List<BaseChartDefinition> report = cache.multiplexChartsAcrossTypes(file, data, true);
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, datasetDirectory)) {
-                    ++chartsCreated;
+                    batches.add(submitCharts(executor,
+                            "Multiplexing charts for " + file + " (" + data.getHostname() + ") across " + "types",
+                            report, java.util.Collections.singletonList(data), chartsDirectory, data));
                 }
             }
 
-            if (chartsCreated == 0) {
-                datasetDirectory.delete();
+            for (ChartBatch batch : batches) {
+                chartsCreated += batch.complete();
             }
 
-            System.out.println(" Complete (" + chartsCreated + '/' + report.size() + ")");
+            // batches for the same host share its directory; only remove it once all the charts have been saved
+            // delete() does not remove directories that still contain charts
+            for (ChartBatch batch : batches) {
+                if (batch.directory != null) {
+                    batch.directory.delete();
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
         }
 
-        return chartsCreated;
+        // remove charts directory if nothing was output
+        if (chartsCreated == 0) {
+            chartsDirectory.delete();
+        }
     }
 
-    private int multiplexChartsAcrossTypes(String message, String key, File chartsDirectory, DataSet data) {
-        int chartsCreated = 0;
-
-        List<BaseChartDefinition> report = cache.multiplexChartsAcrossTypes(key, data, true);
+    private ChartBatch createSummaryCharts(ExecutorService executor, String message, String key,
+            File chartsDirectory) {
+        Iterable<? extends DataSet> dataSets = getDataSets();
+        List<BaseChartDefinition> report = cache.getReport(key, dataSets);
 
-        if (!report.isEmpty()) {
-            System.out.print("\t" + message + " ");
-            System.out.flush();
+        return submitCharts(executor, message, report, dataSets, chartsDirectory, null);
+    }
 
-            Iterable<? extends DataSet> dataSets = java.util.Collections.singletonList(data);
-            File datasetDirectory = new File(chartsDirectory, data.getHostname());
-            datasetDirectory.mkdir();
+    private ChartBatch createDataSetCharts(ExecutorService executor, String message, String key,
+            File chartsDirectory, DataSet data) {
+        Iterable<? extends DataSet> dataSets = java.util.Collections.singletonList(data);
+        List<BaseChartDefinition> report = cache.getReport(key, dataSets);
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, datasetDirectory)) {
-                    ++chartsCreated;
-                }
-            }
+        return submitCharts(executor, message, report, dataSets, chartsDirectory, data);
+    }
 
-            if (chartsCreated == 0) {
-                datasetDirectory.delete();
-            }
+    /**
+     * Queue all the charts in the report for creation. If <code>data</code> is not null, the charts are saved in a
+     * subdirectory for that DataSet's host.
+     */
+    private ChartBatch submitCharts(ExecutorService executor, String message, List<BaseChartDefinition> report,
+            final Iterable<? extends DataSet> dataSets, File chartsDirectory, DataSet data) {
+        ChartBatch batch = new ChartBatch(message, report.size());
 
-            System.out.println(" Complete (" + chartsCreated + '/' + report.size() + ")");
+        if (report.isEmpty()) {
+            return batch;
         }
 
-        return chartsCreated;
-    }
-
-    private int multiplexChartsAcrossFields(String message, String key, File chartsDirectory, DataSet data) {
-        int chartsCreated = 0;
+        final File saveDirectory;
 
-        List<BaseChartDefinition> report = cache.multiplexChartsAcrossFields(key, data, true);
+        if (data == null) {
+            saveDirectory = chartsDirectory;
+        }
+        else {
+            saveDirectory = new File(chartsDirectory, data.getHostname());
+            saveDirectory.mkdir();
 
-        if (!report.isEmpty()) {
-            System.out.print("\t" + message + " ");
-            System.out.flush();
+            batch.directory = saveDirectory;
+        }
 
-            Iterable<? extends DataSet> dataSets = java.util.Collections.singletonList(data);
-            File datasetDirectory = new File(chartsDirectory, data.getHostname());
-            datasetDirectory.mkdir();
+        // capture the current values; the worker threads do not receive interval change events
+        final Interval interval = getIntervalManager().getCurrentInterval();
+        final int granularity = granularityHelper.getGranularity();
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, datasetDirectory)) {
-                    ++chartsCreated;
+        for (final BaseChartDefinition definition : report) {
+            batch.results.add(executor.submit(new java.util.concurrent.Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return saveChart(definition, dataSets, saveDirectory, interval, granularity);
                 }
-            }
-
-            if (chartsCreated == 0) {
-                datasetDirectory.delete();
-            }
-
-            System.out.println(" Complete (" + chartsCreated + '/' + report.size() + ")");
+            }));
         }
 
-        return chartsCreated;
+        return batch;
     }
 
     private boolean saveChart(BaseChartDefinition definition, Iterable<? extends DataSet> dataSets,
-            File saveDirectory) {
+            File saveDirectory, Interval interval, int granularity) {
+        ChartFactory factory = factories.get();
+        factory.setInterval(interval);
+        factory.setGranularity(granularity);
+
         JFreeChart chart = factory.createChart(definition, dataSets);
 
         if (chartHasData(chart)) {
@@ -792,9 +885,6 @@ public final class ReportGenerator extends NMONVisualizerApp {
                 writeChartData(chart, definition, saveDirectory);
             }
 
-            System.out.print('.');
-            System.out.flush();
-
             return true;
         }
         else {
@@ -993,8 +1083,64 @@ public final class ReportGenerator extends NMONVisualizerApp {
         if (granularityHelper.isAutomatic()) {
             granularityHelper.recalculate();
         }
+    }
 
-        factory.setInterval(interval);
-        factory.setGranularity(granularityHelper.getGranularity());
+    /**
+     * The charts queued for a single report. Progress is output once the charts are complete, in the order they were
+     * queued.
+     */
+    private static final class ChartBatch {
+        private final String message;
+        private final int chartCount;
+
+        private final List<Future<Boolean>> results;
+
+        // host specific directory; removed after all batches complete if no charts were created in it
+        private File directory;
+
+        ChartBatch(String message, int chartCount) {
+            this.message = message;
+            this.chartCount = chartCount;
+
+            results = new java.util.ArrayList<Future<Boolean>>(chartCount);
+        }
+
+        /**
+         * Wait for all the charts to be saved.
+         * 
+         * @return the number of charts created
+         */
+        int complete() {
+            if (chartCount == 0) {
+                return 0;
+            }
+
+            System.out.print("\t" + message + " ");
+            System.out.flush();
+
+            int chartsCreated = 0;
+
+            for (Future<Boolean> result : results) {
+                try {
+                    if (result.get()) {
+                        ++chartsCreated;
+
+                        System.out.print('.');
+                        System.out.flush();
+                    }
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while creating charts");
+                }
+                catch (java.util.concurrent.ExecutionException ee) {
+                    throw new IllegalStateException("could not create chart", ee.getCause());
+                }
+            }
+
+            System.out.println(" Complete (" + chartsCreated + '/' + chartCount + ")");
+
+            return chartsCreated;
+        }
     }
 }
@@ -10,6 +10,8 @@ import java.util.List;
 import com.ibm.nmon.data.DataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.FieldHandle;
+import com.ibm.nmon.data.FieldSummary;
 
 import com.ibm.nmon.interval.Interval;
 import com.ibm.nmon.util.TimeFormatCache;
@@ -24,15 +26,17 @@ import com.ibm.nmon.util.TimeFormatCache;
  * <p>
  * This class caches statistics for measurements during a given Interval rather than recalculating from the raw data
  * each time. Calculations are done lazily, when a statistic is requested, not when a measurement is added to the
- * record. Data is cached as SoftReference objects, so while this class could potentially use a large amount of memory,
+ * record. Statistics that can be combined from partial results, like the average, minimum and maximum, are calculated
+ * from {@link FieldHandle#summarize(Interval) rollups} of the data so changing the Interval does not require reading
+ * every record. Percentiles still require all the values. Data is cached as SoftReference objects, so while this class could potentially use a large amount of memory,
  * it should not cause OutOfMemoryExceptions. </p
  */
 public final class AnalysisRecord {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(AnalysisRecord.class);
 
     // struct for holding analyzed data
-    // data is analyzed lazily, but everything is calculated on the first call, not for each get
-    // method
+    // data is analyzed lazily; statistics available from the DataSet's rollups are calculated together on the first
+    // call to any of their get methods, the statistics that need every value are calculated together separately
     private static final class AnalysisHolder {
         int count = 0;
         double sum = 0;
@@ -49,6 +53,20 @@ public final class AnalysisRecord {
         double maximum = Double.MIN_VALUE;
 
         double standardDeviation = Double.NaN;
+
+        // version of the DataSet each set of statistics was calculated for
+        int summaryVersion = -1;
+        int version = -1;
+
+        // state needed to analyze only the records appended to the DataSet
+        // values are only kept once data has been appended; null otherwise
+        StatisticsCalculator statistics;
+        long lastRecordTime = Long.MIN_VALUE;
+
+        long lastGranularityTime;
+        int countSinceLastGranularity = 0;
+        double granularityTotal = 0;
+        double granularityPeak = Double.MIN_VALUE;
     }
 
     private final DataSet data;
@@ -60,6 +78,10 @@ public final class AnalysisRecord {
 
     private int granularity = 60000;
 
+    // incremented when data is appended so cached values can be updated
+    private int version = 0;
+    private boolean appending = false;
+
     public AnalysisRecord(DataSet data) {
         this.data = data;
         this.interval = Interval.DEFAULT;
@@ -77,7 +99,9 @@ public final class AnalysisRecord {
         if (!this.interval.equals(interval)) {
             this.interval = interval;
 
-            values.clear();
+            synchronized (values) {
+                values.clear();
+            }
         }
     }
 
@@ -89,24 +113,35 @@ public final class AnalysisRecord {
         if (granularity != this.granularity) {
             this.granularity = granularity;
 
-            values.clear();
+            synchronized (values) {
+                values.clear();
+            }
         }
     }
 
+    /**
+     * Notify this record that new records have been appended to the end of its DataSet. Cached statistics will be
+     * updated using only the new records the next time they are requested.
+     */
+    public void dataAppended() {
+        ++version;
+        appending = true;
+    }
+
     public double getAverage(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).average;
+        return summarizeIfNecessary(type, fieldName).average;
     }
 
     public double getWeightedAverage(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).weightedAverage;
+        return summarizeIfNecessary(type, fieldName).weightedAverage;
     }
 
     public double getMinimum(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).minimum;
+        return summarizeIfNecessary(type, fieldName).minimum;
     }
 
     public double getMaximum(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).maximum;
+        return summarizeIfNecessary(type, fieldName).maximum;
     }
 
     public double getGranularityMaximum(DataType type, String fieldName) {
@@ -126,18 +161,18 @@ public final class AnalysisRecord {
     }
 
     public double getStandardDeviation(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).standardDeviation;
+        return summarizeIfNecessary(type, fieldName).standardDeviation;
     }
 
     public double getSum(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).sum;
+        return summarizeIfNecessary(type, fieldName).sum;
     }
 
     public int getCount(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).count;
+        return summarizeIfNecessary(type, fieldName).count;
     }
 
-    private AnalysisHolder analyzeIfNecessary(DataType type, String fieldName) {
+    private AnalysisHolder getHolder(DataType type, String fieldName) {
         if (type == null) {
             throw new IllegalArgumentException("cannot analyze null " + "type");
         }
@@ -148,145 +183,243 @@ public final class AnalysisRecord {
 
         String key = type.getKey(fieldName);
 
-        SoftReference<AnalysisHolder> holderRef = values.get(key);
-        AnalysisHolder holder = null;
+        // records can be shared by charts created on multiple threads
+        synchronized (values) {
+            SoftReference<AnalysisHolder> holderRef = values.get(key);
+            AnalysisHolder holder = holderRef == null ? null : holderRef.get();
+
+            // null SoftReference or the actual holder has been GC'ed so recreate it
+            if (holder == null) {
+                holder = new AnalysisHolder();
+                values.put(key, new SoftReference<AnalysisHolder>(holder));
+            }
+
+            return holder;
+        }
+    }
 
-        if (holderRef != null) {
-            holder = holderRef.get();
+    // statistics that can be calculated from the DataSet's rollups without reading every record
+    private AnalysisHolder summarizeIfNecessary(DataType type, String fieldName) {
+        AnalysisHolder holder = getHolder(type, fieldName);
 
-            if (holder != null) {
-                return holder;
+        synchronized (holder) {
+            if (holder.summaryVersion != version) {
+                summarize(holder, type, fieldName);
             }
-            // else valid SoftReference but the actual holder has been GC'ed so recreate it
         }
 
-        holder = new AnalysisHolder();
-        values.put(key, new SoftReference<AnalysisHolder>(holder));
+        return holder;
+    }
 
+    private void summarize(AnalysisHolder holder, DataType type, String fieldName) {
         long startT = System.nanoTime();
 
         DataType typeToAnalyze = data.getType(type.getId());
 
-        if ((typeToAnalyze != null) && typeToAnalyze.hasField(fieldName)) {
-            // depending on the Interval, all DataRecords may not be processed, but assume
-            // over-allocating here is faster than forcing some number of array resizes
-            List<Double> allValues = new java.util.ArrayList<Double>(data.getRecordCount());
+        holder.count = 0;
+        holder.sum = 0;
 
-            long lastGranularityTime = Math.max(interval.getStart(), data.getStartTime());
-            int countSinceLastGranularity = 0;
-            double granularityTotal = 0;
+        holder.average = Double.NaN;
+        holder.weightedAverage = Double.NaN;
+        holder.standardDeviation = Double.NaN;
 
-            boolean isProcess = type.getClass() == com.ibm.nmon.data.ProcessDataType.class;
+        // file has data, but not for the given interval or
+        // typeToAnalyze is null or type does not have the field
+        // either way, min and max are NaN
+        holder.minimum = Double.NaN;
+        holder.maximum = Double.NaN;
 
-            for (DataRecord dataRecord : data.getRecords(interval)) {
-                double value = Double.NaN;
+        if ((typeToAnalyze != null) && typeToAnalyze.hasField(fieldName)) {
+            FieldSummary summary = data.getField(typeToAnalyze, fieldName).summarize(interval);
 
-                // for processes, missing values are 0 since NMON does not output data for processes
-                // if there is no activity
-                if (isProcess) {
-                    if (dataRecord.hasData(typeToAnalyze)) {
-                        value = dataRecord.getData(typeToAnalyze, fieldName);
-                    }
+            // for processes, missing values are 0 since NMON does not output data for processes
+            // if there is no activity
+            if (type.getClass() == com.ibm.nmon.data.ProcessDataType.class) {
+                summary.addZeros(data.getRecordCount(interval) - summary.getCount());
+            }
 
-                    if (Double.isNaN(value)) {
-                        value = 0;
-                    }
-                }
-                else { // for other types, assume missing values really are missing
-                    if (dataRecord.hasData(typeToAnalyze)) {
-                        value = dataRecord.getData(typeToAnalyze, fieldName);
-                    }
-
-                    if (Double.isNaN(value)) {
-                        continue;
-                    }
-                }
+            holder.count = summary.getCount();
+            holder.sum = summary.getSum();
 
-                holder.sum += value;
+            if (holder.count > 0) {
+                holder.average = summary.getAverage();
+                holder.weightedAverage = summary.getWeightedAverage();
+                holder.standardDeviation = summary.getStandardDeviation();
 
-                if (value > holder.maximum) {
-                    holder.maximum = value;
-                }
+                // min and max are never more extreme than their initial values
+                holder.minimum = Math.min(Double.MAX_VALUE, summary.getMinimum());
+                holder.maximum = Math.max(Double.MIN_VALUE, summary.getMaximum());
+            }
+        }
 
-                if (value < holder.minimum) {
-                    holder.minimum = value;
-                }
+        holder.summaryVersion = version;
 
-                allValues.add(value);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{}: {}-{} summarized for {} in {}ms", data, type, fieldName,
+                    TimeFormatCache.formatInterval(interval), (System.nanoTime() - startT) / 1000000.0d);
+        }
+    }
 
-                ++countSinceLastGranularity;
-                granularityTotal += value;
+    // statistics that require all the values
+    private AnalysisHolder analyzeIfNecessary(DataType type, String fieldName) {
+        AnalysisHolder holder = getHolder(type, fieldName);
 
-                if ((dataRecord.getTime() - lastGranularityTime) >= granularity) {
-                    double peakAverage = granularityTotal / countSinceLastGranularity;
+        synchronized (holder) {
+            if (holder.version != version) {
+                recalculate(holder, type, fieldName);
+            }
+        }
 
-                    if (peakAverage > holder.granularityMaximum) {
-                        holder.granularityMaximum = peakAverage;
-                    }
+        return holder;
+    }
 
-                    countSinceLastGranularity = 0;
-                    granularityTotal = 0;
+    private void recalculate(AnalysisHolder holder, DataType type, String fieldName) {
+        if (holder.statistics != null) {
+            // data has been appended; only analyze the new records
+            long startT = System.nanoTime();
 
-                    lastGranularityTime = dataRecord.getTime();
-                }
+            long newStart = Math.max(interval.getStart(), holder.lastRecordTime + 1);
+
+            if (newStart < interval.getEnd()) {
+                analyze(holder, type, data.getType(type.getId()), fieldName,
+                        data.getRecords(new Interval(newStart, interval.getEnd())), 16);
+            }
+            else {
+                holder.version = version;
             }
 
-            if (allValues.size() > 0) {
-                holder.count = allValues.size();
-                holder.average = holder.sum / holder.count;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{}: {}-{} updated for {} in {}ms", data, type, fieldName,
+                        TimeFormatCache.formatInterval(interval), (System.nanoTime() - startT) / 1000000.0d);
+            }
 
-                java.util.Collections.sort(allValues);
+            return;
+        }
+        // else no saved values so analyze all the data again
 
-                holder.median = calculatePercentile(.5, allValues);
-                holder.percentile95 = calculatePercentile(.95, allValues);
-                holder.percentile99 = calculatePercentile(.99, allValues);
+        long startT = System.nanoTime();
 
-                double sumSqs = 0;
-                double sumSqDiffs = 0;
+        DataType typeToAnalyze = data.getType(type.getId());
 
-                for (double value : allValues) {
-                    sumSqs += value * value;
-                    sumSqDiffs += Math.pow(value - holder.average, 2);
-                }
+        if ((typeToAnalyze != null) && typeToAnalyze.hasField(fieldName)) {
+            holder.lastRecordTime = Long.MIN_VALUE;
+            holder.lastGranularityTime = Math.max(interval.getStart(), data.getStartTime());
+            holder.countSinceLastGranularity = 0;
+            holder.granularityTotal = 0;
+            holder.granularityPeak = Double.MIN_VALUE;
 
-                holder.weightedAverage = sumSqs / holder.sum;
-                holder.standardDeviation = Math.sqrt(sumSqDiffs / holder.count);
-            }
-            else {
-                // file has data, but not for the given interval
-                // set all values to NaN
-                holder.maximum = Double.NaN;
-                holder.minimum = Double.NaN;
+            holder.median = Double.NaN;
+            holder.percentile95 = Double.NaN;
+            holder.percentile99 = Double.NaN;
 
-                holder.granularityMaximum = Double.NaN;
-            }
+            // depending on the Interval, all DataRecords may not be processed, but assume
+            // over-allocating here is faster than forcing some number of array resizes
+            analyze(holder, type, typeToAnalyze, fieldName, data.getRecords(interval), data.getRecordCount());
         }
         else {
             // typeToAnalyze is null or type does not have the field
             // just return a holder full of NaNs
-            holder.maximum = Double.NaN;
-            holder.minimum = Double.NaN;
-
             holder.granularityMaximum = Double.NaN;
+            holder.version = version;
         }
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("{}: {}-{} analyzed for {} in {}ms", data, type, fieldName,
                     TimeFormatCache.formatInterval(interval), (System.nanoTime() - startT) / 1000000.0d);
         }
-
-        return holder;
     }
 
-    public static double calculatePercentile(double percentile, List<Double> allValues) {
-        double n = allValues.size() * percentile;
-        int idx = (int) n;
+    /**
+     * Add the values from the given records to the holder and recalculate the percentiles and granularity maximum. The
+     * records must all be after the holder's <code>lastRecordTime</code>.
+     */
+    private void analyze(AnalysisHolder holder, DataType type, DataType typeToAnalyze, String fieldName,
+            Iterable<DataRecord> records, int capacity) {
+        StatisticsCalculator statistics = holder.statistics;
+
+        if (statistics == null) {
+            // only keep the values if they will be needed when more data is appended
+            if (appending) {
+                statistics = new StatisticsCalculator(capacity);
+            }
+            else {
+                statistics = StatisticsCalculator.forCurrentThread();
+                statistics.ensureCapacity(capacity);
+            }
+        }
+
+        boolean isProcess = type.getClass() == com.ibm.nmon.data.ProcessDataType.class;
+
+        // resolve the field once rather than looking it up for every record
+        FieldHandle field = data.getField(typeToAnalyze, fieldName);
+
+        for (DataRecord dataRecord : records) {
+            holder.lastRecordTime = dataRecord.getTime();
+
+            // NaN if the record has no data for the type
+            double value = field.getValue(dataRecord);
+
+            // for processes, missing values are 0 since NMON does not output data for processes
+            // if there is no activity
+            if (isProcess) {
+                if (Double.isNaN(value)) {
+                    value = 0;
+                }
+            }
+            else { // for other types, assume missing values really are missing
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+            }
+
+            statistics.add(value);
+
+            ++holder.countSinceLastGranularity;
+            holder.granularityTotal += value;
+
+            if ((dataRecord.getTime() - holder.lastGranularityTime) >= granularity) {
+                double peakAverage = holder.granularityTotal / holder.countSinceLastGranularity;
 
-        if ((n - idx) == 0) {
-            return (allValues.get(idx) + allValues.get(idx - 1)) / 2;
+                if (peakAverage > holder.granularityPeak) {
+                    holder.granularityPeak = peakAverage;
+                }
+
+                holder.countSinceLastGranularity = 0;
+                holder.granularityTotal = 0;
+
+                holder.lastGranularityTime = dataRecord.getTime();
+            }
+        }
+
+        holder.version = version;
+        holder.statistics = appending ? statistics : null;
+
+        if (statistics.getCount() > 0) {
+            holder.granularityMaximum = holder.granularityPeak;
+
+            holder.median = statistics.getPercentile(.5);
+            holder.percentile95 = statistics.getPercentile(.95);
+            holder.percentile99 = statistics.getPercentile(.99);
         }
         else {
-            return allValues.get(idx);
+            // file has data, but not for the given interval
+            holder.granularityMaximum = Double.NaN;
+        }
+    }
+
+    /**
+     * Calculate a percentile from a list of values.
+     * 
+     * @see StatisticsCalculator#calculatePercentile(double, double[], int)
+     */
+    public static double calculatePercentile(double percentile, List<Double> allValues) {
+        double[] values = new double[allValues.size()];
+        int n = 0;
+
+        for (Double value : allValues) {
+            values[n++] = value;
         }
+
+        return StatisticsCalculator.calculatePercentile(percentile, values, n);
     }
 }
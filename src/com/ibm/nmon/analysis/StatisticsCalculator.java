@@ -0,0 +1,273 @@
+package com.ibm.nmon.analysis;
+
+/**
+ * <p>
+ * Calculates the statistics supported by {@link Statistic} over a set of values. Values are stored in a primitive
+ * array and the mean and variance are accumulated as values are added, so calculating the statistics only requires a
+ * single pass over the data.
+ * </p>
+ *
+ * <p>
+ * Percentiles are found by selection rather than by sorting all the values. Selection reorders the stored values but
+ * does not otherwise change them, so more values can still be added after a percentile has been calculated.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe. {@link #forCurrentThread()} returns an instance that can be reused by the calling
+ * thread to avoid reallocating the value array for every calculation.
+ * </p>
+ */
+public final class StatisticsCalculator {
+    private static final ThreadLocal<StatisticsCalculator> CALCULATORS = new ThreadLocal<StatisticsCalculator>() {
+        @Override
+        protected StatisticsCalculator initialValue() {
+            return new StatisticsCalculator();
+        }
+    };
+
+    // do not keep very large arrays around after they have been used
+    private static final int MAX_REUSED_CAPACITY = 1 << 20;
+
+    private double[] values;
+    private int count;
+
+    private double sum;
+    private double sumSqs;
+
+    // Welford's running mean and sum of squared differences from the mean
+    private double mean;
+    private double m2;
+
+    private double minimum;
+    private double maximum;
+
+    public StatisticsCalculator() {
+        this(64);
+    }
+
+    public StatisticsCalculator(int capacity) {
+        values = new double[Math.max(capacity, 1)];
+        reset();
+    }
+
+    /**
+     * @return a reset calculator for use by the current thread; the calculator must not be retained
+     */
+    public static StatisticsCalculator forCurrentThread() {
+        StatisticsCalculator calculator = CALCULATORS.get();
+
+        if (calculator.values.length > MAX_REUSED_CAPACITY) {
+            calculator.values = new double[64];
+        }
+
+        calculator.reset();
+
+        return calculator;
+    }
+
+    public void reset() {
+        count = 0;
+
+        sum = 0;
+        sumSqs = 0;
+
+        mean = 0;
+        m2 = 0;
+
+        minimum = Double.POSITIVE_INFINITY;
+        maximum = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Ensure at least the given number of values can be added without resizing.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = java.util.Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * Add a value. <code>NaN</code> values are not checked for; callers must decide whether to skip them or convert
+     * them to some other value.
+     */
+    public void add(double value) {
+        if (count == values.length) {
+            values = java.util.Arrays.copyOf(values, count * 2);
+        }
+
+        values[count++] = value;
+
+        sum += value;
+        sumSqs += value * value;
+
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+
+        if (value < minimum) {
+            minimum = value;
+        }
+
+        if (value > maximum) {
+            maximum = value;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the mean or <code>NaN</code> if there are no values
+     */
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return the average weighted by each value, i.e. the sum of squares divided by the sum
+     */
+    public double getWeightedAverage() {
+        return count == 0 ? Double.NaN : sumSqs / sum;
+    }
+
+    /**
+     * @return the population standard deviation
+     */
+    public double getStandardDeviation() {
+        return count == 0 ? Double.NaN : Math.sqrt(m2 / count);
+    }
+
+    public double getMinimum() {
+        return count == 0 ? Double.NaN : minimum;
+    }
+
+    public double getMaximum() {
+        return count == 0 ? Double.NaN : maximum;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 1 exclusive
+     * @see #calculatePercentile(double, double[], int)
+     */
+    public double getPercentile(double percentile) {
+        return count == 0 ? Double.NaN : calculatePercentile(percentile, values, count);
+    }
+
+    /**
+     * <p>
+     * Calculate a percentile of the first <code>count</code> values in the array. If the percentile falls exactly
+     * between two values, their average is returned. The result is the same as if the values had been sorted, but the
+     * values are only partially ordered using selection.
+     * </p>
+     *
+     * <p>
+     * The array is reordered by this method. The values must not contain <code>NaN</code>.
+     * </p>
+     */
+    public static double calculatePercentile(double percentile, double[] values, int count) {
+        double n = count * percentile;
+        int idx = (int) n;
+
+        if (idx >= count) {
+            idx = count - 1;
+        }
+
+        select(values, count, idx);
+
+        if (((n - idx) == 0) && (idx > 0)) {
+            // after selection, the next smallest value is the largest one before idx
+            double previous = values[0];
+
+            for (int i = 1; i < idx; i++) {
+                if (values[i] > previous) {
+                    previous = values[i];
+                }
+            }
+
+            return (values[idx] + previous) / 2;
+        }
+        else {
+            return values[idx];
+        }
+    }
+
+    /**
+     * Reorder the values so that <code>values[k]</code> is the value that would be there if the array were sorted, all
+     * values before it are no greater and all values after it are no smaller. Uses quickselect with a median of three
+     * pivot, falling back to sorting the remaining range if partitioning is not converging.
+     */
+    private static void select(double[] values, int count, int k) {
+        int left = 0;
+        int right = count - 1;
+
+        // introselect; bound the number of partitioning steps to avoid quadratic behavior
+        int limit = 2 * (32 - Integer.numberOfLeadingZeros(count));
+
+        while (right > left) {
+            if (limit-- == 0) {
+                java.util.Arrays.sort(values, left, right + 1);
+                return;
+            }
+
+            // median of three; also puts sentinels at both ends of the range
+            int middle = (left + right) >>> 1;
+
+            if (values[middle] < values[left]) {
+                swap(values, middle, left);
+            }
+
+            if (values[right] < values[left]) {
+                swap(values, right, left);
+            }
+
+            if (values[right] < values[middle]) {
+                swap(values, right, middle);
+            }
+
+            double pivot = values[middle];
+
+            int i = left;
+            int j = right;
+
+            // Hoare partition
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    ++i;
+                }
+
+                while (values[j] > pivot) {
+                    --j;
+                }
+
+                if (i <= j) {
+                    swap(values, i, j);
+                    ++i;
+                    --j;
+                }
+            }
+
+            // values[left..j] <= pivot, values[i..right] >= pivot and anything between equals the pivot
+            if (k <= j) {
+                right = j;
+            }
+            else if (k >= i) {
+                left = i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
+    }
+}
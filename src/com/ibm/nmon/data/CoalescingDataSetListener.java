@@ -0,0 +1,155 @@
+package com.ibm.nmon.data;
+
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.Executor;
+
+import com.ibm.nmon.util.EventCoalescer;
+
+/**
+ * <p>
+ * A {@link DataSetListener} that coalesces events and passes them to another listener asynchronously. Use this for
+ * listeners that do expensive work on each event, like rebuilding a tree or a table, so loading many files does not
+ * cause a rebuild for every file.
+ * </p>
+ *
+ * <p>
+ * Events are coalesced per DataSet. Multiple events for the same DataSet are delivered as a single event: added or
+ * changed data replaces appended data and changed data replaces added data. Removing a DataSet discards any other
+ * queued events for it. Clearing discards all queued events, so the delegate receives
+ * {@link DataSetListener#dataCleared() dataCleared()} followed by events for any DataSets added after the clear.
+ * Otherwise, DataSets are delivered in the order of their first event. DataSets are compared by identity since their
+ * <code>equals()</code> changes as data is added.
+ * </p>
+ *
+ * <p>
+ * Since delivery is asynchronous, this listener must be kept and passed to <code>removeDataSetListener()</code>
+ * instead of the delegate.
+ * </p>
+ */
+public final class CoalescingDataSetListener extends EventCoalescer implements DataSetListener {
+    // ordered so that the more significant events replace the less significant ones
+    private enum Event {
+        APPENDED, ADDED, CHANGED, REMOVED
+    }
+
+    private final DataSetListener delegate;
+
+    // guarded by this
+    private boolean cleared;
+    private List<QueuedEvent> events = new java.util.ArrayList<QueuedEvent>();
+    private final Map<DataSet, QueuedEvent> queued = new java.util.IdentityHashMap<DataSet, QueuedEvent>();
+
+    /**
+     * @param executor the executor that delivers events, e.g. one that runs them in the Swing event dispatcher thread
+     * @param delay the time, in milliseconds, to wait for more events before delivering
+     */
+    public CoalescingDataSetListener(DataSetListener delegate, Executor executor, long delay) {
+        super(executor, delay);
+
+        if (delegate == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+
+        this.delegate = delegate;
+    }
+
+    public DataSetListener getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public synchronized void dataAdded(DataSet data) {
+        queue(data, Event.ADDED);
+    }
+
+    @Override
+    public synchronized void dataRemoved(DataSet data) {
+        queue(data, Event.REMOVED);
+    }
+
+    @Override
+    public synchronized void dataChanged(DataSet data) {
+        queue(data, Event.CHANGED);
+    }
+
+    @Override
+    public synchronized void dataAppended(DataSet data) {
+        queue(data, Event.APPENDED);
+    }
+
+    @Override
+    public synchronized void dataCleared() {
+        cleared = true;
+        events.clear();
+        queued.clear();
+
+        eventQueued();
+    }
+
+    private void queue(DataSet data, Event event) {
+        QueuedEvent existing = queued.get(data);
+
+        if (existing == null) {
+            existing = new QueuedEvent(data, event);
+
+            events.add(existing);
+            queued.put(data, existing);
+        }
+        else if ((existing.event == Event.REMOVED) || (event.compareTo(existing.event) > 0)) {
+            // a removed data set that is added again must be rebuilt by the delegate
+            existing.event = event;
+        }
+
+        eventQueued();
+    }
+
+    @Override
+    protected void deliverEvents() {
+        boolean cleared = false;
+        List<QueuedEvent> events = null;
+
+        synchronized (this) {
+            cleared = this.cleared;
+            events = this.events;
+
+            this.cleared = false;
+            this.events = new java.util.ArrayList<QueuedEvent>();
+            queued.clear();
+        }
+
+        if (cleared) {
+            delegate.dataCleared();
+        }
+
+        for (QueuedEvent queuedEvent : events) {
+            DataSet data = queuedEvent.data;
+
+            switch (queuedEvent.event) {
+            case APPENDED:
+                delegate.dataAppended(data);
+                break;
+            case ADDED:
+                delegate.dataAdded(data);
+                break;
+            case CHANGED:
+                delegate.dataChanged(data);
+                break;
+            case REMOVED:
+                delegate.dataRemoved(data);
+                break;
+            }
+        }
+    }
+
+    private static final class QueuedEvent {
+        private final DataSet data;
+        private Event event;
+
+        QueuedEvent(DataSet data, Event event) {
+            this.data = data;
+            this.event = event;
+        }
+    }
+}
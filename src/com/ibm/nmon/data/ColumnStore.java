@@ -0,0 +1,840 @@
+package com.ibm.nmon.data;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>
+ * Columnar storage for all the data in a single {@link DataSet}.
+ * </p>
+ *
+ * <p>
+ * Each {@link DataRecord} added to the store is assigned a <em>row</em>. Rows are never moved once assigned;
+ * time ordering is maintained separately by a sorted <code>long[]</code> of times and a parallel <code>int[]</code>
+ * of rows. Values are stored per DataType in a {@link Column} which holds one primitive <code>double[]</code> per
+ * field and the runs of rows that actually have data for the type. Columns only hold values for rows where the type
+ * has data, so sparse types like processes do not pay for every record in the data set.
+ * </p>
+ *
+ * <p>
+ * DataRecords retain a reference to the store and their row, so they act as lightweight views over the columns.
+ * </p>
+ */
+final class ColumnStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // DataRecord for each row, in the order added
+    private DataRecord[] records = new DataRecord[INITIAL_CAPACITY];
+    private int rowCount = 0;
+
+    // times, sorted, and the row for each time
+    private long[] sortedTimes = new long[INITIAL_CAPACITY];
+    private int[] sortedRows = new int[INITIAL_CAPACITY];
+
+    private final Map<DataType, Column> columns = new java.util.HashMap<DataType, Column>();
+
+    // incremented whenever a column is added, removed or renamed so FieldHandles can revalidate
+    private int version = 0;
+
+    // incremented whenever any record or value changes so Rollups can be rebuilt
+    private int modCount = 0;
+
+    int size() {
+        return rowCount;
+    }
+
+    long getTime(int index) {
+        return sortedTimes[index];
+    }
+
+    DataRecord getRecord(int index) {
+        return records[sortedRows[index]];
+    }
+
+    /**
+     * @return the record for the given row
+     */
+    DataRecord getRecordAtRow(int row) {
+        return records[row];
+    }
+
+    /**
+     * @return the row for the record at the given index into the sorted times
+     */
+    int getRow(int index) {
+        return sortedRows[index];
+    }
+
+    /**
+     * @return the index into the sorted times for the given time or <code>-(insertion point) - 1</code> if the time
+     *         is not in this store
+     */
+    int indexOf(long time) {
+        // fast path for parsers that add records in time order
+        if ((rowCount > 0) && (sortedTimes[rowCount - 1] == time)) {
+            return rowCount - 1;
+        }
+
+        return Arrays.binarySearch(sortedTimes, 0, rowCount, time);
+    }
+
+    /**
+     * @return the index of the first time that is greater than or equal to the given time
+     */
+    int lowerBound(long time) {
+        int idx = Arrays.binarySearch(sortedTimes, 0, rowCount, time);
+
+        return idx < 0 ? -idx - 1 : idx;
+    }
+
+    /**
+     * @return the index just past the last time that is less than or equal to the given time
+     */
+    int upperBound(long time) {
+        int idx = Arrays.binarySearch(sortedTimes, 0, rowCount, time);
+
+        return idx < 0 ? -idx - 1 : idx + 1;
+    }
+
+    void add(DataRecord record) {
+        long time = record.getTime();
+        int idx = indexOf(time);
+
+        ++modCount;
+
+        if (idx >= 0) {
+            // replace the existing record but reuse its row
+            int row = sortedRows[idx];
+            DataRecord existing = records[row];
+
+            for (Column column : columns.values()) {
+                column.remove(row);
+            }
+
+            existing.detach();
+            records[row] = record;
+            record.attach(this, row);
+            return;
+        }
+
+        int insertAt = -idx - 1;
+
+        if (rowCount == records.length) {
+            int newCapacity = grow(rowCount);
+
+            records = Arrays.copyOf(records, newCapacity);
+            sortedTimes = Arrays.copyOf(sortedTimes, newCapacity);
+            sortedRows = Arrays.copyOf(sortedRows, newCapacity);
+        }
+
+        int row = rowCount;
+
+        if (insertAt < rowCount) {
+            System.arraycopy(sortedTimes, insertAt, sortedTimes, insertAt + 1, rowCount - insertAt);
+            System.arraycopy(sortedRows, insertAt, sortedRows, insertAt + 1, rowCount - insertAt);
+        }
+
+        sortedTimes[insertAt] = time;
+        sortedRows[insertAt] = row;
+        records[row] = record;
+        ++rowCount;
+
+        record.attach(this, row);
+    }
+
+    void adjustTimes(long adjustmentMillis) {
+        for (int i = 0; i < rowCount; i++) {
+            sortedTimes[i] += adjustmentMillis;
+            records[i].adjustTime(adjustmentMillis);
+        }
+    }
+
+    boolean hasData(int row, DataType type) {
+        Column column = columns.get(type);
+
+        return (column != null) && column.has(row);
+    }
+
+    double getValue(int row, DataType type, int fieldIndex) {
+        Column column = columns.get(type);
+
+        return column == null ? Double.NaN : column.get(fieldIndex, row);
+    }
+
+    /**
+     * @return a copy of the values for the type at the given row or <code>null</code> if there is no data
+     */
+    double[] getValues(int row, DataType type) {
+        Column column = columns.get(type);
+        int slot = column == null ? -1 : column.slot(row);
+
+        if (slot < 0) {
+            return null;
+        }
+
+        double[] data = new double[column.getFieldCount()];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = column.value(i, slot);
+        }
+
+        return data;
+    }
+
+    void setValues(int row, DataType type, double[] data) {
+        ++modCount;
+
+        Column column = getOrCreateColumn(type);
+        column.set(column.insert(row), data);
+    }
+
+    void setValue(int row, DataType type, int fieldIndex, double value) {
+        ++modCount;
+
+        Column column = getOrCreateColumn(type);
+        int slot = column.slot(row);
+
+        if (slot < 0) {
+            double[] data = new double[column.getFieldCount()];
+
+            Arrays.fill(data, Double.NaN);
+            data[fieldIndex] = value;
+
+            column.set(column.insert(row), data);
+        }
+        else {
+            column.set(fieldIndex, slot, value);
+        }
+    }
+
+    boolean remove(int row, DataType type) {
+        ++modCount;
+
+        Column column = columns.get(type);
+
+        return (column != null) && column.remove(row);
+    }
+
+    Iterable<DataType> getTypes(int row) {
+        java.util.List<DataType> types = new java.util.ArrayList<DataType>();
+
+        for (Column column : columns.values()) {
+            if (column.has(row)) {
+                types.add(column.type);
+            }
+        }
+
+        return types;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the column for the given type or <code>null</code> if no data has been added for the type
+     */
+    Column getColumn(DataType type) {
+        return columns.get(type);
+    }
+
+    void removeColumn(DataType type) {
+        if (columns.remove(type) != null) {
+            ++version;
+        }
+    }
+
+    /**
+     * Add a column whose data is calculated from the other data in this store the first time it is accessed. Records
+     * added after that will not have data for the type.
+     */
+    void addDerivedColumn(DataType type, DerivedData derived) {
+        if (columns.containsKey(type)) {
+            throw new IllegalArgumentException("DataType " + type.getId() + " already has data");
+        }
+
+        columns.put(type, new Column(type, this, derived));
+        ++version;
+        ++modCount;
+    }
+
+    /**
+     * @return true if the type's data is calculated from other data in this store, whether or not it has been
+     *         calculated yet
+     */
+    boolean isDerived(DataType type) {
+        Column column = columns.get(type);
+
+        return (column != null) && column.calculated;
+    }
+
+    /**
+     * @return how the type's data will be calculated or <code>null</code> if the type is not derived or its data has
+     *         already been calculated
+     */
+    DerivedData getDerivedData(DataType type) {
+        Column column = columns.get(type);
+
+        return column == null ? null : column.derived;
+    }
+
+    /**
+     * Calculate the data for a derived type now, from the current data, rather than when it is first accessed.
+     */
+    void calculate(DataType type) {
+        Column column = columns.get(type);
+
+        if (column != null) {
+            column.load();
+        }
+    }
+
+    /**
+     * @return a rollup of the given field, building it if the store has been modified since it was last requested
+     */
+    Rollup getRollup(Column column, int fieldIndex) {
+        // multiple threads may be reading the same data set
+        synchronized (column) {
+            if ((column.rollups == null) || (column.rollupModCount != modCount)) {
+                column.rollups = new Rollup[column.getFieldCount()];
+                column.rollupModCount = modCount;
+            }
+
+            Rollup rollup = column.rollups[fieldIndex];
+
+            if (rollup == null) {
+                rollup = new Rollup(this, column, fieldIndex);
+                column.rollups[fieldIndex] = rollup;
+            }
+
+            return rollup;
+        }
+    }
+
+    /**
+     * Associate the existing data for <code>oldType</code> with <code>newType</code>. The types must have the same
+     * number of fields.
+     */
+    void renameColumn(DataType oldType, DataType newType) {
+        Column column = columns.remove(oldType);
+
+        if (column != null) {
+            if (column.getFieldCount() != newType.getFieldCount()) {
+                throw new IllegalArgumentException("DataType " + newType.getId() + " defines "
+                        + newType.getFieldCount() + " fields but " + oldType.getId() + " has "
+                        + column.getFieldCount());
+            }
+
+            columns.put(newType, new Column(newType, column));
+            ++version;
+        }
+    }
+
+    /**
+     * Set all the values for a type at once. <code>rows</code> must be sorted and <code>values</code> must contain
+     * <code>size</code> values for each field. Used by {@link DataSetCache} to load data without adding each value
+     * individually.
+     */
+    void loadColumn(DataType type, int[] rows, double[][] values, int size) {
+        if (values.length != type.getFieldCount()) {
+            throw new IllegalArgumentException("DataType " + type.getId() + " defines " + type.getFieldCount()
+                    + " fields but there are " + values.length + " sets of values");
+        }
+
+        Column column = new Column(type);
+        double[] data = new double[values.length];
+
+        for (int i = 0; i < size; i++) {
+            if (rows[i] >= rowCount) {
+                throw new IllegalArgumentException("row " + rows[i] + " is not in this store");
+            }
+
+            if ((i > 0) && (rows[i] <= rows[i - 1])) {
+                throw new IllegalArgumentException("rows are not sorted at index " + i);
+            }
+
+            for (int j = 0; j < data.length; j++) {
+                data[j] = values[j][i];
+            }
+
+            column.set(column.append(rows[i]), data);
+        }
+
+        columns.put(type, column);
+
+        ++version;
+        ++modCount;
+    }
+
+    private Column getOrCreateColumn(DataType type) {
+        Column column = columns.get(type);
+
+        if (column == null) {
+            column = new Column(type);
+            columns.put(type, column);
+            ++version;
+        }
+        else if (column.getFieldCount() != type.getFieldCount()) {
+            throw new IllegalArgumentException("DataType " + type.getId() + " defines " + type.getFieldCount()
+                    + " fields but existing data has " + column.getFieldCount());
+        }
+
+        return column;
+    }
+
+    private static int grow(int capacity) {
+        // small columns, like short lived processes, start smaller than INITIAL_CAPACITY
+        return Math.max(4, capacity + (capacity >> 1));
+    }
+
+    /**
+     * <p>
+     * Values for a single DataType.
+     * </p>
+     *
+     * <p>
+     * The rows that have data are stored as runs of consecutive rows. Each run records its first row and the slot of
+     * that row's values; the slots for the rest of the run follow in order. Types that have data in every row, or
+     * processes that only run for part of the file, need a single run so the slot lookup is constant time and there is
+     * no per row index.
+     * </p>
+     *
+     * <p>
+     * Process columns are <em>deduplicated</em>: each slot refers to a row of values and a slot with the same values as
+     * the previous slot shares its row. Idle processes report the same values in every record, so this saves most of
+     * the storage for process data.
+     * </p>
+     *
+     * <p>
+     * Derived columns are calculated on first access, under the column's lock.
+     * </p>
+     */
+    static final class Column {
+        final DataType type;
+
+        // runs of consecutive rows; run i starts at runRows[i] and its values start at runSlots[i]
+        private int[] runRows;
+        private int[] runSlots;
+        private int runCount;
+
+        // number of slots, i.e. rows with data
+        private int size;
+
+        // values[field][index]; for deduplicated columns, index is refs[slot]; otherwise it is the slot
+        private double[][] values;
+        // length of each values array; kept separately since a type may have no fields
+        private int capacity;
+        private int[] refs;
+        // number of rows of values used by deduplicated columns
+        private int valueCount;
+
+        // set until the data is calculated
+        private volatile DerivedData derived;
+        // true for derived columns, even after the data is calculated
+        private final boolean calculated;
+        private final ColumnStore store;
+
+        // cached by ColumnStore.getRollup()
+        Rollup[] rollups;
+        int rollupModCount;
+
+        Column(DataType type) {
+            this(type, null, null);
+        }
+
+        Column(DataType type, ColumnStore store, DerivedData derived) {
+            this.type = type;
+
+            this.runRows = new int[1];
+            this.runSlots = new int[1];
+            this.runCount = 0;
+            this.size = 0;
+
+            if (type instanceof ProcessDataType) {
+                // most processes only run for a few records
+                this.capacity = 1;
+                this.refs = new int[1];
+            }
+            else {
+                this.capacity = INITIAL_CAPACITY;
+                this.refs = null;
+            }
+
+            this.values = new double[type.getFieldCount()][capacity];
+            this.valueCount = 0;
+
+            this.store = store;
+            this.derived = derived;
+            this.calculated = derived != null;
+        }
+
+        Column(DataType type, Column toCopy) {
+            toCopy.load();
+
+            this.type = type;
+
+            this.runRows = toCopy.runRows;
+            this.runSlots = toCopy.runSlots;
+            this.runCount = toCopy.runCount;
+            this.size = toCopy.size;
+
+            this.values = toCopy.values;
+            this.capacity = toCopy.capacity;
+            this.refs = toCopy.refs;
+            this.valueCount = toCopy.valueCount;
+
+            this.store = null;
+            this.derived = null;
+            this.calculated = toCopy.calculated;
+        }
+
+        DataType getType() {
+            return type;
+        }
+
+        int getFieldCount() {
+            return values.length;
+        }
+
+        /**
+         * @return the rows with data, in slot order
+         */
+        int[] getRows() {
+            load();
+
+            int[] rows = new int[size];
+
+            for (int run = 0; run < runCount; run++) {
+                int start = runSlots[run];
+                int length = runLength(run);
+
+                for (int i = 0; i < length; i++) {
+                    rows[start + i] = runRows[run] + i;
+                }
+            }
+
+            return rows;
+        }
+
+        /**
+         * @return <code>true</code> if the column has data for the given row
+         */
+        boolean has(int row) {
+            return slot(row) >= 0;
+        }
+
+        /**
+         * @return the value of the field at the given row or <code>NaN</code> if there is no data
+         */
+        double get(int fieldIndex, int row) {
+            int slot = slot(row);
+
+            return slot < 0 ? Double.NaN : value(fieldIndex, slot);
+        }
+
+        double value(int fieldIndex, int slot) {
+            return values[fieldIndex][refs == null ? slot : refs[slot]];
+        }
+
+        /**
+         * @return the slot for the row or <code>-1</code> if there is no data
+         */
+        int slot(int row) {
+            load();
+
+            int run = findRun(row);
+
+            if (run < 0) {
+                return -1;
+            }
+
+            int offset = row - runRows[run];
+
+            return offset < runLength(run) ? runSlots[run] + offset : -1;
+        }
+
+        /**
+         * @return the slot for the row, creating a new one if needed; the slot's values must be set by the caller
+         */
+        int insert(int row) {
+            load();
+
+            int run = findRun(row);
+
+            if (run >= 0) {
+                int offset = row - runRows[run];
+
+                if (offset < runLength(run)) {
+                    return runSlots[run] + offset;
+                }
+            }
+
+            // the slot just past the end of the preceding run
+            int slot = run < 0 ? 0 : runSlots[run] + runLength(run);
+
+            boolean extendsPrevious = (run >= 0) && (row == runRows[run] + runLength(run));
+            boolean joinsNext = (run + 1 < runCount) && (runRows[run + 1] == row + 1);
+
+            ensureSlotCapacity();
+
+            if (slot < size) {
+                if (refs == null) {
+                    for (int i = 0; i < values.length; i++) {
+                        System.arraycopy(values[i], slot, values[i], slot + 1, size - slot);
+                    }
+                }
+                else {
+                    System.arraycopy(refs, slot, refs, slot + 1, size - slot);
+                }
+            }
+
+            ++size;
+
+            if (extendsPrevious && joinsNext) {
+                // the row fills the gap between two runs
+                removeRun(run + 1);
+                shiftSlots(run + 1, 1);
+            }
+            else if (extendsPrevious) {
+                shiftSlots(run + 1, 1);
+            }
+            else if (joinsNext) {
+                runRows[run + 1] = row;
+                shiftSlots(run + 2, 1);
+            }
+            else {
+                insertRun(run + 1, row, slot);
+                shiftSlots(run + 2, 1);
+            }
+
+            return slot;
+        }
+
+        boolean remove(int row) {
+            if (derived != null) {
+                // not yet calculated; the data will be calculated from the current records
+                return false;
+            }
+
+            int run = findRun(row);
+
+            if (run < 0) {
+                return false;
+            }
+
+            int offset = row - runRows[run];
+            int length = runLength(run);
+
+            if (offset >= length) {
+                return false;
+            }
+
+            int slot = runSlots[run] + offset;
+
+            --size;
+
+            if (slot < size) {
+                if (refs == null) {
+                    for (int i = 0; i < values.length; i++) {
+                        System.arraycopy(values[i], slot + 1, values[i], slot, size - slot);
+                    }
+                }
+                else {
+                    // the removed row of values may be shared; leave it in place
+                    System.arraycopy(refs, slot + 1, refs, slot, size - slot);
+                }
+            }
+
+            if (length == 1) {
+                removeRun(run);
+                shiftSlots(run, -1);
+            }
+            else if (offset == 0) {
+                // the next row's values moved into this slot
+                ++runRows[run];
+                shiftSlots(run + 1, -1);
+            }
+            else if (offset == length - 1) {
+                shiftSlots(run + 1, -1);
+            }
+            else {
+                // split the run around the removed row
+                insertRun(run + 1, row + 1, slot);
+                shiftSlots(run + 2, -1);
+            }
+
+            return true;
+        }
+
+        /**
+         * Set all the values for a slot returned by {@link #insert(int)}.
+         */
+        void set(int slot, double[] data) {
+            if (refs == null) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i][slot] = data[i];
+                }
+            }
+            else {
+                // share the previous slot's values if they are the same
+                if ((slot > 0) && sameValues(refs[slot - 1], data)) {
+                    refs[slot] = refs[slot - 1];
+                }
+                else {
+                    refs[slot] = addValues(data);
+                }
+            }
+        }
+
+        void set(int fieldIndex, int slot, double value) {
+            if (refs == null) {
+                values[fieldIndex][slot] = value;
+            }
+            else {
+                // values may be shared with other slots; copy before changing
+                double[] data = new double[values.length];
+
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = values[i][refs[slot]];
+                }
+
+                data[fieldIndex] = value;
+                refs[slot] = addValues(data);
+            }
+        }
+
+        private void load() {
+            if (derived == null) {
+                return;
+            }
+
+            synchronized (this) {
+                DerivedData toLoad = derived;
+
+                if (toLoad == null) {
+                    // loaded by another thread
+                    return;
+                }
+
+                // rows are in the order added so every slot is appended
+                for (int row = 0; row < store.rowCount; row++) {
+                    double[] data = toLoad.getValues(store.records[row]);
+
+                    if (data != null) {
+                        set(append(row), data);
+                    }
+                }
+
+                derived = null;
+            }
+        }
+
+        // insert() for rows after all the existing rows, without calling load()
+        int append(int row) {
+            boolean extendsLast = (runCount > 0) && (row == runRows[runCount - 1] + runLength(runCount - 1));
+
+            ensureSlotCapacity();
+
+            int slot = size++;
+
+            if (!extendsLast) {
+                insertRun(runCount, row, slot);
+            }
+
+            return slot;
+        }
+
+        /**
+         * @return the index of the last run starting at or before the row or <code>-1</code> if there is none
+         */
+        private int findRun(int row) {
+            if (runCount == 0) {
+                return -1;
+            }
+
+            // fast path for a single run and for data read or added in time order
+            if (runRows[runCount - 1] <= row) {
+                return runCount - 1;
+            }
+
+            int idx = Arrays.binarySearch(runRows, 0, runCount, row);
+
+            return idx < 0 ? -idx - 2 : idx;
+        }
+
+        private int runLength(int run) {
+            return (run + 1 < runCount ? runSlots[run + 1] : size) - runSlots[run];
+        }
+
+        private void insertRun(int run, int row, int slot) {
+            if (runCount == runRows.length) {
+                int newCapacity = grow(runCount);
+
+                runRows = Arrays.copyOf(runRows, newCapacity);
+                runSlots = Arrays.copyOf(runSlots, newCapacity);
+            }
+
+            System.arraycopy(runRows, run, runRows, run + 1, runCount - run);
+            System.arraycopy(runSlots, run, runSlots, run + 1, runCount - run);
+
+            runRows[run] = row;
+            runSlots[run] = slot;
+            ++runCount;
+        }
+
+        private void removeRun(int run) {
+            --runCount;
+
+            System.arraycopy(runRows, run + 1, runRows, run, runCount - run);
+            System.arraycopy(runSlots, run + 1, runSlots, run, runCount - run);
+        }
+
+        private void shiftSlots(int fromRun, int delta) {
+            for (int i = fromRun; i < runCount; i++) {
+                runSlots[i] += delta;
+            }
+        }
+
+        private void ensureSlotCapacity() {
+            if (refs == null) {
+                if (size == capacity) {
+                    growValues();
+                }
+            }
+            else if (size == refs.length) {
+                refs = Arrays.copyOf(refs, grow(size));
+            }
+        }
+
+        private int addValues(double[] data) {
+            if (valueCount == capacity) {
+                growValues();
+            }
+
+            for (int i = 0; i < values.length; i++) {
+                values[i][valueCount] = data[i];
+            }
+
+            return valueCount++;
+        }
+
+        private void growValues() {
+            capacity = grow(capacity);
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Arrays.copyOf(values[i], capacity);
+            }
+        }
+
+        private boolean sameValues(int index, double[] data) {
+            for (int i = 0; i < values.length; i++) {
+                // compare bits so NaN and -0 are kept as is
+                if (Double.compare(values[i][index], data[i]) != 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -3,16 +3,29 @@ package com.ibm.nmon.data;
 import java.util.Map;
 
 /**
+ * <p>
  * Holder for data from a specific time, identified by either a timestamp (TXXXX) or the
  * corresponding time in milliseconds. DataRecords can hold any amount of data as long as that data
  * is all from the same time.
+ * </p>
+ * 
+ * <p>
+ * Until a record is {@link DataSet#addRecord(DataRecord) added} to a DataSet, data is held in the
+ * record itself. After that, the record is a view over a single row of the DataSet's
+ * {@link ColumnStore columnar storage}.
+ * </p>
  */
 public final class DataRecord implements Comparable<DataRecord> {
     private long time;
     private final String timestamp;
 
     // associate the DataType with the set of values for this record's timestamp
-    private final Map<DataType, double[]> values = new java.util.HashMap<DataType, double[]>();
+    // only used until the record is added to a DataSet
+    private Map<DataType, double[]> values = new java.util.HashMap<DataType, double[]>();
+
+    // set when the record is added to a DataSet
+    private ColumnStore store;
+    private int row = -1;
 
     public DataRecord(long time, String timestamp) {
         this.time = time;
@@ -43,19 +56,49 @@ public final class DataRecord implements Comparable<DataRecord> {
         }
     }
 
+    // only called by ColumnStore
+
+    final void attach(ColumnStore store, int row) {
+        this.store = store;
+        this.row = row;
+
+        for (Map.Entry<DataType, double[]> entry : values.entrySet()) {
+            store.setValues(row, entry.getKey(), entry.getValue());
+        }
+
+        values = null;
+    }
+
+    final void detach() {
+        store = null;
+        row = -1;
+        values = new java.util.HashMap<DataType, double[]>();
+    }
+
+    final boolean isAttachedTo(ColumnStore store) {
+        return this.store == store;
+    }
+
+    // only called by FieldHandle
+
+    final int getRow() {
+        return row;
+    }
+
     /*
      * Potential future bug here since setValue creates an array full of NaNs but addData uses
      * ArrayPool (all zeros). The existing parsers use one or the other, and do not mix calls in the
      * same parse.
-     * 
-     * More importantly, these functions DO NOT make any provisions for updates; DataRecords are
-     * assumed read only after parsing. If that is not the case, code needs to be added to create a
-     * new array so that _all_ the references to ArrayPool arrays are not changed.
      */
     public void setValue(DataType type, String field, double value) {
         // check if type has field first
         int idx = type.getFieldIndex(field);
 
+        if (store != null) {
+            store.setValue(row, type, idx, value);
+            return;
+        }
+
         double[] data = values.get(type);
 
         if (data == null) {
@@ -70,7 +113,7 @@ public final class DataRecord implements Comparable<DataRecord> {
     }
 
     public void addData(DataType type, double[] data) {
-        if (values.containsKey(type)) {
+        if (hasData(type)) {
             throw new IllegalArgumentException("DataType " + type.getId() + " already defined for timestamp "
                     + timestamp);
         }
@@ -80,49 +123,95 @@ public final class DataRecord implements Comparable<DataRecord> {
                         + " fields but there are only " + data.length + " values recorded for timestamp " + timestamp);
             }
 
-            values.put(type, ArrayPool.getArray(data));
+            if (store != null) {
+                store.setValues(row, type, data);
+            }
+            else {
+                values.put(type, ArrayPool.getArray(data));
+            }
         }
     }
 
     public boolean removeData(DataType type) {
-        return values.remove(type) != null;
+        if (store != null) {
+            return store.remove(row, type);
+        }
+        else {
+            return values.remove(type) != null;
+        }
     }
 
     public double getData(DataType type, String fieldName) {
-        double[] data = values.get(type);
-
-        if (data == null) {
+        if (!hasData(type)) {
             throw new IllegalArgumentException("record does not contain any data for DataType " + type.getId());
         }
 
         int fieldIndex = type.getFieldIndex(fieldName);
 
+        if (store != null) {
+            return store.getValue(row, type, fieldIndex);
+        }
+
+        double[] data = values.get(type);
+
         // allow ArrayIndexOutOfBoundsException here because that implies the DataType has
         // changed, which should not happen
         return data[fieldIndex];
     }
 
     /**
-     * Return the raw data for the given DataType. This array <em>is not</em> copied, so care must
-     * be taken to not update or otherwise invalidate the data.
+     * Get a single value by field index rather than by name.
+     * 
+     * @see DataType#getFieldIndex(String)
+     * @see FieldHandle
      */
-    public double[] getData(DataType type) {
+    public double getData(DataType type, int fieldIndex) {
+        if (store != null) {
+            if (!store.hasData(row, type)) {
+                throw new IllegalArgumentException("record does not contain any data for DataType " + type.getId());
+            }
+
+            return store.getValue(row, type, fieldIndex);
+        }
+
         double[] data = values.get(type);
 
         if (data == null) {
             throw new IllegalArgumentException("record does not contain any data for DataType " + type.getId());
         }
 
+        return data[fieldIndex];
+    }
+
+    /**
+     * Return the data for the given DataType. Once this record has been added to a DataSet, this
+     * is a copy of the stored values and updates to the array will not be reflected in the record.
+     * Before that, the array <em>is not</em> copied, so care must be taken to not update or
+     * otherwise invalidate the data.
+     */
+    public double[] getData(DataType type) {
+        double[] data = store != null ? store.getValues(row, type) : values.get(type);
+
+        if (data == null) {
+            throw new IllegalArgumentException("record does not contain any data for DataType " + type.getId());
+        }
+
         return data;
     }
 
     public boolean hasData(DataType type) {
-        return values.containsKey(type);
+        if (store != null) {
+            return store.hasData(row, type);
+        }
+        else {
+            return values.containsKey(type);
+        }
     }
 
     @Override
     public String toString() {
-        return "{timestamp=" + getTimestamp() + ", dataTypes=" + values.keySet() + '}';
+        return "{timestamp=" + getTimestamp() + ", dataTypes="
+                + (store != null ? store.getTypes(row) : values.keySet()) + '}';
     }
 
     @Override
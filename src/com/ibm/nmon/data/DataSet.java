@@ -51,12 +51,18 @@ import com.ibm.nmon.interval.Interval;
  *   ...
  *   time n
  * </pre>
+ * 
+ * <p>
+ * Internally, the data is stored by {@link ColumnStore column}, with a sorted array of times and
+ * primitive arrays of values for each field of each DataType. DataRecords returned by this class
+ * are views over a single time in the columns.
+ * </p>
  */
 public abstract class DataSet implements Comparable<DataSet> {
     private final TreeMap<String, DataType> dataTypes = new TreeMap<String, DataType>();
 
     // associate data with each timestamp
-    private final TreeMap<Long, DataRecord> data = new TreeMap<Long, DataRecord>();
+    private final ColumnStore data = new ColumnStore();
 
     public abstract String getHostname();
 
@@ -71,18 +77,40 @@ public abstract class DataSet implements Comparable<DataSet> {
                         + " within the same data set");
             }
             else {
-                dataTypes.put(type.getId(), type);
+                // share identical types with all other data sets
+                dataTypes.put(type.getId(), SchemaCatalog.getInstance().intern(type));
             }
         }
     }
 
-    // callers are responsible fore removing the type with any associated DataRecords
+    /**
+     * Add a type whose data is calculated from the other data in this data set. The data is calculated for all the
+     * records in the data set the first time it is accessed, so types that may never be used do not need to be stored.
+     * Records added after that will not have data for the type.
+     */
+    public final void addDerivedType(DataType type, DerivedData derived) {
+        addType(type);
+        data.addDerivedColumn(type, derived);
+    }
+
+    // removes the type and all its associated data
     final void removeType(DataType type) {
         if (type != null) {
             dataTypes.remove(type.getId());
+            data.removeColumn(type);
         }
     }
 
+    // replace the existing type with a new one and associate all the existing data with it
+    final void replaceType(DataType oldType, DataType newType) {
+        // share identical types with all other data sets
+        DataType canonical = SchemaCatalog.getInstance().intern(newType);
+
+        dataTypes.remove(oldType.getId());
+        dataTypes.put(canonical.getId(), canonical);
+        data.renameColumn(oldType, canonical);
+    }
+
     public final boolean containsType(String typeId) {
         return dataTypes.containsKey(typeId);
     }
@@ -102,9 +130,53 @@ public abstract class DataSet implements Comparable<DataSet> {
         return dataTypes.size();
     }
 
+    // only called by DataSetCache
+    final ColumnStore getColumnStore() {
+        return data;
+    }
+
+    /**
+     * Resolve a handle for efficiently reading the given field from the records in this data set.
+     * 
+     * @see FieldHandle
+     */
+    public final FieldHandle getField(DataType type, String field) {
+        if (type == null) {
+            throw new IllegalArgumentException("type cannot be null");
+        }
+
+        if ((field == null) || "".equals(field)) {
+            throw new IllegalArgumentException("field cannot be null");
+        }
+
+        return new FieldHandle(data, type, field);
+    }
+
+    /**
+     * @return handles for all the fields of the given type, in field order
+     * @see FieldHandle
+     */
+    public final FieldHandle[] getFields(DataType type) {
+        FieldHandle[] handles = new FieldHandle[type.getFieldCount()];
+
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = getField(type, type.getField(i));
+        }
+
+        return handles;
+    }
+
     public final void addRecord(DataRecord record) {
         if (record != null) {
-            data.put(record.getTime(), record);
+            if (record.isAttachedTo(data)) {
+                return;
+            }
+            else if (!record.isAttachedTo(null)) {
+                throw new IllegalArgumentException("record for timestamp " + record.getTimestamp()
+                        + " has already been added to another data set");
+            }
+
+            data.add(record);
         }
     }
 
@@ -120,28 +192,41 @@ public abstract class DataSet implements Comparable<DataSet> {
             return data.size();
         }
         else {
-            return data.subMap(interval.getStart(), true, interval.getEnd(), true).size();
+            return Math.max(0, data.upperBound(interval.getEnd()) - data.lowerBound(interval.getStart()));
         }
     }
 
     public final DataRecord getRecord(long time) {
-        return data.get(time);
+        int idx = data.indexOf(time);
+
+        return idx < 0 ? null : data.getRecord(idx);
+    }
+
+    /**
+     * @return the time of the first record at or after the given time or <code>Long.MAX_VALUE</code> if there is none
+     */
+    public final long getNextTime(long time) {
+        int idx = data.lowerBound(time);
+
+        return idx < data.size() ? data.getTime(idx) : Long.MAX_VALUE;
     }
 
     /**
      * @return all the DataRecords in this data set, sorted by time, earliest first.
      */
     public final Iterable<DataRecord> getRecords() {
-        return java.util.Collections.unmodifiableCollection(data.values());
+        return new RecordList(0, data.size());
     }
 
     public final Iterable<DataRecord> getRecords(Interval interval) {
         if (Interval.DEFAULT.equals(interval)) {
-            return java.util.Collections.unmodifiableCollection(data.values());
+            return new RecordList(0, data.size());
         }
         else {
-            return java.util.Collections.unmodifiableCollection(data.subMap(interval.getStart(), true,
-                    interval.getEnd(), true).values());
+            int start = data.lowerBound(interval.getStart());
+            int end = Math.max(start, data.upperBound(interval.getEnd()));
+
+            return new RecordList(start, end);
         }
     }
 
@@ -149,15 +234,19 @@ public abstract class DataSet implements Comparable<DataSet> {
      * @return all the timestamps recorded by this data set.
      */
     public final Set<Long> getTimes() {
-        return java.util.Collections.unmodifiableSet(data.keySet());
+        return new TimeSet();
     }
 
     public final long getStartTime() {
-        return data.firstKey();
+        if (data.size() == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+
+        return data.getTime(0);
     }
 
     public final long getEndTime() {
-        return data.size() == 0 ? Long.MIN_VALUE : data.lastKey();
+        return data.size() == 0 ? Long.MIN_VALUE : data.getTime(data.size() - 1);
     }
 
     public final void adjustTimes(long adjustmentMillis) {
@@ -165,19 +254,8 @@ public abstract class DataSet implements Comparable<DataSet> {
             return;
         }
 
-        // recreate the data using the new times
-        TreeMap<Long, DataRecord> newData = new TreeMap<Long, DataRecord>();
-
-        for (long time : data.keySet()) {
-            DataRecord record = data.get(time);
-            record.adjustTime(adjustmentMillis);
-
-            newData.put(time + adjustmentMillis, record);
-        }
-
-        // data is final, so recopy it back
-        data.clear();
-        data.putAll(newData);
+        // relative ordering does not change so the times can be updated in place
+        data.adjustTimes(adjustmentMillis);
     }
 
     @Override
@@ -211,7 +289,7 @@ public abstract class DataSet implements Comparable<DataSet> {
         int compare = this.getHostname().compareTo(f.getHostname());
 
         if (compare == 0) {
-            if (this.data.isEmpty() && this.data.isEmpty()) {
+            if ((this.data.size() == 0) && (f.data.size() == 0)) {
                 return 0;
             }
             else if (this.getStartTime() == f.getStartTime()) {
@@ -230,4 +308,63 @@ public abstract class DataSet implements Comparable<DataSet> {
             return compare;
         }
     }
+
+    // read only view of a range of DataRecords in time order
+    private final class RecordList extends java.util.AbstractList<DataRecord> implements java.util.RandomAccess {
+        private final int start;
+        private final int end;
+
+        RecordList(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public DataRecord get(int index) {
+            if ((index < 0) || (index >= (end - start))) {
+                throw new IndexOutOfBoundsException("index " + index + " out of range for size " + (end - start));
+            }
+
+            return data.getRecord(start + index);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    // read only view of the times in this data set
+    private final class TimeSet extends java.util.AbstractSet<Long> {
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof Long) && (data.indexOf((Long) o) >= 0);
+        }
+
+        @Override
+        public java.util.Iterator<Long> iterator() {
+            return new java.util.Iterator<Long>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < data.size();
+                }
+
+                @Override
+                public Long next() {
+                    if (index >= data.size()) {
+                        throw new java.util.NoSuchElementException();
+                    }
+
+                    return data.getTime(index++);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return data.size();
+        }
+    }
 }
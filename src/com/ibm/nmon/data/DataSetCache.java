@@ -0,0 +1,689 @@
+package com.ibm.nmon.data;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.nmon.util.DataHelper;
+import com.ibm.nmon.util.VersionInfo;
+
+/**
+ * <p>
+ * A cache of parsed {@link DataSet DataSets}, stored in a compact binary form in a single directory. Loading a cached
+ * data set reads the times and values with bulk reads directly into the columnar storage, which is much faster than
+ * parsing the original file again.
+ * </p>
+ *
+ * <p>
+ * Each cached file is keyed by the absolute path, size and last modified time of the parsed file along with an
+ * arbitrary <code>options</code> string that must contain any parser settings that change the parsed data. The cache
+ * format version and the application version are also part of the key, so data cached by another version is never
+ * used. If the file has changed or the options are different, the cached data is not used. Only {@link BasicDataSet},
+ * {@link NMONDataSet} and {@link PerfmonDataSet} can be cached.
+ * </p>
+ *
+ * <p>
+ * The cache is limited to 1 GB. When it grows larger, the least recently used files are removed.
+ * </p>
+ *
+ * <p>
+ * Derived data, i.e. the process aggregates, is not cached. It is derived again, when first used, after loading.
+ * </p>
+ */
+public final class DataSetCache {
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(DataSetCache.class);
+
+    private static final int MAGIC = 0x4E4D5643; // NMVC
+    // must be incremented whenever the format or the data created by any parser changes
+    private static final int VERSION = 4;
+
+    private static final long MAX_SIZE = 1024L * 1024 * 1024;
+
+    private static final String SUFFIX = ".cache";
+
+    private static final byte BASIC = 0;
+    private static final byte NMON = 1;
+    private static final byte PERFMON = 2;
+
+    private static final byte TYPE = 0;
+    private static final byte SUB_TYPE = 1;
+    private static final byte PROCESS_TYPE = 2;
+
+    // number of values read or written at once
+    private static final int CHUNK_SIZE = 8192;
+
+    private final File directory;
+
+    public DataSetCache(File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the cached data for the given file or <code>null</code> if the file has not been cached or has changed
+     *         since it was cached
+     */
+    public DataSet load(String sourceFile, String options) throws IOException {
+        File source = new File(sourceFile);
+        File cacheFile = getCacheFile(source, options);
+
+        if (!cacheFile.isFile() || !source.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new java.io.FileInputStream(cacheFile),
+                65536));
+
+        try {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)
+                    || !readString(in).equals(VersionInfo.getVersion())) {
+                return null;
+            }
+
+            if (!readString(in).equals(source.getAbsolutePath()) || (in.readLong() != source.length())
+                    || (in.readLong() != source.lastModified()) || !readString(in).equals(options)) {
+                return null;
+            }
+
+            DataSet data = readDataSet(in);
+
+            // the least recently used files are removed first
+            cacheFile.setLastModified(System.currentTimeMillis());
+
+            return data;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Cache the data parsed from the given file, replacing any existing data.
+     */
+    public void save(String sourceFile, String options, DataSet data) throws IOException {
+        File source = new File(sourceFile);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create cache directory " + directory);
+        }
+
+        // write to a temporary file so a partial write never replaces valid data
+        File temp = File.createTempFile(source.getName(), ".tmp", directory);
+        boolean saved = false;
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new java.io.FileOutputStream(temp), 65536));
+
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, VersionInfo.getVersion());
+
+                writeString(out, source.getAbsolutePath());
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                writeString(out, options);
+
+                writeDataSet(out, data);
+            }
+            finally {
+                out.close();
+            }
+
+            java.nio.file.Files.move(temp.toPath(), getCacheFile(source, options).toPath(),
+                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        }
+        finally {
+            if (!saved) {
+                temp.delete();
+            }
+        }
+
+        trim();
+    }
+
+    /**
+     * Remove all the cached data.
+     * 
+     * @return the number of cached files removed
+     */
+    public int clear() {
+        int removed = 0;
+
+        for (File file : getCacheFiles()) {
+            if (file.delete()) {
+                ++removed;
+            }
+        }
+
+        return removed;
+    }
+
+    // remove the least recently used files until the cache is no larger than MAX_SIZE
+    private void trim() {
+        File[] files = getCacheFiles();
+        long size = 0;
+
+        for (File file : files) {
+            size += file.length();
+        }
+
+        if (size <= MAX_SIZE) {
+            return;
+        }
+
+        final Map<File, Long> lastModified = new java.util.HashMap<File, Long>();
+
+        for (File file : files) {
+            lastModified.put(file, file.lastModified());
+        }
+
+        java.util.Arrays.sort(files, new java.util.Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return lastModified.get(f1).compareTo(lastModified.get(f2));
+            }
+        });
+
+        for (File file : files) {
+            if (size <= MAX_SIZE) {
+                break;
+            }
+
+            long length = file.length();
+
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File[] getCacheFiles() {
+        File[] files = directory.listFiles(new java.io.FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+
+        return files == null ? new File[0] : files;
+    }
+
+    private File getCacheFile(File source, String options) {
+        String key = VERSION + "\n" + VersionInfo.getVersion() + '\n' + source.getAbsolutePath() + '\n' + options;
+
+        return new File(directory, source.getName() + '-' + Integer.toHexString(key.hashCode()) + SUFFIX);
+    }
+
+    private void writeDataSet(DataOutputStream out, DataSet data) throws IOException {
+        if (data.getClass() == NMONDataSet.class) {
+            NMONDataSet nmonData = (NMONDataSet) data;
+
+            out.writeByte(NMON);
+            writeMap(out, nmonData.getMetadata());
+            writeMap(out, nmonData.getSystemInfo());
+        }
+        else if (data.getClass() == PerfmonDataSet.class) {
+            out.writeByte(PERFMON);
+            writeMap(out, ((PerfmonDataSet) data).getMetadata());
+        }
+        else if (data.getClass() == BasicDataSet.class) {
+            out.writeByte(BASIC);
+            writeMap(out, ((BasicDataSet) data).getMetadata());
+        }
+        else {
+            throw new IllegalArgumentException(data.getClass().getSimpleName() + " cannot be cached");
+        }
+
+        ColumnStore store = data.getColumnStore();
+
+        // derived types are not written; they are derived again when the data is read
+        List<DataType> types = new java.util.ArrayList<DataType>(data.getTypeCount());
+
+        for (DataType type : data.getTypes()) {
+            if (!store.isDerived(type)) {
+                types.add(type);
+            }
+        }
+
+        // processes, including any only referenced by a ProcessDataType
+        List<Process> processes = new java.util.ArrayList<Process>();
+        Map<Process, Integer> processIndexes = new java.util.IdentityHashMap<Process, Integer>();
+        int processCount = 0;
+
+        if (data instanceof ProcessDataSet) {
+            ProcessDataSet processData = (ProcessDataSet) data;
+
+            for (Process process : processData.getProcesses()) {
+                if (!store.isDerived(processData.getType(process))) {
+                    processIndexes.put(process, processes.size());
+                    processes.add(process);
+                }
+            }
+
+            processCount = processes.size();
+        }
+
+        for (DataType type : types) {
+            if (type instanceof ProcessDataType) {
+                Process process = ((ProcessDataType) type).getProcess();
+
+                if (!processIndexes.containsKey(process)) {
+                    processIndexes.put(process, processes.size());
+                    processes.add(process);
+                }
+            }
+        }
+
+        out.writeInt(processes.size());
+
+        for (int i = 0; i < processes.size(); i++) {
+            Process process = processes.get(i);
+
+            out.writeBoolean(i < processCount);
+            out.writeInt(process.getId());
+            out.writeLong(process.getStartTime());
+            out.writeLong(process.getEndTime());
+            writeString(out, process.getName());
+            writeString(out, process.getCommandLine());
+            writeString(out, getTypeName(process));
+        }
+
+        out.writeInt(types.size());
+
+        for (DataType type : types) {
+            if (type instanceof ProcessDataType) {
+                out.writeByte(PROCESS_TYPE);
+                out.writeInt(processIndexes.get(((ProcessDataType) type).getProcess()));
+            }
+            else if (type instanceof SubDataType) {
+                SubDataType subType = (SubDataType) type;
+
+                out.writeByte(SUB_TYPE);
+                // getPrimaryId() is wrong if the primary id contains ' ('
+                writeString(out, subType.getId().substring(0,
+                        subType.getId().length() - subType.getSubId().length() - 3));
+                writeString(out, subType.getSubId());
+                writeString(out, subType.getName());
+                out.writeBoolean(subType.toString().equals(subType.getId()));
+            }
+            else {
+                out.writeByte(TYPE);
+                writeString(out, type.getId());
+                writeString(out, type.getName());
+            }
+
+            out.writeInt(type.getFieldCount());
+
+            for (String field : type.getFields()) {
+                writeString(out, field);
+            }
+        }
+
+        // records, in time order
+        int recordCount = store.size();
+        long[] times = new long[recordCount];
+
+        for (int i = 0; i < recordCount; i++) {
+            times[i] = store.getTime(i);
+        }
+
+        out.writeInt(recordCount);
+        writeLongs(out, times, recordCount);
+
+        for (int i = 0; i < recordCount; i++) {
+            writeString(out, store.getRecord(i).getTimestamp());
+        }
+
+        // values for each type, in the same order as the types; record indexes replace rows
+        int[] indexes = new int[recordCount];
+        double[] values = new double[recordCount];
+
+        for (DataType type : types) {
+            ColumnStore.Column column = store.getColumn(type);
+            int size = 0;
+
+            if (column != null) {
+                for (int i = 0; i < recordCount; i++) {
+                    if (column.has(store.getRow(i))) {
+                        indexes[size++] = i;
+                    }
+                }
+            }
+
+            out.writeInt(size);
+
+            if (size == 0) {
+                // nothing else is read for types without data
+                continue;
+            }
+
+            writeInts(out, indexes, size);
+
+            for (int field = 0; field < type.getFieldCount(); field++) {
+                for (int i = 0; i < size; i++) {
+                    values[i] = column.get(field, store.getRow(indexes[i]));
+                }
+
+                writeDoubles(out, values, size);
+            }
+        }
+    }
+
+    private DataSet readDataSet(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        Map<String, String> metadata = readMap(in);
+
+        String sourceFile = metadata.get("source_file");
+        DataSet data = null;
+
+        if (kind == NMON) {
+            NMONDataSet nmonData = new NMONDataSet(sourceFile);
+
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                nmonData.setMetadata(entry.getKey(), entry.getValue());
+            }
+
+            for (Map.Entry<String, String> entry : readMap(in).entrySet()) {
+                nmonData.setSystemInfo(entry.getKey(), entry.getValue());
+            }
+
+            data = nmonData;
+        }
+        else if (kind == PERFMON) {
+            PerfmonDataSet perfmonData = new PerfmonDataSet(sourceFile);
+
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                perfmonData.setMetadata(entry.getKey(), entry.getValue());
+            }
+
+            data = perfmonData;
+        }
+        else if (kind == BASIC) {
+            BasicDataSet basicData = new BasicDataSet(sourceFile);
+
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                basicData.setMetadata(entry.getKey(), entry.getValue());
+            }
+
+            data = basicData;
+        }
+        else {
+            throw new IOException("unknown data set type " + kind);
+        }
+
+        Process[] processes = new Process[in.readInt()];
+
+        for (int i = 0; i < processes.length; i++) {
+            boolean inDataSet = in.readBoolean();
+            int id = in.readInt();
+            long startTime = in.readLong();
+            long endTime = in.readLong();
+            String name = readString(in);
+            String commandLine = readString(in);
+
+            Process process = new Process(id, startTime, name, readString(in));
+            process.setCommandLine(commandLine);
+            process.setEndTime(endTime);
+
+            if (inDataSet) {
+                ((ProcessDataSet) data).addProcess(process);
+            }
+
+            processes[i] = process;
+        }
+
+        DataType[] types = new DataType[in.readInt()];
+
+        for (int i = 0; i < types.length; i++) {
+            byte typeKind = in.readByte();
+
+            if (typeKind == PROCESS_TYPE) {
+                Process process = processes[in.readInt()];
+                types[i] = new ProcessDataType(process, readFields(in));
+            }
+            else if (typeKind == SUB_TYPE) {
+                String id = readString(in);
+                String subId = readString(in);
+                String name = readString(in);
+                boolean displayPrimaryId = in.readBoolean();
+
+                types[i] = new SubDataType(id, subId, name, displayPrimaryId, readFields(in));
+            }
+            else if (typeKind == TYPE) {
+                String id = readString(in);
+                String name = readString(in);
+
+                types[i] = new DataType(id, name, readFields(in));
+            }
+            else {
+                throw new IOException("unknown DataType kind " + typeKind);
+            }
+
+            data.addType(types[i]);
+        }
+
+        int recordCount = in.readInt();
+        long[] times = new long[recordCount];
+        readLongs(in, times, recordCount);
+
+        for (int i = 0; i < recordCount; i++) {
+            data.addRecord(new DataRecord(times[i], readString(in)));
+        }
+
+        for (DataType type : types) {
+            int size = in.readInt();
+
+            if (size == 0) {
+                continue;
+            }
+
+            int[] rows = new int[size];
+            readInts(in, rows, size);
+
+            double[][] values = new double[type.getFieldCount()][size];
+
+            for (double[] fieldValues : values) {
+                readDoubles(in, fieldValues, size);
+            }
+
+            // records were added in time order so each record's row is the same as its index
+            data.getColumnStore().loadColumn(type, rows, values, size);
+        }
+
+        if (data instanceof ProcessDataSet) {
+            // the parsers always aggregate processes
+            DataHelper.aggregateProcessData((ProcessDataSet) data, LOGGER);
+        }
+
+        return data;
+    }
+
+    // Process does not expose the type name given to its constructor but it is the prefix of the type id
+    private static String getTypeName(Process process) {
+        String typeId = process.getTypeId();
+        String suffix = null;
+
+        if (process.getId() == -1) {
+            suffix = "-ALL-" + process.getName();
+        }
+        else {
+            suffix = "-" + process.getId() + '@' + process.getStartTime();
+        }
+
+        return typeId.substring(0, typeId.length() - suffix.length());
+    }
+
+    private static String[] readFields(DataInputStream in) throws IOException {
+        String[] fields = new String[in.readInt()];
+
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readString(in);
+        }
+
+        return fields;
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> map = new java.util.LinkedHashMap<String, String>(size * 2);
+
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            map.put(key, readString(in));
+        }
+
+        return map;
+    }
+
+    // DataOutputStream.writeUTF() is limited to 64K, which is too small for some NMON system info
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE) * 4);
+
+        for (int i = 0; i < length; i += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, length - i);
+
+            buffer.clear();
+            buffer.asIntBuffer().put(values, i, count);
+            out.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    private static void readInts(DataInputStream in, int[] values, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE) * 4);
+
+        for (int i = 0; i < length; i += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, length - i);
+
+            in.readFully(buffer.array(), 0, count * 4);
+            buffer.clear();
+            buffer.asIntBuffer().get(values, i, count);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE) * 8);
+
+        for (int i = 0; i < length; i += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, length - i);
+
+            buffer.clear();
+            buffer.asLongBuffer().put(values, i, count);
+            out.write(buffer.array(), 0, count * 8);
+        }
+    }
+
+    private static void readLongs(DataInputStream in, long[] values, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE) * 8);
+
+        for (int i = 0; i < length; i += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, length - i);
+
+            in.readFully(buffer.array(), 0, count * 8);
+            buffer.clear();
+            buffer.asLongBuffer().get(values, i, count);
+        }
+    }
+
+    // values that can be stored as floats without losing precision, like most counters, are written in half the space
+    private static void writeDoubles(DataOutputStream out, double[] values, int length) throws IOException {
+        boolean asFloats = true;
+
+        for (int i = 0; i < length; i++) {
+            double value = values[i];
+
+            if (((float) value != value) && !Double.isNaN(value)) {
+                asFloats = false;
+                break;
+            }
+        }
+
+        out.writeBoolean(asFloats);
+
+        int width = asFloats ? 4 : 8;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE) * width);
+
+        for (int i = 0; i < length; i += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, length - i);
+
+            buffer.clear();
+
+            if (asFloats) {
+                for (int n = 0; n < count; n++) {
+                    buffer.putFloat((float) values[i + n]);
+                }
+            }
+            else {
+                buffer.asDoubleBuffer().put(values, i, count);
+            }
+
+            out.write(buffer.array(), 0, count * width);
+        }
+    }
+
+    private static void readDoubles(DataInputStream in, double[] values, int length) throws IOException {
+        boolean asFloats = in.readBoolean();
+
+        int width = asFloats ? 4 : 8;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE) * width);
+
+        for (int i = 0; i < length; i += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, length - i);
+
+            in.readFully(buffer.array(), 0, count * width);
+            buffer.clear();
+
+            if (asFloats) {
+                for (int n = 0; n < count; n++) {
+                    values[i + n] = buffer.getFloat();
+                }
+            }
+            else {
+                buffer.asDoubleBuffer().get(values, i, count);
+            }
+        }
+    }
+}
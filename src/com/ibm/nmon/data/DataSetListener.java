@@ -7,5 +7,12 @@ public interface DataSetListener {
 
     public void dataChanged(DataSet data);
 
+    /**
+     * Called when new records have been added to the end of an existing DataSet. Unlike
+     * {@link #dataChanged(DataSet)}, existing records are unchanged so listeners only need to handle the new data.
+     * New DataTypes may also have been added.
+     */
+    public void dataAppended(DataSet data);
+
     public void dataCleared();
 }
@@ -1,6 +1,5 @@
 package com.ibm.nmon.data;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -18,6 +17,11 @@ import java.util.Map;
  * but this class guarantees that keys will be unique as long as DataType ids are unique within an
  * parsed file.
  * </p>
+ * 
+ * <p>
+ * Field names are shared with all other DataTypes with the same fields through the {@link SchemaCatalog}.
+ * DataTypes are immutable and thread safe.
+ * </p>
  */
 public class DataType {
     protected final String id;
@@ -28,8 +32,8 @@ public class DataType {
     // map field names to ordinal positions; 0 based
     private final Map<String, Integer> fields;
 
-    // map field names to unique keys so type/field combos can be used efficiently in hashmaps
-    private final Map<String, String> fieldKeys;
+    // keys by field index, created lazily; races are benign since the keys are always equal
+    private final String[] fieldKeys;
 
     public DataType(String id, String name, String... fields) {
         if ((id == null) || id.equals("")) {
@@ -50,15 +54,12 @@ public class DataType {
 
         this.id = id;
         this.name = name;
-        this.orderedFields = java.util.Collections.unmodifiableList(Arrays.asList(fields));
 
-        this.fields = new java.util.HashMap<String, Integer>(fields.length);
+        SchemaCatalog.Fields shared = SchemaCatalog.getInstance().getFields(fields);
+        this.orderedFields = shared.names;
+        this.fields = shared.indexes;
 
-        for (int i = 0; i < orderedFields.size(); i++) {
-            this.fields.put(orderedFields.get(i), i);
-        }
-
-        this.fieldKeys = new java.util.HashMap<String, String>(fields.length);
+        this.fieldKeys = new String[fields.length];
     }
 
     public final String getId() {
@@ -97,12 +98,15 @@ public class DataType {
     }
 
     public final String getKey(String field) {
-        String key = fieldKeys.get(field);
+        return getKey(getFieldIndex(field)); // throws error on invalid field
+    }
+
+    public final String getKey(int fieldIndex) {
+        String key = fieldKeys[fieldIndex];
 
         if (key == null) {
-            getFieldIndex(field); // throws error on invalid field
-            key = getId() + ':' + field;
-            fieldKeys.put(field, key);
+            key = id + ':' + orderedFields.get(fieldIndex);
+            fieldKeys[fieldIndex] = key;
         }
 
         return key;
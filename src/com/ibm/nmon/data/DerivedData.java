@@ -0,0 +1,14 @@
+package com.ibm.nmon.data;
+
+/**
+ * Calculates the data for a DataType from other data in the same DataSet. The data is not calculated until it is first
+ * accessed, then it is stored like any other data.
+ * 
+ * @see DataSet#addDerivedType(DataType, DerivedData)
+ */
+public interface DerivedData {
+    /**
+     * @return the values for the given record or <code>null</code> if there is no data at the record's time
+     */
+    public double[] getValues(DataRecord record);
+}
@@ -0,0 +1,169 @@
+package com.ibm.nmon.data;
+
+import com.ibm.nmon.interval.Interval;
+
+/**
+ * <p>
+ * A resolved reference to a single field of a DataType within a specific {@link DataSet}. Handles are obtained from
+ * {@link DataSet#getField(DataType, String)}.
+ * </p>
+ *
+ * <p>
+ * {@link DataRecord#getData(DataType, String)} has to look up both the DataType's data and the field's index for
+ * every value. A handle does that once, so code that reads the same field from many records should resolve a handle
+ * outside of the loop and call {@link #getValue(DataRecord)} inside it.
+ * </p>
+ *
+ * <p>
+ * Handles remain valid if the DataSet changes; they are transparently re-resolved when data for the type is added or
+ * removed. Records from other DataSets can also be read, but without any performance benefit.
+ * </p>
+ */
+public final class FieldHandle {
+    private final ColumnStore store;
+
+    private final DataType type;
+    private final String field;
+
+    // resolved lazily and revalidated when the store's columns change
+    private ColumnStore.Column column;
+    private int fieldIndex;
+    private int version;
+
+    FieldHandle(ColumnStore store, DataType type, String field) {
+        this.store = store;
+        this.type = type;
+        this.field = field;
+
+        this.column = null;
+        this.fieldIndex = -1;
+        this.version = store.getVersion() - 1;
+    }
+
+    public DataType getType() {
+        return type;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return <code>true</code> if the DataType defines this handle's field; <code>false</code> otherwise, in which
+     *         case {@link #getValue(DataRecord)} will always return <code>NaN</code>
+     */
+    public boolean isDefined() {
+        resolve();
+
+        return fieldIndex != -1;
+    }
+
+    /**
+     * @return <code>true</code> if the record has <em>any</em> data for this handle's DataType
+     * @see DataRecord#hasData(DataType)
+     */
+    public boolean hasData(DataRecord record) {
+        if (record.isAttachedTo(store)) {
+            resolve();
+
+            return (column != null) && column.has(record.getRow());
+        }
+        else {
+            return record.hasData(type);
+        }
+    }
+
+    /**
+     * @return the value of this handle's field in the given record or <code>NaN</code> if the record has no data for
+     *         the field
+     */
+    public double getValue(DataRecord record) {
+        if (record.isAttachedTo(store)) {
+            resolve();
+
+            if ((column == null) || (fieldIndex == -1)) {
+                return Double.NaN;
+            }
+            else {
+                return column.get(fieldIndex, record.getRow());
+            }
+        }
+        else if (type.hasField(field) && record.hasData(type)) {
+            return record.getData(type, type.getFieldIndex(field));
+        }
+        else {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Summarize this handle's field over the records in the given interval.
+     * 
+     * @see #summarize(long, long)
+     */
+    public FieldSummary summarize(Interval interval) {
+        if (Interval.DEFAULT.equals(interval)) {
+            return summarize(Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        else {
+            return summarize(interval.getStart(), interval.getEnd());
+        }
+    }
+
+    /**
+     * Summarize this handle's field over the records with times between <code>start</code> and <code>end</code>,
+     * inclusive. Summaries are calculated from a {@link Rollup} of the field, so the cost does not depend on the
+     * number of records in the range.
+     */
+    public FieldSummary summarize(long start, long end) {
+        FieldSummary summary = new FieldSummary();
+
+        resolve();
+
+        if ((column != null) && (fieldIndex != -1)) {
+            int from = store.lowerBound(start);
+            int to = store.upperBound(end);
+
+            if (to > from) {
+                store.getRollup(column, fieldIndex).summarize(from, to, summary);
+            }
+        }
+
+        return summary;
+    }
+
+    /**
+     * @return the time of the first record at or after the given time that has data for this handle's DataType or
+     *         <code>Long.MAX_VALUE</code> if there is none
+     */
+    public long getNextTimeWithData(long time) {
+        resolve();
+
+        if ((column == null) || (fieldIndex == -1)) {
+            return Long.MAX_VALUE;
+        }
+
+        int idx = store.getRollup(column, fieldIndex).nextRecordWithData(store.lowerBound(time));
+
+        return idx == -1 ? Long.MAX_VALUE : store.getTime(idx);
+    }
+
+    private void resolve() {
+        int currentVersion = store.getVersion();
+
+        if (version != currentVersion) {
+            column = store.getColumn(type);
+
+            // use the stored type's field order, which may differ from this handle's type after a merge
+            DataType actual = column == null ? type : column.getType();
+            fieldIndex = actual.hasField(field) ? actual.getFieldIndex(field) : -1;
+
+            version = currentVersion;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type.getKey(field);
+    }
+}
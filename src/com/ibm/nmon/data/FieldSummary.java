@@ -0,0 +1,140 @@
+package com.ibm.nmon.data;
+
+/**
+ * <p>
+ * Summary statistics for a single field over a range of records. Summaries are returned by
+ * {@link FieldHandle#summarize(long, long)}.
+ * </p>
+ *
+ * <p>
+ * Only statistics that can be combined from partial results are supported. Percentiles require all the values and
+ * must be calculated from the records themselves.
+ * </p>
+ */
+public final class FieldSummary {
+    // number of non-NaN values
+    int count;
+    // number of records that have any data for the field's DataType
+    int recordCount;
+
+    double sum;
+    double sumSqs;
+    // sum of squared differences from the mean
+    double m2;
+
+    double minimum = Double.POSITIVE_INFINITY;
+    double maximum = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Add a single value from a record that has data for the DataType. <code>NaN</code> values only increment the
+     * record count.
+     */
+    void add(double value) {
+        ++recordCount;
+
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        double delta = count == 0 ? 0 : value - (sum / count);
+
+        ++count;
+        sum += value;
+        sumSqs += value * value;
+        m2 += delta * (value - (sum / count));
+
+        if (value < minimum) {
+            minimum = value;
+        }
+
+        if (value > maximum) {
+            maximum = value;
+        }
+    }
+
+    /**
+     * Add partial results; used to combine rollup blocks.
+     */
+    void add(int count, int recordCount, double sum, double sumSqs, double m2, double minimum, double maximum) {
+        this.recordCount += recordCount;
+
+        if (count == 0) {
+            return;
+        }
+
+        if (this.count == 0) {
+            this.m2 = m2;
+        }
+        else {
+            // Chan et al's parallel variance
+            double delta = (sum / count) - (this.sum / this.count);
+            this.m2 += m2 + delta * delta * ((double) this.count * count / (this.count + count));
+        }
+
+        this.count += count;
+        this.sum += sum;
+        this.sumSqs += sumSqs;
+
+        if (minimum < this.minimum) {
+            this.minimum = minimum;
+        }
+
+        if (maximum > this.maximum) {
+            this.maximum = maximum;
+        }
+    }
+
+    /**
+     * Include the given number of zero values. Used for processes, where NMON does not output data when the process
+     * is idle.
+     */
+    public void addZeros(int zeros) {
+        if (zeros > 0) {
+            add(zeros, 0, 0, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * @return the number of values, excluding missing values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of records that have data for the DataType, even if the field's value is missing
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return the average weighted by each value, i.e. the sum of squares divided by the sum
+     */
+    public double getWeightedAverage() {
+        return count == 0 ? Double.NaN : sumSqs / sum;
+    }
+
+    /**
+     * @return the population standard deviation
+     */
+    public double getStandardDeviation() {
+        return count == 0 ? Double.NaN : Math.sqrt(m2 / count);
+    }
+
+    public double getMinimum() {
+        return count == 0 ? Double.NaN : minimum;
+    }
+
+    public double getMaximum() {
+        return count == 0 ? Double.NaN : maximum;
+    }
+}
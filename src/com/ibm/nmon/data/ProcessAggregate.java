@@ -0,0 +1,60 @@
+package com.ibm.nmon.data;
+
+import java.util.List;
+
+/**
+ * Sums the data for a set of processes, e.g. all the processes with the same name, at each time. The last field is the
+ * number of processes with data at that time. Used for the aggregate processes, i.e. the ones with an id of -1.
+ * 
+ * @see com.ibm.nmon.util.DataHelper#aggregateProcessData(ProcessDataSet, org.slf4j.Logger)
+ */
+public final class ProcessAggregate implements DerivedData {
+    private final List<Process> processes;
+    private final int fieldCount;
+
+    private final FieldHandle[][] handles;
+
+    /**
+     * @param fieldCount the number of fields in the aggregate's type, including the process count
+     */
+    public ProcessAggregate(ProcessDataSet data, List<Process> processes, int fieldCount) {
+        this.processes = java.util.Collections.unmodifiableList(new java.util.ArrayList<Process>(processes));
+        this.fieldCount = fieldCount;
+
+        // resolve the fields for every process once rather than for every record
+        handles = new FieldHandle[processes.size()][];
+
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = data.getFields(data.getType(processes.get(i)));
+        }
+    }
+
+    List<Process> getProcesses() {
+        return processes;
+    }
+
+    @Override
+    public double[] getValues(DataRecord record) {
+        // sum up all the data for each process
+        double[] totals = null;
+
+        for (FieldHandle[] processHandles : handles) {
+            if (processHandles[0].hasData(record)) {
+                if (totals == null) {
+                    totals = new double[fieldCount];
+                }
+
+                int n = 0;
+
+                for (FieldHandle handle : processHandles) {
+                    totals[n++] += handle.getValue(record);
+                }
+
+                // process count
+                ++totals[n];
+            }
+        }
+
+        return totals;
+    }
+}
@@ -36,15 +36,8 @@ public abstract class ProcessDataSet extends DataSet {
         ProcessDataType newType = new ProcessDataType(newProcess, type.getFields().toArray(
                 new String[type.getFieldCount()]));
 
-        for (DataRecord record : getRecords()) {
-            if (record.hasData(type)) {
-                record.addData(newType, record.getData(type));
-                record.removeData(type);
-            }
-        }
-
-        removeType(type);
-        addType(newType);
+        // reassociate the existing data with the new type without copying it
+        replaceType(type, newType);
 
         processes.remove(process);
         processes.add(newProcess);
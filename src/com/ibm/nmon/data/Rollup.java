@@ -0,0 +1,221 @@
+package com.ibm.nmon.data;
+
+/**
+ * <p>
+ * A multi-level summary of a single field in a {@link ColumnStore}. The records, in time order, are divided into
+ * blocks of 16; each level summarizes 16 blocks of the level below. Summarizing any range of records then only needs
+ * the raw values at the edges of the range plus a small number of blocks from each level, rather than every record.
+ * </p>
+ *
+ * <p>
+ * Blocks are based on record index rather than time so that irregular sampling intervals and gaps in the data do not
+ * create empty or oversized blocks. A rollup is only valid until the store is modified.
+ * </p>
+ */
+final class Rollup {
+    private static final int BITS = 4;
+    private static final int FANOUT = 1 << BITS;
+
+    private final ColumnStore store;
+    private final ColumnStore.Column column;
+    private final int fieldIndex;
+
+    private final int size;
+    private final Level[] levels;
+
+    Rollup(ColumnStore store, ColumnStore.Column column, int fieldIndex) {
+        this.store = store;
+        this.column = column;
+        this.fieldIndex = fieldIndex;
+
+        this.size = store.size();
+
+        java.util.List<Level> levels = new java.util.ArrayList<Level>();
+
+        Level level = buildFirstLevel();
+        levels.add(level);
+
+        while (level.blocks > FANOUT) {
+            level = buildLevel(level);
+            levels.add(level);
+        }
+
+        this.levels = levels.toArray(new Level[levels.size()]);
+    }
+
+    /**
+     * Add the values for the records in the range <code>[from, to)</code> to the given summary.
+     */
+    void summarize(int from, int to, FieldSummary summary) {
+        int i = from;
+        int level = -1;
+        int unit = 1;
+
+        // consume increasingly larger blocks until the next one would go past the end of the range
+        while (level + 1 < levels.length) {
+            int nextUnit = unit << BITS;
+
+            while (((i & (nextUnit - 1)) != 0) && (i + unit <= to)) {
+                add(level, i, unit, summary);
+                i += unit;
+            }
+
+            if (((i & (nextUnit - 1)) != 0) || (i + nextUnit > to)) {
+                break;
+            }
+
+            ++level;
+            unit = nextUnit;
+        }
+
+        // then increasingly smaller blocks until the range is covered
+        while (level >= -1) {
+            while (i + unit <= to) {
+                add(level, i, unit, summary);
+                i += unit;
+            }
+
+            --level;
+            unit >>= BITS;
+        }
+    }
+
+    /**
+     * @return the index of the first record at or after <code>from</code> that has data for the field's DataType or
+     *         <code>-1</code> if there is none
+     */
+    int nextRecordWithData(int from) {
+        int i = from;
+        int level = -1;
+        int unit = 1;
+
+        while (i < size) {
+            if (level == -1) {
+                if (hasData(i)) {
+                    return i;
+                }
+            }
+            else if (levels[level].recordCount[i >> (BITS * (level + 1))] > 0) {
+                // the data is in this block; look at its sub-blocks
+                --level;
+                unit >>= BITS;
+                continue;
+            }
+
+            i += unit;
+
+            // skip empty blocks a level at a time
+            if ((level + 1 < levels.length) && ((i & ((unit << BITS) - 1)) == 0)) {
+                ++level;
+                unit <<= BITS;
+            }
+        }
+
+        return -1;
+    }
+
+    private void add(int level, int index, int unit, FieldSummary summary) {
+        if (level == -1) {
+            int row = store.getRow(index);
+
+            if (column.has(row)) {
+                summary.add(column.get(fieldIndex, row));
+            }
+        }
+        else {
+            Level l = levels[level];
+            int block = index / unit;
+
+            summary.add(l.count[block], l.recordCount[block], l.sum[block], l.sumSqs[block], l.m2[block],
+                    l.minimum[block], l.maximum[block]);
+        }
+    }
+
+    private boolean hasData(int index) {
+        return column.has(store.getRow(index));
+    }
+
+    private Level buildFirstLevel() {
+        Level level = new Level((size + FANOUT - 1) >> BITS);
+        FieldSummary summary = new FieldSummary();
+
+        for (int block = 0; block < level.blocks; block++) {
+            int end = Math.min(size, (block + 1) << BITS);
+
+            for (int i = block << BITS; i < end; i++) {
+                add(-1, i, 1, summary);
+            }
+
+            level.set(block, summary);
+        }
+
+        return level;
+    }
+
+    private Level buildLevel(Level previous) {
+        Level level = new Level((previous.blocks + FANOUT - 1) >> BITS);
+        FieldSummary summary = new FieldSummary();
+
+        for (int block = 0; block < level.blocks; block++) {
+            int end = Math.min(previous.blocks, (block + 1) << BITS);
+
+            for (int i = block << BITS; i < end; i++) {
+                summary.add(previous.count[i], previous.recordCount[i], previous.sum[i], previous.sumSqs[i],
+                        previous.m2[i], previous.minimum[i], previous.maximum[i]);
+            }
+
+            level.set(block, summary);
+        }
+
+        return level;
+    }
+
+    private static final class Level {
+        final int blocks;
+
+        final int[] count;
+        final int[] recordCount;
+
+        final double[] sum;
+        final double[] sumSqs;
+        final double[] m2;
+
+        final double[] minimum;
+        final double[] maximum;
+
+        Level(int blocks) {
+            this.blocks = blocks;
+
+            count = new int[blocks];
+            recordCount = new int[blocks];
+
+            sum = new double[blocks];
+            sumSqs = new double[blocks];
+            m2 = new double[blocks];
+
+            minimum = new double[blocks];
+            maximum = new double[blocks];
+        }
+
+        // copy the summary into the block and reset it for the next one
+        void set(int block, FieldSummary summary) {
+            count[block] = summary.count;
+            recordCount[block] = summary.recordCount;
+
+            sum[block] = summary.sum;
+            sumSqs[block] = summary.sumSqs;
+            m2[block] = summary.m2;
+
+            minimum[block] = summary.minimum;
+            maximum[block] = summary.maximum;
+
+            summary.count = 0;
+            summary.recordCount = 0;
+            summary.sum = 0;
+            summary.sumSqs = 0;
+            summary.m2 = 0;
+            summary.minimum = Double.POSITIVE_INFINITY;
+            summary.maximum = Double.NEGATIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.ibm.nmon.data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A global catalog of {@link DataType} definitions that is shared by all DataSets.
+ * </p>
+ *
+ * <p>
+ * Parsing many files from many hosts creates the same DataTypes over and over, each with its own copy of the field
+ * names and their indexes. The catalog hash-conses these definitions: all types with the same fields share a single,
+ * immutable field list and index map and {@link #intern(DataType)} returns a single canonical instance for identical
+ * types. DataSets intern types as they are added.
+ * </p>
+ *
+ * <p>
+ * Since interned types are shared, so are the keys returned by {@link DataType#getKey(String)}.
+ * {@link ProcessDataType ProcessDataTypes} are specific to a single process on a single system, so only their field
+ * lists are shared.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public final class SchemaCatalog {
+    private static final SchemaCatalog INSTANCE = new SchemaCatalog();
+
+    public static SchemaCatalog getInstance() {
+        return INSTANCE;
+    }
+
+    // canonical field lists and indexes, keyed by field names
+    private final Map<List<String>, Fields> fields = new java.util.HashMap<List<String>, Fields>();
+
+    // canonical DataTypes, keyed by the values that define the type
+    private final Map<List<Object>, DataType> types = new java.util.HashMap<List<Object>, DataType>();
+
+    private SchemaCatalog() {}
+
+    /**
+     * Get the canonical instance of the given type. Types are identical if they are the same class and have the same
+     * id, name and fields. {@link ProcessDataType ProcessDataTypes} are specific to a single system and are never
+     * interned.
+     *
+     * @return the canonical type; this will be the given type if there is no identical type in the catalog
+     */
+    public synchronized DataType intern(DataType type) {
+        List<Object> definition = null;
+
+        if (type.getClass() == DataType.class) {
+            definition = java.util.Arrays.<Object> asList(DataType.class, type.getId(), type.getName(),
+                    type.getFields());
+        }
+        else if (type.getClass() == SubDataType.class) {
+            // toString() depends on whether the primary id is displayed
+            definition = java.util.Arrays.<Object> asList(SubDataType.class, type.getId(),
+                    ((SubDataType) type).getSubId(), type.getName(), type.toString(), type.getFields());
+        }
+        else {
+            return type;
+        }
+
+        DataType canonical = types.get(definition);
+
+        if (canonical == null) {
+            types.put(definition, type);
+            canonical = type;
+        }
+
+        return canonical;
+    }
+
+    synchronized Fields getFields(String[] names) {
+        List<String> key = java.util.Arrays.asList(names);
+        Fields toReturn = fields.get(key);
+
+        if (toReturn == null) {
+            // copy so changes to the caller's array are not seen
+            toReturn = new Fields(names.clone());
+            fields.put(toReturn.names, toReturn);
+        }
+
+        return toReturn;
+    }
+
+    // an immutable list of field names and their indexes; shared by all DataTypes with the same fields
+    static final class Fields {
+        final List<String> names;
+        final Map<String, Integer> indexes;
+
+        private Fields(String[] names) {
+            this.names = java.util.Collections.unmodifiableList(java.util.Arrays.asList(names));
+
+            Map<String, Integer> temp = new java.util.HashMap<String, Integer>(names.length * 2);
+
+            for (int i = 0; i < names.length; i++) {
+                temp.put(names[i], i);
+            }
+
+            this.indexes = java.util.Collections.unmodifiableMap(temp);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ibm.nmon.data;
 
 import org.slf4j.Logger;
 
+import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.TreeMap;
@@ -19,6 +20,8 @@ public final class SystemDataSet extends ProcessDataSet {
     private final TreeMap<Long, Map<String, String>> metadata = new TreeMap<Long, Map<String, String>>();
 
     private final TreeMap<Interval, String> sourceFiles = new java.util.TreeMap<Interval, String>();
+    // time of the last record in each source file; the source file Intervals may be longer
+    private final Map<String, Long> sourceFileEndTimes = new java.util.HashMap<String, Long>();
 
     private final String hostname;
 
@@ -78,9 +81,10 @@ public final class SystemDataSet extends ProcessDataSet {
     public void addData(SystemDataSet newData) {
         long startT = System.nanoTime();
 
-        merge(newData);
+        merge(java.util.Collections.singletonList(newData), Interval.DEFAULT);
 
         sourceFiles.putAll(newData.sourceFiles);
+        sourceFileEndTimes.putAll(newData.sourceFileEndTimes);
         metadata.putAll(newData.metadata);
         systemInfo.putAll(newData.systemInfo);
 
@@ -95,203 +99,414 @@ public final class SystemDataSet extends ProcessDataSet {
     }
 
     public void addData(String sourceFile, DataSet newData) {
+        addData(java.util.Collections.singletonMap(sourceFile, newData));
+    }
+
+    /**
+     * Add the data from multiple source files at once. The result is the same as calling
+     * {@link #addData(String, DataSet)} for each file, in iteration order, but the files' records are merged in a
+     * single pass and DataTypes whose fields differ between files are only rebuilt once.
+     * 
+     * @param newData the data to add, keyed by source file
+     */
+    public void addData(Map<String, ? extends DataSet> newData) {
         long startT = System.nanoTime();
 
-        if ((sourceFile == null) || "".equals(sourceFile)) {
-            throw new IllegalArgumentException("source file cannot be null");
+        for (String sourceFile : newData.keySet()) {
+            if ((sourceFile == null) || "".equals(sourceFile)) {
+                throw new IllegalArgumentException("source file cannot be null");
+            }
         }
 
-        merge(newData);
+        boolean empty = getRecordCount() == 0;
+
+        merge(new java.util.ArrayList<DataSet>(newData.values()), Interval.DEFAULT);
+
+        for (Map.Entry<String, ? extends DataSet> entry : newData.entrySet()) {
+            String sourceFile = entry.getKey();
+            DataSet data = entry.getValue();
+
+            long start = data.getStartTime();
+            long end = data.getEndTime();
+
+            // handle a single DataRecord in the DataSet
+            if (start == end) {
+                end = start + 1000;
+            }
+
+            sourceFiles.put(new Interval(start, end), sourceFile);
+            sourceFileEndTimes.put(sourceFile, data.getEndTime());
+
+            if (data.getClass().equals(BasicDataSet.class)) {
+                metadata.put(start, ((BasicDataSet) data).getMetadata());
+            }
+            else if (data.getClass().equals(NMONDataSet.class)) {
+                NMONDataSet nmonData = (NMONDataSet) data;
+
+                systemInfo.put(start, nmonData.getSystemInfo());
+                metadata.put(start, nmonData.getMetadata());
+            }
+            else if (data.getClass().equals(PerfmonDataSet.class)) {
+                PerfmonDataSet nmonData = (PerfmonDataSet) data;
+
+                metadata.put(start, nmonData.getMetadata());
+            }
+
+            if (data instanceof ProcessDataSet) {
+                String newPrefix = ((ProcessDataSet) data).getTypeIdPrefix();
+
+                // the first file added to an empty data set replaces the default
+                if (empty) {
+                    typeIdPrefix = newPrefix;
+                    empty = false;
+                }
+                else if (!typeIdPrefix.contains(newPrefix)) {
+                    typeIdPrefix += " + " + newPrefix;
+                }
+                // else already added
+            }
+            else {
+                empty = false;
+            }
+        }
 
-        long start = newData.getStartTime();
-        long end = newData.getEndTime();
-        
-        // handle a single DataRecord in the DataSet
-        if (start == end) {
-            end = start + 1000;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("data for {} consolidated into data for {} in {}ms ", new Object[] {
+                    newData.size() == 1 ? newData.keySet().iterator().next() : newData.size() + " files",
+                    getHostname(), (System.nanoTime() - startT) / 1000000.0d });
         }
+    }
+
+    /**
+     * Add data from a source file that has already been added to this data set, for example when new data has been
+     * written to the file since it was first parsed. Records at or before the current end time of the file are ignored
+     * since they have already been added. The file's time range is extended to include the new data and the end times
+     * of existing processes are updated.
+     *
+     * @throws IllegalArgumentException if the file has not been added with {@link #addData(String, DataSet)}
+     */
+    public void appendData(String sourceFile, DataSet newData) {
+        long startT = System.nanoTime();
 
-        sourceFiles.put(new Interval(start, end), sourceFile);
+        Long endTime = sourceFileEndTimes.get(sourceFile);
 
-        if (newData.getClass().equals(BasicDataSet.class)) {
-            metadata.put(start, ((BasicDataSet) newData).getMetadata());
+        if (endTime == null) {
+            throw new IllegalArgumentException("source file " + sourceFile + " has not been added to " + hostname);
         }
-        else if (newData.getClass().equals(NMONDataSet.class)) {
-            NMONDataSet nmonData = (NMONDataSet) newData;
 
-            systemInfo.put(start, nmonData.getSystemInfo());
-            metadata.put(start, nmonData.getMetadata());
+        Interval newRecords = new Interval(endTime + 1, Long.MAX_VALUE);
+
+        if (newData.getRecordCount(newRecords) == 0) {
+            return;
         }
-        else if (newData.getClass().equals(PerfmonDataSet.class)) {
-            PerfmonDataSet nmonData = (PerfmonDataSet) newData;
 
-            metadata.put(start, nmonData.getMetadata());
+        merge(java.util.Collections.singletonList(newData), newRecords);
+
+        sourceFileEndTimes.put(sourceFile, newData.getEndTime());
+
+        for (Map.Entry<Interval, String> entry : sourceFiles.entrySet()) {
+            Interval existing = entry.getKey();
+
+            if (entry.getValue().equals(sourceFile)) {
+                if (newData.getEndTime() > existing.getEnd()) {
+                    sourceFiles.remove(existing);
+                    sourceFiles.put(new Interval(existing.getStart(), newData.getEndTime()), sourceFile);
+                }
+
+                break;
+            }
         }
 
         if (newData instanceof ProcessDataSet) {
-            String newPrefix = ((ProcessDataSet) newData).getTypeIdPrefix();
+            Map<String, Process> processes = new java.util.HashMap<String, Process>();
 
-            if (getRecordCount() == newData.getRecordCount()) {
-                typeIdPrefix = newPrefix;
+            for (Process process : getProcesses()) {
+                processes.put(getProcessKey(process), process);
             }
-            else if (!typeIdPrefix.contains(newPrefix)) {
-                typeIdPrefix += " + " + newPrefix;
+
+            for (Process newProcess : ((ProcessDataSet) newData).getProcesses()) {
+                Process existingProcess = processes.get(getProcessKey(newProcess));
+
+                if ((existingProcess != null) && (existingProcess.getEndTime() < newProcess.getEndTime())) {
+                    existingProcess.setEndTime(newProcess.getEndTime());
+                }
             }
-            // else already added
         }
 
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("data for {} consolidated into data for {} in {}ms ",
+            LOGGER.debug("data for {} appended to data for {} in {}ms ",
                     new Object[] { sourceFile, getHostname(), (System.nanoTime() - startT) / 1000000.0d });
         }
     }
 
-    private void merge(DataSet newData) {
-        if (newData == null) {
-            throw new IllegalArgumentException("DataSet cannot be null");
+    // merge the new records in the given interval from all the data sets, in order
+    private void merge(List<DataSet> newData, Interval newRecords) {
+        List<DataSet> toMerge = new java.util.ArrayList<DataSet>(newData.size());
+
+        for (DataSet data : newData) {
+            if (data == null) {
+                throw new IllegalArgumentException("DataSet cannot be null");
+            }
+
+            if (data.getRecordCount(newRecords) != 0) {
+                toMerge.add(data);
+            }
         }
 
-        if (newData.getRecordCount() == 0) {
+        if (toMerge.isEmpty()) {
             return;
         }
 
-        Set<Long> combinedTimes = null;
+        DataRecord[][] targets = mergeRecords(toMerge, newRecords);
+
+        // assume a process with the same name and pid is the same for merging purposes
+        Map<String, Process> processes = new java.util.HashMap<String, Process>();
 
-        // minor optimization - if this data set is empty, only addNewType will be called below and
-        // combinedTimes will not be needed but initialize it here to avoid doing that once per type
-        // when it is needed
-        if (getRecordCount() != 0) {
-            combinedTimes = new java.util.HashSet<Long>(getTimes());
-            combinedTimes.addAll(newData.getTimes());
+        for (Process process : getProcesses()) {
+            processes.put(getProcessKey(process), process);
         }
 
-        for (DataType newType : newData.getTypes()) {
-            if (newType instanceof ProcessDataType) {
-                // handle processes differently since the the start time is calculated for each file
-                // processed
-                // assume a process with the same name and pid is the same for merging purposes
-                ProcessDataType newProcessType = (ProcessDataType) newType;
-                Process newProcess = newProcessType.getProcess();
-                Process existingProcess = null;
+        // aggregates in this data set that have not been calculated yet, by the processes they sum
+        Map<Process, List<ProcessDataType>> aggregates = getPendingAggregates();
+
+        // processes added by this merge, which only have data from the data set that added them
+        Set<Process> added = new java.util.HashSet<Process>();
+
+        // the index of each data set that has a given type, so fields only need to be merged once
+        Map<String, List<Integer>> typeSources = new java.util.LinkedHashMap<String, List<Integer>>();
 
-                for (Process toSearch : getProcesses()) {
-                    if (newProcess.getName().equals(toSearch.getName()) && (newProcess.getId() == toSearch.getId())) {
-                        existingProcess = toSearch;
-                        break;
+        for (int i = 0; i < toMerge.size(); i++) {
+            DataSet data = toMerge.get(i);
+
+            for (DataType newType : data.getTypes()) {
+                if (newType instanceof ProcessDataType) {
+                    // handle processes differently since the the start time is calculated for each file processed
+                    ProcessDataType newProcessType = (ProcessDataType) newType;
+                    Process newProcess = newProcessType.getProcess();
+                    String key = getProcessKey(newProcess);
+                    Process existingProcess = processes.get(key);
+
+                    if (existingProcess != null) {
+                        // aggregates keep the data they had before this merge
+                        calculateAggregates(aggregates, existingProcess);
+
+                        // changeStartTime() does not change processes that are already in this data set so the
+                        // existing process, and its start time, are kept
+                        addDataForType(data, newProcessType, targets[i], getType(existingProcess));
                     }
-                }
+                    else {
+                        addProcess(newProcess);
+                        processes.put(key, newProcess);
+
+                        DerivedData derived = data.getColumnStore().getDerivedData(newProcessType);
 
-                if (existingProcess != null) {
-                    addProcessData(newData, newProcessType, existingProcess);
+                        if ((derived instanceof ProcessAggregate)
+                                && added.containsAll(((ProcessAggregate) derived).getProcesses())) {
+                            // the aggregate would be the same calculated from the processes just added, so leave it
+                            // to be calculated when it is used
+                            List<Process> aggregated = ((ProcessAggregate) derived).getProcesses();
+
+                            addDerivedType(newProcessType, new ProcessAggregate(this, aggregated,
+                                    newProcessType.getFieldCount()));
+
+                            for (Process process : aggregated) {
+                                List<ProcessDataType> types = aggregates.get(process);
+
+                                if (types == null) {
+                                    types = new java.util.ArrayList<ProcessDataType>(2);
+                                    aggregates.put(process, types);
+                                }
+
+                                types.add(newProcessType);
+                            }
+                        }
+                        else {
+                            addType(newProcessType);
+                            addDataForType(data, newProcessType, targets[i], newProcessType);
+
+                            added.add(newProcess);
+                        }
+                    }
                 }
                 else {
-                    addProcess(newProcess);
-                    addType(newProcessType);
-                    addDataForType(newData, newProcessType);
+                    List<Integer> sources = typeSources.get(newType.getId());
+
+                    if (sources == null) {
+                        sources = new java.util.ArrayList<Integer>(toMerge.size());
+                        typeSources.put(newType.getId(), sources);
+                    }
+
+                    sources.add(i);
                 }
             }
-            else { // not a process
-                if (!containsType(newType.getId())) {
-                    // new type - add it to the data
-                    addType(newType);
-                    addDataForType(newData, newType);
-                }
-                else {
-                    mergeDataForType(newData, newType, combinedTimes);
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : typeSources.entrySet()) {
+            mergeDataForType(entry.getKey(), toMerge, entry.getValue(), targets);
+        }
+    }
+
+    private Map<Process, List<ProcessDataType>> getPendingAggregates() {
+        Map<Process, List<ProcessDataType>> aggregates = new java.util.HashMap<Process, List<ProcessDataType>>();
+
+        for (Process aggregate : getProcesses()) {
+            ProcessDataType type = getType(aggregate);
+            DerivedData derived = type == null ? null : getColumnStore().getDerivedData(type);
+
+            if (derived instanceof ProcessAggregate) {
+                for (Process process : ((ProcessAggregate) derived).getProcesses()) {
+                    List<ProcessDataType> types = aggregates.get(process);
+
+                    if (types == null) {
+                        types = new java.util.ArrayList<ProcessDataType>(2);
+                        aggregates.put(process, types);
+                    }
+
+                    types.add(type);
                 }
             }
         }
+
+        return aggregates;
     }
 
-    private void addDataForType(DataSet data, DataType type) {
-        long start = System.nanoTime();
-        int n = 0;
+    // calculate any aggregates that include the process before its data changes
+    private void calculateAggregates(Map<Process, List<ProcessDataType>> aggregates, Process process) {
+        List<ProcessDataType> types = aggregates.remove(process);
 
-        for (DataRecord newRecord : data.getRecords()) {
-            long time = newRecord.getTime();
-            DataRecord recordToUpdate = getRecord(time);
+        if (types != null) {
+            for (ProcessDataType type : types) {
+                getColumnStore().calculate(type);
+            }
+        }
+    }
+
+    private static String getProcessKey(Process process) {
+        return process.getId() + " " + process.getName();
+    }
 
-            if (recordToUpdate == null) {
-                recordToUpdate = new DataRecord(time, newRecord.getTimestamp());
-                addRecord(recordToUpdate);
+    /**
+     * Merge the times of the new data sets with a k-way merge, adding records to this data set for times it does not
+     * already have. Records are added in time order so they are appended unless the new data overlaps existing data.
+     * 
+     * @return the record in this data set for each row of each new data set; <code>null</code> for rows outside of
+     *         the given interval
+     */
+    private DataRecord[][] mergeRecords(List<DataSet> newData, Interval newRecords) {
+        DataRecord[][] targets = new DataRecord[newData.size()][];
+        java.util.PriorityQueue<TimeCursor> cursors = new java.util.PriorityQueue<TimeCursor>(newData.size());
+
+        for (int i = 0; i < newData.size(); i++) {
+            ColumnStore store = newData.get(i).getColumnStore();
+            targets[i] = new DataRecord[store.size()];
+
+            int start = 0;
+            int end = store.size();
+
+            if (!Interval.DEFAULT.equals(newRecords)) {
+                start = store.lowerBound(newRecords.getStart());
+                end = store.upperBound(newRecords.getEnd());
             }
 
-            if (recordToUpdate.hasData(type)) {
-                LOGGER.warn("not overwriting existing {} data at time {}", type, newRecord.getTimestamp());
+            if (start < end) {
+                cursors.add(new TimeCursor(i, store, start, end));
             }
-            else if (newRecord.hasData(type)) {
-                recordToUpdate.addData(type, newRecord.getData(type));
-                ++n;
+        }
+
+        DataRecord current = null;
+
+        while (!cursors.isEmpty()) {
+            TimeCursor cursor = cursors.poll();
+            long time = cursor.getTime();
+
+            if ((current == null) || (current.getTime() != time)) {
+                current = getRecord(time);
+
+                if (current == null) {
+                    // ties are ordered by data set so the first data set with the time names the record
+                    current = new DataRecord(time, cursor.store.getRecord(cursor.index).getTimestamp());
+                    addRecord(current);
+                }
             }
-            else {
-                // dangerous since this can potentially log a huge amount for process data
-                // if (LOGGER.isTraceEnabled()) {
-                // LOGGER.trace("no data for {} at time {}", type.id,
-                // existingRecord.getTimestamp()); }
+
+            targets[cursor.dataSet][cursor.store.getRow(cursor.index)] = current;
+
+            if (++cursor.index < cursor.end) {
+                cursors.add(cursor);
             }
         }
 
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("{} of {} data records for {} {} added in {}ms ",
-                    new Object[] { n, data.getRecordCount(), data, type, (System.nanoTime() - start) / 1000000.0d });
-        }
+        return targets;
     }
 
-    private void addProcessData(DataSet data, ProcessDataType processType, Process existingProcess) {
+    // copy the data for the given type to the target records; existing data is not overwritten
+    private void addDataForType(DataSet data, DataType type, DataRecord[] targets, DataType targetType) {
         long start = System.nanoTime();
         int n = 0;
 
-        Process newProcess = processType.getProcess();
+        ColumnStore.Column column = data.getColumnStore().getColumn(type);
 
-        long newStartTime = Math.min(newProcess.getStartTime(), existingProcess.getStartTime());
+        if (column != null) {
+            int[] rows = column.getRows();
 
-        Process updatedProcess = changeStartTime(existingProcess, newStartTime);
-        ProcessDataType updatedProcessType = getType(updatedProcess);
+            for (int slot = 0; slot < rows.length; slot++) {
+                DataRecord recordToUpdate = targets[rows[slot]];
 
-        for (DataRecord newRecord : data.getRecords()) {
-            long time = newRecord.getTime();
-            DataRecord recordToUpdate = getRecord(time);
-
-            if (recordToUpdate == null) {
-                recordToUpdate = new DataRecord(time, newRecord.getTimestamp());
-                addRecord(recordToUpdate);
-            }
+                if (recordToUpdate == null) {
+                    // outside the interval being merged
+                    continue;
+                }
 
-            if (recordToUpdate.hasData(updatedProcessType)) {
-                LOGGER.warn("not overwriting existing {} data at time {}", updatedProcessType,
-                        newRecord.getTimestamp());
-            }
-            else if (newRecord.hasData(processType)) {
-                // note processType since the new records have not been updated
-                recordToUpdate.addData(updatedProcessType, newRecord.getData(processType));
-                ++n;
-            }
-            else {
-                // dangerous since this can potentially log a huge amount
-                // if (LOGGER.isTraceEnabled()) {
-                // LOGGER.trace("no data for {} at time {}", type.id,
-                // existingRecord.getTimestamp()); }
+                if (recordToUpdate.hasData(targetType)) {
+                    LOGGER.warn("not overwriting existing {} data at time {}", targetType,
+                            recordToUpdate.getTimestamp());
+                }
+                else {
+                    recordToUpdate.addData(targetType, getValues(column, slot));
+                    ++n;
+                }
             }
         }
 
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("{} of {} process data records for {} {} added in {}ms ", new Object[] { n,
-                    data.getRecordCount(), data, updatedProcessType, (System.nanoTime() - start) / 1000000.0d });
+            LOGGER.trace("{} of {} data records for {} {} added in {}ms ",
+                    new Object[] { n, data.getRecordCount(), data, type, (System.nanoTime() - start) / 1000000.0d });
         }
     }
 
-    private void mergeDataForType(DataSet newData, DataType newType, Set<Long> combinedTimes) {
-        DataType existingType = getType(newType.getId());
+    /**
+     * Merge the data for a non-process type from all the data sets that define it. If the fields are the same in
+     * every data set, the data is just added. Otherwise, the union of the fields is used for a new type and the
+     * existing data and the new data are combined in a single pass. For each record, fields from data added earlier
+     * are not overwritten.
+     */
+    private void mergeDataForType(String typeId, List<DataSet> newData, List<Integer> sources,
+            DataRecord[][] targets) {
+        DataType existingType = getType(typeId);
+        DataType baseType = existingType == null ? newData.get(sources.get(0)).getType(typeId) : existingType;
 
         // union of the fields ...
-        Set<String> combinedFields = new java.util.TreeSet<String>(existingType.getFields());
-        combinedFields.addAll(newType.getFields());
+        Set<String> combinedFields = new java.util.TreeSet<String>(baseType.getFields());
+        boolean sameFields = true;
 
-        // no new fields in either data set
+        for (int i : sources) {
+            DataType newType = newData.get(i).getType(typeId);
+            combinedFields.addAll(newType.getFields());
+
+            sameFields &= newType.getFieldCount() == baseType.getFieldCount();
+        }
+
+        // no new fields in any data set
         // just add the records without overwriting the existing
-        if ((combinedFields.size() == existingType.getFieldCount())
-                && (combinedFields.size() == newType.getFieldCount())) {
-            addDataForType(newData, newType);
+        if (sameFields && (combinedFields.size() == baseType.getFieldCount())) {
+            if (existingType == null) {
+                addType(baseType);
+            }
+
+            for (int i : sources) {
+                addDataForType(newData.get(i), newData.get(i).getType(typeId), targets[i], baseType);
+            }
+
             return;
         }
         // otherwise, actually merge the data
@@ -300,83 +515,115 @@ public final class SystemDataSet extends ProcessDataSet {
 
         DataType combinedType = null;
 
-        if (existingType instanceof SubDataType) {
-            SubDataType subType = (SubDataType) existingType;
-            combinedType = new SubDataType(subType.getPrimaryId(), subType.getSubId(), existingType.getName(),
+        if (baseType instanceof SubDataType) {
+            SubDataType subType = (SubDataType) baseType;
+            combinedType = new SubDataType(subType.getPrimaryId(), subType.getSubId(), baseType.getName(),
                     combinedFields.toArray(new String[0]));
         }
         else {
-            combinedType = new DataType(existingType.getId(), existingType.getName(),
-                    combinedFields.toArray(new String[0]));
+            combinedType = new DataType(baseType.getId(), baseType.getName(), combinedFields.toArray(new String[0]));
+        }
+
+        // removing the existing type also removes its data, so build all the combined data first
+        // DataRecord does not override equals() so this maps each record to its combined values
+        Map<DataRecord, CombinedValues> combinedValues = new java.util.LinkedHashMap<DataRecord, CombinedValues>();
+
+        if (existingType != null) {
+            ColumnStore store = getColumnStore();
+            ColumnStore.Column column = store.getColumn(existingType);
+
+            if (column != null) {
+                int[] rows = column.getRows();
+                DataRecord[] records = new DataRecord[rows.length];
+
+                for (int slot = 0; slot < rows.length; slot++) {
+                    records[slot] = store.getRecordAtRow(rows[slot]);
+                }
+
+                combineValues(existingType, column, records, combinedType, combinedValues);
+            }
+        }
+
+        for (int i : sources) {
+            DataType newType = newData.get(i).getType(typeId);
+            ColumnStore.Column column = newData.get(i).getColumnStore().getColumn(newType);
+
+            if (column != null) {
+                int[] rows = column.getRows();
+                DataRecord[] records = new DataRecord[rows.length];
+
+                for (int slot = 0; slot < rows.length; slot++) {
+                    records[slot] = targets[i][rows[slot]];
+                }
+
+                combineValues(newType, column, records, combinedType, combinedValues);
+            }
         }
 
         // data set now only contains the combined type
-        removeType(existingType);
+        if (existingType != null) {
+            removeType(existingType);
+        }
+
         addType(combinedType);
 
-        int fieldCount = combinedFields.size();
+        for (Map.Entry<DataRecord, CombinedValues> entry : combinedValues.entrySet()) {
+            entry.getKey().addData(combinedType, entry.getValue().values);
+        }
 
-        // for every record, re-add the field values when available
-        for (long time : combinedTimes) {
-            DataRecord existingRecord = getRecord(time);
-            DataRecord newRecord = newData.getRecord(time);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{} data records for {} merged from {} data sets in {}ms ", new Object[] {
+                    combinedValues.size(), combinedType, sources.size(), (System.nanoTime() - start) / 1000000.0d });
+        }
+    }
 
-            boolean hasExistingData = (existingRecord != null) && existingRecord.hasData(existingType);
-            boolean hasNewData = (newRecord != null) && newRecord.hasData(newType);
+    // add the values from the column to the combined values for each record; records can be null to skip a slot
+    private static void combineValues(DataType type, ColumnStore.Column column, DataRecord[] records,
+            DataType combinedType, Map<DataRecord, CombinedValues> combinedValues) {
+        int[] combinedIndexes = new int[type.getFieldCount()];
 
-            if (hasExistingData || hasNewData) {
-                double[] combinedData = new double[fieldCount];
-                int n = 0;
+        for (int i = 0; i < combinedIndexes.length; i++) {
+            combinedIndexes[i] = combinedType.getFieldIndex(type.getField(i));
+        }
 
-                for (String field : combinedFields) {
-                    if (newType.hasField(field)) {
-                        // existingType has the same field and has data for this time.
-                        // Use that data and do not overwrite with new data
-                        if (hasExistingData && existingType.hasField(field)) {
-                            combinedData[n] = existingRecord.getData(existingType, field);
+        for (int slot = 0; slot < records.length; slot++) {
+            DataRecord record = records[slot];
 
-                            if (hasNewData) {
-                                LOGGER.warn("not overwriting existing {} data at time {}", newType,
-                                        existingRecord.getTimestamp());
-                            }
-                        }
-                        else if (hasNewData) {
-                            combinedData[n] = newRecord.getData(newType, field);
-                        }
-                        else {
-                            combinedData[n] = Double.NaN;
-                        }
-                    }
-                    else {
-                        if (hasExistingData) {
-                            combinedData[n] = existingRecord.getData(existingType, field);
-                        }
-                        else {
-                            combinedData[n] = Double.NaN;
-                        }
-                    }
+            if (record == null) {
+                continue;
+            }
 
-                    ++n;
-                }
+            CombinedValues combined = combinedValues.get(record);
 
-                if (existingRecord == null) {
-                    DataRecord combinedRecord = new DataRecord(newRecord.getTime(), newRecord.getTimestamp());
-                    combinedRecord.addData(combinedType, combinedData);
-                    addRecord(combinedRecord);
-                }
-                else {
-                    existingRecord.removeData(existingType);
-                    existingRecord.addData(combinedType, combinedData);
+            if (combined == null) {
+                combined = new CombinedValues(combinedType.getFieldCount());
+                combinedValues.put(record, combined);
+            }
+            else {
+                LOGGER.warn("not overwriting existing {} data at time {}", type, record.getTimestamp());
+            }
+
+            for (int i = 0; i < combinedIndexes.length; i++) {
+                int n = combinedIndexes[i];
+
+                // existingType has the same field and has data for this time.
+                // Use that data and do not overwrite with new data
+                if (!combined.defined[n]) {
+                    combined.values[n] = column.value(i, slot);
+                    combined.defined[n] = true;
                 }
             }
-            // else no data at this time from either new or existing,
-            // just leave the record empty for this type
         }
+    }
 
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("{} data records for {} {} merged in {}ms ", new Object[] { combinedTimes.size(), newData,
-                    combinedType, (System.nanoTime() - start) / 1000000.0d });
+    private static double[] getValues(ColumnStore.Column column, int slot) {
+        double[] values = new double[column.getFieldCount()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = column.value(i, slot);
         }
+
+        return values;
     }
 
     public Iterable<Long> getSystemInfoTimes() {
@@ -421,4 +668,50 @@ public final class SystemDataSet extends ProcessDataSet {
     public String getTypeIdPrefix() {
         return typeIdPrefix;
     }
+
+    // the records of a data set being merged, in time order
+    private static final class TimeCursor implements Comparable<TimeCursor> {
+        private final int dataSet;
+        private final ColumnStore store;
+        private final int end;
+
+        private int index;
+
+        TimeCursor(int dataSet, ColumnStore store, int start, int end) {
+            this.dataSet = dataSet;
+            this.store = store;
+            this.index = start;
+            this.end = end;
+        }
+
+        long getTime() {
+            return store.getTime(index);
+        }
+
+        @Override
+        public int compareTo(TimeCursor cursor) {
+            long time = getTime();
+            long other = cursor.getTime();
+
+            if (time != other) {
+                return time < other ? -1 : 1;
+            }
+            else {
+                return dataSet - cursor.dataSet;
+            }
+        }
+    }
+
+    // values for a merged type; fields are NaN until defined
+    private static final class CombinedValues {
+        private final double[] values;
+        private final boolean[] defined;
+
+        CombinedValues(int fieldCount) {
+            values = new double[fieldCount];
+            defined = new boolean[fieldCount];
+
+            java.util.Arrays.fill(values, Double.NaN);
+        }
+    }
 }
@@ -93,12 +93,16 @@ public enum NamingMode {
         public String getName(DataDefinition definition, DataSet data, DataType type, String field, Interval interval,
                 int granularity) {
             String formatted = "";
+            java.text.SimpleDateFormat dateFormat = definition.getDateFormat();
 
-            if (Interval.DEFAULT.equals(interval)) {
-                formatted = definition.getDateFormat().format(data.getStartTime());
-            }
-            else {
-                formatted = definition.getDateFormat().format(interval.getStart());
+            // formats may be shared and charts can be created on multiple threads
+            synchronized (dateFormat) {
+                if (Interval.DEFAULT.equals(interval)) {
+                    formatted = dateFormat.format(data.getStartTime());
+                }
+                else {
+                    formatted = dateFormat.format(interval.getStart());
+                }
             }
 
             if (data != null) {
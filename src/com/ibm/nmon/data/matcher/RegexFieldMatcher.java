@@ -10,10 +10,10 @@ import com.ibm.nmon.data.DataType;
  * Matches a set of fields based on a regular expression.
  */
 public final class RegexFieldMatcher implements FieldMatcher {
-    private final Matcher matcher;
+    private final Pattern pattern;
 
     public RegexFieldMatcher(String regex) {
-        matcher = Pattern.compile(regex).matcher("");
+        pattern = Pattern.compile(regex);
     }
 
     @Override
@@ -25,7 +25,7 @@ public final class RegexFieldMatcher implements FieldMatcher {
             List<String> toReturn = new java.util.ArrayList<String>();
 
             for (String field : type.getFields()) {
-                if (matcher.reset(field).matches()) {
+                if (pattern.matcher(field).matches()) {
                     toReturn.add(field);
                 }
             }
@@ -36,12 +36,12 @@ public final class RegexFieldMatcher implements FieldMatcher {
 
     @Override
     public String toString() {
-        return matcher.pattern().pattern();
+        return pattern.pattern();
     }
 
     @Override
     public int hashCode() {
-        return matcher.pattern().pattern().hashCode();
+        return pattern.pattern().hashCode();
     }
 
     @Override
@@ -52,7 +52,7 @@ public final class RegexFieldMatcher implements FieldMatcher {
         else if (obj instanceof RegexFieldMatcher) {
             RegexFieldMatcher matcher = (RegexFieldMatcher) obj;
 
-            return this.matcher.pattern().pattern().equals(matcher.matcher.pattern().pattern());
+            return this.pattern.pattern().equals(matcher.pattern.pattern());
         }
         else {
             return false;
@@ -12,15 +12,15 @@ import com.ibm.nmon.data.DataSet;
  * Matches a set of {@link DataSet} hostnames based on a regular expression.
  */
 public final class RegexHostMatcher implements HostMatcher {
-    private final Matcher matcher;
+    private final Pattern pattern;
 
     public RegexHostMatcher(String regex) {
-        matcher = Pattern.compile(regex).matcher("");
+        pattern = Pattern.compile(regex);
     }
 
     @Override
     public boolean matchesHost(DataSet data) {
-        return matcher.reset(data.getHostname()).matches();
+        return pattern.matcher(data.getHostname()).matches();
     }
 
     @Override
@@ -32,7 +32,7 @@ public final class RegexHostMatcher implements HostMatcher {
             List<DataSet> toReturn = new java.util.ArrayList<DataSet>(toMatch.size());
 
             for (DataSet data : toMatch) {
-                if (matcher.reset(data.getHostname()).matches()) {
+                if (pattern.matcher(data.getHostname()).matches()) {
                     toReturn.add(data);
                 }
             }
@@ -43,12 +43,12 @@ public final class RegexHostMatcher implements HostMatcher {
 
     @Override
     public String toString() {
-        return matcher.pattern().pattern();
+        return pattern.pattern();
     }
 
     @Override
     public int hashCode() {
-        return matcher.pattern().pattern().hashCode();
+        return pattern.pattern().hashCode();
     }
 
     @Override
@@ -59,7 +59,7 @@ public final class RegexHostMatcher implements HostMatcher {
         else if (obj instanceof RegexHostMatcher) {
             RegexHostMatcher matcher = (RegexHostMatcher) obj;
 
-            return this.matcher.pattern().pattern().equals(matcher.matcher.pattern().pattern());
+            return this.pattern.pattern().equals(matcher.pattern.pattern());
         }
         else {
             return false;
@@ -12,10 +12,14 @@ import com.ibm.nmon.data.DataType;
  * Matches a set of {@link DataType DataTypes} based on a regular expression.
  */
 public final class RegexTypeMatcher implements TypeMatcher {
-    private final Matcher matcher;
+    private final Pattern pattern;
 
     public RegexTypeMatcher(String regex) {
-        matcher = Pattern.compile(regex).matcher("");
+        pattern = Pattern.compile(regex);
+    }
+
+    public Pattern getPattern() {
+        return pattern;
     }
 
     @Override
@@ -28,7 +32,7 @@ public final class RegexTypeMatcher implements TypeMatcher {
 
             for (DataType type : data.getTypes()) {
                 // note matching on toString, not typeId
-                if (matcher.reset(type.toString()).matches()) {
+                if (pattern.matcher(type.toString()).matches()) {
                     toReturn.add(type);
                 }
             }
@@ -39,12 +43,12 @@ public final class RegexTypeMatcher implements TypeMatcher {
 
     @Override
     public String toString() {
-        return matcher.pattern().pattern();
+        return pattern.pattern();
     }
 
     @Override
     public int hashCode() {
-        return matcher.pattern().pattern().hashCode();
+        return pattern.pattern().hashCode();
     }
 
     @Override
@@ -55,7 +59,7 @@ public final class RegexTypeMatcher implements TypeMatcher {
         else if (obj instanceof RegexTypeMatcher) {
             RegexTypeMatcher matcher = (RegexTypeMatcher) obj;
 
-            return this.matcher.pattern().pattern().equals(matcher.matcher.pattern().pattern());
+            return this.pattern.pattern().equals(matcher.pattern.pattern());
         }
         else {
             return false;
@@ -59,7 +59,7 @@ public class WindowsProcessPostProcessor implements DataPostProcessor {
                     for (String field : processType.getFields()) {
                         if (field.startsWith("%")) {
                             // assume % Processor Time, % User Time or % Privileged Time
-                            record.getData(processType)[processType.getFieldIndex(field)] /= processorCount;
+                            record.setValue(processType, field, record.getData(processType, field) / processorCount);
                         }
                     }
                 }
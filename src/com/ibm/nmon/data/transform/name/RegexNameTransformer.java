@@ -21,7 +21,7 @@ import java.util.regex.Matcher;
 public final class RegexNameTransformer implements NameTransformer {
     private static final Logger logger = org.slf4j.LoggerFactory.getLogger(RegexNameTransformer.class);
 
-    private final Matcher matcher;
+    private final Pattern pattern;
     private final int group;
     private final String replacement;
 
@@ -41,7 +41,7 @@ public final class RegexNameTransformer implements NameTransformer {
      * @param group the matching group to return
      */
     public RegexNameTransformer(String regex, int group) {
-        matcher = Pattern.compile(regex).matcher("");
+        pattern = Pattern.compile(regex);
 
         if (group < 0) {
             throw new IllegalArgumentException("group cannot be less than 0");
@@ -61,7 +61,7 @@ public final class RegexNameTransformer implements NameTransformer {
      */
 
     public RegexNameTransformer(String regex, String replacement) {
-        matcher = Pattern.compile(regex).matcher("");
+        pattern = Pattern.compile(regex);
 
         if ((replacement == null) || "".equals(replacement)) {
             throw new IllegalArgumentException("replacement string cannot be empty");
@@ -77,8 +77,11 @@ public final class RegexNameTransformer implements NameTransformer {
      */
     @Override
     public String transform(String original) {
-        if (!matcher.reset(original).matches()) {
-            logger.debug("regex '{}' does not match '{}'", matcher.pattern().pattern(), original);
+        // matchers are not thread safe, so create one for each call
+        Matcher matcher = pattern.matcher(original);
+
+        if (!matcher.matches()) {
+            logger.debug("regex '{}' does not match '{}'", pattern.pattern(), original);
             return original;
         }
         else if (matcher.groupCount() == 0) {
@@ -102,10 +105,10 @@ public final class RegexNameTransformer implements NameTransformer {
     @Override
     public String toString() {
         if (group == -1) {
-            return matcher.pattern().pattern() + ';' + replacement;
+            return pattern.pattern() + ';' + replacement;
         }
         else {
-            return matcher.pattern().pattern() + ';' + group;
+            return pattern.pattern() + ';' + group;
         }
     }
 }
@@ -0,0 +1,577 @@
+package com.ibm.nmon.file;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.TimeZone;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.ibm.nmon.interval.Interval;
+
+/**
+ * <p>
+ * A catalog of files that records the host, OS and time range of each file without fully parsing it. This allows a
+ * large number of files to be checked quickly so that only the files for a given host or time range are parsed.
+ * </p>
+ *
+ * <p>
+ * NMON files are cataloged by reading the <code>AAA</code> header records up to the first <code>ZZZZ</code> record,
+ * then reading backwards from the end of the file to find the last <code>ZZZZ</code> record. Perfmon files are
+ * cataloged from the header line and the first and last lines of data. Other file types are included with only their
+ * size; their host and times are unknown.
+ * </p>
+ */
+public final class FileCatalog {
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(FileCatalog.class);
+
+    // bytes read at a time when searching backwards from the end of a file
+    private static final int TAIL_BLOCK_SIZE = 64 * 1024;
+
+    private final List<Entry> entries;
+
+    private FileCatalog(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return the catalog entries in the same order as the files that were scanned
+     */
+    public List<Entry> getEntries() {
+        return java.util.Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Select the files for the given hosts that have data inside the given interval. Files with unknown times are
+     * always considered to be inside the interval but files with an unknown host never match a specific host.
+     *
+     * @param hostnames the hosts to select, ignoring case; <code>null</code> or empty to select all hosts
+     * @param interval the interval to select; {@link Interval#DEFAULT} to select all times
+     */
+    public List<String> select(Collection<String> hostnames, Interval interval) {
+        java.util.Set<String> hosts = new java.util.HashSet<String>();
+
+        if (hostnames != null) {
+            for (String hostname : hostnames) {
+                hosts.add(hostname.toLowerCase());
+            }
+        }
+
+        List<String> selected = new java.util.ArrayList<String>();
+
+        for (Entry entry : entries) {
+            if (!hosts.isEmpty()
+                    && ((entry.getHostname() == null) || !hosts.contains(entry.getHostname().toLowerCase()))) {
+                continue;
+            }
+
+            if (!Interval.DEFAULT.equals(interval) && !entry.overlaps(interval)) {
+                continue;
+            }
+
+            selected.add(entry.getFilename());
+        }
+
+        return selected;
+    }
+
+    /**
+     * Catalog the given files using up to <code>threads</code> threads.
+     *
+     * @param timeZone the time zone where the data was collected; used for NMON times
+     */
+    public static FileCatalog scan(List<String> filenames, final TimeZone timeZone, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+
+        long start = System.nanoTime();
+
+        List<Entry> entries = new java.util.ArrayList<Entry>(filenames.size());
+
+        if ((threads == 1) || (filenames.size() < 2)) {
+            for (String filename : filenames) {
+                entries.add(scanFile(filename, timeZone));
+            }
+        }
+        else {
+            ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(
+                    Math.min(threads, filenames.size()), new java.util.concurrent.ThreadFactory() {
+                        private int count = 0;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "FileCatalog-" + (++count));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+
+            try {
+                List<Future<Entry>> results = new java.util.ArrayList<Future<Entry>>(filenames.size());
+
+                for (final String filename : filenames) {
+                    results.add(executor.submit(new java.util.concurrent.Callable<Entry>() {
+                        @Override
+                        public Entry call() {
+                            return scanFile(filename, timeZone);
+                        }
+                    }));
+                }
+
+                for (Future<Entry> result : results) {
+                    try {
+                        entries.add(result.get());
+                    }
+                    catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("interrupted cataloging files");
+                    }
+                    catch (java.util.concurrent.ExecutionException ee) {
+                        // scanFile() catches all Exceptions so this is an Error; do not hide it
+                        throw new IllegalStateException("cataloging files failed", ee.getCause());
+                    }
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("cataloged {} files in {}ms", filenames.size(), (System.nanoTime() - start) / 1000000.0d);
+        }
+
+        return new FileCatalog(entries);
+    }
+
+    /**
+     * Catalog a single file. Errors are logged and result in an entry with an unknown host and times.
+     */
+    public static Entry scanFile(String filename, TimeZone timeZone) {
+        Entry entry = new Entry(filename);
+
+        CombinedFileFilter filter = CombinedFileFilter.getInstance(false);
+
+        try {
+            // same order as NMONVisualizerApp so the file is treated as the same type
+            if (filter.getTopasOutFileFilter().accept(filename)) {
+                entry.type = "topasout";
+            }
+            else if (filter.getNMONFileFilter().accept(filename)) {
+                entry.type = "NMON";
+                scanNMON(entry, timeZone);
+            }
+            else if (filter.getGCFileFilter().accept(filename)) {
+                entry.type = "GC";
+            }
+            else if (filter.getZPoolIOStatOutFileFilter().accept(filename)) {
+                entry.type = "ZPool";
+            }
+            else if (filter.getIOStatFileFilter().accept(filename)) {
+                entry.type = "IOStat";
+            }
+            else if (filter.getJSONFileFilter().accept(filename)) {
+                entry.type = "JSON";
+            }
+            else if (filter.getHATJFileFilter().accept(filename)) {
+                entry.type = "HATJ";
+            }
+            else if (filter.getJMeterFileFilter().accept(filename)) {
+                entry.type = "JMeter";
+            }
+            else if (filter.getPerfmonFileFilter().accept(filename)) {
+                entry.type = "Perfmon";
+                scanPerfmon(entry);
+            }
+            else if (filter.getFIOFileFilter().accept(filename)) {
+                entry.type = "FIO";
+            }
+        }
+        catch (Exception e) {
+            LOGGER.warn("could not catalog '{}': {}", filename, e.getMessage());
+
+            entry.hostname = null;
+            entry.os = null;
+            entry.startTime = -1;
+            entry.endTime = -1;
+            entry.snapshotCount = -1;
+        }
+
+        return entry;
+    }
+
+    private static void scanNMON(Entry entry, TimeZone timeZone) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss dd-MMM-yyyy", java.util.Locale.US);
+        format.setTimeZone(timeZone);
+
+        java.io.BufferedReader in = new java.io.BufferedReader(new java.io.FileReader(entry.filename));
+        String firstTimestamp = null;
+        String aix = null;
+
+        try {
+            String line = null;
+
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("ZZZZ")) {
+                    firstTimestamp = line;
+                    break;
+                }
+                else if (line.startsWith("AAA,")) {
+                    String[] values = line.split(",");
+
+                    if (values.length < 3) {
+                        continue;
+                    }
+
+                    if ("host".equals(values[1])) {
+                        entry.hostname = values[2];
+                    }
+                    else if ("OS".equals(values[1])) {
+                        entry.os = values.length > 3 ? values[2] + ' ' + values[3] : values[2];
+                    }
+                    else if ("AIX".equals(values[1])) {
+                        aix = values[2];
+                    }
+                    else if ("interval".equals(values[1])) {
+                        try {
+                            entry.interval = Integer.parseInt(values[2].trim());
+                        }
+                        catch (NumberFormatException nfe) {
+                            // ignore
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        if ((entry.os == null) && (aix != null)) {
+            entry.os = "AIX " + aix;
+        }
+
+        if (firstTimestamp == null) {
+            // no data
+            return;
+        }
+
+        String lastTimestamp = findLastLine(entry.filename, "ZZZZ");
+
+        entry.startTime = parseNMONTime(format, firstTimestamp);
+        entry.endTime = parseNMONTime(format, lastTimestamp == null ? firstTimestamp : lastTimestamp);
+
+        if (entry.endTime < entry.startTime) {
+            entry.endTime = entry.startTime;
+        }
+
+        // T0001 -> 1
+        try {
+            String[] values = (lastTimestamp == null ? firstTimestamp : lastTimestamp).split(",");
+            entry.snapshotCount = Integer.parseInt(values[1].substring(1));
+        }
+        catch (RuntimeException re) {
+            entry.snapshotCount = -1;
+        }
+    }
+
+    private static long parseNMONTime(SimpleDateFormat format, String line) throws IOException {
+        String[] values = line.split(",");
+
+        if (values.length != 4) {
+            throw new IOException("invalid timestamp record '" + line + "'");
+        }
+
+        try {
+            return format.parse(values[2] + ' ' + values[3]).getTime();
+        }
+        catch (ParseException pe) {
+            throw new IOException("invalid timestamp record '" + line + "'");
+        }
+    }
+
+    private static void scanPerfmon(Entry entry) throws IOException {
+        java.io.BufferedReader in = new java.io.BufferedReader(new java.io.FileReader(entry.filename));
+        String header = null;
+        String firstData = null;
+
+        try {
+            header = in.readLine();
+            firstData = in.readLine();
+        }
+        finally {
+            in.close();
+        }
+
+        if (header == null) {
+            return;
+        }
+
+        // "(PDH-CSV 4.0) (GMT Daylight Time)(-60)","\\HOSTNAME\category\metric",...
+        String[] columns = header.split(",", 3);
+
+        if (columns.length < 2) {
+            throw new IOException("invalid Perfmon header");
+        }
+
+        String hostColumn = unquote(columns[1]);
+
+        if (hostColumn.startsWith("\\\\")) {
+            int idx = hostColumn.indexOf('\\', 2);
+
+            if (idx != -1) {
+                entry.hostname = hostColumn.substring(2, idx).toLowerCase();
+            }
+        }
+
+        entry.os = "Perfmon";
+
+        if (firstData == null) {
+            return;
+        }
+
+        // same as PerfmonParser
+        SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+        String versionColumn = unquote(columns[0]);
+        int idx = versionColumn.lastIndexOf('(');
+
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        if (idx != -1) {
+            try {
+                int offset = Integer.parseInt(versionColumn.substring(idx + 1, versionColumn.length() - 1));
+                format.setTimeZone(new java.util.SimpleTimeZone(offset * -60000, Integer.toString(offset)));
+            }
+            catch (NumberFormatException nfe) {
+                // leave as UTC
+            }
+        }
+
+        String lastData = findLastLine(entry.filename, null);
+
+        try {
+            entry.startTime = format.parse(unquote(firstData.split(",", 2)[0])).getTime();
+            entry.endTime = format.parse(unquote((lastData == null ? firstData : lastData).split(",", 2)[0]))
+                    .getTime();
+        }
+        catch (ParseException pe) {
+            throw new IOException("invalid Perfmon timestamp: " + pe.getMessage());
+        }
+    }
+
+    private static String unquote(String value) {
+        value = value.trim();
+
+        if (value.startsWith("\"")) {
+            value = value.substring(1);
+        }
+
+        if (value.endsWith("\"")) {
+            value = value.substring(0, value.length() - 1);
+        }
+
+        return value;
+    }
+
+    /**
+     * Read backwards from the end of the file to find the last non-empty line that starts with the given prefix.
+     *
+     * @param prefix the start of the line; <code>null</code> to find the last non-empty line
+     * @return the line or <code>null</code> if there is none
+     */
+    private static String findLastLine(String filename, String prefix) throws IOException {
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(filename, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+            long end = channel.size();
+
+            ByteBuffer buffer = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+            // bytes after the last line feed seen so far, i.e. the start of the line being searched; in reverse
+            java.io.ByteArrayOutputStream partial = new java.io.ByteArrayOutputStream();
+
+            while (end > 0) {
+                long start = Math.max(0, end - TAIL_BLOCK_SIZE);
+
+                buffer.clear();
+                buffer.limit((int) (end - start));
+
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+
+                byte[] bytes = buffer.array();
+
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (bytes[i] == '\n') {
+                        String line = toLine(partial);
+
+                        if (matches(line, prefix)) {
+                            return line;
+                        }
+
+                        partial.reset();
+                    }
+                    else {
+                        partial.write(bytes[i]);
+                    }
+                }
+
+                end = start;
+            }
+
+            // first line of the file
+            String line = toLine(partial);
+
+            return matches(line, prefix) ? line : null;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private static boolean matches(String line, String prefix) {
+        if (prefix == null) {
+            return !line.isEmpty();
+        }
+        else {
+            return line.startsWith(prefix);
+        }
+    }
+
+    // bytes were written in reverse order
+    private static String toLine(java.io.ByteArrayOutputStream partial) {
+        byte[] bytes = partial.toByteArray();
+
+        for (int i = 0, j = bytes.length - 1; i < j; i++, j--) {
+            byte temp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = temp;
+        }
+
+        String line = new String(bytes, StandardCharsets.ISO_8859_1);
+
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * A single cataloged file. Times are in milliseconds and are <code>-1</code> if they are not known.
+     */
+    public static final class Entry {
+        private final String filename;
+        private final long fileSize;
+        private final long lastModified;
+
+        private String type;
+
+        private String hostname;
+        private String os;
+
+        private long startTime = -1;
+        private long endTime = -1;
+
+        private int interval = -1;
+        private int snapshotCount = -1;
+
+        Entry(String filename) {
+            this.filename = filename;
+
+            File file = new File(filename);
+
+            this.fileSize = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the file type, e.g. <code>NMON</code> or <code>Perfmon</code>; <code>null</code> if the file type is
+         *         not known
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the host name or <code>null</code> if it is not known
+         */
+        public String getHostname() {
+            return hostname;
+        }
+
+        /**
+         * @return the OS or <code>null</code> if it is not known
+         */
+        public String getOS() {
+            return os;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public boolean hasTimes() {
+            return startTime != -1;
+        }
+
+        /**
+         * @return the time between snapshots, in seconds or <code>-1</code> if it is not known
+         */
+        public int getInterval() {
+            return interval;
+        }
+
+        /**
+         * @return the number of snapshots in the file or <code>-1</code> if it is not known
+         */
+        public int getSnapshotCount() {
+            return snapshotCount;
+        }
+
+        /**
+         * @return <code>true</code> if the file has data inside the interval or its times are not known
+         */
+        public boolean overlaps(Interval interval) {
+            if (!hasTimes()) {
+                return true;
+            }
+
+            return (startTime <= interval.getEnd()) && (endTime >= interval.getStart());
+        }
+
+        @Override
+        public String toString() {
+            return filename + " {type=" + type + ", host=" + hostname + ", os=" + os + ", start=" + startTime
+                    + ", end=" + endTime + ", snapshots=" + snapshotCount + ", size=" + fileSize + '}';
+        }
+    }
+}
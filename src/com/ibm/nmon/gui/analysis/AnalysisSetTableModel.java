@@ -101,6 +101,14 @@ public abstract class AnalysisSetTableModel extends ChoosableColumnTableModel im
         fireTableDataChanged();
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        // same rows, new values; do not lose the selection
+        if (getRowCount() > 0) {
+            fireTableRowsUpdated(0, getRowCount() - 1);
+        }
+    }
+
     @Override
     public void dataCleared() {
         keys.clear();
@@ -67,6 +67,9 @@ public final class SummaryTablePanel extends JPanel
     private final NMONVisualizerGui gui;
     private final JFrame parent;
 
+    // rebuilding the table is expensive so only rebuild once the interval stops changing
+    private final IntervalListener intervalListener;
+
     private final GUITable dataSetTable;
     private final GUITable statisticsTable;
 
@@ -86,6 +89,8 @@ public final class SummaryTablePanel extends JPanel
         this.gui = gui;
         this.parent = parent;
 
+        intervalListener = gui.coalesceIntervalEvents(this, NMONVisualizerGui.EVENT_DELAY);
+
         fileChooser = new AnalysisSetFileChooser(gui, analysisSet);
         menu = new JMenu("Table");
         setupMenu(parent);
@@ -189,7 +194,7 @@ public final class SummaryTablePanel extends JPanel
     @Override
     public void setEnabled(boolean enabled) {
         if (enabled) {
-            gui.getIntervalManager().addListener(this);
+            gui.getIntervalManager().addListener(intervalListener);
             gui.addPropertyChangeListener("granularity", this);
             gui.addPropertyChangeListener("granularity", (ByStatisticTableModel) statisticsTable.getModel());
 
@@ -201,7 +206,7 @@ public final class SummaryTablePanel extends JPanel
             updateTable();
         }
         else {
-            gui.getIntervalManager().removeListener(this);
+            gui.getIntervalManager().removeListener(intervalListener);
             gui.removePropertyChangeListener("granularity", this);
             gui.removePropertyChangeListener("granularity", (ByStatisticTableModel) statisticsTable.getModel());
 
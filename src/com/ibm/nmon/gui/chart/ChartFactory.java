@@ -53,6 +53,10 @@ public class ChartFactory {
         lineChartBuilder.showLegends(showLegends);
     }
 
+    public void setDownsample(boolean downsample) {
+        lineChartBuilder.setDownsample(downsample);
+    }
+
     public void setInterval(Interval interval) {
         lineChartBuilder.setInterval(interval);
         barChartBuilder.setInterval(interval);
@@ -158,4 +162,30 @@ public class ChartFactory {
 
         return chart;
     }
+
+    /**
+     * Update a chart created by {@link #createChart(BaseChartDefinition, Iterable) createChart()} with data that has
+     * been appended to one of its DataSets. The interval and granularity must not have changed since the chart was
+     * created.
+     * 
+     * @return <code>true</code> if the chart was updated; <code>false</code> if this type of chart cannot be updated
+     *         and must be recreated
+     */
+    public boolean appendData(JFreeChart chart, BaseChartDefinition definition, DataSet data) {
+        if (definition.getClass().equals(LineChartDefinition.class)) {
+            long startT = System.nanoTime();
+
+            lineChartBuilder.appendLine(chart, (LineChartDefinition) definition, data);
+
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("{}: {} chart appended in {}ms",
+                        new Object[] { data, definition.getShortName(), (System.nanoTime() - startT) / 1000000.0d });
+            }
+
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
 }
@@ -35,6 +35,8 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
     private final LineChartBuilder chartBuilder;
 
     private ExactDataDefinition definition;
+    // the definition used to build the current chart
+    private LineChartDefinition chartDefinition;
 
     public DataTypeChartPanel(NMONVisualizerGui gui) {
         super(gui, gui.getMainFrame());
@@ -67,12 +69,14 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
                 gui.addPropertyChangeListener("granularity", this);
                 gui.addPropertyChangeListener("chartFormatter", this);
                 gui.addPropertyChangeListener("lineChartLegend", this);
+                gui.addPropertyChangeListener("lineChartDownsample", this);
                 gui.getIntervalManager().addListener(this);
 
                 chartBuilder.setInterval(gui.getIntervalManager().getCurrentInterval());
                 chartBuilder.setGranularity(gui.getGranularity());
                 chartBuilder.setFormatter(gui.getChartFormatter());
                 chartBuilder.showLegends(gui.getBooleanProperty("lineChartLegend"));
+                chartBuilder.setDownsample(gui.getBooleanProperty("lineChartDownsample"));
 
                 if (definition != null) {
                     displayChart();
@@ -82,6 +86,7 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
                 gui.removePropertyChangeListener("granularity", this);
                 gui.removePropertyChangeListener("chartFormatter", this);
                 gui.removePropertyChangeListener("lineChartLegend", this);
+                gui.removePropertyChangeListener("lineChartDownsample", this);
                 gui.getIntervalManager().removeListener(this);
 
                 // _super_ => clear chart but not the data
@@ -95,6 +100,17 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
         super.clearChart();
 
         this.definition = null;
+        this.chartDefinition = null;
+    }
+
+    /**
+     * Update the current chart after records were appended to its DataSet.
+     */
+    public void dataAppended() {
+        if (isEnabled() && (getChart() != null) && (chartDefinition != null)) {
+            chartBuilder.appendLinesForData(getChart(), chartDefinition, definition, definition.getDataSet(),
+                    NamingMode.FIELD);
+        }
     }
 
     @Override
@@ -147,6 +163,13 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
 
             chartBuilder.showLegends(showLegend);
 
+            if (getChart() != null) {
+                displayChart();
+            }
+        }
+        else if ("lineChartDownsample".equals(evt.getPropertyName())) {
+            chartBuilder.setDownsample((Boolean) evt.getNewValue());
+
             if (getChart() != null) {
                 displayChart();
             }
@@ -193,7 +216,7 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
                 }
             }
 
-            LineChartDefinition chartDefinition = new LineChartDefinition("", type + fieldLabel);
+            chartDefinition = new LineChartDefinition("", type + fieldLabel);
             chartDefinition.setYAxisLabel(axisLabel);
             chartDefinition.setUsePercentYAxis(percent);
 
@@ -0,0 +1,248 @@
+package com.ibm.nmon.gui.chart.builder;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+
+import java.util.BitSet;
+
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.CrosshairState;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.StandardXYItemRenderer;
+import org.jfree.chart.renderer.xy.XYItemRendererState;
+
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDataset;
+
+import org.jfree.util.UnitType;
+
+/**
+ * <p>
+ * A line renderer that only draws the points that can actually be seen at the chart's rendered size. For each series,
+ * the points that fall into a single pixel column are reduced to the first, last, minimum and maximum values, so peaks
+ * and gaps are still drawn. Points are selected at the start of every rendering pass using the current domain axis
+ * range, so resizing the chart or zooming in shows more detail.
+ * </p>
+ *
+ * <p>
+ * The dataset itself is not changed. Summary statistics and exported data still use every point.
+ * </p>
+ */
+public class DownsamplingXYItemRenderer extends StandardXYItemRenderer {
+    private static final long serialVersionUID = -2541829013528893652L;
+
+    // only downsample series with more than this many points per pixel column, on average
+    private static final int MIN_POINTS_PER_PIXEL = 4;
+
+    private boolean downsample = true;
+
+    // the points to draw for each series in the current rendering pass; null if all points are drawn
+    private transient BitSet[] selected;
+    // the dataset being rendered, with values for the points that are not drawn replaced by NaN
+    private transient SampledXYDataset sampledDataset;
+    // the time covered by 2 pixel columns
+    private transient double sampledGapThreshold;
+
+    public DownsamplingXYItemRenderer() {
+        super();
+    }
+
+    public boolean getDownsample() {
+        return downsample;
+    }
+
+    public void setDownsample(boolean downsample) {
+        if (this.downsample != downsample) {
+            this.downsample = downsample;
+            fireChangeEvent();
+        }
+    }
+
+    @Override
+    public XYItemRendererState initialise(Graphics2D g2, Rectangle2D dataArea, XYPlot plot, XYDataset dataset,
+            PlotRenderingInfo info) {
+        XYItemRendererState state = super.initialise(g2, dataArea, plot, dataset, info);
+
+        selected = null;
+        sampledDataset = null;
+
+        if (downsample && (dataset != null)) {
+            ValueAxis domainAxis = plot.getDomainAxisForDataset(plot.indexOf(dataset));
+            double pixels = plot.getOrientation() == PlotOrientation.VERTICAL ? dataArea.getWidth() : dataArea
+                    .getHeight();
+
+            selectPoints(dataset, domainAxis.getLowerBound(), domainAxis.getUpperBound(), (int) Math.ceil(pixels));
+        }
+
+        return state;
+    }
+
+    @Override
+    public void drawItem(Graphics2D g2, XYItemRendererState state, Rectangle2D dataArea, PlotRenderingInfo info,
+            XYPlot plot, ValueAxis domainAxis, ValueAxis rangeAxis, XYDataset dataset, int series, int item,
+            CrosshairState crosshairState, int pass) {
+        if ((selected == null) || (sampledDataset.delegate != dataset) || (selected[series] == null)) {
+            super.drawItem(g2, state, dataArea, info, plot, domainAxis, rangeAxis, dataset, series, item,
+                    crosshairState, pass);
+        }
+        else if (selected[series].get(item)) {
+            // lines are drawn from the previous non-NaN value so points that are not selected are skipped
+            super.drawItem(g2, state, dataArea, info, plot, domainAxis, rangeAxis, sampledDataset, series, item,
+                    crosshairState, pass);
+        }
+        // else point is not visible at this size
+    }
+
+    @Override
+    public double getGapThreshold() {
+        double threshold = super.getGapThreshold();
+
+        // consecutive selected points can be up to a pixel column apart even when there is no gap in the data
+        // gaps smaller than that cannot be seen anyway
+        if ((selected != null) && (getGapThresholdType() == UnitType.ABSOLUTE)) {
+            return Math.max(threshold, sampledGapThreshold);
+        }
+        else {
+            return threshold;
+        }
+    }
+
+    private void selectPoints(XYDataset dataset, double lower, double upper, int pixels) {
+        if ((pixels < 1) || !(upper > lower)) {
+            return;
+        }
+
+        // pixel columns per unit of the domain axis
+        double scale = pixels / (upper - lower);
+
+        BitSet[] selected = new BitSet[dataset.getSeriesCount()];
+        boolean downsampled = false;
+
+        for (int series = 0; series < selected.length; series++) {
+            int itemCount = dataset.getItemCount(series);
+
+            if (itemCount <= (pixels * MIN_POINTS_PER_PIXEL)) {
+                continue;
+            }
+
+            BitSet bits = new BitSet(itemCount);
+
+            int column = Integer.MIN_VALUE;
+            int first = -1;
+            int last = -1;
+            int min = -1;
+            int max = -1;
+            double minValue = Double.NaN;
+            double maxValue = Double.NaN;
+
+            for (int item = 0; item < itemCount; item++) {
+                double y = dataset.getYValue(series, item);
+
+                if (Double.isNaN(y)) {
+                    continue;
+                }
+
+                // points outside the axis range all go into the columns on either side
+                double x = (dataset.getXValue(series, item) - lower) * scale;
+                int current = x < 0 ? -1 : (x >= pixels ? pixels : (int) x);
+
+                if (current != column) {
+                    if (first != -1) {
+                        bits.set(first);
+                        bits.set(last);
+                        bits.set(min);
+                        bits.set(max);
+                    }
+
+                    column = current;
+                    first = last = min = max = item;
+                    minValue = maxValue = y;
+                }
+                else {
+                    last = item;
+
+                    if (y < minValue) {
+                        minValue = y;
+                        min = item;
+                    }
+
+                    if (y > maxValue) {
+                        maxValue = y;
+                        max = item;
+                    }
+                }
+            }
+
+            if (first != -1) {
+                bits.set(first);
+                bits.set(last);
+                bits.set(min);
+                bits.set(max);
+            }
+
+            selected[series] = bits;
+            downsampled = true;
+        }
+
+        if (downsampled) {
+            this.selected = selected;
+            this.sampledDataset = new SampledXYDataset(dataset, selected);
+            this.sampledGapThreshold = 2 / scale;
+        }
+    }
+
+    // view of a dataset with NaN for all the points that are not selected
+    private static final class SampledXYDataset extends AbstractXYDataset {
+        private static final long serialVersionUID = 6000522434838563498L;
+
+        private final XYDataset delegate;
+        private final BitSet[] selected;
+
+        SampledXYDataset(XYDataset delegate, BitSet[] selected) {
+            this.delegate = delegate;
+            this.selected = selected;
+        }
+
+        @Override
+        public int getSeriesCount() {
+            return delegate.getSeriesCount();
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Comparable getSeriesKey(int series) {
+            return delegate.getSeriesKey(series);
+        }
+
+        @Override
+        public int getItemCount(int series) {
+            return delegate.getItemCount(series);
+        }
+
+        @Override
+        public Number getX(int series, int item) {
+            return delegate.getX(series, item);
+        }
+
+        @Override
+        public double getXValue(int series, int item) {
+            return delegate.getXValue(series, item);
+        }
+
+        @Override
+        public Number getY(int series, int item) {
+            return isSelected(series, item) ? delegate.getY(series, item) : null;
+        }
+
+        @Override
+        public double getYValue(int series, int item) {
+            return isSelected(series, item) ? delegate.getYValue(series, item) : Double.NaN;
+        }
+
+        private boolean isSelected(int series, int item) {
+            return (selected[series] == null) || selected[series].get(item);
+        }
+    }
+}
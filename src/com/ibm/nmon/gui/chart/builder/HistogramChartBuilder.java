@@ -16,6 +16,7 @@ import org.jfree.data.statistics.HistogramType;
 import com.ibm.nmon.data.DataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.FieldHandle;
 import com.ibm.nmon.data.DataTuple;
 
 import com.ibm.nmon.data.definition.DataDefinition;
@@ -155,9 +156,11 @@ public final class HistogramChartBuilder extends BaseChartBuilder<HistogramChart
                         // class' record. Assume this class' interval and the record's are
                         // synchronized by the caller.
 
+                        FieldHandle handle = data.getField(type, field);
+
                         for (DataRecord record : data.getRecords(analysis.getInterval())) {
-                            if (record.hasData(type)) {
-                                values.add(record.getData(type)[type.getFieldIndex(field)]);
+                            if (handle.hasData(record)) {
+                                values.add(handle.getValue(record));
                             }
                         }
 
@@ -17,14 +17,13 @@ import org.jfree.chart.renderer.xy.StandardXYItemRenderer;
 import org.jfree.chart.util.RelativeDateFormat;
 import org.jfree.util.UnitType;
 
-import org.jfree.data.time.FixedMillisecond;
-
 import org.jfree.data.xy.XYDataset;
 
 import com.ibm.nmon.data.DataSet;
-import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataTuple;
+import com.ibm.nmon.data.FieldHandle;
+import com.ibm.nmon.data.FieldSummary;
 
 import com.ibm.nmon.data.definition.DataDefinition;
 import com.ibm.nmon.data.definition.NamingMode;
@@ -32,10 +31,9 @@ import com.ibm.nmon.gui.chart.data.DataTupleXYDataset;
 
 import com.ibm.nmon.chart.definition.LineChartDefinition;
 
-import com.ibm.nmon.analysis.Statistic;
-
 public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
     private boolean showLegends = true;
+    private boolean downsample = true;
 
     public LineChartBuilder() {
         super();
@@ -58,8 +56,9 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
             plot = new XYPlot(dataset, timeAxis, valueAxis, renderer);
         }
         else {
-            StandardXYItemRenderer renderer = new StandardXYItemRenderer();
+            DownsamplingXYItemRenderer renderer = new DownsamplingXYItemRenderer();
             renderer.setBaseSeriesVisible(true, false);
+            renderer.setDownsample(downsample);
 
             plot = new XYPlot(dataset, timeAxis, valueAxis, renderer);
         }
@@ -74,8 +73,9 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
             // secondary axis data cannot be stacked, so use the the standard, line based
             // rendering
             // for both types
-            StandardXYItemRenderer renderer = new StandardXYItemRenderer();
+            DownsamplingXYItemRenderer renderer = new DownsamplingXYItemRenderer();
             renderer.setBaseSeriesVisible(true, false);
+            renderer.setDownsample(downsample);
 
             plot.setRangeAxis(1, valueAxis);
             plot.setRenderer(1, renderer);
@@ -171,8 +171,79 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
         updateChart();
     }
 
+    /**
+     * Add the records that have been appended to the DataSet since the chart was built. The chart must have been built
+     * by this builder with the same definition, interval and granularity. Only the points after the last complete
+     * granularity period are recalculated so the result is the same as rebuilding the whole chart.
+     */
+    public void appendLine(JFreeChart chart, LineChartDefinition definition, DataSet data) {
+        this.chart = chart;
+        this.definition = definition;
+
+        try {
+            for (DataDefinition dataDefinition : definition.getData()) {
+                DataTupleXYDataset dataset = (DataTupleXYDataset) chart.getXYPlot()
+                        .getDataset(dataDefinition.usesSecondaryYAxis() ? 1 : 0);
+
+                appendMatchingData(dataset, dataDefinition, data, definition.getLineNamingMode());
+            }
+
+            completeAppend();
+        }
+        finally {
+            this.chart = null;
+            this.definition = null;
+        }
+    }
+
+    /**
+     * Add the records that have been appended to the DataSet since the chart was built with
+     * {@link #addLinesForData(DataDefinition, DataSet, NamingMode)}.
+     * 
+     * @see #appendLine(JFreeChart, LineChartDefinition, DataSet)
+     */
+    public void appendLinesForData(JFreeChart chart, LineChartDefinition chartDefinition, DataDefinition definition,
+            DataSet data, NamingMode lineNamingMode) {
+        this.chart = chart;
+        this.definition = chartDefinition;
+
+        try {
+            DataTupleXYDataset dataset = (DataTupleXYDataset) chart.getXYPlot()
+                    .getDataset(definition.usesSecondaryYAxis() ? 1 : 0);
+
+            appendMatchingData(dataset, definition, data, lineNamingMode);
+
+            completeAppend();
+        }
+        finally {
+            this.chart = null;
+            this.definition = null;
+        }
+    }
+
+    private void completeAppend() {
+        updateChart();
+
+        // data was added without notification; redraw once
+        ((DataTupleXYDataset) chart.getXYPlot().getDataset(0)).fireDatasetChanged();
+
+        if (definition.hasSecondaryYAxis()) {
+            ((DataTupleXYDataset) chart.getXYPlot().getDataset(1)).fireDatasetChanged();
+        }
+    }
+
     private void addMatchingData(DataTupleXYDataset dataset, DataDefinition definition, DataSet data,
             NamingMode lineNamingMode) {
+        addMatchingData(dataset, definition, data, lineNamingMode, false);
+    }
+
+    private void appendMatchingData(DataTupleXYDataset dataset, DataDefinition definition, DataSet data,
+            NamingMode lineNamingMode) {
+        addMatchingData(dataset, definition, data, lineNamingMode, true);
+    }
+
+    private void addMatchingData(DataTupleXYDataset dataset, DataDefinition definition, DataSet data,
+            NamingMode lineNamingMode, boolean append) {
 
         if (definition == null) {
             throw new IllegalArgumentException("LineChartDefintion cannot be null");
@@ -188,129 +259,84 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
                             lineNamingMode.getName(definition, data, type, field, getInterval(), getGranularity()));
                 }
 
-                addData(definition, dataset, data, type, fields, fieldNames);
+                addData(definition, dataset, data, type, fields, fieldNames, append);
             }
         }
     }
 
     private void addData(DataDefinition dataDefinition, DataTupleXYDataset dataset, DataSet data, DataType type,
-            List<String> fields, List<String> fieldNames) {
+            List<String> fields, List<String> fieldNames, boolean append) {
         long start = System.nanoTime();
 
-        double[] totals = new double[fields.size()];
-        // use NaN as chart data when no values are defined rather than 0
-        java.util.Arrays.fill(totals, Double.NaN);
+        long lastOutputTime = Math.max(getInterval().getStart(), data.getStartTime());
+        // start of the current granularity period
+        long windowStart = getInterval().getStart();
+        // no records after the end of the data; also ensures Long.MAX_VALUE means there is no next record
+        long windowEnd = Math.min(getInterval().getEnd(), data.getEndTime());
 
-        int n = 0;
+        if (append && !fieldNames.isEmpty()) {
+            long previousOutputTime = dataset.getLastOutputTime(fieldNames.get(0));
 
-        long lastOutputTime = Math.max(getInterval().getStart(), data.getStartTime());
+            // otherwise, this is a new type so add all its data
+            if (previousOutputTime != Long.MIN_VALUE) {
+                lastOutputTime = previousOutputTime;
 
-        for (DataRecord record : data.getRecords(getInterval())) {
-            if ((record != null) && record.hasData(type)) {
-                for (int i = 0; i < fields.size(); i++) {
-                    if (type.hasField(fields.get(i))) {
-                        double value = record.getData(type, fields.get(i));
-
-                        if (!Double.isNaN(value)) {
-                            if (Double.isNaN(totals[i])) {
-                                if (dataDefinition.getStatistic() == Statistic.MINIMUM) {
-                                    totals[i] = Double.MAX_VALUE;
-                                }
-                                else if (dataDefinition.getStatistic() == Statistic.MAXIMUM) {
-                                    totals[i] = Double.MIN_VALUE;
-                                }
-                                else {
-                                    totals[i] = 0;
-                                }
-                            }
-
-                            switch (dataDefinition.getStatistic()) {
-                            case AVERAGE:
-                                totals[i] += value;
-                                break;
-                            case MAXIMUM:
-                                if (value > totals[i]) {
-                                    totals[i] = value;
-                                }
-                                break;
-                            case MINIMUM:
-                                if (value < totals[i]) {
-                                    totals[i] = value;
-                                }
-                                break;
-                            case COUNT:
-                                ++totals[i];
-                                break;
-                            case SUM:
-                                totals[i] += value;
-                                break;
-                            default:
-                                throw new IllegalArgumentException(
-                                        "canonot calculate " + dataDefinition.getStatistic() + " on a line chart");
-                            }
-                        }
-                    }
-                }
+                // the final point covers a partial granularity period; recalculate it with the new records
+                dataset.removeValuesAfter(lastOutputTime, fieldNames);
 
-                ++n;
+                windowStart = lastOutputTime + 1;
             }
-            // else no data for this type at this time but may still need to output
-
-            if ((n > 0) && ((record.getTime() - lastOutputTime) >= getGranularity())) {
-                FixedMillisecond graphTime = new FixedMillisecond(record.getTime());
-
-                for (int i = 0; i < fields.size(); i++) {
-                    if (logger.isTraceEnabled()) {
-                        logger.trace(new java.util.Date(record.getTime()) + "\t" + type + "\t" + totals[i] + "\t"
-                                + totals[i] / n + "\t" + n + "\t" + (record.getTime() - lastOutputTime));
-                    }
-
-                    if (!Double.isNaN(totals[i])) {
-                        // if the plot is listening for dataset changes, it will fire an event for every data point
-                        // this causes a huge amount of GC and very slow response times so the false value is important
-                        if (dataDefinition.getStatistic() == Statistic.AVERAGE) {
-                            dataset.add(graphTime, totals[i] / n, fieldNames.get(i), false);
-                        }
-                        else {
-                            dataset.add(graphTime, totals[i], fieldNames.get(i), false);
-                        }
-                    }
-
-                    // reset totals
-                    totals[i] = Double.NaN;
-                }
+        }
 
-                lastOutputTime = record.getTime();
-                n = 0;
-            }
+        // only associate tuples with new series when appending
+        int existingSeries = append ? dataset.getSeriesCount() : 0;
+
+        // resolve the fields once rather than looking them up for every record
+        FieldHandle[] handles = new FieldHandle[fields.size()];
+
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = data.getField(type, fields.get(i));
         }
 
-        // output final data point, if needed
-        long endTime = data.getEndTime();
+        // each point summarizes the records since the last one, so use the DataSet's rollups rather than reading every
+        // record; a point is output at the first record with data that is at least granularity after the last point
+        while (handles.length > 0) {
+            long outputTime = data.getNextTime(Math.max(windowStart, lastOutputTime + getGranularity()));
 
-        if (endTime != lastOutputTime) {
-            FixedMillisecond graphTime = new FixedMillisecond(endTime);
+            if (outputTime > windowEnd) {
+                break;
+            }
 
-            for (int i = 0; i < fields.size(); i++) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace(new java.util.Date(endTime) + "\t" + type + "\t" + totals[i] + "\t" + totals[i] / n
-                            + "\t" + n + "\t" + (endTime - lastOutputTime));
-                }
+            FieldSummary[] summaries = summarize(handles, windowStart, outputTime);
+
+            if (summaries[0].getRecordCount() == 0) {
+                // no data for this type at this time; wait for the next record that does have data
+                outputTime = handles[0].getNextTimeWithData(outputTime);
 
-                if (!Double.isNaN(totals[i])) {
-                    if (dataDefinition.getStatistic() == Statistic.AVERAGE) {
-                        dataset.add(graphTime, totals[i] / n, fieldNames.get(i), false);
-                    }
-                    else {
-                        dataset.add(graphTime, totals[i], fieldNames.get(i), false);
-                    }
+                if (outputTime > windowEnd) {
+                    break;
                 }
+
+                summaries = summarize(handles, windowStart, outputTime);
             }
+
+            addValues(dataDefinition, dataset, type, outputTime, lastOutputTime, summaries, fieldNames);
+
+            lastOutputTime = outputTime;
+            windowStart = outputTime + 1;
+        }
+
+        // output final data point, if needed
+        long endTime = data.getEndTime();
+
+        if ((endTime != lastOutputTime) && (handles.length > 0)) {
+            addValues(dataDefinition, dataset, type, endTime, lastOutputTime,
+                    summarize(handles, windowStart, windowEnd), fieldNames);
         }
 
         // fieldName may not have been used if there was no data
         // so, search the dataset first before associating tuples
-        for (int i = 0; i < dataset.getSeriesCount(); i++) {
+        for (int i = existingSeries; i < dataset.getSeriesCount(); i++) {
             int idx = fieldNames.indexOf(dataset.getSeriesKey(i));
 
             if (idx != -1) {
@@ -318,12 +344,76 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
             }
         }
 
+        // save where to start if data is appended later
+        for (String fieldName : fieldNames) {
+            dataset.setLastOutputTime(fieldName, lastOutputTime);
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("{}: {}-({} fields) added {} data points to chart '{}' in {}ms", data, type, fieldNames.size(),
                     dataset.getItemCount(), definition.getTitle(), (System.nanoTime() - start) / 1000000.0d);
         }
     }
 
+    private static FieldSummary[] summarize(FieldHandle[] handles, long start, long end) {
+        FieldSummary[] summaries = new FieldSummary[handles.length];
+
+        for (int i = 0; i < handles.length; i++) {
+            summaries[i] = handles[i].summarize(start, end);
+        }
+
+        return summaries;
+    }
+
+    private void addValues(DataDefinition dataDefinition, DataTupleXYDataset dataset, DataType type, long time,
+            long lastOutputTime, FieldSummary[] summaries, List<String> fieldNames) {
+        double[] values = new double[summaries.length];
+
+        for (int i = 0; i < summaries.length; i++) {
+            FieldSummary summary = summaries[i];
+
+            if (logger.isTraceEnabled()) {
+                logger.trace(new java.util.Date(time) + "\t" + type + "\t" + summary.getSum() + "\t"
+                        + summary.getAverage() + "\t" + summary.getRecordCount() + "\t" + (time - lastOutputTime));
+            }
+
+            // use NaN as chart data when no values are defined rather than 0
+            if (summary.getCount() == 0) {
+                values[i] = Double.NaN;
+                continue;
+            }
+
+            double value = Double.NaN;
+
+            switch (dataDefinition.getStatistic()) {
+            case AVERAGE:
+                // average over all the records with data for the type, even if this field was not defined
+                value = summary.getSum() / summary.getRecordCount();
+                break;
+            case MAXIMUM:
+                value = Math.max(Double.MIN_VALUE, summary.getMaximum());
+                break;
+            case MINIMUM:
+                value = Math.min(Double.MAX_VALUE, summary.getMinimum());
+                break;
+            case COUNT:
+                value = summary.getCount();
+                break;
+            case SUM:
+                value = summary.getSum();
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "canonot calculate " + dataDefinition.getStatistic() + " on a line chart");
+            }
+
+            values[i] = value;
+        }
+
+        // add all the fields at once; the dataset does not notify the plot so listeners are not called for every point
+        dataset.add(time, fieldNames, values);
+    }
+
     private void updateChart() {
         recalculateGapThreshold(0);
 
@@ -432,6 +522,19 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
         return showLegends;
     }
 
+    /**
+     * Only draw the points that are visible at the chart's rendered size. Stacked charts are never downsampled.
+     * 
+     * @see DownsamplingXYItemRenderer
+     */
+    public void setDownsample(boolean downsample) {
+        this.downsample = downsample;
+    }
+
+    public boolean getDownsample() {
+        return downsample;
+    }
+
     /**
      * Sets the X axis to display time relative to the given start time.
      */
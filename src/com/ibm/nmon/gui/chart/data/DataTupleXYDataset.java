@@ -1,19 +1,62 @@
 package com.ibm.nmon.gui.chart.data;
 
 import java.util.List;
+import java.util.Map;
 
-import org.jfree.data.time.TimeTableXYDataset;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+import org.jfree.data.xy.TableXYDataset;
 
 import com.ibm.nmon.data.DataTuple;
 
-public final class DataTupleXYDataset extends TimeTableXYDataset implements DataTupleDataset {
+/**
+ * <p>
+ * Time series data for line charts. All series share the same set of times, so this dataset can be used for both line
+ * and stacked area charts.
+ * </p>
+ *
+ * <p>
+ * Times are stored in a single <code>long</code> array and each series' values in a <code>double</code> array indexed
+ * the same way. Missing values are stored as <code>NaN</code>; {@link #getY(int, int)} returns <code>null</code> for
+ * these. Values are expected to be added in time order. Values for earlier times that are not already in the dataset
+ * are buffered and merged in a single pass the next time the data is read, so adding lines from multiple DataSets does
+ * not require shifting the arrays for every value.
+ * </p>
+ */
+public final class DataTupleXYDataset extends AbstractIntervalXYDataset
+        implements TableXYDataset, DomainInfo, DataTupleDataset {
     private static final long serialVersionUID = 9065578614822952026L;
 
+    private static final int INITIAL_CAPACITY = 256;
+
     private final List<DataTuple> tuples;
 
     private final boolean stacked;
     private GraphData[] graphData;
 
+    // sorted, unique times; values[series][item] is the value for times[item]
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int itemCount;
+
+    @SuppressWarnings("rawtypes")
+    private final List<Comparable> seriesKeys = new java.util.ArrayList<Comparable>();
+    @SuppressWarnings("rawtypes")
+    private final Map<Comparable, Integer> seriesIndexes = new java.util.HashMap<Comparable, Integer>();
+    private double[][] values = new double[0][];
+
+    // values added for times before the last time that are not already in the dataset
+    private long[] pendingTimes;
+    private int[] pendingSeries;
+    private double[] pendingValues;
+    private int pendingCount;
+
+    // time of the last complete point for each series; used when appending data
+    @SuppressWarnings("rawtypes")
+    private final Map<Comparable, Long> lastOutputTimes = new java.util.HashMap<Comparable, Long>();
+
     private DatasetCallback callback = new DatasetCallback() {
         @Override
         public int getDataCount() {
@@ -49,6 +92,259 @@ public final class DataTupleXYDataset extends TimeTableXYDataset implements Data
         }
     }
 
+    /**
+     * Add a single value without notifying listeners. <code>NaN</code> values are ignored. An existing value for the
+     * same time and series is replaced.
+     */
+    @SuppressWarnings("rawtypes")
+    public void add(long time, double value, Comparable seriesName) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        addValue(findOrAddItem(time), time, getOrAddSeries(seriesName), value);
+        graphData = null;
+    }
+
+    /**
+     * Add values for multiple series at the same time without notifying listeners. <code>NaN</code> values are
+     * ignored; a series is only created when it has a value.
+     */
+    @SuppressWarnings("rawtypes")
+    public void add(long time, List<? extends Comparable> seriesNames, double[] values) {
+        if (seriesNames.size() != values.length) {
+            throw new IllegalArgumentException("the number of series names (" + seriesNames.size()
+                    + ") must equal the number of values (" + values.length + ")");
+        }
+
+        int item = Integer.MIN_VALUE;
+
+        for (int i = 0; i < values.length; i++) {
+            if (Double.isNaN(values[i])) {
+                continue;
+            }
+
+            int series = getOrAddSeries(seriesNames.get(i));
+
+            // only add the time if there is a value
+            if (item == Integer.MIN_VALUE) {
+                item = findOrAddItem(time);
+            }
+
+            addValue(item, time, series, values[i]);
+            graphData = null;
+        }
+    }
+
+    /**
+     * Remove the values for the given series at all times after the given time. Times and series that no longer have
+     * any values are removed.
+     */
+    @SuppressWarnings("rawtypes")
+    public void removeValuesAfter(long time, List<? extends Comparable> seriesNames) {
+        mergePending();
+
+        // first item after the given time
+        int first = java.util.Arrays.binarySearch(times, 0, itemCount, time);
+        first = first < 0 ? -(first + 1) : first + 1;
+
+        if (first == itemCount) {
+            return;
+        }
+
+        for (Comparable seriesName : seriesNames) {
+            int idx = indexOf(seriesName);
+
+            if (idx != -1) {
+                java.util.Arrays.fill(values[idx], first, itemCount, Double.NaN);
+            }
+        }
+
+        // remove times that no longer have data, shifting the remaining values down
+        int n = first;
+
+        for (int item = first; item < itemCount; item++) {
+            boolean hasData = false;
+
+            for (int series = 0; series < values.length; series++) {
+                if (!Double.isNaN(values[series][item])) {
+                    hasData = true;
+                    break;
+                }
+            }
+
+            if (hasData) {
+                if (n != item) {
+                    times[n] = times[item];
+
+                    for (int series = 0; series < values.length; series++) {
+                        values[series][n] = values[series][item];
+                    }
+                }
+
+                ++n;
+            }
+        }
+
+        for (int series = 0; series < values.length; series++) {
+            java.util.Arrays.fill(values[series], n, itemCount, Double.NaN);
+        }
+
+        itemCount = n;
+
+        // remove series with no remaining values, along with their tuples
+        for (Comparable seriesName : seriesNames) {
+            int idx = indexOf(seriesName);
+
+            if ((idx != -1) && isEmpty(idx)) {
+                removeSeries(idx);
+
+                if (idx < tuples.size()) {
+                    tuples.remove(idx);
+                }
+
+                lastOutputTimes.remove(seriesName);
+            }
+        }
+
+        graphData = null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void setLastOutputTime(Comparable seriesName, long time) {
+        lastOutputTimes.put(seriesName, time);
+    }
+
+    /**
+     * @return the time of the last point that covered a complete granularity period or <code>Long.MIN_VALUE</code> if
+     *         the series was not added by a chart builder
+     */
+    @SuppressWarnings("rawtypes")
+    public long getLastOutputTime(Comparable seriesName) {
+        Long time = lastOutputTimes.get(seriesName);
+
+        return time == null ? Long.MIN_VALUE : time;
+    }
+
+    /**
+     * Notify listeners after data has been added.
+     */
+    @Override
+    public void fireDatasetChanged() {
+        super.fireDatasetChanged();
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return seriesKeys.size();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        return seriesKeys.get(series);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public int indexOf(Comparable seriesKey) {
+        Integer idx = seriesIndexes.get(seriesKey);
+
+        return idx == null ? -1 : idx;
+    }
+
+    @Override
+    public int getItemCount() {
+        mergePending();
+        return itemCount;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return getItemCount();
+    }
+
+    /**
+     * @return the time, in milliseconds, for the given item
+     */
+    public long getTime(int item) {
+        mergePending();
+        return times[item];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getTime(item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return getTime(item);
+    }
+
+    @Override
+    public Number getStartX(int series, int item) {
+        return getX(series, item);
+    }
+
+    @Override
+    public double getStartXValue(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public Number getEndX(int series, int item) {
+        return getX(series, item);
+    }
+
+    @Override
+    public double getEndXValue(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        double value = getYValue(series, item);
+
+        return Double.isNaN(value) ? null : value;
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        mergePending();
+        return values[series][item];
+    }
+
+    @Override
+    public Number getStartY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public Number getEndY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return getItemCount() == 0 ? Double.NaN : times[0];
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return getItemCount() == 0 ? Double.NaN : times[itemCount - 1];
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return getItemCount() == 0 ? null : new Range(times[0], times[itemCount - 1]);
+    }
+
     @Override
     public DataTuple getTuple(int row, int column) {
         return tuples.get(row);
@@ -145,6 +441,163 @@ public final class DataTupleXYDataset extends TimeTableXYDataset implements Data
         }
     }
 
+    @SuppressWarnings("rawtypes")
+    private int getOrAddSeries(Comparable seriesName) {
+        Integer idx = seriesIndexes.get(seriesName);
+
+        if (idx != null) {
+            return idx;
+        }
+
+        if (seriesName == null) {
+            throw new IllegalArgumentException("series name cannot be null");
+        }
+
+        double[] seriesValues = new double[times.length];
+        java.util.Arrays.fill(seriesValues, Double.NaN);
+
+        values = java.util.Arrays.copyOf(values, values.length + 1);
+        values[values.length - 1] = seriesValues;
+
+        seriesKeys.add(seriesName);
+        seriesIndexes.put(seriesName, seriesKeys.size() - 1);
+
+        return seriesKeys.size() - 1;
+    }
+
+    private void removeSeries(int series) {
+        double[][] newValues = new double[values.length - 1][];
+        System.arraycopy(values, 0, newValues, 0, series);
+        System.arraycopy(values, series + 1, newValues, series, newValues.length - series);
+        values = newValues;
+
+        seriesIndexes.remove(seriesKeys.remove(series));
+
+        for (int i = series; i < seriesKeys.size(); i++) {
+            seriesIndexes.put(seriesKeys.get(i), i);
+        }
+    }
+
+    private boolean isEmpty(int series) {
+        for (int item = 0; item < itemCount; item++) {
+            if (!Double.isNaN(values[series][item])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the index of the time, adding it if it is after all the current times, or <code>-1</code> if the time
+     *         must be merged in later
+     */
+    private int findOrAddItem(long time) {
+        if ((itemCount == 0) || (time > times[itemCount - 1])) {
+            if (itemCount == times.length) {
+                int capacity = times.length * 2;
+
+                times = java.util.Arrays.copyOf(times, capacity);
+
+                for (int series = 0; series < values.length; series++) {
+                    double[] seriesValues = java.util.Arrays.copyOf(values[series], capacity);
+                    java.util.Arrays.fill(seriesValues, itemCount, capacity, Double.NaN);
+                    values[series] = seriesValues;
+                }
+            }
+
+            times[itemCount] = time;
+            return itemCount++;
+        }
+        else {
+            int idx = java.util.Arrays.binarySearch(times, 0, itemCount, time);
+
+            return idx < 0 ? -1 : idx;
+        }
+    }
+
+    private void addValue(int item, long time, int series, double value) {
+        if (item != -1) {
+            values[series][item] = value;
+            return;
+        }
+
+        if (pendingTimes == null) {
+            pendingTimes = new long[INITIAL_CAPACITY];
+            pendingSeries = new int[INITIAL_CAPACITY];
+            pendingValues = new double[INITIAL_CAPACITY];
+        }
+        else if (pendingCount == pendingTimes.length) {
+            int capacity = pendingCount * 2;
+
+            pendingTimes = java.util.Arrays.copyOf(pendingTimes, capacity);
+            pendingSeries = java.util.Arrays.copyOf(pendingSeries, capacity);
+            pendingValues = java.util.Arrays.copyOf(pendingValues, capacity);
+        }
+
+        pendingTimes[pendingCount] = time;
+        pendingSeries[pendingCount] = series;
+        pendingValues[pendingCount] = value;
+        ++pendingCount;
+    }
+
+    // merge the out of order values into the sorted arrays
+    private void mergePending() {
+        if (pendingCount == 0) {
+            return;
+        }
+
+        long[] sorted = java.util.Arrays.copyOf(pendingTimes, pendingCount);
+        java.util.Arrays.sort(sorted);
+
+        long[] newTimes = new long[Math.max(INITIAL_CAPACITY, Integer.highestOneBit(itemCount + pendingCount) * 2)];
+        // new index for each existing item
+        int[] positions = new int[itemCount];
+
+        int i = 0;
+        int j = 0;
+        int n = 0;
+
+        while ((i < itemCount) || (j < pendingCount)) {
+            long next = ((j == pendingCount) || ((i < itemCount) && (times[i] <= sorted[j]))) ? times[i] : sorted[j];
+
+            if ((i < itemCount) && (times[i] == next)) {
+                positions[i++] = n;
+            }
+
+            while ((j < pendingCount) && (sorted[j] == next)) {
+                ++j;
+            }
+
+            newTimes[n++] = next;
+        }
+
+        for (int series = 0; series < values.length; series++) {
+            double[] seriesValues = new double[newTimes.length];
+            java.util.Arrays.fill(seriesValues, Double.NaN);
+
+            for (int item = 0; item < itemCount; item++) {
+                seriesValues[positions[item]] = values[series][item];
+            }
+
+            values[series] = seriesValues;
+        }
+
+        times = newTimes;
+        itemCount = n;
+
+        // apply in the order added so later values replace earlier ones
+        for (int p = 0; p < pendingCount; p++) {
+            int item = java.util.Arrays.binarySearch(times, 0, itemCount, pendingTimes[p]);
+            values[pendingSeries[p]][item] = pendingValues[p];
+        }
+
+        pendingTimes = null;
+        pendingSeries = null;
+        pendingValues = null;
+        pendingCount = 0;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -1,8 +1,6 @@
 package com.ibm.nmon.gui.chart.data;
 
-import java.util.List;
-
-import com.ibm.nmon.analysis.AnalysisRecord;
+import com.ibm.nmon.analysis.StatisticsCalculator;
 
 final class GraphData {
     int count = 0;
@@ -30,7 +28,8 @@ final class GraphData {
 
             int itemCount = callback.getItemCount(i);
 
-            List<Double> allValues = new java.util.ArrayList<Double>(itemCount);
+            StatisticsCalculator statistics = StatisticsCalculator.forCurrentThread();
+            statistics.ensureCapacity(itemCount);
 
             for (int j = 0; j < itemCount; j++) {
                 double value = callback.getValue(i, j);
@@ -39,39 +38,23 @@ final class GraphData {
                     continue;
                 }
 
-                data.sum += value;
-
-                if (value > data.maximum) {
-                    data.maximum = value;
-                }
-
-                if (value < data.minimum) {
-                    data.minimum = value;
-                }
-
-                allValues.add(value);
+                statistics.add(value);
             }
 
-            if (allValues.size() > 0) {
-                data.count = allValues.size();
-                data.average = data.sum / data.count;
-
-                java.util.Collections.sort(allValues);
-
-                data.median = AnalysisRecord.calculatePercentile(.5, allValues);
-                data.percentile95 = AnalysisRecord.calculatePercentile(.95, allValues);
-                data.percentile99 = AnalysisRecord.calculatePercentile(.99, allValues);
+            if (statistics.getCount() > 0) {
+                data.count = statistics.getCount();
+                data.sum = statistics.getSum();
+                data.average = statistics.getAverage();
+                data.weightedAverage = statistics.getWeightedAverage();
+                data.standardDeviation = statistics.getStandardDeviation();
 
-                double sumSqs = 0;
-                double sumSqDiffs = 0;
-
-                for (double value : allValues) {
-                    sumSqs += value * value;
-                    sumSqDiffs += Math.pow(value - data.average, 2);
-                }
+                // min and max are never more extreme than their initial values
+                data.minimum = Math.min(Double.MAX_VALUE, statistics.getMinimum());
+                data.maximum = Math.max(Double.MIN_VALUE, statistics.getMaximum());
 
-                data.weightedAverage = sumSqs / data.sum;
-                data.standardDeviation = Math.sqrt(sumSqDiffs / data.count);
+                data.median = statistics.getPercentile(.5);
+                data.percentile95 = statistics.getPercentile(.95);
+                data.percentile99 = statistics.getPercentile(.99);
             }
             else {
                 // file has data, but not for the given interval
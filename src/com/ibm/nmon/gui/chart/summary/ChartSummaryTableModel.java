@@ -10,6 +10,10 @@ import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
+import org.jfree.data.general.Dataset;
+import org.jfree.data.general.DatasetChangeEvent;
+import org.jfree.data.general.DatasetChangeListener;
+
 import com.ibm.nmon.data.DataTuple;
 import com.ibm.nmon.data.DataType;
 
@@ -27,9 +31,11 @@ import com.ibm.nmon.gui.main.NMONVisualizerGui;
  * Table model for {@link ChartSummaryPanel}. This model holds a single {@link DataTupleDataset} which is used to
  * display various summary data about the chart. For bar charts, this model displays a row for each row / column
  * combination in the chart DataSet. For line and interval line charts, there will be one row for each series (i.e.
- * line).
+ * line). The model listens for changes to the dataset so the summary data is updated when data is appended to the
+ * chart.
  */
-public final class ChartSummaryTableModel extends ChoosableColumnTableModel implements PropertyChangeListener {
+public final class ChartSummaryTableModel extends ChoosableColumnTableModel
+        implements PropertyChangeListener, DatasetChangeListener {
     private static final long serialVersionUID = -4224937019632087892L;
 
     // check mark
@@ -395,7 +401,9 @@ public final class ChartSummaryTableModel extends ChoosableColumnTableModel impl
             return;
         }
 
+        listen(this.dataset, false);
         this.dataset = dataset;
+        listen(dataset, true);
 
         if (dataset == null) {
             fireTableDataChanged();
@@ -528,11 +536,48 @@ public final class ChartSummaryTableModel extends ChoosableColumnTableModel impl
             // note that rowVisibleCache has already been added to visibleRowCache in setData()
             // no need to copy and store here
 
+            listen(dataset, false);
             dataset = null;
             fireTableDataChanged();
         }
     }
 
+    @Override
+    public void datasetChanged(DatasetChangeEvent event) {
+        if ((dataset == null) || (event.getDataset() != dataset)) {
+            return;
+        }
+
+        int rowCount = getRowCount();
+
+        if ((rowVisible != null) && (rowVisible.length == rowCount)) {
+            if (rowCount > 0) {
+                // same lines, new values
+                fireTableRowsUpdated(0, rowCount - 1);
+            }
+        }
+        else {
+            // lines were added; reset as if this was a new chart
+            DataTupleDataset changed = dataset;
+
+            listen(dataset, false);
+            dataset = null;
+
+            setData(changed);
+        }
+    }
+
+    private void listen(DataTupleDataset dataset, boolean add) {
+        if (dataset instanceof Dataset) {
+            if (add) {
+                ((Dataset) dataset).addChangeListener(this);
+            }
+            else {
+                ((Dataset) dataset).removeChangeListener(this);
+            }
+        }
+    }
+
     void addPropertyChangeListener(PropertyChangeListener listener) {
         propertyChangeSupport.addPropertyChangeListener(listener);
     }
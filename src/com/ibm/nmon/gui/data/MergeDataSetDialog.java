@@ -66,14 +66,13 @@ public final class MergeDataSetDialog extends GUIDialog {
                     dispose();
                 }
                 else {
-                    for (SystemDataSet data : MergeDataSetDialog.this.gui.getDataSets()) {
-                        if (data.getHostname().equals(hostname)) {
-                            data.addData(MergeDataSetDialog.this.toMerge);
-                            MergeDataSetDialog.this.gui.removeDataSet(MergeDataSetDialog.this.toMerge);
-                            MergeDataSetDialog.this.gui.updateDataSet(data);
-                            dispose();
-                            return;
-                        }
+                    SystemDataSet data = MergeDataSetDialog.this.gui.getDataSet(hostname);
+
+                    if (data != null) {
+                        data.addData(MergeDataSetDialog.this.toMerge);
+                        MergeDataSetDialog.this.gui.removeDataSet(MergeDataSetDialog.this.toMerge);
+                        MergeDataSetDialog.this.gui.updateDataSet(data);
+                        dispose();
                     }
                 }
             }
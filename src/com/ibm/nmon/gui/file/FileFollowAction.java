@@ -0,0 +1,92 @@
+package com.ibm.nmon.gui.file;
+
+import java.awt.event.ActionListener;
+import java.awt.event.ActionEvent;
+
+import java.io.File;
+
+import java.util.TimeZone;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import com.ibm.nmon.file.CombinedFileFilter;
+import com.ibm.nmon.file.SwingAndIOFileFilter;
+import com.ibm.nmon.gui.main.NMONVisualizerGui;
+import com.ibm.nmon.gui.util.TimeZoneComboBox;
+
+/**
+ * Creates a JFileChooser so the user can select an NMON file that is still being written. The file is parsed and then
+ * checked periodically for new data.
+ * 
+ * @see NMONVisualizerGui#follow(String, TimeZone)
+ */
+public final class FileFollowAction implements ActionListener {
+    private final JFileChooser chooser;
+    private final NMONVisualizerGui gui;
+
+    private final TimeZoneComboBox timeZones;
+
+    public FileFollowAction(NMONVisualizerGui gui) {
+        this.gui = gui;
+
+        String directory = gui.getPreferences().get("lastDirectory", null);
+
+        if (directory == null) {
+            directory = ".";
+        }
+
+        chooser = new JFileChooser(directory);
+        chooser.setAcceptAllFileFilterUsed(false);
+        chooser.setMultiSelectionEnabled(false);
+        chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        chooser.setDialogTitle("Select NMON File to Follow");
+
+        // NMON filter is always first
+        SwingAndIOFileFilter filter = CombinedFileFilter.getInstance(true).getFilters().iterator().next();
+        chooser.addChoosableFileFilter(filter);
+        chooser.setFileFilter(filter);
+
+        timeZones = new TimeZoneComboBox(gui.getDisplayTimeZone());
+
+        GUIFileChooser.addComponentToChooser(chooser, "Time Zone:", timeZones);
+    }
+
+    public void actionPerformed(ActionEvent event) {
+        if (chooser.showDialog(gui.getMainFrame(), "Follow") != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File selectedFile = chooser.getSelectedFile();
+
+        if (selectedFile == null) {
+            return;
+        }
+
+        gui.getPreferences().put("lastDirectory", selectedFile.getParentFile().getAbsolutePath());
+
+        final String toFollow = selectedFile.getAbsolutePath();
+        final TimeZone timeZone = timeZones.getSelectedTimeZone();
+
+        // parse outside of the Swing event thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gui.follow(toFollow, timeZone);
+                }
+                catch (final Exception e) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            JOptionPane.showMessageDialog(gui.getMainFrame(),
+                                    "Error following file '" + toFollow + "'.\n" + e.getMessage(), "Parse Error",
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
+                }
+            }
+        }, getClass().getName() + " Parser").start();
+    }
+}
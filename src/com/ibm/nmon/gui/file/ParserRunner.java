@@ -11,7 +11,7 @@ import com.ibm.nmon.gui.main.NMONVisualizerGui;
 
 import com.ibm.nmon.gui.util.ItemProgressDialog;
 
-import com.ibm.nmon.util.ParserLog;
+import com.ibm.nmon.parser.FileParseListener;
 
 /**
  * Runnable responsible for actually parsing files. This keeps the parsing out of the Swing event
@@ -49,52 +49,38 @@ public final class ParserRunner implements Runnable {
         // i.e. dispose call at the end of run will not be called until after all the progress bar
         // updates are completed
 
-        ParserLog log = ParserLog.getInstance();
-
-        for (int i = 0; i < toParse.size(); i++) {
-            final String filename = toParse.get(i).replace('\\', '/');
-
-            log.setCurrentFilename(filename);
-
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    String name = filename;
-                    int idx = name.lastIndexOf('/');
-
-                    if (idx != -1) {
-                        name = name.substring(idx + 1);
-                    }
-
-                    progress.setCurrentItem(name);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (!toParse.isEmpty()) {
+                    progress.setCurrentItem(getName(toParse.get(0)));
                 }
-            });
-
-            try {
-                gui.parse(filename, timeZone);
-            }
-            catch (Exception e) {
-                log.getLogger().error("could not parse " + filename, e);
             }
+        });
 
-            if (log.hasData()) {
-                errors.put(log.getCurrentFilename(), log.getMessages());
-            }
+        // files are parsed concurrently but the listener is called in order as each file's data is added
+        gui.parse(toParse, timeZone, new FileParseListener() {
+            @Override
+            public void fileParsed(final String filename, String messages) {
+                if (messages != null) {
+                    errors.put(filename, messages);
+                }
 
-            // update the progress bar on each file
-            // wait here because parsing the very first file hits JIT, GC and object creation
-            // keep the parser from getting ahead of the UI so the user does not see a 'flash' of
-            // progress
-            try {
-                SwingUtilities.invokeAndWait(new Runnable() {
-                    public void run() {
-                        progress.updateProgress();
-                    }
-                });
-            }
-            catch (Exception e) {
-                // ignore
+                // update the progress bar on each file
+                // wait here to keep the parser from getting ahead of the UI so the user does not see a
+                // 'flash' of progress
+                try {
+                    SwingUtilities.invokeAndWait(new Runnable() {
+                        public void run() {
+                            progress.setCurrentItem(getName(filename));
+                            progress.updateProgress();
+                        }
+                    });
+                }
+                catch (Exception e) {
+                    // ignore
+                }
             }
-        }
+        });
 
         // close progress when done
         SwingUtilities.invokeLater(new Runnable() {
@@ -109,4 +95,15 @@ public final class ParserRunner implements Runnable {
             }
         });
     }
+
+    private static String getName(String filename) {
+        String name = filename.replace('\\', '/');
+        int idx = name.lastIndexOf('/');
+
+        if (idx != -1) {
+            name = name.substring(idx + 1);
+        }
+
+        return name;
+    }
 }
@@ -0,0 +1,46 @@
+package com.ibm.nmon.gui.file;
+
+import java.awt.event.ActionListener;
+import java.awt.event.ActionEvent;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import com.ibm.nmon.gui.main.NMONVisualizerGui;
+
+/**
+ * Stops following all files. Any data written since the files were last checked is parsed outside of the Swing event
+ * thread.
+ * 
+ * @see NMONVisualizerGui#stopFollowing(String)
+ */
+public final class StopFollowingAction implements ActionListener {
+    private final NMONVisualizerGui gui;
+
+    public StopFollowingAction(NMONVisualizerGui gui) {
+        this.gui = gui;
+    }
+
+    public void actionPerformed(ActionEvent event) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (final String file : gui.getFollowedFiles()) {
+                    try {
+                        gui.stopFollowing(file);
+                    }
+                    catch (final Exception e) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                JOptionPane.showMessageDialog(gui.getMainFrame(),
+                                        "Error parsing new data in '" + file + "'.\n" + e.getMessage(), "Parse Error",
+                                        JOptionPane.ERROR_MESSAGE);
+                            }
+                        });
+                    }
+                }
+            }
+        }, getClass().getName() + " Parser").start();
+    }
+}
@@ -200,6 +200,10 @@ abstract class BaseIntervalPanel extends JPanel implements DataSetListener, Prop
         setTimes(getDefaultStartTime(), getDefaultEndTime());
     }
 
+    public final void dataAppended(DataSet data) {
+        setTimes(getDefaultStartTime(), getDefaultEndTime());
+    }
+
     public final void dataCleared() {
         setTimes(getDefaultStartTime(), getDefaultEndTime());
     }
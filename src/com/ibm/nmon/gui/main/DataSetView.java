@@ -158,6 +158,15 @@ final class DataSetView extends ChartSplitPane {
         }
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        ReportPanel forData = reportPanels.get(data.getHostname());
+
+        if (forData != null) {
+            forData.dataAppended(data);
+        }
+    }
+
     @Override
     public void dataCleared() {
         for (ReportPanel report : reportPanels.values()) {
@@ -83,6 +83,15 @@ final class DataTypeView extends ChartSplitPane {
     @Override
     public void dataChanged(DataSet data) {}
 
+    @Override
+    public void dataAppended(DataSet data) {
+        DataSet current = chartPanel.getData();
+
+        if ((current != null) && current.equals(data)) {
+            chartPanel.dataAppended();
+        }
+    }
+
     @Override
     public void dataCleared() {
         chartPanel.clearChart();
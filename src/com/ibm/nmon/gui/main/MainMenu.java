@@ -13,11 +13,14 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 
 import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataSetCache;
 import com.ibm.nmon.data.DataSetListener;
 import com.ibm.nmon.data.transform.name.HostRenamerFactory;
 import com.ibm.nmon.data.transform.name.HostRenamer;
 import com.ibm.nmon.gui.Styles;
+import com.ibm.nmon.gui.file.FileFollowAction;
 import com.ibm.nmon.gui.file.FileLoadAction;
+import com.ibm.nmon.gui.file.StopFollowingAction;
 import com.ibm.nmon.gui.file.GUIFileChooser;
 import com.ibm.nmon.gui.chart.annotate.AnnotationCache;
 import com.ibm.nmon.gui.chart.builder.ChartFormatter;
@@ -78,6 +81,21 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
         JMenu menu = new JMenu("File");
         menu.setMnemonic('f');
 
+        menu.addMenuListener(new javax.swing.event.MenuListener() {
+            @Override
+            public void menuSelected(javax.swing.event.MenuEvent e) {
+                // File -> Stop Following
+                JMenuItem item = getMenu(0).getItem(2);
+                item.setEnabled(gui.getFollowedFiles().iterator().hasNext());
+            }
+
+            @Override
+            public void menuDeselected(javax.swing.event.MenuEvent e) {}
+
+            @Override
+            public void menuCanceled(javax.swing.event.MenuEvent e) {}
+        });
+
         JMenuItem item = new JMenuItem("Load...");
         item.setMnemonic('l');
         item.addActionListener(new FileLoadAction(gui));
@@ -85,6 +103,19 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
 
         menu.add(item);
 
+        item = new JMenuItem("Follow NMON File...");
+        item.setMnemonic('w');
+        item.addActionListener(new FileFollowAction(gui));
+
+        menu.add(item);
+
+        item = new JMenuItem("Stop Following");
+        item.setMnemonic('s');
+        item.setEnabled(false);
+        item.addActionListener(new StopFollowingAction(gui));
+
+        menu.add(item);
+
         menu.addSeparator();
 
         item = new JMenuItem("Remove All");
@@ -311,6 +342,19 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
 
         chartSubMenu.add(checkItem);
 
+        checkItem = new JCheckBoxMenuItem("Downsample Line Charts");
+        checkItem.setMnemonic('d');
+        checkItem.setSelected(gui.getBooleanProperty("lineChartDownsample"));
+
+        checkItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                gui.setProperty("lineChartDownsample", ((JCheckBoxMenuItem) e.getSource()).isSelected());
+            }
+        });
+
+        chartSubMenu.add(checkItem);
+
         chartSubMenu.addSeparator();
 
         item = new JMenuItem("Clear Annotations");
@@ -468,6 +512,53 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
 
         menu.add(checkItem);
 
+        checkItem = new JCheckBoxMenuItem("Only Parse Current Interval");
+        checkItem.setMnemonic('i');
+        checkItem.setSelected(gui.getBooleanProperty("parseCurrentIntervalOnly"));
+
+        checkItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                gui.setProperty("parseCurrentIntervalOnly", ((JCheckBoxMenuItem) e.getSource()).isSelected());
+            }
+        });
+
+        menu.add(checkItem);
+
+        checkItem = new JCheckBoxMenuItem("Cache Parsed Data");
+        checkItem.setMnemonic('d');
+        checkItem.setSelected(!"".equals(gui.getProperty("parseCacheDirectory")));
+
+        checkItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                gui.setProperty("parseCacheDirectory", ((JCheckBoxMenuItem) e.getSource()).isSelected()
+                        ? NMONVisualizerGui.DEFAULT_PARSE_CACHE_DIRECTORY : "");
+            }
+        });
+
+        menu.add(checkItem);
+
+        JMenuItem item = new JMenuItem("Clear Parse Cache");
+        item.setMnemonic('l');
+
+        item.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String directory = gui.getProperty("parseCacheDirectory");
+
+                if ("".equals(directory)) {
+                    // data may have been cached before caching was disabled
+                    directory = NMONVisualizerGui.DEFAULT_PARSE_CACHE_DIRECTORY;
+                }
+
+                int removed = new DataSetCache(new java.io.File(directory)).clear();
+
+                JOptionPane.showMessageDialog(gui.getMainFrame(), "Removed " + removed + " cached "
+                        + (removed == 1 ? "file" : "files") + " from\n" + directory, "Parse Cache",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+
+        menu.add(item);
+
         checkItem = new JCheckBoxMenuItem("Show Status Bar");
         checkItem.setMnemonic('b');
         checkItem.setSelected(gui.getBooleanProperty("showStatusBar"));
@@ -784,7 +875,7 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
 
     public void dataAdded(DataSet data) {
         // File -> Remove All
-        JMenuItem item = this.getMenu(0).getItem(2);
+        JMenuItem item = this.getMenu(0).getItem(4);
         item.setEnabled(true);
 
         changeDefaultIntervalName();
@@ -798,9 +889,14 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
         changeDefaultIntervalName();
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        changeDefaultIntervalName();
+    }
+
     public void dataCleared() {
         // File -> Remove All
-        JMenuItem item = this.getMenu(0).getItem(2);
+        JMenuItem item = this.getMenu(0).getItem(4);
         item.setEnabled(false);
 
         changeDefaultIntervalName();
@@ -21,10 +21,14 @@ import javax.swing.SwingUtilities;
 
 import com.ibm.nmon.NMONVisualizerApp;
 
+import com.ibm.nmon.data.CoalescingDataSetListener;
 import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataSetListener;
 import com.ibm.nmon.data.transform.name.HostRenamer;
 
+import com.ibm.nmon.interval.CoalescingIntervalListener;
 import com.ibm.nmon.interval.Interval;
+import com.ibm.nmon.interval.IntervalListener;
 
 import com.ibm.nmon.file.CombinedFileFilter;
 
@@ -106,6 +110,23 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
 
     private static final String DEFAULT_WINDOW_TITLE = "NMON Visualizer";
 
+    // used when parsed data caching is enabled from the Options menu
+    static final String DEFAULT_PARSE_CACHE_DIRECTORY = new java.io.File(System.getProperty("user.home"),
+            ".nmonvisualizer/cache").getAbsolutePath();
+
+    /**
+     * The time, in milliseconds, that listeners that rebuild charts or tables wait for more events before updating.
+     */
+    public static final long EVENT_DELAY = 200;
+
+    // delivers coalesced events in the Swing event dispatcher thread
+    private static final java.util.concurrent.Executor EVENT_DISPATCHER = new java.util.concurrent.Executor() {
+        @Override
+        public void execute(Runnable command) {
+            SwingUtilities.invokeLater(command);
+        }
+    };
+
     private final Preferences preferences;
 
     private final JFrame mainFrame;
@@ -137,6 +158,7 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
 
         setProperty("chartsDisplayed", true);
         setProperty("lineChartLegend", preferences.getBoolean("lineChartLegend", true));
+        setProperty("lineChartDownsample", preferences.getBoolean("lineChartDownsample", true));
 
         String systemsNamedBy = preferences.get("systemsNamedBy", null);
 
@@ -165,6 +187,9 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
 
         setProperty("showStatusBar", preferences.get("showStatusBar", "false"));
 
+        // parsed data is only cached if a directory is set; see Options -> Cache Parsed Data
+        setProperty("parseCacheDirectory", preferences.get("parseCacheDirectory", ""));
+
         mainFrame = new JFrame(DEFAULT_WINDOW_TITLE);
         mainFrame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         mainFrame.addWindowListener(windowManager);
@@ -283,6 +308,22 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
         }
     }
 
+    /**
+     * Wrap the given listener so it receives coalesced events in the Swing event dispatcher thread after there have
+     * been no events for the given delay. The returned listener is the one that must be added and removed.
+     */
+    public CoalescingDataSetListener coalesceDataSetEvents(DataSetListener listener, long delay) {
+        return new CoalescingDataSetListener(listener, EVENT_DISPATCHER, delay);
+    }
+
+    /**
+     * Wrap the given listener so it receives coalesced events in the Swing event dispatcher thread after there have
+     * been no events for the given delay. The returned listener is the one that must be added and removed.
+     */
+    public CoalescingIntervalListener coalesceIntervalEvents(IntervalListener listener, long delay) {
+        return new CoalescingIntervalListener(listener, EVENT_DISPATCHER, delay);
+    }
+
     public ReportCache getReportCache() {
         return reportCache;
     }
@@ -367,6 +408,8 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
             getPreferences().put("scaleProcessesByCPUs", getProperty("scaleProcessesByCPUs"));
             getPreferences().put("showStatusBar", getProperty("showStatusBar"));
             getPreferences().put("lineChartLegend", getProperty("lineChartLegend"));
+            getPreferences().put("lineChartDownsample", getProperty("lineChartDownsample"));
+            getPreferences().put("parseCacheDirectory", getProperty("parseCacheDirectory"));
 
             logViewer.dispose();
             mainFrame.dispose();
@@ -594,6 +637,29 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
         }
     }
 
+    @Override
+    protected void invokeDataUpdate(Runnable update) {
+        // update data for followed files in the Swing event dispatcher thread so charts are not being drawn while the
+        // data changes
+        if (SwingUtilities.isEventDispatchThread()) {
+            update.run();
+        }
+        else {
+            SwingUtilities.invokeLater(update);
+        }
+    }
+
+    @Override
+    protected void fireDataAppended(DataSet data) {
+        // always called in the Swing event dispatcher thread by invokeDataUpdate()
+        super.fireDataAppended(data);
+
+        // the data now covers a longer time period
+        if (getBooleanProperty("automaticGranularity")) {
+            setGranularity(-1);
+        }
+    }
+
     private WindowAdapter windowManager = new WindowAdapter() {
         @Override
         public void windowOpened(WindowEvent e) {
@@ -138,6 +138,11 @@ final class StatusBar extends JLabel implements PropertyChangeListener, TreeSele
         dataAdded(data);
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        dataAdded(data);
+    }
+
     @Override
     public void dataCleared() {}
 
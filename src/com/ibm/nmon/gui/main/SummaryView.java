@@ -209,6 +209,12 @@ final class SummaryView extends ChartSplitPane implements IntervalListener {
         allIntervalsReport.resetReport();
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        singleIntervalReport.dataAppended(data);
+        allIntervalsReport.dataAppended(data);
+    }
+
     @Override
     public void dataCleared() {
         singleIntervalReport.clearData();
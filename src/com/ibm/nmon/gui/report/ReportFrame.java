@@ -249,6 +249,11 @@ public final class ReportFrame extends JFrame implements DataSetListener, Proper
         ((ReportSystemsListModel) systems.getModel()).dataChanged();
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        dataChanged(data);
+    }
+
     @Override
     public void dataCleared() {
         if (systems.getSelectedIndex() == 0) {
@@ -67,6 +67,9 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
     private final NMONVisualizerGui gui;
     private final JFrame parent;
 
+    // rebuilding charts is expensive so only rebuild once the interval stops changing
+    private final IntervalListener intervalListener;
+
     private final List<DataSet> dataSets;
 
     private final String reportCacheKey;
@@ -133,10 +136,12 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
 
         setEnabled(false);
 
-        gui.getIntervalManager().addListener(this);
+        intervalListener = gui.coalesceIntervalEvents(this, NMONVisualizerGui.EVENT_DELAY);
+        gui.getIntervalManager().addListener(intervalListener);
         gui.addPropertyChangeListener("granularity", this);
         gui.addPropertyChangeListener("timeZone", this);
         gui.addPropertyChangeListener("lineChartLegend", this);
+        gui.addPropertyChangeListener("lineChartDownsample", this);
         gui.addPropertyChangeListener("chartFormatter", this);
     }
 
@@ -148,6 +153,7 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
             chartFactory.setGranularity(gui.getGranularity());
             chartFactory.setFormatter(gui.getChartFormatter());
             chartFactory.showLegends(gui.getBooleanProperty("lineChartLegend"));
+            chartFactory.setDownsample(gui.getBooleanProperty("lineChartDownsample"));
 
             if ((chartsInUse != null) && !chartsInUse.isEmpty()) {
                 int idx = getSelectedIndex();
@@ -242,6 +248,39 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
         updateChart();
     }
 
+    /**
+     * Update the report after records were appended to one of its DataSets. If possible, the current chart is updated
+     * in place; all other charts are marked for update.
+     */
+    public void dataAppended(DataSet data) {
+        if ((chartNeedsUpdate == null) || !dataSets.contains(data)) {
+            return;
+        }
+
+        int current = -1;
+
+        if (isEnabled() && (getTabCount() != 0) && !chartsInUse.isEmpty()) {
+            int index = getSelectedIndex();
+
+            if ((index >= 0) && !chartNeedsUpdate.get(index)) {
+                JFreeChart chart = getChartPanel(index).getChart();
+
+                if ((chart != null) && chartFactory.appendData(chart, chartsInUse.get(index), data)) {
+                    current = index;
+                }
+            }
+        }
+
+        chartNeedsUpdate.set(0, chartNeedsUpdate.size(), true);
+
+        if (current != -1) {
+            chartNeedsUpdate.clear(current);
+        }
+        else {
+            updateChart();
+        }
+    }
+
     // update the current chart if enabled
     // note that clearing / setting the chart fires a property change event
     // return false if this did not happen so callers can fire the event regardless
@@ -347,8 +386,10 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
             chartFactory.setFormatter((ChartFormatter) evt.getNewValue());
             resetReport();
         }
-        else if ("lineChartLegend".equals(evt.getPropertyName())) {
-            chartFactory.showLegends((Boolean) evt.getNewValue());
+        else if ("lineChartLegend".equals(evt.getPropertyName())
+                || "lineChartDownsample".equals(evt.getPropertyName())) {
+            chartFactory.showLegends(gui.getBooleanProperty("lineChartLegend"));
+            chartFactory.setDownsample(gui.getBooleanProperty("lineChartDownsample"));
 
             for (int i = 0; i < chartsInUse.size(); i++) {
                 BaseChartDefinition chartDefinition = chartsInUse.get(i);
@@ -415,10 +456,11 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
     }
 
     public void dispose() {
-        gui.getIntervalManager().removeListener(this);
+        gui.getIntervalManager().removeListener(intervalListener);
         gui.removePropertyChangeListener("granularity", this);
         gui.removePropertyChangeListener("timeZone", this);
         gui.removePropertyChangeListener("lineChartLegend", this);
+        gui.removePropertyChangeListener("lineChartDownsample", this);
 
         // clean up references to charts
         removeAll();
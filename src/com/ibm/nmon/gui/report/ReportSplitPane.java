@@ -119,6 +119,9 @@ final class ReportSplitPane extends ChartSplitPane {
     @Override
     public void dataChanged(DataSet data) {}
 
+    @Override
+    public void dataAppended(DataSet data) {}
+
     @Override
     public void dataCleared() {}
 
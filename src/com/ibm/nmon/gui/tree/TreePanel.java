@@ -35,6 +35,9 @@ public final class TreePanel extends JScrollPane implements DataSetListener {
 
     protected final JTree tree;
 
+    // number of DataTypes in each DataSet when its nodes were built
+    private final Map<DataSet, Integer> typeCounts = new java.util.HashMap<DataSet, Integer>();
+
     public void addTreeSelectionListener(TreeSelectionListener tsl) {
         tree.addTreeSelectionListener(tsl);
     }
@@ -53,7 +56,8 @@ public final class TreePanel extends JScrollPane implements DataSetListener {
         tree.setBorder(BorderFactory.createEmptyBorder(2, 0, 2, 0));
 
         // data changes modify the tree
-        gui.addDataSetListener(this);
+        // coalesce so adding many files at once only rebuilds each data set's node once
+        gui.addDataSetListener(gui.coalesceDataSetEvents(this, 0));
 
         tree.addMouseListener(new TreeMouseListener(gui, tree));
 
@@ -118,6 +122,7 @@ public final class TreePanel extends JScrollPane implements DataSetListener {
         }
 
         buildDataSetTree(dataNode, data);
+        typeCounts.put(data, data.getTypeCount());
 
         // adding to an existing data set, alert the tree the structure has changed and make
         // sure the same nodes are expanded / selected
@@ -158,6 +163,8 @@ public final class TreePanel extends JScrollPane implements DataSetListener {
 
     @Override
     public final void dataRemoved(DataSet data) {
+        typeCounts.remove(data);
+
         DefaultMutableTreeNode root = (DefaultMutableTreeNode) ((DefaultTreeModel) tree.getModel()).getRoot();
 
         for (int i = 0; i < root.getChildCount(); i++) {
@@ -184,6 +191,16 @@ public final class TreePanel extends JScrollPane implements DataSetListener {
         dataAdded(data);
     }
 
+    @Override
+    public void dataAppended(DataSet data) {
+        // the tree only shows DataTypes; only rebuild if new ones were added
+        Integer typeCount = typeCounts.get(data);
+
+        if ((typeCount == null) || (typeCount != data.getTypeCount())) {
+            dataAdded(data);
+        }
+    }
+
     @Override
     public final void dataCleared() {
         DefaultMutableTreeNode root = (DefaultMutableTreeNode) ((DefaultTreeModel) tree.getModel()).getRoot();
@@ -198,6 +215,7 @@ public final class TreePanel extends JScrollPane implements DataSetListener {
         }
 
         root.removeAllChildren();
+        typeCounts.clear();
 
         ((javax.swing.tree.DefaultTreeModel) tree.getModel()).reload();
 
@@ -0,0 +1,143 @@
+package com.ibm.nmon.interval;
+
+import java.util.List;
+
+import java.util.concurrent.Executor;
+
+import com.ibm.nmon.util.EventCoalescer;
+
+/**
+ * <p>
+ * An {@link IntervalListener} that coalesces events and passes them to another listener asynchronously. Use this for
+ * listeners that rebuild charts or tables when the current interval changes, so rapidly changing the interval only
+ * causes a single rebuild.
+ * </p>
+ *
+ * <p>
+ * Only the last {@link IntervalListener#currentIntervalChanged(Interval) currentIntervalChanged()} event is delivered,
+ * after any other queued events. Clearing the intervals discards the queued added, removed and renamed events. Other
+ * events are delivered in order.
+ * </p>
+ *
+ * <p>
+ * Since delivery is asynchronous, this listener must be kept and passed to
+ * {@link IntervalManager#removeListener(IntervalListener)} instead of the delegate.
+ * </p>
+ */
+public final class CoalescingIntervalListener extends EventCoalescer implements IntervalListener {
+    private enum Event {
+        ADDED, REMOVED, CLEARED, RENAMED
+    }
+
+    private final IntervalListener delegate;
+
+    // guarded by this
+    private List<QueuedEvent> events = new java.util.ArrayList<QueuedEvent>();
+    private Interval currentInterval;
+
+    /**
+     * @param executor the executor that delivers events, e.g. one that runs them in the Swing event dispatcher thread
+     * @param delay the time, in milliseconds, to wait for more events before delivering
+     */
+    public CoalescingIntervalListener(IntervalListener delegate, Executor executor, long delay) {
+        super(executor, delay);
+
+        if (delegate == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+
+        this.delegate = delegate;
+    }
+
+    public IntervalListener getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public synchronized void intervalAdded(Interval interval) {
+        queue(Event.ADDED, interval);
+    }
+
+    @Override
+    public synchronized void intervalRemoved(Interval interval) {
+        queue(Event.REMOVED, interval);
+    }
+
+    @Override
+    public synchronized void intervalsCleared() {
+        events.clear();
+
+        queue(Event.CLEARED, null);
+    }
+
+    @Override
+    public synchronized void currentIntervalChanged(Interval interval) {
+        // last one wins
+        currentInterval = interval;
+
+        eventQueued();
+    }
+
+    @Override
+    public synchronized void intervalRenamed(Interval interval) {
+        // the delegate only needs to see the new name once
+        for (QueuedEvent queued : events) {
+            if ((queued.event == Event.RENAMED) && (queued.interval == interval)) {
+                return;
+            }
+        }
+
+        queue(Event.RENAMED, interval);
+    }
+
+    private void queue(Event event, Interval interval) {
+        events.add(new QueuedEvent(event, interval));
+
+        eventQueued();
+    }
+
+    @Override
+    protected void deliverEvents() {
+        List<QueuedEvent> events = null;
+        Interval currentInterval = null;
+
+        synchronized (this) {
+            events = this.events;
+            currentInterval = this.currentInterval;
+
+            this.events = new java.util.ArrayList<QueuedEvent>();
+            this.currentInterval = null;
+        }
+
+        for (QueuedEvent queued : events) {
+            switch (queued.event) {
+            case ADDED:
+                delegate.intervalAdded(queued.interval);
+                break;
+            case REMOVED:
+                delegate.intervalRemoved(queued.interval);
+                break;
+            case CLEARED:
+                delegate.intervalsCleared();
+                break;
+            case RENAMED:
+                delegate.intervalRenamed(queued.interval);
+                break;
+            }
+        }
+
+        if (currentInterval != null) {
+            delegate.currentIntervalChanged(currentInterval);
+        }
+    }
+
+    private static final class QueuedEvent {
+        private final Event event;
+        private final Interval interval;
+
+        QueuedEvent(Event event, Interval interval) {
+            this.event = event;
+            this.interval = interval;
+        }
+    }
+}
@@ -8,19 +8,20 @@ import java.io.IOException;
 
 import java.io.File;
 
-import java.io.LineNumberReader;
+import java.io.Reader;
 import java.io.FileReader;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
-import java.util.regex.Pattern;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.SubDataType;
 
+import com.ibm.nmon.parser.util.CSVTokenizer;
+
 import com.ibm.nmon.util.DataHelper;
 
 /**
@@ -29,10 +30,6 @@ import com.ibm.nmon.util.DataHelper;
 public final class FIOParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(FIOParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("yyyyddMM_HHmmss");
-
-    private static final Pattern DATA_SPLITTER = Pattern.compile(",\\s?");
-
     private static final Map<String, String> TYPE_NAMES;
 
     static {
@@ -47,6 +44,9 @@ public final class FIOParser {
         TYPE_NAMES = java.util.Collections.unmodifiableMap(temp);
     }
 
+    // SimpleDateFormat is not thread safe, so do not share across instances
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyddMM_HHmmss");
+
     public BasicDataSet parse(File file, TimeZone timeZone) throws IOException, ParseException {
         return parse(file.getAbsolutePath(), timeZone);
     }
@@ -78,7 +78,7 @@ public final class FIOParser {
         long baseTime = 0;
 
         try {
-            baseTime = TIMESTAMP_FORMAT.parse(timestamp).getTime();
+            baseTime = timestampFormat.parse(timestamp).getTime();
         }
         catch (ParseException e) {
             throw new IllegalArgumentException(
@@ -97,12 +97,16 @@ public final class FIOParser {
                     "unrecoginized type name '" + typeName + "' ; valid values are " + TYPE_NAMES.keySet());
         }
 
-        LineNumberReader in = null;
+        Reader in = null;
 
         try {
-            in = new LineNumberReader(new FileReader(file));
+            in = new FileReader(file);
+
+            // values are separated by ", "
+            CSVTokenizer values = new CSVTokenizer(',');
+            values.setTrimLeadingWhitespace(true);
+            values.setInput(in);
 
-            String line = null;
             DataRecord currentRecord = null;
 
             // usually only 1 block size
@@ -111,18 +115,16 @@ public final class FIOParser {
             Map<String, Aggregator> readDataByBlockSize = new java.util.HashMap<String, Aggregator>(1);
             Map<String, Aggregator> writeDataByBlockSize = new java.util.HashMap<String, Aggregator>(1);
 
-            while ((line = in.readLine()) != null) {
-                String[] values = DATA_SPLITTER.split(line);
-
-                if (values.length != 4) {
-                    LOGGER.warn("invalid data at line {}; it does not contain 4 fields", in.getLineNumber());
+            while (values.nextLine()) {
+                if (values.getFieldCount() != 4) {
+                    LOGGER.warn("invalid data at line {}; it does not contain 4 fields", values.getLineNumber());
                     continue;
                 }
 
                 if (currentRecord == null) {
-                    currentRecord = new DataRecord(baseTime + Integer.parseInt(values[0]), values[0]);
+                    currentRecord = new DataRecord(baseTime + values.getInt(0), values.getString(0));
                 }
-                else if (!currentRecord.getTimestamp().equals(values[0])) {
+                else if (!values.equals(0, currentRecord.getTimestamp())) {
                     // timestamp changed, add the data collected so far and start a new record
                     for (String blockSize : typesByBlockSize.keySet()) {
                         DataType type = typesByBlockSize.get(blockSize);
@@ -147,16 +149,15 @@ public final class FIOParser {
 
                     data.addRecord(currentRecord);
 
-                    currentRecord = new DataRecord(baseTime + Integer.parseInt(values[0]), values[0]);
+                    currentRecord = new DataRecord(baseTime + values.getInt(0), values.getString(0));
                 }
                 // else continue aggregating data for the current record
 
-                String operation = values[2]; // 0 => read; 1 => write
-                String blockSize = DataHelper.newString(values[3]);
+                String blockSize = values.getCachedString(3);
 
                 Aggregator aggregator = null;
 
-                if ("0".equals(operation)) {
+                if (values.equals(2, "0")) { // 0 => read; 1 => write
                     aggregator = readDataByBlockSize.get(blockSize);
 
                     if (aggregator == null) {
@@ -183,10 +184,11 @@ public final class FIOParser {
                 }
 
                 try {
-                    aggregator.aggregate(Integer.parseInt(values[1]));
+                    aggregator.aggregate(values.getInt(1));
                 }
                 catch (NumberFormatException nfe) {
-                    LOGGER.warn("invalid numeric data '{}' at line {}; ignoring", values[1], in.getLineNumber());
+                    LOGGER.warn("invalid numeric data '{}' at line {}; ignoring", values.getString(1),
+                            values.getLineNumber());
                 }
             }
 
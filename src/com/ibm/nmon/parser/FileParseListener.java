@@ -0,0 +1,14 @@
+package com.ibm.nmon.parser;
+
+/**
+ * Receives notification as each file passed to
+ * {@link com.ibm.nmon.NMONVisualizerApp#parse(java.util.List, java.util.TimeZone, FileParseListener)} is parsed.
+ * Notifications are sent in the order the files were given, on the thread that called <code>parse()</code>.
+ */
+public interface FileParseListener {
+    /**
+     * @param filename the file that was parsed
+     * @param errors any errors logged while parsing the file or <code>null</code> if there were none
+     */
+    public void fileParsed(String filename, String errors);
+}
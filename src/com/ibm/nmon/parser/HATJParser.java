@@ -4,14 +4,14 @@ import org.slf4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.Reader;
 
 import java.util.regex.Pattern;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataRecord;
-import com.ibm.nmon.util.DataHelper;
+import com.ibm.nmon.parser.util.CSVTokenizer;
 
 public final class HATJParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(NMONParser.class);
@@ -60,13 +60,15 @@ public final class HATJParser {
             startTime = System.currentTimeMillis();
         }
 
-        LineNumberReader in = null;
+        Reader in = null;
 
         try {
-            in = new LineNumberReader(new java.io.FileReader(filename));
-            String line = in.readLine();
+            in = new java.io.FileReader(filename);
 
-            if (line == null) {
+            CSVTokenizer tokenizer = new CSVTokenizer(',');
+            tokenizer.setInput(in);
+
+            if (!tokenizer.nextLine()) {
                 throw new IOException("file '" + filename + "' does not appear to have any data records");
             }
 
@@ -74,7 +76,7 @@ public final class HATJParser {
             data.setHostname(hostname);
 
             // create DataTypes from header line
-            String[] values = DATA_SPLITTER.split(line);
+            String[] values = DATA_SPLITTER.split(tokenizer.getLine());
 
             // data[0] = Duration; data[1] = Throughput; data[2] = Hits/sec; data[3] = # of Users
             String[] fields = new String[values.length - 4];
@@ -128,25 +130,23 @@ public final class HATJParser {
             data.addType(info);
             data.addType(response);
 
-            while ((line = in.readLine()) != null) {
-                values = DATA_SPLITTER.split(line);
-
-                long duration = Long.parseLong(values[0]);
+            while (tokenizer.nextLine()) {
+                long duration = tokenizer.getLong(0);
 
-                DataRecord record = new DataRecord(startTime + (duration * 1000), DataHelper.newString(values[0]));
+                DataRecord record = new DataRecord(startTime + (duration * 1000), tokenizer.getString(0));
 
-                record.addData(info, new double[] { Double.parseDouble(values[1]), Double.parseDouble(values[2]),
-                        Double.parseDouble(values[3]) });
+                record.addData(info, new double[] { tokenizer.getDouble(1), tokenizer.getDouble(2),
+                        tokenizer.getDouble(3) });
 
                 double[] recordData = new double[response.getFieldCount()];
                 int n = 0;
 
-                for (int i = 4; i < values.length; i++) {
-                    if ("".equals(values[i]) || values[i].contains("nan")) {
+                for (int i = 4; i < tokenizer.getFieldCount(); i++) {
+                    if (tokenizer.isEmpty(i) || tokenizer.contains(i, "nan")) {
                         recordData[n] = Double.NaN;
                     }
                     else {
-                        recordData[n] = Double.parseDouble(values[i]);
+                        recordData[n] = tokenizer.getDouble(i);
                     }
 
                     ++n;
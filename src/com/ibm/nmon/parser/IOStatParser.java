@@ -27,19 +27,14 @@ import com.ibm.nmon.data.SubDataType;
 import com.ibm.nmon.util.DataHelper;
 
 import com.ibm.nmon.util.TimeHelper;
-import static com.ibm.nmon.util.TimeHelper.TIMESTAMP_FORMAT_ISO;
 
 public final class IOStatParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(IOStatParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT_AIX = new SimpleDateFormat("HH:mm:ss");
-
-    private static final Matcher ISO_PATTERN = Pattern
-            .compile("(Time: )?\\d{4}\\-\\d{2}\\-\\d{2}T\\d{2}:\\d{2}:\\d{2}([\\-+](\\d{4}?|\\d{2}:\\d{2}|\\d{2})|Z)")
-            .matcher("");
-    private static final Matcher INFO = Pattern.compile(
-            "(.+)\\s(.+)\\s\\((.+)\\)\\s+(\\d{2,4}[\\/-]\\d{2}[\\/-]\\d{2,4})(\\s+_(.+)_)?(\\s+\\((.+)\\sCPU\\))?")
-            .matcher("");
+    private static final Pattern ISO_PATTERN = Pattern
+            .compile("(Time: )?\\d{4}\\-\\d{2}\\-\\d{2}T\\d{2}:\\d{2}:\\d{2}([\\-+](\\d{4}?|\\d{2}:\\d{2}|\\d{2})|Z)");
+    private static final Pattern INFO_PATTERN = Pattern.compile(
+            "(.+)\\s(.+)\\s\\((.+)\\)\\s+(\\d{2,4}[\\/-]\\d{2}[\\/-]\\d{2,4})(\\s+_(.+)_)?(\\s+\\((.+)\\sCPU\\))?");
     private static final Pattern DATA_SPLITTER = Pattern.compile(":?\\s+");
 
     public static final String DEFAULT_HOSTNAME = "iostat";
@@ -62,6 +57,14 @@ public final class IOStatParser {
         VALID_TYPES = java.util.Collections.unmodifiableSet(tmp);
     }
 
+    // Matchers and SimpleDateFormats are not thread safe, so do not share across instances
+    private final Matcher isoMatcher = ISO_PATTERN.matcher("");
+    private final Matcher infoMatcher = INFO_PATTERN.matcher("");
+
+    private final SimpleDateFormat timestampFormatAIX = new SimpleDateFormat("HH:mm:ss");
+    private final SimpleDateFormat timestampFormatISO = new SimpleDateFormat(
+            TimeHelper.TIMESTAMP_FORMAT_ISO.toPattern());
+
     private LineNumberReader in = null;
 
     private SimpleDateFormat dateFormat = null;
@@ -142,7 +145,7 @@ public final class IOStatParser {
                     else if ("Linux".equals(first)) {
                         parseLinuxConfig(line, timeZone);
                     }
-                    else if (ISO_PATTERN.reset(line).matches()) {
+                    else if (isoMatcher.reset(line).matches()) {
                         createCurrentRecord(line);
                     }
                     else {
@@ -268,7 +271,7 @@ public final class IOStatParser {
         data.setMetadata("OS", "AIX");
         data.setMetadata("AIX", "iostat"); // mimic NMON so OSMatcher works as expected
 
-        dateFormat = TIMESTAMP_FORMAT_AIX;
+        dateFormat = timestampFormatAIX;
         dateFormat.setTimeZone(timeZone);
 
         // AIX has no date, use the default
@@ -429,7 +432,7 @@ public final class IOStatParser {
     }
 
     private void parseLinuxConfig(String line, TimeZone timeZone) throws IOException {
-        Matcher matcher = INFO.reset(line);
+        Matcher matcher = infoMatcher.reset(line);
 
         if (matcher.matches()) {
             data.setHostname(DataHelper.newString(matcher.group(3)));
@@ -439,7 +442,7 @@ public final class IOStatParser {
             String cpuCount = matcher.group(8);
 
             // Linux must export S_TIME_FORMAT=ISO before running iostat
-            dateFormat = TIMESTAMP_FORMAT_ISO;
+            dateFormat = timestampFormatISO;
             dateFormat.setTimeZone(timeZone);
 
             // ISO includes date time, so offset is 0
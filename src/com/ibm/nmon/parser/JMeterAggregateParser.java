@@ -3,23 +3,45 @@ package com.ibm.nmon.parser;
 import org.slf4j.Logger;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.LineNumberReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 import java.text.ParseException;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import java.util.regex.Pattern;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 
+import com.ibm.nmon.parser.util.CSVTokenizer;
+
 import com.ibm.nmon.util.DataHelper;
 
+/**
+ * <p>
+ * Parses JMeter CSV output into per second averages, sums or maximums for each transaction. Percentiles of the
+ * <code>elapsed</code> field are also calculated.
+ * </p>
+ *
+ * <p>
+ * If more than one thread is allowed (see {@link #setParseThreads(int)}), the file is split into chunks at line
+ * boundaries and each chunk is aggregated by a worker thread. Chunks are merged in file order so the parsed data is
+ * the same as a single threaded parse.
+ * </p>
+ */
 public final class JMeterAggregateParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(JMeterAggregateParser.class);
 
@@ -32,7 +54,15 @@ public final class JMeterAggregateParser {
     private static final Set<String> MAX_FIELDS;
     private static final Set<String> SUM_FIELDS;
 
-    private LineNumberReader in = null;
+    // response time field; percentiles are calculated for this field
+    private static final String LATENCY_FIELD = "elapsed";
+
+    private static final double[] PERCENTILES = { 50, 90, 95, 99 };
+
+    private static final long MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    private int parseThreads = 1;
 
     private BasicDataSet dataSet = null;
 
@@ -43,8 +73,6 @@ public final class JMeterAggregateParser {
     private int hostnameIndex = -1;
     private int responseCodeIndex = -1;
 
-    private final Set<String> transactionNames = new java.util.HashSet<String>();
-
     // map the average, max or sum aggregation action to the actual parsed fields
     private char[] fieldActions;
 
@@ -58,29 +86,45 @@ public final class JMeterAggregateParser {
         dataSet = new BasicDataSet(filename);
         dataSet.setMetadata("hostname", "JMeter");
 
+        // match FileReader
+        Charset charset = Charset.defaultCharset();
+
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+
         try {
-            in = new LineNumberReader(new FileReader(filename));
+            FileChannel channel = file.getChannel();
 
-            String line = in.readLine();
+            long dataStart = findLineStart(channel, 0);
+            String line = new String(read(channel, 0, dataStart), charset);
+
+            // remove the line terminator, like readLine()
+            if (line.endsWith("\n")) {
+                line = line.substring(0, line.length() - 1);
+            }
+
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
 
             Map<String, Integer> fieldIndexes = parseHeader(DATA_SPLITTER.split(line));
 
-            // for every millisecond, there will be one or more double[] for each transaction
-            Map<Long, Map<String, TransactionAggregate>> dataByMilli = parseData(fieldIndexes, in);
+            // for every second, there will be one or more samples for each transaction
+            JMeterAggregates aggregates = parseData(fieldIndexes, channel, dataStart, charset);
+            long[] seconds = aggregates.getSeconds();
 
-            LOGGER.debug("parsed {} lines into {} seconds of data", in.getLineNumber(), dataByMilli.size());
+            LOGGER.debug("parsed {} seconds of data", seconds.length);
 
-            convertData(dataByMilli, fieldIndexes);
+            convertData(aggregates, seconds, fieldIndexes);
 
             if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Parse" + " complete for {} in {}ms", dataSet.getSourceFile(),
-                        (System.nanoTime() - start) / 1000000.0d);
+                LOGGER.debug("Parse" + " complete for {} in {}ms using {} threads", new Object[] {
+                        dataSet.getSourceFile(), (System.nanoTime() - start) / 1000000.0d, parseThreads });
             }
 
             return dataSet;
         }
         finally {
-            in.close();
+            file.close();
 
             dataSet = null;
 
@@ -90,11 +134,26 @@ public final class JMeterAggregateParser {
             hostnameIndex = -1;
             responseCodeIndex = -1;
 
-            transactionNames.clear();
             fieldActions = null;
         }
     }
 
+    /**
+     * Set the number of threads used to parse a single large file. The default is 1, i.e. all parsing is done on the
+     * calling thread.
+     */
+    public void setParseThreads(int parseThreads) {
+        if (parseThreads < 1) {
+            throw new IllegalArgumentException("parseThreads must be greater than 0");
+        }
+
+        this.parseThreads = parseThreads;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
     private Map<String, Integer> parseHeader(String[] headers) throws IOException {
         // used LinkedHashMap to maintain correspondence between array indexes of headers and values
         Map<String, Integer> fieldIndexes = new java.util.LinkedHashMap<String, Integer>(headers.length);
@@ -158,93 +217,123 @@ public final class JMeterAggregateParser {
         return fieldIndexes;
     }
 
-    // map every time to a set of TransactionAggregates
-    private Map<Long, Map<String, TransactionAggregate>> parseData(Map<String, Integer> fieldIndexes,
-            LineNumberReader in) throws IOException {
-        int actualFields = fieldIndexes.size();
-        int expectedFields = actualFields + 2 + (successIndex == -1 ? 0 : 1) + (hostnameIndex == -1 ? 0 : 1)
-                + (successIndex == -1 ? 0 : 1);
+    // aggregate the data for every transaction at every second
+    private JMeterAggregates parseData(Map<String, Integer> fieldIndexes, FileChannel channel, long dataStart,
+            Charset charset) throws IOException {
+        long size = channel.size();
 
-        Set<String> hostnames = new java.util.HashSet<String>();
+        long chunkSize = (size - dataStart) / (parseThreads * 4);
+
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            chunkSize = MIN_CHUNK_SIZE;
+        }
+        else if (chunkSize > MAX_CHUNK_SIZE) {
+            chunkSize = MAX_CHUNK_SIZE;
+        }
+
+        ExecutorService executor = null;
+
+        if (parseThreads > 1) {
+            executor = java.util.concurrent.Executors.newFixedThreadPool(parseThreads,
+                    new java.util.concurrent.ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "JMeterAggregateParser-" + dataSet.getSourceFile());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+
+        int[] indexes = new int[fieldIndexes.size()];
+        int n = 0;
+
+        for (int idx : fieldIndexes.values()) {
+            indexes[n++] = idx;
+        }
+
+        int latencyIndex = getLatencyIndex(fieldIndexes);
 
         // since multiple threads can be running, it is possible to have multiple entries at the same
         // millisecond
         // for every timestamp, store that data for each transaction name and aggregate it
-        Map<Long, Map<String, TransactionAggregate>> dataBySecond = new java.util.HashMap<Long, Map<String, TransactionAggregate>>();
-        String line = null;
-
-        while ((line = in.readLine()) != null) {
-            String[] data = DATA_SPLITTER.split(line);
-
-            if (data.length < expectedFields) {
-                LOGGER.warn("skipping invalid data record '{}' at line {}; " + "expected at least {} fields", line,
-                        in.getLineNumber(), expectedFields);
-                continue;
-            }
+        JMeterAggregates dataBySecond = new JMeterAggregates(fieldActions, latencyIndex);
 
-            if (hostnameIndex > -1) {
-                hostnames.add(data[hostnameIndex]);
-            }
+        Set<String> hostnames = new java.util.HashSet<String>();
 
-            long time = 0;
-            double[] values = new double[actualFields];
+        // the header is line 1
+        int lineNumber = 1;
 
-            // round time to the nearest second
-            try {
-                time = Math.round(Long.parseLong(data[timestampIndex]) / 1000.0d) * 1000;
-            }
-            catch (NumberFormatException nfe) {
-                LOGGER.warn("skipping invalid data record '{}'  at line {}; " + "invalid timeStamp '{}'", line,
-                        in.getLineNumber(), data[timestampIndex]);
-                continue;
-            }
+        try {
+            // limit the number of chunks in memory at any one time
+            java.util.Deque<Future<Chunk>> chunks = new java.util.ArrayDeque<Future<Chunk>>();
+            int maxQueued = parseThreads == 1 ? 1 : parseThreads * 2;
+            long chunkStart = dataStart;
+
+            while ((chunkStart < size) || !chunks.isEmpty()) {
+                while ((chunkStart < size) && (chunks.size() < maxQueued)) {
+                    long chunkEnd = findLineStart(channel, chunkStart + chunkSize);
+
+                    ChunkParser parser = new ChunkParser(channel, chunkStart, chunkEnd, charset, indexes,
+                            latencyIndex);
+
+                    if (executor == null) {
+                        // run on this thread
+                        java.util.concurrent.FutureTask<Chunk> task = new java.util.concurrent.FutureTask<Chunk>(
+                                parser);
+                        task.run();
+                        chunks.add(task);
+                    }
+                    else {
+                        chunks.add(executor.submit(parser));
+                    }
 
-            String transactionName = data[labelIndex];
-            transactionNames.add(transactionName);
+                    chunkStart = chunkEnd;
+                }
 
-            int n = 0;
+                Chunk chunk = null;
 
-            for (int idx : fieldIndexes.values()) {
-                if (idx == successIndex) { // convert success to 0 or 1 so throughput can be calculated from
-                    // successes
-                    values[n++] = Boolean.parseBoolean(data[idx]) ? 1 : 0;
+                try {
+                    chunk = chunks.removeFirst().get();
                 }
-                else {
-                    try {
-                        values[n++] = Double.parseDouble(data[idx]);
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException("interrupted parsing " + dataSet.getSourceFile());
+                }
+                catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
                     }
-                    catch (NumberFormatException nfe) {
-                        if (idx == responseCodeIndex) {
-                            values[n] = 500;
-                            continue;
-                        }
-                        LOGGER.warn("skipping invalid data record '{}' at line {}; " + "invalid number '{}'", line,
-                                in.getLineNumber(), data[idx]);
-                        break;
+                    else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    else {
+                        throw new IOException("could not parse " + dataSet.getSourceFile(), cause);
                     }
                 }
-            }
 
-            Map<String, TransactionAggregate> timeData = dataBySecond.get(time);
+                // log on this thread, in order, with line numbers relative to the start of the file
+                for (Object[] warning : chunk.warnings) {
+                    warning[2] = lineNumber + (Integer) warning[2];
+                    LOGGER.warn((String) warning[0], new Object[] { warning[1], warning[2], warning[3] });
+                }
 
-            if (timeData == null) { // new time; add current values
-                timeData = new java.util.HashMap<String, TransactionAggregate>(transactionNames.size());
+                hostnames.addAll(chunk.hostnames);
+                dataBySecond.merge(chunk.aggregates);
 
-                timeData.put(transactionName, new TransactionAggregate(values));
-                dataBySecond.put(time, timeData);
+                lineNumber += chunk.lineCount;
             }
-            else {
-                TransactionAggregate a = timeData.get(transactionName);
-
-                if (a == null) { // existing time, new transaction; add current values
-                    timeData.put(transactionName, new TransactionAggregate(values));
-                }
-                else { // update aggregated data with new values
-                    a.aggregate(values);
-                }
+        }
+        finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
 
+        LOGGER.debug("parsed {} lines", lineNumber);
+
         if (!hostnames.isEmpty()) {
             dataSet.setMetadata("loadDrivers", hostnames.toString());
         }
@@ -252,8 +341,28 @@ public final class JMeterAggregateParser {
         return dataBySecond;
     }
 
-    private void convertData(Map<Long, Map<String, TransactionAggregate>> dataByMilli,
-            Map<String, Integer> fieldIndexes) {
+    private int getLatencyIndex(Map<String, Integer> fieldIndexes) {
+        int n = 0;
+
+        for (String field : fieldIndexes.keySet()) {
+            if (LATENCY_FIELD.equals(field)) {
+                return n;
+            }
+
+            ++n;
+        }
+
+        return -1;
+    }
+
+    private void convertData(JMeterAggregates aggregates, long[] seconds, Map<String, Integer> fieldIndexes) {
+        // HashSet iteration order determines the order of the fields in each type
+        Set<String> transactionNames = new java.util.HashSet<String>();
+
+        for (String transaction : aggregates.getTransactions()) {
+            transactionNames.add(transaction);
+        }
+
         String[] transactions = transactionNames.toArray(new String[transactionNames.size()]);
         int actualFields = fieldIndexes.size();
         // deal with memory savings now that all names are known
@@ -268,10 +377,30 @@ public final class JMeterAggregateParser {
             dataSet.addType(new DataType(field, field, transactions));
         }
 
-        // for every millisecond of data, get each transaction
+        // percentiles and maximum response time from the histograms
+        DataType[] latencyTypes = null;
+
+        if (aggregates.hasLatency()) {
+            latencyTypes = new DataType[PERCENTILES.length + 1];
+
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                int percentile = (int) PERCENTILES[i];
+                latencyTypes[i] = new DataType(LATENCY_FIELD + "_p" + percentile,
+                        LATENCY_FIELD + ' ' + percentile + "th Percentile", transactions);
+            }
+
+            latencyTypes[PERCENTILES.length] = new DataType(LATENCY_FIELD + "_max", LATENCY_FIELD + " Maximum",
+                    transactions);
+
+            for (DataType type : latencyTypes) {
+                dataSet.addType(type);
+            }
+        }
+
+        // for every second of data, get each transaction
         // for every transaction, calculated the aggregated value
-        for (Map.Entry<Long, Map<String, TransactionAggregate>> forSecond : dataByMilli.entrySet()) {
-            long time = forSecond.getKey();
+        for (long second : seconds) {
+            long time = second * 1000;
             // pivot data into a transaction sized array for each field / data type
             double[][] fieldsByTransaction = new double[actualFields][];
 
@@ -279,26 +408,40 @@ public final class JMeterAggregateParser {
                 fieldsByTransaction[i] = new double[transactions.length];
             }
 
-            Map<String, TransactionAggregate> byTransaction = forSecond.getValue();
+            double[][] latencyByTransaction = null;
+
+            if (latencyTypes != null) {
+                latencyByTransaction = new double[latencyTypes.length][transactions.length];
+            }
 
             // missing transactions at each time will happen so iterate over array instead of values
             for (int i = 0; i < transactions.length; i++) {
-                TransactionAggregate a = byTransaction.get(transactions[i]);
+                double[] data = aggregates.getAggregated(transactions[i], second);
 
                 // actually pivot the data; note j, then i in array assignment
-                if (a == null) {
+                if (data == null) {
                     // use NaN as chart data when no values exist rather than 0
                     for (int j = 0; j < actualFields; j++) {
                         fieldsByTransaction[j][i] = Double.NaN;
                     }
                 }
                 else {
-                    double[] data = a.getAggregated();
-
                     for (int j = 0; j < actualFields; j++) {
                         fieldsByTransaction[j][i] += data[j];
                     }
                 }
+
+                if (latencyByTransaction != null) {
+                    LatencyHistogram histogram = aggregates.getHistogram(transactions[i], second);
+
+                    for (int j = 0; j < PERCENTILES.length; j++) {
+                        latencyByTransaction[j][i] = histogram == null ? Double.NaN
+                                : histogram.getPercentile(PERCENTILES[j]);
+                    }
+
+                    latencyByTransaction[PERCENTILES.length][i] = histogram == null ? Double.NaN
+                            : histogram.getMaximum();
+                }
             }
 
             DataRecord record = new DataRecord(time, Long.toString(time));
@@ -310,10 +453,61 @@ public final class JMeterAggregateParser {
                 record.addData(dataSet.getType(field), fieldsByTransaction[n++]);
             }
 
+            if (latencyTypes != null) {
+                for (int j = 0; j < latencyTypes.length; j++) {
+                    record.addData(latencyTypes[j], latencyByTransaction[j]);
+                }
+            }
+
             dataSet.addRecord(record);
         }
     }
 
+    /**
+     * @return the offset just past the first line feed at or after <code>from</code> or the file size if there is
+     *         none
+     */
+    private static long findLineStart(FileChannel channel, long from) throws IOException {
+        long size = channel.size();
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = from;
+
+        while (position < size) {
+            buffer.clear();
+
+            int read = channel.read(buffer, position);
+
+            if (read <= 0) {
+                break;
+            }
+
+            byte[] bytes = buffer.array();
+
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+
+            position += read;
+        }
+
+        return size;
+    }
+
+    private static byte[] read(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        return buffer.array();
+    }
+
     static {
         Set<String> temp = new java.util.HashSet<String>();
 
@@ -358,41 +552,133 @@ public final class JMeterAggregateParser {
         }
     }
 
-    // for each transaction, at each time, hold a running aggregation of the data
-    private final class TransactionAggregate {
-        private final double[] data;
-        private int count;
+    // the results of parsing a single chunk
+    private static final class Chunk {
+        private final JMeterAggregates aggregates;
+        private final Set<String> hostnames = new java.util.LinkedHashSet<String>();
+        // message, line, line number in the chunk, invalid value; logged when the chunk is merged
+        private final List<Object[]> warnings = new java.util.ArrayList<Object[]>();
 
-        TransactionAggregate(double[] data) {
-            this.data = data;
-            this.count = 1;
+        private int lineCount = 0;
+
+        Chunk(JMeterAggregates aggregates) {
+            this.aggregates = aggregates;
+        }
+    }
+
+    private final class ChunkParser implements java.util.concurrent.Callable<Chunk> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Charset charset;
+
+        // copied since the parser's fields are not visible to the worker threads
+        private final int[] fieldIndexes;
+        private final int latencyIndex;
+        private final char[] fieldActions;
+
+        private final int labelIndex;
+        private final int timestampIndex;
+        private final int successIndex;
+        private final int hostnameIndex;
+        private final int responseCodeIndex;
+
+        ChunkParser(FileChannel channel, long start, long end, Charset charset, int[] fieldIndexes,
+                int latencyIndex) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.charset = charset;
+
+            this.fieldIndexes = fieldIndexes;
+            this.latencyIndex = latencyIndex;
+            this.fieldActions = JMeterAggregateParser.this.fieldActions;
+
+            this.labelIndex = JMeterAggregateParser.this.labelIndex;
+            this.timestampIndex = JMeterAggregateParser.this.timestampIndex;
+            this.successIndex = JMeterAggregateParser.this.successIndex;
+            this.hostnameIndex = JMeterAggregateParser.this.hostnameIndex;
+            this.responseCodeIndex = JMeterAggregateParser.this.responseCodeIndex;
         }
 
-        void aggregate(double[] toAggregate) {
-            for (int i = 0; i < data.length; i++) {
-                if (fieldActions[i] == 'm') {
-                    if (toAggregate[i] > data[i]) {
-                        data[i] = toAggregate[i];
+        @Override
+        public Chunk call() throws IOException {
+            Chunk chunk = new Chunk(new JMeterAggregates(fieldActions, latencyIndex));
+
+            int actualFields = fieldIndexes.length;
+            int expectedFields = actualFields + 2 + (successIndex == -1 ? 0 : 1) + (hostnameIndex == -1 ? 0 : 1)
+                    + (successIndex == -1 ? 0 : 1);
+
+            // values are copied when aggregated, so the same array can be reused for every line
+            double[] values = new double[actualFields];
+
+            CSVTokenizer data = new CSVTokenizer(',');
+            data.setInput(new java.io.InputStreamReader(new java.io.ByteArrayInputStream(read(channel, start, end)),
+                    charset));
+
+            while (data.nextLine()) {
+                int lineNumber = ++chunk.lineCount;
+
+                if (data.getFieldCount() < expectedFields) {
+                    chunk.warnings.add(new Object[] {
+                            "skipping invalid data record '{}' at line {}; " + "expected at least {} fields",
+                            data.getLine(), lineNumber, expectedFields });
+                    continue;
+                }
+
+                if (hostnameIndex > -1) {
+                    String hostname = data.getCachedString(hostnameIndex);
+
+                    // the data is still used without a host name
+                    if (!hostname.isEmpty()) {
+                        chunk.hostnames.add(hostname);
                     }
-                    // else ignore
                 }
-                else { // sum or average
-                    data[i] += toAggregate[i];
+
+                long time = 0;
+                java.util.Arrays.fill(values, 0);
+
+                // round time to the nearest second
+                try {
+                    time = Math.round(data.getLong(timestampIndex) / 1000.0d) * 1000;
                 }
-            }
-            ++count;
-        }
+                catch (NumberFormatException nfe) {
+                    chunk.warnings.add(new Object[] {
+                            "skipping invalid data record '{}'  at line {}; " + "invalid timeStamp '{}'",
+                            data.getLine(), lineNumber, data.getString(timestampIndex) });
+                    continue;
+                }
+
+                String transactionName = data.getCachedString(labelIndex);
 
-        // note cannot be called more than once!
-        double[] getAggregated() {
-            for (int i = 0; i < data.length; i++) {
-                if (fieldActions[i] == 'a') {
-                    data[i] /= count;
+                int n = 0;
+
+                for (int idx : fieldIndexes) {
+                    if (idx == successIndex) { // convert success to 0 or 1 so throughput can be calculated from
+                        // successes
+                        values[n++] = data.equalsIgnoreCase(idx, "true") ? 1 : 0;
+                    }
+                    else {
+                        try {
+                            values[n++] = data.getDouble(idx);
+                        }
+                        catch (NumberFormatException nfe) {
+                            if (idx == responseCodeIndex) {
+                                values[n] = 500;
+                                continue;
+                            }
+                            chunk.warnings.add(new Object[] {
+                                    "skipping invalid data record '{}' at line {}; " + "invalid number '{}'",
+                                    data.getLine(), lineNumber, data.getString(idx) });
+                            break;
+                        }
+                    }
                 }
-                // else leave sum and max as-is
+
+                chunk.aggregates.add(transactionName, time, values);
             }
 
-            return data;
+            return chunk;
         }
     }
 }
@@ -0,0 +1,313 @@
+package com.ibm.nmon.parser;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * Per second aggregates of JMeter samples for each transaction. For each field, samples are averaged, summed or the
+ * maximum is kept depending on the field's action (<code>'a'</code>, <code>'s'</code> or <code>'m'</code>). If a
+ * latency field is given, a {@link LatencyHistogram} is also kept for each second so that percentiles can be
+ * calculated.
+ * </p>
+ *
+ * <p>
+ * Each transaction's data is stored in arrays indexed by the number of seconds since the transaction's first
+ * second, so adding a sample does not require any lookups other than finding the transaction. Aggregates for
+ * different parts of a file can be {@link #merge(JMeterAggregates) merged}.
+ * </p>
+ */
+final class JMeterAggregates {
+    private final char[] fieldActions;
+    private final int latencyField;
+
+    // LinkedHashMap so transactions are kept in the order they were first seen
+    private final Map<String, Series> series = new java.util.LinkedHashMap<String, Series>();
+
+    /**
+     * @param latencyField the index of the field to keep histograms for; <code>-1</code> for none
+     */
+    JMeterAggregates(char[] fieldActions, int latencyField) {
+        this.fieldActions = fieldActions;
+        this.latencyField = latencyField;
+    }
+
+    boolean hasLatency() {
+        return latencyField != -1;
+    }
+
+    /**
+     * @return the transaction names in the order they were first seen
+     */
+    java.util.Set<String> getTransactions() {
+        return series.keySet();
+    }
+
+    /**
+     * @param time the sample time, rounded to a second
+     */
+    void add(String transaction, long time, double[] values) {
+        Series s = series.get(transaction);
+
+        if (s == null) {
+            s = new Series(fieldActions.length);
+            series.put(transaction, s);
+        }
+
+        int idx = s.ensure(toSecond(time));
+        int offset = idx * fieldActions.length;
+
+        if (s.counts[idx] == 0) {
+            System.arraycopy(values, 0, s.values, offset, fieldActions.length);
+        }
+        else {
+            for (int i = 0; i < fieldActions.length; i++) {
+                if (fieldActions[i] == 'm') {
+                    if (values[i] > s.values[offset + i]) {
+                        s.values[offset + i] = values[i];
+                    }
+                    // else ignore
+                }
+                else { // sum or average
+                    s.values[offset + i] += values[i];
+                }
+            }
+        }
+
+        ++s.counts[idx];
+
+        if (latencyField != -1) {
+            double latency = values[latencyField];
+
+            if (latency >= 0) {
+                if (s.histograms[idx] == null) {
+                    s.histograms[idx] = new LatencyHistogram();
+                }
+
+                s.histograms[idx].record(Math.round(latency));
+            }
+        }
+    }
+
+    /**
+     * Add all the samples from another set of aggregates to this one. Transactions first seen in the other aggregates
+     * are added after the transactions in this one.
+     */
+    void merge(JMeterAggregates other) {
+        for (Map.Entry<String, Series> entry : other.series.entrySet()) {
+            Series from = entry.getValue();
+
+            if (from.length == 0) {
+                continue;
+            }
+
+            Series to = series.get(entry.getKey());
+
+            if (to == null) {
+                series.put(entry.getKey(), from);
+                continue;
+            }
+
+            to.ensure(from.first);
+            to.ensure(from.first + from.length - 1);
+
+            for (int i = 0; i < from.length; i++) {
+                if (from.counts[i] == 0) {
+                    continue;
+                }
+
+                int idx = (int) (from.first + i - to.first);
+                int fromOffset = i * fieldActions.length;
+                int toOffset = idx * fieldActions.length;
+
+                if (to.counts[idx] == 0) {
+                    System.arraycopy(from.values, fromOffset, to.values, toOffset, fieldActions.length);
+                }
+                else {
+                    for (int j = 0; j < fieldActions.length; j++) {
+                        if (fieldActions[j] == 'm') {
+                            if (from.values[fromOffset + j] > to.values[toOffset + j]) {
+                                to.values[toOffset + j] = from.values[fromOffset + j];
+                            }
+                        }
+                        else {
+                            to.values[toOffset + j] += from.values[fromOffset + j];
+                        }
+                    }
+                }
+
+                to.counts[idx] += from.counts[i];
+
+                if (from.histograms[i] != null) {
+                    if (to.histograms[idx] == null) {
+                        to.histograms[idx] = from.histograms[i];
+                    }
+                    else {
+                        to.histograms[idx].merge(from.histograms[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the seconds that have data for any transaction, in order
+     */
+    long[] getSeconds() {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        for (Series s : series.values()) {
+            if (s.length > 0) {
+                first = Math.min(first, s.first);
+                last = Math.max(last, s.first + s.length - 1);
+            }
+        }
+
+        if (first > last) {
+            return new long[0];
+        }
+
+        boolean[] hasData = new boolean[(int) (last - first + 1)];
+        int count = 0;
+
+        for (Series s : series.values()) {
+            for (int i = 0; i < s.length; i++) {
+                if ((s.counts[i] > 0) && !hasData[(int) (s.first - first) + i]) {
+                    hasData[(int) (s.first - first) + i] = true;
+                    ++count;
+                }
+            }
+        }
+
+        long[] seconds = new long[count];
+        count = 0;
+
+        for (int i = 0; i < hasData.length; i++) {
+            if (hasData[i]) {
+                seconds[count++] = first + i;
+            }
+        }
+
+        return seconds;
+    }
+
+    /**
+     * Get the aggregated values for a transaction at a given second. Averages are calculated here.
+     *
+     * @return <code>null</code> if there is no data
+     */
+    double[] getAggregated(String transaction, long second) {
+        Series s = series.get(transaction);
+        int idx = s == null ? -1 : s.indexOf(second);
+
+        if ((idx == -1) || (s.counts[idx] == 0)) {
+            return null;
+        }
+
+        double[] data = new double[fieldActions.length];
+        System.arraycopy(s.values, idx * fieldActions.length, data, 0, data.length);
+
+        for (int i = 0; i < data.length; i++) {
+            if (fieldActions[i] == 'a') {
+                data[i] /= s.counts[idx];
+            }
+            // else leave sum and max as-is
+        }
+
+        return data;
+    }
+
+    /**
+     * @return the latency histogram for a transaction at a given second or <code>null</code> if there is none
+     */
+    LatencyHistogram getHistogram(String transaction, long second) {
+        Series s = series.get(transaction);
+        int idx = s == null ? -1 : s.indexOf(second);
+
+        return idx == -1 ? null : s.histograms[idx];
+    }
+
+    static long toSecond(long time) {
+        return Math.floorDiv(time, 1000);
+    }
+
+    // the data for a single transaction; values holds fieldCount values for each second
+    private static final class Series {
+        private final int fieldCount;
+
+        private long first;
+        private int length = 0;
+
+        private int[] counts = new int[0];
+        private double[] values = new double[0];
+        private LatencyHistogram[] histograms = new LatencyHistogram[0];
+
+        Series(int fieldCount) {
+            this.fieldCount = fieldCount;
+        }
+
+        int indexOf(long second) {
+            if ((length == 0) || (second < first) || (second >= first + length)) {
+                return -1;
+            }
+            else {
+                return (int) (second - first);
+            }
+        }
+
+        /**
+         * Grow the arrays, if necessary, so they include the given second.
+         *
+         * @return the index of the second
+         */
+        int ensure(long second) {
+            if (length == 0) {
+                first = second;
+                length = 1;
+                grow(0, 64);
+
+                return 0;
+            }
+
+            if (second < first) {
+                // samples can be slightly out of order; split the free space so there is room for more before this one
+                int missing = (int) (first - second);
+                int capacity = Math.max(length + missing, counts.length * 2);
+                int shift = Math.max(missing, (capacity - length) / 2);
+
+                grow(shift, capacity);
+
+                first -= shift;
+                length += shift;
+            }
+            else if (second >= first + length) {
+                int needed = (int) (second - first) + 1;
+
+                if (needed > counts.length) {
+                    grow(0, Math.max(needed, counts.length * 2));
+                }
+
+                length = needed;
+            }
+
+            return (int) (second - first);
+        }
+
+        // move existing data shift places to the right in arrays of the given capacity
+        private void grow(int shift, int capacity) {
+            int[] newCounts = new int[capacity];
+            double[] newValues = new double[capacity * fieldCount];
+            LatencyHistogram[] newHistograms = new LatencyHistogram[capacity];
+
+            int existing = Math.min(length, counts.length);
+
+            System.arraycopy(counts, 0, newCounts, shift, existing);
+            System.arraycopy(values, 0, newValues, shift * fieldCount, existing * fieldCount);
+            System.arraycopy(histograms, 0, newHistograms, shift, existing);
+
+            counts = newCounts;
+            values = newValues;
+            histograms = newHistograms;
+        }
+    }
+}
@@ -15,13 +15,27 @@ import java.text.SimpleDateFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.TreeNode;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.SubDataType;
 
+/**
+ * <p>
+ * Parses JSON files in the format given by <code>json_template.json</code>.
+ * </p>
+ *
+ * <p>
+ * Files are read with Jackson's streaming API so that each <code>data</code> element is converted directly into a
+ * {@link DataRecord} without creating the whole document in memory. The other root fields are small and are read as
+ * they are encountered. If the <code>data</code> array comes before <code>hostname</code>, <code>whenPattern</code>
+ * or <code>types</code>, it cannot be converted until the file has been read, so it is buffered in memory.
+ * </p>
+ */
 public final class JSONParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(JSONParser.class);
 
@@ -30,6 +44,21 @@ public final class JSONParser {
     private BasicDataSet data = null;
     private SimpleDateFormat format = null;
 
+    // root fields; data is only converted once all of these have been read
+    private Object hostname = null;
+    private Object whenPattern = null;
+    private Object timezone = null;
+    private Object metadata = null;
+    private Object types = null;
+
+    private boolean typesSeen = false;
+
+    // typeId -> DataType; typeId -> subtypeId -> SubDataType
+    private Map<String, DataType> typesById = null;
+    private Map<String, Map<String, SubDataType>> subtypesById = null;
+
+    private int dataCount = 0;
+
     public BasicDataSet parse(File file) throws IOException, ParseException {
         return parse(file.getAbsolutePath());
     }
@@ -37,29 +66,86 @@ public final class JSONParser {
     public BasicDataSet parse(String filename) throws IOException, JsonParseException {
         long start = System.nanoTime();
 
-        try {
-            Map<String, Object> root = MAPPER.readValue(new java.io.File(filename),
-                    new TypeReference<Map<String, Object>>() {});
+        JsonParser parser = MAPPER.getFactory().createParser(new java.io.File(filename));
 
+        try {
             data = new BasicDataSet(filename);
 
-            Object temp = root.get("hostname");
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "root must be a JSON object");
+            }
+
+            TreeNode bufferedData = null;
+            boolean dataSeen = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                if ("hostname".equals(field)) {
+                    hostname = MAPPER.readValue(parser, Object.class);
+                }
+                else if ("whenPattern".equals(field)) {
+                    whenPattern = MAPPER.readValue(parser, Object.class);
+                }
+                else if ("timezone".equals(field)) {
+                    timezone = MAPPER.readValue(parser, Object.class);
+                }
+                else if ("metadata".equals(field)) {
+                    metadata = MAPPER.readValue(parser, Object.class);
+                }
+                else if ("types".equals(field)) {
+                    types = MAPPER.readValue(parser, Object.class);
+                    typesSeen = true;
+                }
+                else if ("data".equals(field)) {
+                    dataSeen = token != JsonToken.VALUE_NULL;
+
+                    if (!dataSeen) {
+                        continue;
+                    }
+                    else if (isHeaderComplete()) {
+                        initialize();
+                        parseData(parser);
+                    }
+                    else {
+                        bufferedData = parser.readValueAsTree();
+                    }
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
 
-            if (temp == null) {
-                throw new IOException("field 'hostname' not found");
+            if (typesById == null) {
+                initialize();
             }
 
-            data.setHostname((String) temp);
+            if (!dataSeen) {
+                throw new IOException("'data' must be defined");
+            }
 
-            format = parseDateFormat(root.get("whenPattern"), root.get("timezone"));
+            if (bufferedData != null) {
+                JsonParser dataParser = bufferedData.traverse(MAPPER);
 
-            parseMetadata(root.get("metadata"));
-            parseTypes(root.get("types"));
-            parseData(root.get("data"));
+                try {
+                    dataParser.nextToken();
+                    parseData(dataParser);
+                }
+                finally {
+                    dataParser.close();
+                }
+            }
+
+            if (dataCount == 0) {
+                throw new IOException("at least one 'data' element must be defined");
+            }
 
             return data;
         }
         finally {
+            parser.close();
+
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Parse complete for {} in {}ms", data.getSourceFile(),
                         (System.nanoTime() - start) / 1000000.0d);
@@ -67,6 +153,58 @@ public final class JSONParser {
 
             data = null;
             format = null;
+
+            hostname = null;
+            whenPattern = null;
+            timezone = null;
+            metadata = null;
+            types = null;
+            typesSeen = false;
+
+            typesById = null;
+            subtypesById = null;
+
+            dataCount = 0;
+        }
+    }
+
+    private boolean isHeaderComplete() {
+        return (hostname != null) && (whenPattern != null) && typesSeen;
+    }
+
+    /**
+     * Set up the data set from the root fields. Called once, before any data is converted.
+     */
+    private void initialize() throws IOException {
+        if (hostname == null) {
+            throw new IOException("field 'hostname' not found");
+        }
+
+        data.setHostname((String) hostname);
+
+        format = parseDateFormat(whenPattern, timezone);
+
+        parseMetadata(metadata);
+        parseTypes(types);
+
+        typesById = new java.util.HashMap<String, DataType>();
+        subtypesById = new java.util.HashMap<String, Map<String, SubDataType>>();
+
+        for (DataType type : data.getTypes()) {
+            if (type instanceof SubDataType) {
+                SubDataType subType = (SubDataType) type;
+                Map<String, SubDataType> subtypes = subtypesById.get(subType.getPrimaryId());
+
+                if (subtypes == null) {
+                    subtypes = new java.util.HashMap<String, SubDataType>();
+                    subtypesById.put(subType.getPrimaryId(), subtypes);
+                }
+
+                subtypes.put(subType.getSubId(), subType);
+            }
+            else {
+                typesById.put(type.getId(), type);
+            }
         }
     }
 
@@ -174,125 +312,166 @@ public final class JSONParser {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void parseData(Object rawData) throws IOException {
-        if (rawData == null) {
-            throw new IOException("'data' must be defined");
+    /**
+     * Convert each element of the <code>data</code> array. The parser must be positioned on the array's
+     * <code>START_ARRAY</code> token.
+     */
+    private void parseData(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "'data' must be an array");
         }
 
-        List<Map<String, Object>> dataToParse = (List<Map<String, Object>>) rawData;
+        // values for the current element, keyed by type
+        Map<DataType, double[]> values = new java.util.HashMap<DataType, double[]>();
+        // type ids in the current element that are not arrays or objects as required
+        java.util.Set<String> invalid = new java.util.HashSet<String>();
+        // type ids with subtypes that have an object in the current element
+        java.util.Set<String> present = new java.util.HashSet<String>();
 
-        if ((dataToParse.size() == 0)) {
-            throw new IOException("at least one 'data' element must be defined");
-        }
+        JsonToken token = null;
+
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            ++dataCount;
+
+            if (token != JsonToken.START_OBJECT) {
+                LOGGER.warn("data element {} is not a JSON object; it will be ignored", dataCount);
+                parser.skipChildren();
+                continue;
+            }
+
+            values.clear();
+            invalid.clear();
+            present.clear();
+
+            String timestamp = null;
+            boolean hasWhen = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String typeId = parser.getCurrentName();
+                token = parser.nextToken();
 
-        for (Map<String, Object> datum : dataToParse) {
-            Object temp = datum.get("when");
+                if ("when".equals(typeId)) {
+                    hasWhen = token != JsonToken.VALUE_NULL;
+                    timestamp = hasWhen ? parser.getValueAsString() : null;
+                }
+                else if (subtypesById.containsKey(typeId)) {
+                    if (token == JsonToken.START_OBJECT) {
+                        present.add(typeId);
+
+                        Map<String, SubDataType> subtypes = subtypesById.get(typeId);
+
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            SubDataType type = subtypes.get(parser.getCurrentName());
+                            token = parser.nextToken();
+
+                            if ((type != null) && (token == JsonToken.START_ARRAY)) {
+                                values.put(type, parseValues(parser, type));
+                            }
+                            else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    else if (token != JsonToken.VALUE_NULL) {
+                        invalid.add(typeId);
+                        parser.skipChildren();
+                    }
+                }
+                else if (typesById.containsKey(typeId)) {
+                    if (token == JsonToken.START_ARRAY) {
+                        DataType type = typesById.get(typeId);
+                        values.put(type, parseValues(parser, type));
+                    }
+                    else if (token != JsonToken.VALUE_NULL) {
+                        invalid.add(typeId);
+                        parser.skipChildren();
+                    }
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
 
-            if (temp == null) {
+            if (!hasWhen) {
                 LOGGER.warn("'when' not defined for data record; it will be ignored. Previous time was '{}'",
                         data.getRecordCount() == 0 ? "<null>" : format.format(new java.util.Date(data.getEndTime())));
                 continue;
             }
 
             long time = 0;
-            String timestamp = (String) temp;
 
             try {
                 time = format.parse(timestamp).getTime();
             }
             catch (ParseException pe) {
-                LOGGER.warn("cannot parse 'when' value '{}'; the data record will be ignored", temp);
+                LOGGER.warn("cannot parse 'when' value '{}'; the data record will be ignored", timestamp);
                 continue;
             }
 
             DataRecord record = new DataRecord(time, timestamp);
 
             for (DataType type : data.getTypes()) {
-                parseTypeData(datum, type, record);
+                addTypeData(values, invalid, present, type, record);
             }
 
             data.addRecord(record);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void parseTypeData(Map<String, Object> datum, DataType type, DataRecord record) {
-        String typeId = type.getId();
-        boolean isSubType = false;
-
-        if (type instanceof SubDataType) {
-            typeId = ((SubDataType) type).getPrimaryId();
-            isSubType = true;
-        }
+    private double[] parseValues(JsonParser parser, DataType type) throws IOException {
+        double[] values = new double[type.getFieldCount()];
+        int n = 0;
 
-        Object temp = datum.get(typeId);
+        JsonToken token = null;
 
-        if (temp == null) {
-            LOGGER.warn("no data for type '{}' at time {}", typeId,
-                    format.format(new java.util.Date(record.getTime())));
-            return;
-        }
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            double value = Double.NaN;
 
-        if (isSubType) {
-            if (temp instanceof Map) {
-                Map<String, Object> map = (Map<String, Object>) temp;
-
-                String subtypeId = ((SubDataType) type).getSubId();
-                temp = map.get(subtypeId);
+            if ((token == JsonToken.VALUE_NUMBER_INT) || (token == JsonToken.VALUE_NUMBER_FLOAT)) {
+                value = parser.getDoubleValue();
+            }
+            else if (token != JsonToken.VALUE_NULL) {
+                throw new JsonParseException(parser, "values for type '" + type.getId() + "' must be numbers");
+            }
 
-                if (temp == null) {
-                    LOGGER.warn("no data for subtype '{}' at time {}", subtypeId,
-                            format.format(new java.util.Date(record.getTime())));
-                    return;
-                }
-                else {
-                    List<Number> values = (List<Number>) temp;
+            if (n == values.length) {
+                values = java.util.Arrays.copyOf(values, n == 0 ? 4 : n * 2);
+            }
 
-                    double[] doubleValues = new double[values.size()];
+            values[n++] = value;
+        }
 
-                    for (int i = 0; i < doubleValues.length; i++) {
-                        Number value = values.get(i);
+        return n == values.length ? values : java.util.Arrays.copyOf(values, n);
+    }
 
-                        if (value == null) {
-                            doubleValues[i] = Double.NaN;
-                        }
-                        else {
-                            doubleValues[i] = value.doubleValue();
-                        }
-                    }
+    private void addTypeData(Map<DataType, double[]> values, java.util.Set<String> invalid,
+            java.util.Set<String> present, DataType type, DataRecord record) {
+        double[] typeValues = values.get(type);
 
-                    record.addData(type, doubleValues);
-                }
-            }
-            else {
-                LOGGER.warn("unknown JSON object for type '{}' at time {}; it must be an object", type.getId(),
-                        format.format(new java.util.Date(record.getTime())));
-            }
+        if (typeValues != null) {
+            record.addData(type, typeValues);
+            return;
         }
-        else {
-            if (temp instanceof List) {
-                List<Number> values = (List<Number>) temp;
 
-                double[] doubleValues = new double[values.size()];
-
-                for (int i = 0; i < doubleValues.length; i++) {
-                    Number value = values.get(i);
+        String typeId = type.getId();
+        boolean isSubType = false;
 
-                    if (value == null) {
-                        doubleValues[i] = Double.NaN;
-                    }
-                    else {
-                        doubleValues[i] = value.doubleValue();
-                    }
-                }
+        if (type instanceof SubDataType) {
+            typeId = ((SubDataType) type).getPrimaryId();
+            isSubType = true;
+        }
 
-                record.addData(type, doubleValues);
-            }
-            else {
-                LOGGER.warn("unknown JSON object for type '{}' at time {}; it must be an array", typeId,
-                        format.format(new java.util.Date(record.getTime())));
-            }
+        if (invalid.contains(typeId)) {
+            LOGGER.warn("unknown JSON object for type '{}' at time {}; it must be an {}", isSubType ? type.getId()
+                    : typeId, format.format(new java.util.Date(record.getTime())), isSubType ? "object" : "array");
+        }
+        else if (isSubType && present.contains(typeId)) {
+            LOGGER.warn("no data for subtype '{}' at time {}", ((SubDataType) type).getSubId(),
+                    format.format(new java.util.Date(record.getTime())));
+        }
+        else {
+            LOGGER.warn("no data for type '{}' at time {}", typeId,
+                    format.format(new java.util.Date(record.getTime())));
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.ibm.nmon.parser;
+
+/**
+ * <p>
+ * A histogram of non-negative latency values using log-linear buckets. Values less than 128 are counted exactly.
+ * Larger values are counted in one of 64 buckets per power of 2, so the value reported for a percentile is within
+ * 1/64 (about 1.5%) of the actual value.
+ * </p>
+ *
+ * <p>
+ * Only buckets that have values are stored, so a histogram for a small number of values uses little memory. The
+ * total number of buckets is fixed, which bounds the memory used by a histogram for any number of values.
+ * </p>
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    // sorted bucket indexes and the count for each
+    private int[] buckets = new int[4];
+    private int[] counts = new int[4];
+    private int size = 0;
+
+    private long totalCount = 0;
+    private long maximum = 0;
+
+    void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value cannot be negative");
+        }
+
+        add(getBucket(value), 1);
+
+        ++totalCount;
+
+        if (value > maximum) {
+            maximum = value;
+        }
+    }
+
+    /**
+     * Add all the values recorded by another histogram to this one.
+     */
+    void merge(LatencyHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+
+        int[] mergedBuckets = new int[size + other.size];
+        int[] mergedCounts = new int[mergedBuckets.length];
+        int n = 0;
+
+        int i = 0;
+        int j = 0;
+
+        while ((i < size) || (j < other.size)) {
+            if ((j == other.size) || ((i < size) && (buckets[i] < other.buckets[j]))) {
+                mergedBuckets[n] = buckets[i];
+                mergedCounts[n++] = counts[i++];
+            }
+            else if ((i == size) || (other.buckets[j] < buckets[i])) {
+                mergedBuckets[n] = other.buckets[j];
+                mergedCounts[n++] = other.counts[j++];
+            }
+            else {
+                mergedBuckets[n] = buckets[i];
+                mergedCounts[n++] = counts[i++] + other.counts[j++];
+            }
+        }
+
+        buckets = mergedBuckets;
+        counts = mergedCounts;
+        size = n;
+
+        totalCount += other.totalCount;
+
+        if (other.maximum > maximum) {
+            maximum = other.maximum;
+        }
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the exact maximum value; <code>NaN</code> if there are no values
+     */
+    double getMaximum() {
+        return totalCount == 0 ? Double.NaN : maximum;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the highest value in the bucket containing the given percentile; <code>NaN</code> if there are no
+     *         values
+     */
+    double getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return Double.NaN;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long count = 0;
+
+        for (int i = 0; i < size; i++) {
+            count += counts[i];
+
+            if (count >= rank) {
+                return Math.min(getHighestValue(buckets[i]), maximum);
+            }
+        }
+
+        return maximum;
+    }
+
+    private void add(int bucket, int count) {
+        int idx = java.util.Arrays.binarySearch(buckets, 0, size, bucket);
+
+        if (idx >= 0) {
+            counts[idx] += count;
+            return;
+        }
+
+        idx = -idx - 1;
+
+        if (size == buckets.length) {
+            buckets = java.util.Arrays.copyOf(buckets, size * 2);
+            counts = java.util.Arrays.copyOf(counts, size * 2);
+        }
+
+        System.arraycopy(buckets, idx, buckets, idx + 1, size - idx);
+        System.arraycopy(counts, idx, counts, idx + 1, size - idx);
+
+        buckets[idx] = bucket;
+        counts[idx] = count;
+        ++size;
+    }
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // shift the value so only the highest SUB_BUCKET_BITS bits remain
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long getHighestValue(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKET_HALF - 1;
+        long subBucket = bucket - shift * SUB_BUCKET_HALF;
+
+        long highest = ((subBucket + 1) << shift) - 1;
+
+        // the last buckets overflow
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,474 @@
+package com.ibm.nmon.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import java.util.BitSet;
+
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * A single line of an NMON file, split into comma separated values. Values are indexed the same as
+ * <code>Pattern.split(",")</code>, i.e. trailing empty values are removed.
+ * </p>
+ *
+ * <p>
+ * Lines can be created from a String or directly from the bytes of a (usually memory mapped) file. In the latter case,
+ * Strings are only created for the values that are actually requested. Numeric values are parsed directly from the
+ * bytes when possible; the result is always the same as {@link Double#parseDouble(String)}.
+ * </p>
+ *
+ * <p>
+ * {@link #convert(int, int, StringCache)} can be called on a worker thread to split the line and parse its numeric
+ * values before the line is handed to the thread that builds the data set.
+ * </p>
+ */
+final class NMONLine {
+    private static final Pattern DATA_SPLITTER = Pattern.compile(",");
+
+    // powers of 10 that are exactly representable as doubles
+    private static final double[] POWERS_OF_10 = new double[23];
+
+    static {
+        POWERS_OF_10[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_10.length; i++) {
+            POWERS_OF_10[i] = POWERS_OF_10[i - 1] * 10;
+        }
+    }
+
+    // larger values cannot be multiplied by 10 and still be exactly representable as doubles
+    private static final long MAX_MANTISSA = ((1L << 53) - 9) / 10;
+
+    final int lineNumber;
+
+    // for lines created from bytes, these are created on demand
+    private String line;
+    private String[] values;
+
+    private final ByteBuffer bytes;
+    private final int end;
+    // starts[i] is the index of the first byte of value i; starts[count] is end + 1
+    private final int[] starts;
+    private final Charset charset;
+
+    private double[] numbers;
+    // values that were successfully converted to numbers
+    private BitSet converted;
+
+    NMONLine(String line, int lineNumber) {
+        this.lineNumber = lineNumber;
+        this.line = line;
+
+        this.bytes = null;
+        this.end = -1;
+        this.starts = null;
+        this.charset = null;
+
+        if (line.startsWith("ZZZZ") || line.startsWith("ERROR")) {
+            values = null;
+        }
+        else {
+            values = DATA_SPLITTER.split(line);
+        }
+    }
+
+    /**
+     * Create a line from the given bytes. The bytes must not include any line terminators.
+     */
+    NMONLine(ByteBuffer bytes, int start, int end, int lineNumber, Charset charset) {
+        this.lineNumber = lineNumber;
+        this.line = null;
+
+        this.bytes = bytes;
+        this.end = end;
+        this.charset = charset;
+
+        int commas = 0;
+
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) == ',') {
+                ++commas;
+            }
+        }
+
+        int[] temp = new int[commas + 2];
+        int n = 0;
+
+        temp[n++] = start;
+
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) == ',') {
+                temp[n++] = i + 1;
+            }
+        }
+
+        temp[n] = end + 1;
+
+        // match Pattern.split(); remove trailing empty values, but only if there was a separator
+        int count = commas + 1;
+
+        if (commas > 0) {
+            while ((count > 0) && (temp[count] - temp[count - 1] == 1)) {
+                --count;
+            }
+        }
+
+        if (count == commas + 1) {
+            starts = temp;
+        }
+        else {
+            starts = new int[count + 1];
+            System.arraycopy(temp, 0, starts, 0, count);
+            starts[count] = temp[count];
+        }
+
+        values = new String[count];
+    }
+
+    String getLine() {
+        if (line == null) {
+            line = decode(starts[0], end);
+        }
+
+        return line;
+    }
+
+    boolean startsWith(String prefix) {
+        if (bytes == null) {
+            return line.startsWith(prefix);
+        }
+
+        int start = starts[0];
+
+        if (end - start < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of values; not valid for <code>ZZZZ</code> or <code>ERROR</code> lines
+     */
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if the index is greater than {@link #size()}
+     */
+    String get(int index) {
+        String value = values[index];
+
+        if (value == null) {
+            value = decode(starts[index], starts[index + 1] - 1);
+            values[index] = value;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return all the values as Strings; the returned array must not be modified
+     */
+    String[] getValues() {
+        if (bytes != null) {
+            for (int i = 0; i < values.length; i++) {
+                get(i);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * @return the value as an integer
+     * @throws NumberFormatException if the value is not a valid integer
+     * @see Integer#parseInt(String)
+     */
+    int getInt(int index) {
+        if ((bytes != null) && (values[index] == null)) {
+            int start = starts[index];
+            int end = starts[index + 1] - 1;
+
+            // at most 9 digits cannot overflow
+            if ((end > start) && (end - start <= 9)) {
+                int value = 0;
+                int i = start;
+
+                for (; i < end; i++) {
+                    byte b = bytes.get(i);
+
+                    if ((b < '0') || (b > '9')) {
+                        break;
+                    }
+
+                    value = value * 10 + (b - '0');
+                }
+
+                if (i == end) {
+                    return value;
+                }
+            }
+        }
+
+        return Integer.parseInt(get(index));
+    }
+
+    /**
+     * @param top if <code>true</code>, parse the value with {@link Double#parseDouble(String)}; otherwise empty and
+     *            <code>nan</code> values are 0 and <code>INF</code> is infinite
+     * @throws NumberFormatException if the value is not a number
+     */
+    double getNumber(int index, boolean top) {
+        if ((converted != null) && converted.get(index)) {
+            return numbers[index];
+        }
+
+        if (bytes != null) {
+            double value = parseBytes(starts[index], starts[index + 1] - 1);
+
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+
+        if (top) {
+            return Double.parseDouble(get(index));
+        }
+        else {
+            return parseValue(get(index));
+        }
+    }
+
+    /**
+     * @return the first value, which is the data type id for data lines; <code>null</code> for <code>ZZZZ</code>,
+     *         <code>ERROR</code> and empty lines
+     */
+    String getId(StringCache cache) {
+        if ((values == null) || (values.length == 0) || startsWith("ZZZZ") || startsWith("ERROR")) {
+            return null;
+        }
+
+        intern(0, cache);
+
+        return values[0];
+    }
+
+    /**
+     * Split the line and parse the values that will be needed to build the data set. TOP lines use the given command
+     * index and field count to determine which values are numeric.
+     */
+    void convert(int topCommandIndex, int topFieldCount, StringCache cache) {
+        if ((values == null) || (values.length == 0) || startsWith("ZZZZ") || startsWith("ERROR")) {
+            return;
+        }
+
+        intern(0, cache);
+
+        if (values.length < 3) {
+            return;
+        }
+
+        String id = values[0];
+
+        if ("UARG".equals(id)) {
+            return;
+        }
+        else if ("TOP".equals(id)) {
+            intern(2, cache);
+
+            if ((topCommandIndex == -1) || (topCommandIndex >= values.length)) {
+                return;
+            }
+
+            intern(topCommandIndex, cache);
+
+            numbers = new double[values.length];
+            converted = new BitSet(values.length);
+
+            // the same columns as NMONParser.parseTopData(): skip TOP, pid & timestamp and the command
+            // there is no column for the calculated Wait%
+            int n = 3;
+
+            for (int i = 0; (i < topFieldCount) && (n < values.length); i++) {
+                if (n == topCommandIndex) {
+                    ++n;
+                }
+
+                if ((i != 3) && (n < values.length)) {
+                    convert(n, true);
+                    ++n;
+                }
+            }
+        }
+        else {
+            intern(1, cache);
+
+            if (!values[1].startsWith("T")) {
+                return;
+            }
+
+            numbers = new double[values.length];
+            converted = new BitSet(values.length);
+
+            int last = values.length;
+
+            // the SUMMARY command is the last value
+            if ("SUMMARY".equals(id)) {
+                --last;
+                intern(last, cache);
+            }
+
+            for (int i = 2; i < last; i++) {
+                convert(i, false);
+            }
+        }
+    }
+
+    private void convert(int index, boolean top) {
+        try {
+            numbers[index] = getNumber(index, top);
+            converted.set(index);
+        }
+        catch (NumberFormatException nfe) {
+            // leave unconverted so getNumber() throws again when the value is used
+        }
+    }
+
+    private void intern(int index, StringCache cache) {
+        if ((bytes != null) && (values[index] == null)) {
+            values[index] = cache.get(this, starts[index], starts[index + 1] - 1);
+        }
+    }
+
+    private String decode(int start, int end) {
+        byte[] data = new byte[end - start];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = bytes.get(start + i);
+        }
+
+        return new String(data, charset);
+    }
+
+    /**
+     * @return the value or <code>NaN</code> if the bytes are not a simple decimal number that can be parsed exactly
+     */
+    private double parseBytes(int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (i < end) {
+            byte b = bytes.get(i);
+
+            if ((b == '-') || (b == '+')) {
+                negative = b == '-';
+                ++i;
+            }
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean decimal = false;
+
+        for (; i < end; i++) {
+            byte b = bytes.get(i);
+
+            if ((b >= '0') && (b <= '9')) {
+                if (mantissa > MAX_MANTISSA) {
+                    return Double.NaN;
+                }
+
+                mantissa = mantissa * 10 + (b - '0');
+                ++digits;
+
+                if (decimal) {
+                    ++scale;
+                }
+            }
+            else if ((b == '.') && !decimal) {
+                decimal = true;
+            }
+            else {
+                return Double.NaN;
+            }
+        }
+
+        if ((digits == 0) || (scale >= POWERS_OF_10.length)) {
+            return Double.NaN;
+        }
+
+        // both the mantissa and the power of 10 are exact so the division is correctly rounded
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_10[scale];
+
+        return negative ? -value : value;
+    }
+
+    static double parseValue(String value) {
+        // 'nan' only appears in file sizes for virtual files like
+        // rpc_pipefs; assume this is equivalent to 0
+        if ("".equals(value) || value.contains("nan")) {
+            return 0;
+        }
+        else if ("INF".equals(value)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        else {
+            return Double.parseDouble(value);
+        }
+    }
+
+    /**
+     * A fixed size cache of Strings so repeated values like data type ids, timestamps and process names do not create
+     * new Strings on every line. Not thread safe.
+     */
+    static final class StringCache {
+        private final String[] strings = new String[1024];
+
+        String get(NMONLine line, int start, int end) {
+            ByteBuffer bytes = line.bytes;
+            int hash = 0;
+
+            for (int i = start; i < end; i++) {
+                byte b = bytes.get(i);
+
+                if (b < 0) {
+                    // non-ASCII; do not cache since bytes do not map directly to chars
+                    return line.decode(start, end);
+                }
+
+                hash = 31 * hash + b;
+            }
+
+            int slot = (hash ^ (hash >>> 16)) & (strings.length - 1);
+            String cached = strings[slot];
+
+            if ((cached != null) && (cached.length() == end - start)) {
+                int i = 0;
+
+                while ((i < cached.length()) && (cached.charAt(i) == bytes.get(start + i))) {
+                    ++i;
+                }
+
+                if (i == cached.length()) {
+                    return cached;
+                }
+            }
+
+            cached = line.decode(start, end);
+            strings[slot] = cached;
+
+            return cached;
+        }
+    }
+}
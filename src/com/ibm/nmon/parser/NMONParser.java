@@ -6,33 +6,85 @@ import java.io.File;
 import java.io.IOException;
 
 import java.io.Reader;
+import java.io.BufferedReader;
 import java.io.LineNumberReader;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import java.util.regex.Pattern;
 
 import com.ibm.nmon.data.*;
 import com.ibm.nmon.data.Process;
 import com.ibm.nmon.data.transform.*;
+import com.ibm.nmon.interval.Interval;
 import com.ibm.nmon.util.DataHelper;
 
 /**
+ * <p>
  * A parser for NMON files. The result of a successfully parsed file will be a populated {@link NMONDataSet} object.
+ * </p>
+ *
+ * <p>
+ * Large files are memory mapped and split into chunks of whole snapshots on <code>ZZZZ</code> boundaries after the
+ * header is parsed. Each chunk is tokenized directly from the mapped bytes; see {@link NMONLine}. If more than one
+ * thread is allowed (see {@link #setParseThreads(int)}), worker threads tokenize and convert the numeric values for
+ * each chunk. The chunks are always consumed in file order on the calling thread, which builds the records, data
+ * types and processes exactly as a parse using a Reader would.
+ * </p>
+ *
+ * <p>
+ * {@link #parse(String, TimeZone, boolean, Interval)} parses only the snapshots in a given time range. The header is
+ * always parsed but the remaining data is read using a {@link NMONSnapshotIndex} of the <code>ZZZZ</code> records so
+ * the rest of the file is skipped entirely.
+ * </p>
+ *
+ * <p>
+ * Files that are still being written can be followed with {@link #startTail(String, TimeZone, boolean) startTail()}.
+ * The parser then keeps its state between calls to {@link #parseAppended()} so only the newly written snapshots are
+ * parsed.
+ * </p>
+ *
+ * <p>
+ * If a {@link #setProjection(TypeProjection) projection} is set, data types that are not part of it are not created
+ * and their data is skipped before it is converted.
+ * </p>
  */
 public final class NMONParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(NMONParser.class);
 
-    private static final SimpleDateFormat NMON_FORMAT = new SimpleDateFormat("HH:mm:ss dd-MMM-yyyy",
-            java.util.Locale.US);
     private static final Pattern DATA_SPLITTER = Pattern.compile(",");
 
+    // files smaller than this are always parsed with a Reader on a single thread
+    private static final long CHUNKED_PARSE_MIN_SIZE = 16 * 1024 * 1024;
+    private static final long MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    // SimpleDateFormat is not thread safe and the time zone changes per parse, so do not share across instances
+    private final SimpleDateFormat nmonFormat = new SimpleDateFormat("HH:mm:ss dd-MMM-yyyy", java.util.Locale.US);
+
+    private int parseThreads = 1;
+    // where snapshot indexes are saved; null to not save them
+    private File indexDirectory = null;
+    private TypeProjection projection = TypeProjection.ALL;
+
     private LineNumberReader in = null;
+    private int lineNumber = 0;
     private DataRecord currentRecord = null;
+    // time of the last completed record; new records must be after this
+    private long previousTime = Long.MIN_VALUE;
 
     private NMONDataSet data = null;
 
@@ -52,6 +104,16 @@ public final class NMONParser {
     private final List<DataTransform> transforms = new java.util.ArrayList<DataTransform>();
     private final List<DataPostProcessor> processors = new java.util.ArrayList<DataPostProcessor>();
 
+    // state kept between calls to parseAppended()
+    private boolean tailing = false;
+    private String tailFilename = null;
+    private Charset tailCharset = null;
+    // bytes parsed so far; always the end of a complete line
+    private long tailOffset = 0;
+    // types and processes defined so far, not including the aggregated processes
+    private List<DataType> tailTypes = null;
+    private List<Process> tailProcesses = null;
+
     public NMONParser() {
         processors.add(new NetworkTotalPostProcessor("NET"));
         processors.add(new NetworkTotalPostProcessor("SEA"));
@@ -64,11 +126,90 @@ public final class NMONParser {
     }
 
     public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
+        checkNotTailing();
+
+        long length = new File(filename).length();
+
+        if (length >= CHUNKED_PARSE_MIN_SIZE) {
+            NMONDataSet parsed = parseChunked(filename, timeZone, scaleProcessesByCPU, length);
+
+            if (parsed != null) {
+                return parsed;
+            }
+            // else no ZZZZ record could be found; let the Reader based parse handle it
+        }
+
         return parse(filename, new java.io.FileReader(filename), timeZone, scaleProcessesByCPU);
     }
 
+    /**
+     * <p>
+     * Parse only the snapshots with times inside the given interval. The file's header and any data types or system
+     * info defined before the interval are always parsed, but processes and data outside the interval's snapshots
+     * are not.
+     * </p>
+     *
+     * <p>
+     * If the interval is {@link Interval#DEFAULT}, the whole file is parsed. Otherwise, the returned data set will not
+     * have any records if no snapshots are inside the interval.
+     * </p>
+     *
+     * @see #setIndexDirectory(File)
+     */
+    public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU, Interval interval)
+            throws IOException {
+        if (Interval.DEFAULT.equals(interval)) {
+            return parse(filename, timeZone, scaleProcessesByCPU);
+        }
+
+        checkNotTailing();
+
+        long start = System.nanoTime();
+
+        NMONSnapshotIndex index = NMONSnapshotIndex.getIndex(filename, timeZone, indexDirectory);
+
+        if (index.getSnapshotCount() == 0) {
+            // let the Reader based parse fail
+            return parse(filename, new java.io.StringReader(""), timeZone, scaleProcessesByCPU);
+        }
+
+        int first = index.findFirst(interval.getStart());
+        // one past the last snapshot in the interval
+        int last = index.findFirst(interval.getEnd());
+
+        while ((last < index.getSnapshotCount()) && (index.getTime(last) == interval.getEnd())) {
+            ++last;
+        }
+
+        // parse an empty range if there are no snapshots in the interval
+        long from = first < last ? index.getOffset(first) : index.getOffset(0);
+        long to = first < last ? index.getEnd(last - 1) : from;
+        int linesBefore = first < last ? index.getLinesBefore(first) : -1;
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("indexed {} snapshots in {}; parsing {} bytes for {} snapshots starting at {}",
+                    new Object[] { index.getSnapshotCount(), filename, to - from, last - first, from });
+        }
+
+        NMONDataSet parsed = parseChunked(filename, timeZone, scaleProcessesByCPU, index.getOffset(0), from, to,
+                linesBefore, index);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Partial parse complete for {} in {}ms", filename, (System.nanoTime() - start) / 1000000.0d);
+        }
+
+        return parsed;
+    }
+
     public NMONDataSet parse(String datasetName, Reader reader, TimeZone timeZone, boolean scaleProcessesByCPU)
             throws IOException {
+        checkNotTailing();
+
+        return parseReader(datasetName, reader, timeZone, scaleProcessesByCPU);
+    }
+
+    private NMONDataSet parseReader(String datasetName, Reader reader, TimeZone timeZone,
+            boolean scaleProcessesByCPU) throws IOException {
         long start = System.nanoTime();
 
         this.scaleProcessesByCPU = scaleProcessesByCPU;
@@ -76,12 +217,7 @@ public final class NMONParser {
         in = new LineNumberReader(reader);
 
         try {
-            data = new NMONDataSet(datasetName);
-
-            NMON_FORMAT.setTimeZone(timeZone);
-
-            data.setMetadata("parsed_gmt_offset",
-                    Double.toString(timeZone.getOffset(System.currentTimeMillis()) / 3600000.0d));
+            initialize(datasetName, timeZone);
 
             String line = parseHeaders();
 
@@ -96,25 +232,477 @@ public final class NMONParser {
             }
 
             do {
-                parseLine(line);
+                lineNumber = in.getLineNumber();
+                parseLine(new NMONLine(line, 0));
             } while ((line = in.readLine()) != null);
 
-            // save file's system info
-            for (String name : systemInfo.keySet()) {
-                String value = systemInfo.get(name).toString();
-                data.setSystemInfo(name, value);
+            return complete();
+        }
+        finally {
+            if (in != null) {
+                try {
+                    in.close();
+                }
+                catch (Exception e) {
+                    // ignore
+                }
+
+                in = null;
             }
 
-            // final record completes when the file is completely read
-            if (currentRecord != null) {
-                completeCurrentRecord();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Parse complete for {} in {}ms", data.getSourceFile(),
+                        (System.nanoTime() - start) / 1000000.0d);
+            }
+
+            // when tailing, the state is needed by parseAppended()
+            if (!tailing) {
+                reset();
+            }
+        }
+    }
+
+    /**
+     * Set the number of threads used to parse a single large file. The default is 1, i.e. all parsing is done on the
+     * calling thread.
+     */
+    public void setParseThreads(int parseThreads) {
+        if (parseThreads < 1) {
+            throw new IllegalArgumentException("parseThreads must be greater than 0");
+        }
+
+        this.parseThreads = parseThreads;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    /**
+     * Set the directory where the {@link NMONSnapshotIndex indexes} used to parse time ranges are saved, so each file
+     * is only scanned once. The default is <code>null</code>, i.e. files are scanned on every partial parse.
+     */
+    public void setIndexDirectory(File indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
+
+    public File getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    /**
+     * Only create the data types included in the given projection. <code>TOP</code>, <code>UARG</code> and
+     * <code>SUMMARY</code> data is only parsed if the projection includes processes. The default is
+     * {@link TypeProjection#ALL}.
+     */
+    public void setProjection(TypeProjection projection) {
+        this.projection = projection == null ? TypeProjection.ALL : projection;
+    }
+
+    public TypeProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * <p>
+     * Parse a file that is still being written and keep the parser's state so that data appended to the file later
+     * can be parsed by {@link #parseAppended()}. Only complete lines are parsed.
+     * </p>
+     *
+     * <p>
+     * The last snapshot in the file is <em>not</em> included in the returned data since NMON may still be writing it.
+     * It will be returned by <code>parseAppended()</code> once the next <code>ZZZZ</code> record is written or by
+     * {@link #stopTail()}.
+     * </p>
+     *
+     * <p>
+     * If this parser is already tailing a file, that file is no longer followed and its remaining data is discarded.
+     * </p>
+     */
+    public NMONDataSet startTail(String filename, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
+        if (tailing) {
+            tailing = false;
+            reset();
+        }
+
+        // match FileReader
+        Charset charset = Charset.defaultCharset();
+        long end = 0;
+        String text = null;
+
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(filename, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+
+            end = findLineEnd(channel, 0, channel.size());
+
+            if (end < CHUNKED_PARSE_MIN_SIZE) {
+                text = new String(read(channel, 0, end), charset);
+            }
+        }
+        finally {
+            file.close();
+        }
+
+        tailing = true;
+        boolean started = false;
+
+        try {
+            NMONDataSet parsed = null;
+
+            if (text == null) {
+                parsed = parseChunked(filename, timeZone, scaleProcessesByCPU, end);
+
+                if (parsed == null) {
+                    // no ZZZZ record; let the Reader based parse fail
+                    parsed = parseReader(filename, new java.io.StringReader(""), timeZone, scaleProcessesByCPU);
+                }
+            }
+            else {
+                parsed = parseReader(filename, new java.io.StringReader(text), timeZone, scaleProcessesByCPU);
+            }
+
+            tailFilename = filename;
+            tailCharset = charset;
+            tailOffset = end;
+
+            started = true;
+
+            return parsed;
+        }
+        finally {
+            if (!started) {
+                tailing = false;
+                reset();
+            }
+        }
+    }
+
+    /**
+     * Parse the complete lines appended to the file since {@link #startTail(String, TimeZone, boolean) startTail()}
+     * or the previous call to this method. If parsing fails, the file is no longer followed.
+     *
+     * @return only the newly completed snapshots or <code>null</code> if there are none
+     * @throws IllegalStateException if this parser is not tailing a file
+     */
+    public NMONDataSet parseAppended() throws IOException {
+        if (!tailing) {
+            throw new IllegalStateException("startTail() must be called first");
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+
+        java.io.RandomAccessFile file = null;
+
+        try {
+            file = new java.io.RandomAccessFile(tailFilename, "r");
+            FileChannel channel = file.getChannel();
+
+            long size = channel.size();
+
+            if (size < tailOffset) {
+                throw new IOException("file '" + tailFilename + "' is now smaller than the " + tailOffset
+                        + " bytes already parsed");
             }
 
-            DataHelper.aggregateProcessData(data, LOGGER);
+            long end = findLineEnd(channel, tailOffset, size);
+            NMONDataSet appended = null;
 
-            return data;
+            if (end > tailOffset) {
+                LineNumberReader reader = new LineNumberReader(
+                        new java.io.StringReader(new String(read(channel, tailOffset, end), tailCharset)));
+
+                startTailStep();
+
+                int baseLineNumber = lineNumber;
+                String line = null;
+
+                while ((line = reader.readLine()) != null) {
+                    lineNumber = baseLineNumber + reader.getLineNumber();
+                    parseLine(new NMONLine(line, 0));
+                }
+
+                tailOffset = end;
+
+                appended = completeTailStep();
+
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Parsed {} appended lines for {} in {}ms", new Object[] {
+                            lineNumber - baseLineNumber, tailFilename, (System.nanoTime() - start) / 1000000.0d });
+                }
+            }
+
+            success = true;
+
+            return appended;
         }
         finally {
+            if (file != null) {
+                try {
+                    file.close();
+                }
+                catch (Exception e) {
+                    // ignore
+                }
+            }
+
+            if (!success) {
+                tailing = false;
+                reset();
+            }
+        }
+    }
+
+    /**
+     * Stop tailing the file. The last snapshot is assumed to be complete and is returned. Data appended since the last
+     * call to {@link #parseAppended()} is <em>not</em> parsed.
+     *
+     * @return the last snapshot or <code>null</code> if there is none or this parser is not tailing a file
+     */
+    public NMONDataSet stopTail() {
+        if (!tailing) {
+            return null;
+        }
+
+        try {
+            if (currentRecord == null) {
+                return null;
+            }
+
+            startTailStep();
+            completeCurrentRecord();
+
+            return completeTailStep();
+        }
+        finally {
+            tailing = false;
+            reset();
+        }
+    }
+
+    public boolean isTailing() {
+        return tailing;
+    }
+
+    private void checkNotTailing() {
+        if (tailing) {
+            throw new IllegalStateException("cannot parse while tailing " + tailFilename);
+        }
+    }
+
+    // each step's data only contains new records but needs all the existing types and processes
+    private void startTailStep() {
+        NMONDataSet previous = data;
+
+        data = new NMONDataSet(previous.getSourceFile());
+
+        for (String name : previous.getMetadataNames()) {
+            data.setMetadata(name, previous.getMetadata(name));
+        }
+
+        for (DataType type : tailTypes) {
+            data.addType(type);
+        }
+
+        // include processes without any new data so they are aggregated the same as they would be for the whole file
+        for (Process process : tailProcesses) {
+            data.addProcess(process);
+        }
+    }
+
+    private NMONDataSet completeTailStep() {
+        saveTailTypes();
+
+        if (data.getRecordCount() == 0) {
+            return null;
+        }
+
+        DataHelper.aggregateProcessData(data, LOGGER);
+
+        return data;
+    }
+
+    private void saveTailTypes() {
+        tailTypes = new java.util.ArrayList<DataType>(data.getTypeCount());
+        tailProcesses = new java.util.ArrayList<Process>(data.getProcessCount());
+
+        for (DataType type : data.getTypes()) {
+            tailTypes.add(type);
+        }
+
+        for (Process process : data.getProcesses()) {
+            tailProcesses.add(process);
+        }
+    }
+
+    /**
+     * @return the parsed data or <code>null</code> if the file has no <code>ZZZZ</code> record that starts a line
+     */
+    private NMONDataSet parseChunked(String filename, TimeZone timeZone, boolean scaleProcessesByCPU, long fileSize)
+            throws IOException {
+        long dataStart = -1;
+
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(filename, "r");
+
+        try {
+            dataStart = findTimestamp(file.getChannel(), 0);
+        }
+        finally {
+            file.close();
+        }
+
+        if ((dataStart == -1) || (dataStart >= fileSize)) {
+            return null;
+        }
+
+        return parseChunked(filename, timeZone, scaleProcessesByCPU, dataStart, dataStart, fileSize, -1, null);
+    }
+
+    /**
+     * Parse the header, which ends at <code>dataStart</code>, then the snapshots in the range <code>[from, to)</code>.
+     * <code>from</code> must be the start of a <code>ZZZZ</code> line; <code>linesBefore</code> is the number of lines
+     * before it or -1 if <code>from</code> is the end of the header. If <code>index</code> is not <code>null</code>,
+     * the definitions it found between <code>dataStart</code> and <code>from</code> are parsed before the snapshots.
+     */
+    private NMONDataSet parseChunked(String filename, TimeZone timeZone, boolean scaleProcessesByCPU, long dataStart,
+            long from, long to, int linesBefore, NMONSnapshotIndex index) throws IOException {
+        long start = System.nanoTime();
+
+        // match FileReader
+        Charset charset = Charset.defaultCharset();
+
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(filename, "r");
+        FileChannel channel = file.getChannel();
+
+        ExecutorService executor = null;
+
+        try {
+            this.scaleProcessesByCPU = scaleProcessesByCPU;
+
+            initialize(filename, timeZone);
+
+            // parse the headers with the same code as the single threaded parse
+            in = new LineNumberReader(new java.io.StringReader(new String(read(channel, 0, dataStart), charset)));
+
+            parseHeaders();
+
+            // all lines before the first ZZZZ have been read; chunk line numbers are relative to this
+            int baseLineNumber = linesBefore == -1 ? in.getLineNumber() : linesBefore;
+
+            in.close();
+            in = null;
+
+            for (DataPostProcessor processor : processors) {
+                processor.addDataTypes(data);
+            }
+
+            if (index != null) {
+                // data types defined after the first snapshot, e.g. VM on Linux, still apply to the snapshots parsed
+                for (int i = 0; (i < index.getDefinitionCount()) && (index.getDefinitionStart(i) < from); i++) {
+                    parseDefinition(new NMONLine(new String(read(channel, index.getDefinitionStart(i),
+                            index.getDefinitionEnd(i)), charset), 0));
+                }
+            }
+
+            long chunkSize = (to - from) / (parseThreads * 4);
+
+            if (chunkSize < MIN_CHUNK_SIZE) {
+                chunkSize = MIN_CHUNK_SIZE;
+            }
+            else if (chunkSize > MAX_CHUNK_SIZE) {
+                chunkSize = MAX_CHUNK_SIZE;
+            }
+
+            if (parseThreads > 1) {
+                executor = java.util.concurrent.Executors.newFixedThreadPool(parseThreads,
+                        new java.util.concurrent.ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r, "NMONParser-" + data.getSourceFile());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+            }
+
+            // limit the number of chunks in memory at any one time
+            java.util.Deque<Future<List<NMONLine>>> chunks = new java.util.ArrayDeque<Future<List<NMONLine>>>();
+            int maxQueued = parseThreads == 1 ? 1 : parseThreads * 2;
+            long chunkStart = from;
+
+            while ((chunkStart < to) || !chunks.isEmpty()) {
+                while ((chunkStart < to) && (chunks.size() < maxQueued)) {
+                    long chunkEnd = findTimestamp(channel, chunkStart + chunkSize);
+
+                    if ((chunkEnd == -1) || (chunkEnd > to)) {
+                        chunkEnd = to;
+                    }
+
+                    ChunkParser parser = new ChunkParser(channel, chunkStart, chunkEnd, charset);
+
+                    if (executor == null) {
+                        // run on this thread
+                        java.util.concurrent.FutureTask<List<NMONLine>> task = new java.util.concurrent.FutureTask<List<NMONLine>>(
+                                parser);
+                        task.run();
+                        chunks.add(task);
+                    }
+                    else {
+                        chunks.add(executor.submit(parser));
+                    }
+
+                    chunkStart = chunkEnd;
+                }
+
+                List<NMONLine> lines = null;
+
+                try {
+                    lines = chunks.removeFirst().get();
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException("interrupted parsing " + filename);
+                }
+                catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    else {
+                        throw new IOException("could not parse " + filename, cause);
+                    }
+                }
+
+                for (NMONLine line : lines) {
+                    lineNumber = baseLineNumber + line.lineNumber;
+                    parseLine(line);
+                }
+
+                if (!lines.isEmpty()) {
+                    baseLineNumber += lines.get(lines.size() - 1).lineNumber;
+                }
+            }
+
+            return complete();
+        }
+        finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+
+            try {
+                file.close();
+            }
+            catch (Exception e) {
+                // ignore
+            }
+
             if (in != null) {
                 try {
                     in.close();
@@ -126,24 +714,68 @@ public final class NMONParser {
                 in = null;
             }
 
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Parse complete for {} in {}ms", data.getSourceFile(),
-                        (System.nanoTime() - start) / 1000000.0d);
+            if (LOGGER.isDebugEnabled() && (data != null)) {
+                LOGGER.debug("Parse complete for {} in {}ms using {} threads", new Object[] { data.getSourceFile(),
+                        (System.nanoTime() - start) / 1000000.0d, parseThreads });
+            }
+
+            if (!tailing) {
+                reset();
             }
+        }
+    }
 
-            data = null;
-            currentRecord = null;
-            topFields = null;
-            topCommandIndex = -1;
-            summaryFields = null;
-            fileCPUs = 1;
-            seenFirstDataType = false;
-            isAIX = false;
+    private void initialize(String datasetName, TimeZone timeZone) {
+        data = new NMONDataSet(datasetName);
 
-            processes.clear();
-            systemInfo.clear();
-            transforms.clear();
+        nmonFormat.setTimeZone(timeZone);
+
+        data.setMetadata("parsed_gmt_offset",
+                Double.toString(timeZone.getOffset(System.currentTimeMillis()) / 3600000.0d));
+    }
+
+    private NMONDataSet complete() {
+        // save file's system info
+        for (String name : systemInfo.keySet()) {
+            String value = systemInfo.get(name).toString();
+            data.setSystemInfo(name, value);
+        }
+
+        if (tailing) {
+            // the final record may still be being written; keep it until the next ZZZZ record
+            saveTailTypes();
+        }
+        // final record completes when the file is completely read
+        else if (currentRecord != null) {
+            completeCurrentRecord();
         }
+
+        DataHelper.aggregateProcessData(data, LOGGER);
+
+        return data;
+    }
+
+    private void reset() {
+        data = null;
+        lineNumber = 0;
+        currentRecord = null;
+        previousTime = Long.MIN_VALUE;
+        topFields = null;
+        topCommandIndex = -1;
+        summaryFields = null;
+        fileCPUs = 1;
+        seenFirstDataType = false;
+        isAIX = false;
+
+        processes.clear();
+        systemInfo.clear();
+        transforms.clear();
+
+        tailFilename = null;
+        tailCharset = null;
+        tailOffset = 0;
+        tailTypes = null;
+        tailProcesses = null;
     }
 
     private String parseHeaders() throws IOException {
@@ -151,6 +783,8 @@ public final class NMONParser {
 
         // continue reading the NMON file until the first timestamp (ZZZZ) record or the file ends
         while ((line = in.readLine()) != null) {
+            lineNumber = in.getLineNumber();
+
             if (line.startsWith("AAA")) {
                 String[] values = DATA_SPLITTER.split(line);
 
@@ -248,7 +882,7 @@ public final class NMONParser {
 
                 DataType type = buildDataType(DATA_SPLITTER.split(line));
 
-                if (type != null) {
+                if ((type != null) && isProjected(projection, type.getId())) {
                     data.addType(type);
                 }
             }
@@ -261,83 +895,87 @@ public final class NMONParser {
             .unmodifiableSet(new java.util.HashSet<String>(
                     java.util.Arrays.asList("AVM-IN-MB", "NO-PBUF-COUNT", "NO-PSBUF-COUNT", "NO-JFS2-FSBUF-COUNT")));
 
-    private void parseLine(String line) {
-        if (line.startsWith("ZZZZ")) {
+    private void parseLine(NMONLine parsed) {
+        if (parsed.startsWith("ZZZZ")) {
             // add the previous record on a new timestamp
             if (currentRecord != null) {
                 completeCurrentRecord();
             }
 
-            currentRecord = parseTimestamp(line);
+            currentRecord = parseTimestamp(parsed.getLine());
         }
-        else if (line.startsWith("ERROR")) {
+        else if (parsed.startsWith("ERROR")) {
             // TODO handle this?
             return;
         }
         else {
-            String[] values = DATA_SPLITTER.split(line);
+            String id = parsed.get(0);
 
             if (currentRecord == null) {
-                if (IGNORED_TYPES.contains(values[0])) {
+                if (IGNORED_TYPES.contains(id)) {
                     return;
                 }
                 else {
-                    throw new IllegalStateException("current record is null at line " + in.getLineNumber());
+                    throw new IllegalStateException("current record is null at line " + lineNumber);
                 }
             }
 
-            if (values.length < 2) {
-                LOGGER.warn("skipping invalid data record '{}' starting at line {}", line, in.getLineNumber());
+            if (parsed.size() < 2) {
+                LOGGER.warn("skipping invalid data record '{}' starting at line {}", parsed.getLine(), lineNumber);
                 return;
             }
 
             String timestamp = null;
-            boolean isTop = "TOP".equals(values[0]);
-            boolean isUarg = "UARG".equals(values[0]);
+            boolean isTop = "TOP".equals(id);
+            boolean isUarg = "UARG".equals(id);
 
             // get the timestamp reference TXXXX
             // TOP records have pid as the 2nd column, then the reference
             if (isTop) {
-                timestamp = values[2];
+                timestamp = parsed.get(2);
             }
             else {
-                timestamp = values[1];
+                timestamp = parsed.get(1);
             }
 
             if (timestamp.startsWith("T")) {
-                DataType type = data.getType(values[0]);
+                if (!isProjected(projection, id)) {
+                    return;
+                }
+
+                DataType type = data.getType(id);
 
                 if (timestamp.equals(currentRecord.getTimestamp())) {
                     if (isUarg) {
-                        parseUARG(values);
+                        parseUARG(parsed.getValues());
                     }
                     else if (isTop) {
                         // assume TOP data type is created in the header
-                        parseTopData(values);
+                        parseTopData(parsed);
                     }
-                    else if ("SUMMARY".equals(values[0])) {
+                    else if ("SUMMARY".equals(id)) {
                         if (summaryFields == null) {
-                            LOGGER.warn("undefined data type {} at line {}", values[0], in.getLineNumber());
+                            LOGGER.warn("undefined data type {} at line {}", id, lineNumber);
                             return;
                         }
 
-                        int commandIdx = values.length - 1; // command name is the last value
-                        type = data.getType(SubDataType.buildId("SUMMARY", values[commandIdx]));
+                        int commandIdx = parsed.size() - 1; // command name is the last value
+                        type = data.getType(SubDataType.buildId("SUMMARY", parsed.get(commandIdx)));
 
                         if (type == null) {
-                            type = new SubDataType("SUMMARY", values[commandIdx], "Summary of Processes", false,
+                            type = new SubDataType("SUMMARY", parsed.get(commandIdx), "Summary of Processes", false,
                                     summaryFields);
                             data.addType(type);
                         }
 
-                        // remove the trailing command
-                        String[] withoutCommand = new String[values.length - 1];
-                        System.arraycopy(values, 0, withoutCommand, 0, commandIdx);
-                        parseData(type, withoutCommand);
+                        // ignore the trailing command
+                        parseData(type, parsed, commandIdx);
                     }
                     else {
                         if (type == null) {
-                            if ("VM".equals(values[0])) {
+                            if ("VM".equals(id)) {
+                                String[] values = parsed.getValues();
+
                                 // fix for issue #7
                                 // NMON outputs the VM data type at T0001
                                 // older versions contain the timestamp
@@ -350,70 +988,89 @@ public final class NMONParser {
                                 data.addType(type);
                             }
                             else {
-                                LOGGER.warn("undefined data type {} at line {}", values[0], in.getLineNumber());
+                                LOGGER.warn("undefined data type {} at line {}", id, lineNumber);
                             }
                         }
                         else {
-                            parseData(type, values);
+                            parseData(type, parsed, parsed.size());
                         }
                     }
                 }
                 else {
                     LOGGER.warn("misplaced record at line {}; expected timestamp {} but got {}",
-                            new Object[] { in.getLineNumber(), currentRecord.getTimestamp(), timestamp });
+                            new Object[] { lineNumber, currentRecord.getTimestamp(), timestamp });
                 }
             }
             else {
                 // current line does not have a TXXXX record
                 // ignore TOP and UARG data types
                 if (!isTop && !isUarg) {
-                    // AIX puts BBBP at then end of the file too
-                    if ("BBBP".equals(values[0])) {
-                        parseBBBP(values);
-                    }
-                    else if ("AAA".equals(values[0])) {
-                        // ignore AAA records not in the header
-                    }
-                    // handle case where other BBB records wrote later in the file
-                    else if (values[0].startsWith("BBB")) {
-                        parseSystemInfo(values);
-                    }
-                    else if ("SUMMARY".equals(values[0])) {
-                        parseSummaryFields(DATA_SPLITTER.split(line));
-                    }
-                    // otherwise, assume it is a new data type since data types can be added at any
-                    // time in the NMON file
-                    else if (data.getType(values[0]) == null) {
-                        DataType type = buildDataType(values);
-
-                        if (type != null) {
-                            if (type.getId().equals("NO-JFS2-FSBUF-COUNT")) {
-                                // hack to handle AVM-IN-MB, etc when added at the end of the file
-                                completeCurrentRecord();
-                            }
+                    parseDefinition(parsed);
+                }
+            }
+        }
+    }
 
-                            if (!IGNORED_TYPES.contains(type.getId())) {
-                                data.addType(type);
-                            }
-                        }
-                    }
+    // parse a line after the first ZZZZ record that does not have a TXXXX record
+    private void parseDefinition(NMONLine parsed) {
+        String[] values = parsed.getValues();
+
+        // AIX puts BBBP at then end of the file too
+        if ("BBBP".equals(values[0])) {
+            parseBBBP(values);
+        }
+        else if ("AAA".equals(values[0])) {
+            // ignore AAA records not in the header
+        }
+        // handle case where other BBB records wrote later in the file
+        else if (values[0].startsWith("BBB")) {
+            parseSystemInfo(values);
+        }
+        else if ("SUMMARY".equals(values[0])) {
+            parseSummaryFields(DATA_SPLITTER.split(parsed.getLine()));
+        }
+        // otherwise, assume it is a new data type since data types can be added at any
+        // time in the NMON file
+        else if (data.getType(values[0]) == null) {
+            DataType type = buildDataType(values);
+
+            if (type != null) {
+                if (type.getId().equals("NO-JFS2-FSBUF-COUNT") && (currentRecord != null)) {
+                    // hack to handle AVM-IN-MB, etc when added at the end of the file
+                    completeCurrentRecord();
+                }
+
+                if (!IGNORED_TYPES.contains(type.getId()) && isProjected(projection, type.getId())) {
+                    data.addType(type);
                 }
             }
         }
     }
 
+    private static boolean isProjected(TypeProjection projection, String id) {
+        if (projection.includesAll()) {
+            return true;
+        }
+        else if ("TOP".equals(id) || "UARG".equals(id) || "SUMMARY".equals(id)) {
+            return projection.includesProcesses();
+        }
+        else {
+            return projection.includes(id);
+        }
+    }
+
     private DataRecord parseTimestamp(String line) {
         String[] values = DATA_SPLITTER.split(line);
         long time = 0;
 
         if (values.length != 4) {
-            LOGGER.warn("skipping invalid data record '{}' starting at line {}", line, in.getLineNumber());
+            LOGGER.warn("skipping invalid data record '{}' starting at line {}", line, lineNumber);
             return null;
         }
         else {
             try {
-                time = NMON_FORMAT.parse(values[2] + ' ' + values[3]).getTime();
-                long previous = data.getEndTime();
+                time = nmonFormat.parse(values[2] + ' ' + values[3]).getTime();
+                long previous = previousTime;
 
                 if (time < previous) {
                     String temp = data.getMetadata("interval");
@@ -421,7 +1078,7 @@ public final class NMONParser {
                     if (temp == null) {
                         LOGGER.error(
                                 "time {} is less than previous {} at line {}" + "; no interval defined in AAA records",
-                                new Object[] { time, previous, in.getLineNumber() });
+                                new Object[] { time, previous, lineNumber });
                         throw new IllegalArgumentException("time is less than previous in ZZZZ " + values[1]);
                     }
                     else {
@@ -431,7 +1088,7 @@ public final class NMONParser {
                         LOGGER.warn(
                                 "time {} is less than previous {} at line {}"
                                         + ", guessing at next time by using an interval of {}s",
-                                new Object[] { time, previous, in.getLineNumber(), interval });
+                                new Object[] { time, previous, lineNumber, interval });
                     }
                 }
 
@@ -441,7 +1098,7 @@ public final class NMONParser {
             }
             catch (ParseException pe) {
                 LOGGER.warn("could not parse time {}, {} at line {}",
-                        new Object[] { values[2], values[3], in.getLineNumber() });
+                        new Object[] { values[2], values[3], lineNumber });
                 return null;
             }
         }
@@ -494,7 +1151,7 @@ public final class NMONParser {
         }
     }
 
-    private void parseData(DataType type, String[] values) {
+    private void parseData(DataType type, NMONLine parsed, int valueCount) {
         List<Integer> toSkip = TYPE_SKIP_INDEXES.get(type.getId());
 
         if (toSkip == null) {
@@ -502,7 +1159,7 @@ public final class NMONParser {
         }
 
         // + 2 => skip data type & timestamp
-        double[] recordData = new double[values.length - 2 - toSkip.size()];
+        double[] recordData = new double[valueCount - 2 - toSkip.size()];
 
         int i = 2;
         int n = 0;
@@ -510,30 +1167,19 @@ public final class NMONParser {
         // note try is outside the for loop since we want to skip the entire data record if any part
         // of is it bad
         try {
-            for (; i < values.length; i++) {
+            for (; i < valueCount; i++) {
                 if (toSkip.contains(i)) {
                     continue;
                 }
 
-                String data = values[i];
-                // 'nan' only appears in file sizes for virtual files like
-                // rpc_pipefs; assume this is equivalent to 0
-                if ("".equals(data) || data.contains("nan")) {
-                    recordData[n] = 0;
-                }
-                else if ("INF".equals(data)) {
-                    recordData[n] = Double.POSITIVE_INFINITY;
-                }
-                else {
-                    recordData[n] = Double.parseDouble(data);
-                }
+                recordData[n] = parsed.getNumber(i, false);
 
                 ++n;
             }
         }
         catch (NumberFormatException nfe) {
             LOGGER.warn("{}: invalid numeric data '{}' at line {}, column {}",
-                    new Object[] { currentRecord.getTimestamp(), values[i], in.getLineNumber(), (i + 1) });
+                    new Object[] { currentRecord.getTimestamp(), parsed.get(i), lineNumber, (i + 1) });
         }
 
         for (DataTransform transform : transforms) {
@@ -543,7 +1189,7 @@ public final class NMONParser {
                 }
                 catch (Exception e) {
                     LOGGER.warn(currentRecord.getTimestamp() + ": could not complete transform "
-                            + transform.getClass().getSimpleName() + " at line " + in.getLineNumber(), e);
+                            + transform.getClass().getSimpleName() + " at line " + lineNumber, e);
                 }
                 break;
             }
@@ -614,7 +1260,7 @@ public final class NMONParser {
         }
     }
 
-    private void parseTopData(String[] values) {
+    private void parseTopData(NMONLine parsed) {
         // assume TOP record is like TOP,pid,TXXX,...,command
         // add 1 back in for generated Wait%
         double[] recordData = new double[topFields.length];
@@ -622,12 +1268,12 @@ public final class NMONParser {
         int n = 1;
 
         int pid = -1;
-        String name = values[topCommandIndex];
+        String name = parsed.get(topCommandIndex);
 
         // note try is outside the for loop since we want to skip the entire data record if any part
         // of is it bad
         try {
-            pid = Integer.parseInt(values[n++]);
+            pid = parsed.getInt(n++);
 
             // skip timestamp
             ++n;
@@ -648,13 +1294,13 @@ public final class NMONParser {
                     }
                 }
                 else {
-                    recordData[i] = Double.parseDouble(values[n++]);
+                    recordData[i] = parsed.getNumber(n++, true);
                 }
             }
         }
         catch (NumberFormatException nfe) {
             LOGGER.warn("{}: invalid numeric data '{}' at line {}, column {}",
-                    new Object[] { currentRecord.getTimestamp(), values[n], in.getLineNumber(), (n - 1) });
+                    new Object[] { currentRecord.getTimestamp(), parsed.get(n), lineNumber, (n - 1) });
             return;
         }
 
@@ -726,14 +1372,14 @@ public final class NMONParser {
             pid = Integer.parseInt(values[2]);
         }
         catch (NumberFormatException nfe) {
-            LOGGER.warn("invalid process id {} at line {}", values[2], in.getLineNumber());
+            LOGGER.warn("invalid process id {} at line {}", values[2], lineNumber);
             return;
         }
 
         Process process = processes.get(pid);
 
         if (process == null) {
-            LOGGER.warn("misplaced UARG record at line {}, no process with pid {} not defined yet", in.getLineNumber(),
+            LOGGER.warn("misplaced UARG record at line {}, no process with pid {} not defined yet", lineNumber,
                     pid);
             return;
         }
@@ -769,7 +1415,7 @@ public final class NMONParser {
             currentRecord.addData(processType, data);
         }
         else {
-            LOGGER.debug("command line for process {} reused at line {}", process, in.getLineNumber());
+            LOGGER.debug("command line for process {} reused at line {}", process, lineNumber);
         }
     }
 
@@ -778,14 +1424,14 @@ public final class NMONParser {
             // Linux disk groups usually are not defined; no need for spurious error output
             if (!values[0].startsWith("DG")) {
                 LOGGER.warn("invalid data type definition, no fields defined" + " at line {} for data {}",
-                        in.getLineNumber(), java.util.Arrays.toString(values));
+                        lineNumber, java.util.Arrays.toString(values));
             }
 
             return null;
         }
 
         if ("ERROR".equals(values[0])) {
-            LOGGER.warn("not creating ERROR data type" + " at line {} for data {}", in.getLineNumber(),
+            LOGGER.warn("not creating ERROR data type" + " at line {} for data {}", lineNumber,
                     java.util.Arrays.toString(values));
             return null;
         }
@@ -793,7 +1439,7 @@ public final class NMONParser {
         String id = DataHelper.newString(values[0]);
 
         if ("".equals(id)) {
-            LOGGER.warn("not creating data type with empty id" + " at line {} for data {}", in.getLineNumber(),
+            LOGGER.warn("not creating data type with empty id" + " at line {} for data {}", lineNumber,
                     java.util.Arrays.toString(values));
             return null;
         }
@@ -882,6 +1528,10 @@ public final class NMONParser {
 
         data.addRecord(currentRecord);
 
+        if (currentRecord.getTime() > previousTime) {
+            previousTime = currentRecord.getTime();
+        }
+
         currentRecord = null;
     }
 
@@ -895,4 +1545,214 @@ public final class NMONParser {
 
         TYPE_SKIP_INDEXES = java.util.Collections.unmodifiableMap(tempIndexes);
     }
+
+    /**
+     * @return the offset of the first line at or after <code>from</code> that starts with <code>ZZZZ</code> or -1 if
+     *         there is none
+     */
+    private static long findTimestamp(FileChannel channel, long from) throws IOException {
+        long size = channel.size();
+
+        if (from >= size) {
+            return -1;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        // start one byte early to see if 'from' is at the start of a line
+        long position = from == 0 ? 0 : from - 1;
+        boolean lineStart = from == 0;
+
+        // Z bytes matched at the start of the current line
+        int matched = 0;
+        long matchStart = from;
+
+        while (position < size) {
+            buffer.clear();
+
+            int read = channel.read(buffer, position);
+
+            if (read <= 0) {
+                break;
+            }
+
+            byte[] bytes = buffer.array();
+
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+
+                if (b == '\n') {
+                    lineStart = true;
+                    matched = 0;
+                }
+                else if (lineStart && (position + i >= from)) {
+                    if (b == 'Z') {
+                        if (matched == 0) {
+                            matchStart = position + i;
+                        }
+
+                        if (++matched == 4) {
+                            return matchStart;
+                        }
+                    }
+                    else {
+                        lineStart = false;
+                        matched = 0;
+                    }
+                }
+                else {
+                    lineStart = false;
+                }
+            }
+
+            position += read;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the offset just past the last line feed between <code>from</code> and <code>to</code> or
+     *         <code>from</code> if there is none
+     */
+    private static long findLineEnd(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long end = to;
+
+        while (end > from) {
+            long start = Math.max(from, end - buffer.capacity());
+
+            buffer.clear();
+            buffer.limit((int) (end - start));
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    break;
+                }
+            }
+
+            byte[] bytes = buffer.array();
+
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') {
+                    return start + i + 1;
+                }
+            }
+
+            end = start;
+        }
+
+        return from;
+    }
+
+    private static byte[] read(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private final class ChunkParser implements java.util.concurrent.Callable<List<NMONLine>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Charset charset;
+
+        // copied since the parser's fields are not visible to the worker threads
+        private final int topCommandIndex;
+        private final int topFieldCount;
+        private final TypeProjection projection;
+
+        ChunkParser(FileChannel channel, long start, long end, Charset charset) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.charset = charset;
+
+            this.topCommandIndex = NMONParser.this.topCommandIndex;
+            this.topFieldCount = topFields == null ? 0 : topFields.length;
+            this.projection = NMONParser.this.projection;
+        }
+
+        @Override
+        public List<NMONLine> call() throws IOException {
+            List<NMONLine> lines = null;
+
+            if (isASCIICompatible(charset)) {
+                lines = tokenize(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            }
+
+            if (lines == null) {
+                lines = new java.util.ArrayList<NMONLine>();
+
+                BufferedReader reader = new BufferedReader(
+                        new java.io.StringReader(new String(read(channel, start, end), charset)));
+
+                String line = null;
+                int lineNumber = 0;
+
+                while ((line = reader.readLine()) != null) {
+                    lines.add(new NMONLine(line, ++lineNumber));
+                }
+            }
+
+            NMONLine.StringCache cache = new NMONLine.StringCache();
+
+            for (NMONLine line : lines) {
+                String id = line.getId(cache);
+
+                // data skipped by parseLine() does not need to be converted
+                if ((id == null) || isProjected(projection, id)) {
+                    line.convert(topCommandIndex, topFieldCount, cache);
+                }
+            }
+
+            return lines;
+        }
+
+        /**
+         * @return the lines in the buffer or <code>null</code> if the lines cannot be split on bytes
+         */
+        private List<NMONLine> tokenize(ByteBuffer buffer) {
+            List<NMONLine> lines = new java.util.ArrayList<NMONLine>();
+
+            int limit = buffer.limit();
+            int lineStart = 0;
+            int lineNumber = 0;
+
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+
+                if (b == '\r') {
+                    if ((i + 1 < limit) && (buffer.get(i + 1) != '\n')) {
+                        // a bare CR is a line terminator for readLine(); let the String code handle it
+                        return null;
+                    }
+                }
+                else if (b == '\n') {
+                    int lineEnd = ((i > lineStart) && (buffer.get(i - 1) == '\r')) ? i - 1 : i;
+                    lines.add(new NMONLine(buffer, lineStart, lineEnd, ++lineNumber, charset));
+                    lineStart = i + 1;
+                }
+            }
+
+            if (lineStart < limit) {
+                int lineEnd = buffer.get(limit - 1) == '\r' ? limit - 1 : limit;
+                lines.add(new NMONLine(buffer, lineStart, lineEnd, ++lineNumber, charset));
+            }
+
+            return lines;
+        }
+    }
+
+    // can values be split on bytes and then decoded individually?
+    private static boolean isASCIICompatible(Charset charset) {
+        return "UTF-8".equals(charset.name()) || "US-ASCII".equals(charset.name())
+                || "ISO-8859-1".equals(charset.name()) || charset.name().startsWith("windows-125");
+    }
 }
@@ -0,0 +1,482 @@
+package com.ibm.nmon.parser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * The byte offset, line number and time of every <code>ZZZZ</code> snapshot in an NMON file. An index is created by
+ * scanning the file's bytes for lines that start with <code>ZZZZ</code>; no other lines are parsed. It allows
+ * {@link NMONParser} to parse only the snapshots in a given time range.
+ * </p>
+ *
+ * <p>
+ * The index also records where each <em>definition</em> is, i.e. each line after the first snapshot that does not
+ * have a <code>TXXXX</code> timestamp reference. Data types can be defined anywhere in the file, so the definitions
+ * before a time range must be parsed along with its snapshots.
+ * </p>
+ *
+ * <p>
+ * Indexes can be saved to a directory and are reused as long as the file's size and last modified time and the time
+ * zone used to parse the snapshot times do not change.
+ * </p>
+ */
+final class NMONSnapshotIndex {
+    private static final int MAGIC = 0x5A5A5A5A; // ZZZZ
+    private static final int VERSION = 2;
+
+    private final String path;
+    private final long fileSize;
+    private final long lastModified;
+    private final String timeZoneId;
+
+    private final int count;
+    // start of each ZZZZ line
+    private final long[] offsets;
+    // number of lines before each ZZZZ line
+    private final int[] linesBefore;
+    // snapshot times, adjusted so they never decrease
+    private final long[] times;
+
+    private final int definitionCount;
+    // start and end, excluding the line terminator, of each definition line
+    private final long[] definitionStarts;
+    private final long[] definitionEnds;
+
+    private NMONSnapshotIndex(String path, long fileSize, long lastModified, String timeZoneId, int count,
+            long[] offsets, int[] linesBefore, long[] times, int definitionCount, long[] definitionStarts,
+            long[] definitionEnds) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.timeZoneId = timeZoneId;
+        this.count = count;
+        this.offsets = offsets;
+        this.linesBefore = linesBefore;
+        this.times = times;
+        this.definitionCount = definitionCount;
+        this.definitionStarts = definitionStarts;
+        this.definitionEnds = definitionEnds;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    int getSnapshotCount() {
+        return count;
+    }
+
+    long getOffset(int snapshot) {
+        return offsets[snapshot];
+    }
+
+    int getLinesBefore(int snapshot) {
+        return linesBefore[snapshot];
+    }
+
+    long getTime(int snapshot) {
+        return times[snapshot];
+    }
+
+    /**
+     * @return the number of definition lines after the first snapshot
+     */
+    int getDefinitionCount() {
+        return definitionCount;
+    }
+
+    long getDefinitionStart(int definition) {
+        return definitionStarts[definition];
+    }
+
+    long getDefinitionEnd(int definition) {
+        return definitionEnds[definition];
+    }
+
+    /**
+     * @return the first snapshot with a time at or after the given time; <code>getSnapshotCount()</code> if there is
+     *         none
+     */
+    int findFirst(long time) {
+        int idx = java.util.Arrays.binarySearch(times, 0, count, time);
+
+        if (idx < 0) {
+            return -idx - 1;
+        }
+
+        // times can repeat
+        while ((idx > 0) && (times[idx - 1] == time)) {
+            --idx;
+        }
+
+        return idx;
+    }
+
+    /**
+     * @return the offset just past the last line of the given snapshot
+     */
+    long getEnd(int snapshot) {
+        return snapshot + 1 < count ? offsets[snapshot + 1] : fileSize;
+    }
+
+    /**
+     * Create an index for the given file, loading it from <code>indexDirectory</code> if a current one has already
+     * been saved there. A new index is saved to the directory if possible. <code>indexDirectory</code> can be
+     * <code>null</code> to always scan the file.
+     */
+    static NMONSnapshotIndex getIndex(String filename, TimeZone timeZone, File indexDirectory) throws IOException {
+        File file = new File(filename);
+        File indexFile = null;
+
+        if (indexDirectory != null) {
+            indexFile = new File(indexDirectory, file.getName() + '-'
+                    + Integer.toHexString(file.getAbsolutePath().hashCode()) + ".zzzz");
+
+            NMONSnapshotIndex index = load(indexFile, file, timeZone);
+
+            if (index != null) {
+                return index;
+            }
+        }
+
+        NMONSnapshotIndex index = build(file, timeZone);
+
+        if (indexFile != null) {
+            try {
+                index.save(indexFile);
+            }
+            catch (IOException ioe) {
+                org.slf4j.LoggerFactory.getLogger(NMONSnapshotIndex.class).warn(
+                        "could not save snapshot index for '" + filename + "' in " + indexDirectory, ioe);
+            }
+        }
+
+        return index;
+    }
+
+    static NMONSnapshotIndex build(File file, TimeZone timeZone) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss dd-MMM-yyyy", java.util.Locale.US);
+        format.setTimeZone(timeZone);
+
+        long lastModified = file.lastModified();
+
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+
+            int count = 0;
+            long[] offsets = new long[64];
+            int[] linesBefore = new int[64];
+            long[] times = new long[64];
+
+            int definitionCount = 0;
+            long[] definitionStarts = new long[16];
+            long[] definitionEnds = new long[16];
+
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            // the current ZZZZ line; only lines that start with ZZZZ are kept
+            StringBuilder line = null;
+
+            long position = 0;
+            int lineCount = 0;
+            boolean lineStart = true;
+            // Z bytes matched at the start of the current line
+            int matched = 0;
+            long previousTime = Long.MIN_VALUE;
+
+            // after the first snapshot, the id of each line is read to decide if it is a definition
+            long lineOffset = 0;
+            boolean checkLine = false;
+            byte[] id = new byte[8];
+            int idLength = 0;
+            boolean idRead = false;
+            boolean inDefinition = false;
+
+            while (position < size) {
+                buffer.clear();
+
+                int read = channel.read(buffer, position);
+
+                if (read <= 0) {
+                    break;
+                }
+
+                byte[] bytes = buffer.array();
+
+                for (int i = 0; i < read; i++) {
+                    byte b = bytes[i];
+
+                    if (line != null) {
+                        if ((b == '\n') || (b == '\r')) {
+                            long time = parseTime(format, line.toString());
+
+                            if (time < previousTime) {
+                                time = previousTime;
+                            }
+
+                            times[count - 1] = previousTime = time;
+                            line = null;
+                        }
+                        else {
+                            // ZZZZ lines are ASCII
+                            line.append((char) (b & 0xFF));
+                        }
+                    }
+
+                    if (inDefinition && ((b == '\n') || (b == '\r'))) {
+                        definitionEnds[definitionCount - 1] = position + i;
+                        inDefinition = false;
+                    }
+
+                    if (checkLine && (b != '\n')) {
+                        if (idRead) {
+                            // the first character of the 2nd value
+                            if ((b != 'T') && isDefinition(id, idLength)) {
+                                if (definitionCount == definitionStarts.length) {
+                                    definitionStarts = java.util.Arrays.copyOf(definitionStarts, definitionCount * 2);
+                                    definitionEnds = java.util.Arrays.copyOf(definitionEnds, definitionCount * 2);
+                                }
+
+                                definitionStarts[definitionCount] = lineOffset;
+                                // the end of the file if the last line does not end
+                                definitionEnds[definitionCount] = b == '\r' ? position + i : size;
+                                ++definitionCount;
+
+                                inDefinition = b != '\r';
+                            }
+
+                            checkLine = false;
+                        }
+                        else if (b == ',') {
+                            idRead = true;
+                        }
+                        else {
+                            // only the start of long ids is kept; they are never in NOT_DEFINITIONS
+                            if (idLength < id.length) {
+                                id[idLength] = b;
+                            }
+
+                            ++idLength;
+                        }
+                    }
+
+                    if (b == '\n') {
+                        ++lineCount;
+                        lineStart = true;
+                        matched = 0;
+
+                        lineOffset = position + i + 1;
+                        checkLine = count > 0;
+                        idLength = 0;
+                        idRead = false;
+                    }
+                    else if (lineStart) {
+                        if ((b == 'Z') && (++matched == 4)) {
+                            if (count == offsets.length) {
+                                offsets = java.util.Arrays.copyOf(offsets, count * 2);
+                                linesBefore = java.util.Arrays.copyOf(linesBefore, count * 2);
+                                times = java.util.Arrays.copyOf(times, count * 2);
+                            }
+
+                            offsets[count] = position + i - 3;
+                            linesBefore[count] = lineCount;
+                            times[count] = previousTime;
+                            ++count;
+
+                            line = new StringBuilder(40).append("ZZZZ");
+                            lineStart = false;
+                        }
+                        else if (b != 'Z') {
+                            lineStart = false;
+                        }
+                    }
+                }
+
+                position += read;
+            }
+
+            if (line != null) {
+                long time = parseTime(format, line.toString());
+                times[count - 1] = time < previousTime ? previousTime : time;
+            }
+
+            return new NMONSnapshotIndex(file.getAbsolutePath(), size, lastModified, timeZone.getID(), count, offsets,
+                    linesBefore, times, definitionCount, definitionStarts, definitionEnds);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    // lines with these ids are either snapshots or are ignored by NMONParser when they are not data
+    private static final String[] NOT_DEFINITIONS = { "ZZZZ", "TOP", "UARG", "AAA", "ERROR" };
+
+    private static boolean isDefinition(byte[] id, int length) {
+        for (String notDefinition : NOT_DEFINITIONS) {
+            if (notDefinition.length() == length) {
+                int i = 0;
+
+                while ((i < length) && (id[i] == notDefinition.charAt(i))) {
+                    ++i;
+                }
+
+                if (i == length) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Long.MIN_VALUE if the time cannot be parsed; NMONParser will skip the snapshot too
+    private static long parseTime(SimpleDateFormat format, String line) {
+        String[] values = line.split(",");
+
+        if (values.length != 4) {
+            return Long.MIN_VALUE;
+        }
+
+        try {
+            return format.parse(values[2] + ' ' + values[3]).getTime();
+        }
+        catch (ParseException pe) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static NMONSnapshotIndex load(File indexFile, File file, TimeZone timeZone) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(
+                new java.io.FileInputStream(indexFile)));
+
+        try {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                return null;
+            }
+
+            String path = readString(in);
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            String timeZoneId = readString(in);
+
+            if ((fileSize != file.length()) || (lastModified != file.lastModified())
+                    || !timeZoneId.equals(timeZone.getID()) || !path.equals(file.getAbsolutePath())) {
+                return null;
+            }
+
+            int count = in.readInt();
+            long[] offsets = new long[count];
+            int[] linesBefore = new int[count];
+            long[] times = new long[count];
+
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                linesBefore[i] = in.readInt();
+                times[i] = in.readLong();
+            }
+
+            int definitionCount = in.readInt();
+            long[] definitionStarts = new long[definitionCount];
+            long[] definitionEnds = new long[definitionCount];
+
+            for (int i = 0; i < definitionCount; i++) {
+                definitionStarts[i] = in.readLong();
+                definitionEnds[i] = in.readLong();
+            }
+
+            return new NMONSnapshotIndex(path, fileSize, lastModified, timeZoneId, count, offsets, linesBefore,
+                    times, definitionCount, definitionStarts, definitionEnds);
+        }
+        catch (java.io.EOFException eofe) {
+            // truncated index
+            return null;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private void save(File indexFile) throws IOException {
+        File directory = indexFile.getParentFile();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create directory " + directory);
+        }
+
+        File temp = File.createTempFile(indexFile.getName(), ".tmp", directory);
+        boolean saved = false;
+
+        try {
+            DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(
+                    new java.io.FileOutputStream(temp)));
+
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, path);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                writeString(out, timeZoneId);
+
+                out.writeInt(count);
+
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(offsets[i]);
+                    out.writeInt(linesBefore[i]);
+                    out.writeLong(times[i]);
+                }
+
+                out.writeInt(definitionCount);
+
+                for (int i = 0; i < definitionCount; i++) {
+                    out.writeLong(definitionStarts[i]);
+                    out.writeLong(definitionEnds[i]);
+                }
+            }
+            finally {
+                out.close();
+            }
+
+            java.nio.file.Files.move(temp.toPath(), indexFile.toPath(),
+                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        }
+        finally {
+            if (!saved) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -5,7 +5,7 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.io.File;
 import java.io.FileReader;
-import java.io.LineNumberReader;
+import java.io.Reader;
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
 import java.util.List;
@@ -23,28 +23,33 @@ import com.ibm.nmon.data.Process;
 import com.ibm.nmon.data.transform.WindowsBytesTransform;
 import com.ibm.nmon.data.transform.WindowsNetworkPostProcessor;
 import com.ibm.nmon.data.transform.WindowsProcessPostProcessor;
+import com.ibm.nmon.parser.util.CSVTokenizer;
 import com.ibm.nmon.util.DataHelper;
 
 public final class PerfmonParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(PerfmonParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
-
-    // older versions of Windows output CSV without "
-    private static final Pattern DATA_SPLITTER = Pattern.compile(",");
-    private static final Pattern DATA_SPLITTER_QUOTES = Pattern.compile("\",\"");
-
     private static final Pattern SUBCATEGORY_SPLITTER = Pattern.compile(":");
     // "\\hostname\category (optional subcategory)\metric"
-    // note storing a matcher vs a pattern is _NOT_ thread safe
     // first group is non-greedy (.*?) to allow proper parsing of strings like
     // \\SYSTEM\Paging File(\??\D:\pagefile.sys)\% Usage
-    private static final Matcher METRIC_MATCHER = Pattern.compile("\\\\\\\\(.*?)\\\\(.*)\\\\(.*)\"?").matcher("");
+    private static final Pattern METRIC_PATTERN = Pattern.compile("\\\\\\\\(.*?)\\\\(.*)\\\\(.*)\"?");
+
+    // note storing a matcher vs a pattern is _NOT_ thread safe, nor is SimpleDateFormat
+    // so keep these per instance
+    private final Matcher metricMatcher = METRIC_PATTERN.matcher("");
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+
+    // older versions of Windows output CSV without "; quoted values are unquoted by the tokenizer
+    private final CSVTokenizer tokenizer = new CSVTokenizer(',');
 
-    private LineNumberReader in = null;
+    // the number of columns in the header; lines may have one extra, empty column if they end with ,
+    private int columnCount;
 
     private PerfmonDataSet data = null;
 
+    private TypeProjection projection = TypeProjection.ALL;
+
     private final WindowsBytesTransform bytesTransform = new WindowsBytesTransform();
 
     // builders for each column
@@ -62,24 +67,20 @@ public final class PerfmonParser {
         data = new PerfmonDataSet(filename);
         data.setMetadata("OS", "Perfmon");
 
-        try {
-            in = new LineNumberReader(new FileReader(filename));
+        Reader in = new FileReader(filename);
 
-            String line = in.readLine();
+        try {
+            tokenizer.setQuoted(true);
+            tokenizer.setInput(in);
 
-            // assume all columns will be quoted if the first one is
-            Pattern splitter = null;
-            if (line.startsWith("\"")) {
-                splitter = DATA_SPLITTER_QUOTES;
-            }
-            else {
-                splitter = DATA_SPLITTER;
+            if (!tokenizer.nextLine()) {
+                throw new IOException("file '" + filename + "' does not appear to have any data records");
             }
 
-            parseHeader(splitter.split(line));
+            parseHeader();
 
-            while ((line = in.readLine()) != null) {
-                parseData(splitter.split(line));
+            while (tokenizer.nextLine()) {
+                parseData();
             }
 
             long postProcessStart = System.nanoTime();
@@ -120,6 +121,7 @@ public final class PerfmonParser {
         }
         finally {
             in.close();
+            tokenizer.setInput(null);
 
             data = null;
 
@@ -132,26 +134,41 @@ public final class PerfmonParser {
         }
     }
 
-    private void parseHeader(String[] header) {
-        buildersByColumn = new DataTypeBuilder[header.length];
+    /**
+     * Only create the data types included in the given projection; other columns are not parsed. The default is
+     * {@link TypeProjection#ALL}.
+     */
+    public void setProjection(TypeProjection projection) {
+        this.projection = projection == null ? TypeProjection.ALL : projection;
+    }
+
+    public TypeProjection getProjection() {
+        return projection;
+    }
 
-        // remove trailing " or ,
-        String lastData = header[header.length - 1];
+    private void parseHeader() {
+        columnCount = tokenizer.getFieldCount();
 
-        if (lastData.endsWith("\"")) {
-            header[header.length - 1] = lastData.substring(0, lastData.length() - 1);
+        // remove trailing ,
+        if ((columnCount > 1) && tokenizer.isEmpty(columnCount - 1)) {
+            --columnCount;
         }
-        else if (lastData.endsWith(",")) {
-            header[header.length - 1] = lastData.substring(0, lastData.length() - 2);
+
+        String[] header = new String[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            header[i] = tokenizer.getString(i);
         }
 
+        buildersByColumn = new DataTypeBuilder[header.length];
+
         // parse out the timezone in a format like (PDH-CSV 4.0) (GMT Daylight Time)(-60)
         int idx = header[0].lastIndexOf('(');
 
         if (idx == -1) {
             LOGGER.warn("version header '{0}' is not in the right format, the time zone will default to UTC",
                     header[0]);
-            TIMESTAMP_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
+            timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         }
         else {
             String temp = header[0].substring(idx + 1, header[0].length() - 1);
@@ -160,12 +177,12 @@ public final class PerfmonParser {
                 // timezone format in negative minutes from UTC
                 double offset = Integer.parseInt(temp) / -60.0d;
 
-                TIMESTAMP_FORMAT.setTimeZone(new java.util.SimpleTimeZone((int) (offset * 3600000), temp));
+                timestampFormat.setTimeZone(new java.util.SimpleTimeZone((int) (offset * 3600000), temp));
             }
             catch (NumberFormatException nfe) {
                 LOGGER.warn("version header '{0}' is not in the right format, the time zone will default to UTC",
                         header[0]);
-                TIMESTAMP_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
+                timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
             }
         }
 
@@ -174,27 +191,27 @@ public final class PerfmonParser {
         buildersByColumn[0] = null;
 
         // read the first column to get the hostname
-        METRIC_MATCHER.reset(header[1]);
+        metricMatcher.reset(header[1]);
 
-        if (METRIC_MATCHER.matches()) {
+        if (metricMatcher.matches()) {
             // assume hostname does not change
-            data.setHostname(METRIC_MATCHER.group(1).toLowerCase());
+            data.setHostname(metricMatcher.group(1).toLowerCase());
         }
         else {
             throw new IllegalArgumentException("hostname not found in '" + header[1] + "'");
         }
 
         for (int i = 1; i < header.length; i++) {
-            METRIC_MATCHER.reset(header[i]);
+            metricMatcher.reset(header[i]);
 
-            if (!METRIC_MATCHER.matches()) {
+            if (!metricMatcher.matches()) {
                 LOGGER.warn("'{}' is not a valid header column", header[i]);
                 buildersByColumn[i] = null;
                 continue;
             }
 
             // looking for type id (sub type id)
-            String toParse = METRIC_MATCHER.group(2);
+            String toParse = metricMatcher.group(2);
 
             String uniqueId = null;
             String id = null;
@@ -221,7 +238,12 @@ public final class PerfmonParser {
                 id = uniqueId = DataHelper.newString(toParse);
             }
 
-            String field = parseField(id, METRIC_MATCHER.group(3));
+            String field = parseField(id, metricMatcher.group(3));
+
+            if (data.getTypeIdPrefix().equals(id) ? !projection.includesProcesses() : !projection.includes(uniqueId)) {
+                buildersByColumn[i] = null;
+                continue;
+            }
 
             DataTypeBuilder builder = buildersById.get(uniqueId);
 
@@ -252,37 +274,34 @@ public final class PerfmonParser {
         }
     }
 
-    private void parseData(String[] rawData) {
-        if (rawData.length != buildersByColumn.length) {
-            LOGGER.warn("invalid number of data columns at line {}, this data will be skipped", in.getLineNumber());
-            return;
-        }
-
-        // remove trailing " or ,
-        String lastData = rawData[rawData.length - 1];
+    private void parseData() {
+        int fieldCount = tokenizer.getFieldCount();
 
-        if (lastData.endsWith("\"")) {
-            rawData[rawData.length - 1] = lastData.substring(0, lastData.length() - 1);
+        // ignore trailing ,
+        if ((fieldCount == columnCount + 1) && tokenizer.isEmpty(columnCount)) {
+            fieldCount = columnCount;
         }
-        else if (lastData.endsWith(",")) {
-            rawData[rawData.length - 1] = lastData.substring(0, lastData.length() - 2);
+
+        if (fieldCount != columnCount) {
+            LOGGER.warn("invalid number of data columns at line {}, this data will be skipped",
+                    tokenizer.getLineNumber());
+            return;
         }
 
-        // remove leading " on timestamp
-        String timestamp = DataHelper.newString(rawData[0].substring(1));
+        String timestamp = tokenizer.getString(0);
         long time = 0;
 
         try {
-            time = TIMESTAMP_FORMAT.parse(timestamp).getTime();
+            time = timestampFormat.parse(timestamp).getTime();
         }
         catch (ParseException pe) {
-            LOGGER.warn("invalid timestamp format at line {}, this data will be skipped", in.getLineNumber());
+            LOGGER.warn("invalid timestamp format at line {}, this data will be skipped", tokenizer.getLineNumber());
             return;
         }
 
         Map<String, DataHolder> dataByType = new java.util.HashMap<String, DataHolder>();
 
-        for (int i = 1; i < rawData.length; i++) {
+        for (int i = 1; i < columnCount; i++) {
             DataTypeBuilder builder = buildersByColumn[i];
 
             if (builder == null) {
@@ -298,11 +317,11 @@ public final class PerfmonParser {
                 }
 
                 try {
-                    holder.add(parseDouble(rawData[i]));
+                    holder.add(parseDouble(i));
                 }
                 catch (NumberFormatException nfe) {
-                    LOGGER.warn("invalid double '{}' at line {}, column {}; it will be NaN", rawData[i],
-                            in.getLineNumber(), i + 1);
+                    LOGGER.warn("invalid double '{}' at line {}, column {}; it will be NaN", tokenizer.getString(i),
+                            tokenizer.getLineNumber(), i + 1);
                     holder.add(Double.NaN);
                 }
             }
@@ -314,7 +333,7 @@ public final class PerfmonParser {
             DataTypeBuilder builder = buildersById.get(unique);
             DataHolder holder = dataByType.get(unique);
 
-            DataType type = builder.build(time, rawData);
+            DataType type = builder.build(time);
 
             double[] values = holder.data;
 
@@ -363,13 +382,13 @@ public final class PerfmonParser {
         }
     }
 
-    private double parseDouble(String value) {
+    private double parseDouble(int column) {
         // assume start with space, whole string is space (i.e. empty)
-        if (value.isEmpty() || (value.charAt(0) == ' ')) {
+        if (tokenizer.isEmpty(column) || (tokenizer.charAt(column, 0) == ' ')) {
             return Double.NaN;
         }
         else {
-            return Double.parseDouble(value);
+            return tokenizer.getDouble(column);
         }
     }
 
@@ -433,7 +452,7 @@ public final class PerfmonParser {
             return unique.equals(o);
         }
 
-        DataType build(long startTime, String[] rawData) {
+        DataType build(long startTime) {
             if (type != null) {
                 return type;
             }
@@ -442,7 +461,7 @@ public final class PerfmonParser {
             fields.toArray(fieldsArray);
 
             if (data.getTypeIdPrefix().equals(id)) { // Process
-                int pid = (int) (processIdColumn != -1 ? parseDouble(rawData[processIdColumn]) : 0);
+                int pid = (int) (processIdColumn != -1 ? parseDouble(processIdColumn) : 0);
                 String processName = subId; // store processes with full name
 
                 // parse out pid, if available via
@@ -8,24 +8,35 @@ import java.util.Map;
 import java.io.IOException;
 
 import java.io.File;
+import java.io.Reader;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 import java.util.TimeZone;
 
 import com.ibm.nmon.data.NMONDataSet;
 
 /**
- * A parser for <code>topas -a</code> output. This serves as a bridge between Topas and NMON. This class takes the
- * output and converts it to a string that can be parsed by {@link NMONParser}.
+ * <p>
+ * A parser for <code>topas -a</code> output. This serves as a bridge between Topas and NMON. This class reorders the
+ * output so that it can be parsed by {@link NMONParser}.
+ * </p>
+ *
+ * <p>
+ * The file is read twice. The first pass keeps the <code>AAA</code> and header records but only records where the
+ * data records for each header are in the file. The second pass reads the data records for each timestamp from those
+ * locations and passes them to <code>NMONParser</code> through a {@link Reader}, so the file is never held in memory.
+ * </p>
  */
 public final class TopasOutParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(TopasOutParser.class);
 
+    // read size for the first pass; each header in the second pass uses a smaller buffer
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final int LINE_BUFFER_SIZE = 8 * 1024;
+
     private final NMONParser nmonParser;
 
     public TopasOutParser(NMONParser nmonParser) {
@@ -36,92 +47,368 @@ public final class TopasOutParser {
     // once the ZZZZ records are parsed output them then all the corresponding data records for that timestamp
     public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
         File file = new File(filename);
+        Charset charset = Charset.defaultCharset();
 
-        BufferedReader in = null;
-
-        StringWriter writer = null;
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "r");
 
         try {
-            in = new BufferedReader(new FileReader(file));
-            writer = new StringWriter((int) file.length());
-
-            // LinkedHashMap so insertion order is maintained; removes need to reparse headers later
-            Map<String, List<String>> headersToLines = new java.util.LinkedHashMap<String, List<String>>(32);
+            FileChannel channel = raf.getChannel();
 
+            // AAA records and the headers are output first; both are small
+            List<String> header = new java.util.ArrayList<String>(64);
             List<String> headers = new java.util.ArrayList<String>(32);
-            List<String> timestamps = new java.util.ArrayList<String>(128);
 
-            String line = null;
+            LineRuns timestamps = new LineRuns();
+            // LinkedHashMap so insertion order is maintained
+            Map<String, LineRuns> headersToLines = new java.util.LinkedHashMap<String, LineRuns>(32);
+
+            LineInput in = new LineInput(channel, 0, SCAN_BUFFER_SIZE, charset);
+            // data lines are usually sorted by header; consecutive lines are stored as a single run
+            LineRuns previous = null;
 
-            while ((line = in.readLine()) != null) {
-                int idx = line.indexOf(",");
+            while (in.next()) {
+                int idx = in.indexOf(',');
+
+                if (idx == -1) {
+                    previous = null;
+                    continue;
+                }
 
-                String header = line.substring(0, idx);
+                String name = in.substring(0, idx);
 
-                if ("AAA".equals(header)) {
-                    // put all the AAA records at the top by writing them out now
-                    writer.write(line);
-                    writer.write('\n');
+                if ("AAA".equals(name)) {
+                    // put all the AAA records at the top
+                    header.add(in.getLine());
+                    previous = null;
                 }
-                else if ("ZZZZ".equals(header)) {
-                    timestamps.add(line);
+                else if ("ZZZZ".equals(name)) {
+                    timestamps.add(in.getLineStart(), previous == timestamps);
+                    previous = timestamps;
                 }
                 else {
-                    // save all the data by header name
-                    List<String> lines = headersToLines.get(header);
+                    // save the location of all the data by header name
+                    LineRuns lines = headersToLines.get(name);
 
                     if (lines == null) {
-                        LOGGER.trace("found {} " + "header", header);
-                        lines = new java.util.ArrayList<String>(218);
-                        headersToLines.put(header, lines);
+                        LOGGER.trace("found {} " + "header", name);
+                        lines = new LineRuns();
+                        headersToLines.put(name, lines);
                     }
 
-                    if (line.charAt(idx + 1) == 'T') {
-                        lines.add(line);
+                    if (in.charAt(idx + 1) == 'T') {
+                        lines.add(in.getLineStart(), previous == lines);
+                        previous = lines;
                     }
                     else {
-                        if ("LPAR".equals(header)) {
+                        String line = in.getLine();
+
+                        if ("LPAR".equals(name)) {
                             // fix capitalization of LPAR data to match NMON
                             line = "LPAR,LPAR Stats,PhysicalCPU,virtualCPUs,logicalCPUs,poolCPUs,entitled,weight,PoolIdle,usedAllCPU%,usedPoolCPU%,SharedCPU";
                         }
 
                         headers.add(line);
+                        previous = null;
                     }
                 }
             }
 
             LOGGER.debug("found {} " + "data types", headers.size());
-            LOGGER.debug("found {} " + "ZZZZ timestamps", timestamps.size());
+            LOGGER.debug("found {} " + "ZZZZ timestamps", timestamps.getLineCount());
             LOGGER.debug("found {} " + "data types", headersToLines.size());
 
-            for (String header : headers) {
-                writer.write(header);
-                writer.write('\n');
+            header.addAll(headers);
+
+            List<LineRuns> data = new java.util.ArrayList<LineRuns>(headersToLines.values());
+
+            return nmonParser.parse(filename, new ReorderedReader(channel, charset, header, timestamps, data),
+                    timeZone, scaleProcessesByCPU);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * The locations of the data records for a single header, stored as runs of consecutive lines.
+     */
+    private static final class LineRuns {
+        private long[] starts = new long[4];
+        private int[] lengths = new int[4];
+        private int runCount = 0;
+        private int lineCount = 0;
+
+        void add(long lineStart, boolean continuesRun) {
+            if (continuesRun && (runCount > 0)) {
+                ++lengths[runCount - 1];
             }
-            
-            // output each timestamp, then all the data for that time
-            // assume all arrays are the same size, i.e. there is data at each timestamp for all values
-            for (int i = 0; i < timestamps.size(); i++) {
-                writer.write(timestamps.get(i));
-                writer.write('\n');
-
-                for (List<String> lines : headersToLines.values()) {
-                    writer.write(lines.get(i));
-                    writer.write('\n');
+            else {
+                if (runCount == starts.length) {
+                    starts = java.util.Arrays.copyOf(starts, runCount * 2);
+                    lengths = java.util.Arrays.copyOf(lengths, runCount * 2);
                 }
+
+                starts[runCount] = lineStart;
+                lengths[runCount] = 1;
+                ++runCount;
             }
 
-            return nmonParser.parse(filename, new StringReader(writer.toString()), timeZone, scaleProcessesByCPU);
+            ++lineCount;
         }
-        finally {
-            if (in != null) {
-                in.close();
+
+        int getLineCount() {
+            return lineCount;
+        }
+    }
+
+    /**
+     * Reads lines from a file channel starting at a given position. Lines are decoded only when requested.
+     */
+    private static final class LineInput {
+        private final FileChannel channel;
+        private final Charset charset;
+
+        private final ByteBuffer buffer;
+        private final byte[] bytes;
+
+        // file position of bytes[0]
+        private long bufferStart;
+        private int limit = 0;
+
+        private int lineOffset = 0;
+        private int lineLength = 0;
+        private int nextOffset = 0;
+
+        LineInput(FileChannel channel, long position, int bufferSize, Charset charset) {
+            this.channel = channel;
+            this.charset = charset;
+
+            this.buffer = ByteBuffer.allocate(bufferSize);
+            this.bytes = buffer.array();
+
+            this.bufferStart = position;
+        }
+
+        void seek(long position) {
+            bufferStart = position;
+            limit = 0;
+            nextOffset = 0;
+        }
+
+        /**
+         * Move to the next line.
+         *
+         * @return <code>false</code> at the end of the file
+         */
+        boolean next() throws IOException {
+            int i = nextOffset;
+
+            while (true) {
+                for (; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        setLine(nextOffset, i);
+                        nextOffset = i + 1;
+                        return true;
+                    }
+                }
+
+                // line does not fit in the remaining buffer; move it to the start and read more
+                int remaining = limit - nextOffset;
+
+                if ((nextOffset == 0) && (limit == bytes.length)) {
+                    throw new IOException("line at " + bufferStart + " is longer than " + bytes.length + " bytes");
+                }
+
+                System.arraycopy(bytes, nextOffset, bytes, 0, remaining);
+                bufferStart += nextOffset;
+                i -= nextOffset;
+                nextOffset = 0;
+                limit = remaining;
+
+                buffer.clear();
+                buffer.position(limit);
+
+                int read = channel.read(buffer, bufferStart + limit);
+
+                if (read <= 0) {
+                    if (limit == 0) {
+                        return false;
+                    }
+                    else {
+                        // last line without a line feed
+                        setLine(0, limit);
+                        nextOffset = limit;
+                        return true;
+                    }
+                }
+
+                limit += read;
+            }
+        }
+
+        private void setLine(int start, int end) {
+            if ((end > start) && (bytes[end - 1] == '\r')) {
+                --end;
             }
 
-            if (writer != null) {
-                writer.close();
+            lineOffset = start;
+            lineLength = end - start;
+        }
+
+        long getLineStart() {
+            return bufferStart + lineOffset;
+        }
+
+        int indexOf(char c) {
+            for (int i = 0; i < lineLength; i++) {
+                if (bytes[lineOffset + i] == c) {
+                    return i;
+                }
             }
+
+            return -1;
+        }
+
+        char charAt(int index) {
+            return index < lineLength ? (char) (bytes[lineOffset + index] & 0xFF) : '\0';
+        }
+
+        String substring(int start, int end) {
+            return new String(bytes, lineOffset + start, end - start, charset);
+        }
+
+        String getLine() {
+            return new String(bytes, lineOffset, lineLength, charset);
+        }
+    }
+
+    /**
+     * Iterates over the lines for a single header in file order.
+     */
+    private static final class LineCursor {
+        private final LineRuns runs;
+        private final LineInput in;
+
+        private int run = -1;
+        private int remaining = 0;
+
+        LineCursor(FileChannel channel, Charset charset, LineRuns runs) {
+            this.runs = runs;
+            this.in = new LineInput(channel, 0, LINE_BUFFER_SIZE, charset);
+        }
+
+        /**
+         * @return the next line or <code>null</code> if there are no more lines
+         */
+        String next() throws IOException {
+            if (remaining == 0) {
+                if (++run >= runs.runCount) {
+                    return null;
+                }
+
+                in.seek(runs.starts[run]);
+                remaining = runs.lengths[run];
+            }
+
+            if (!in.next()) {
+                throw new IOException("file changed while parsing");
+            }
+
+            --remaining;
+
+            return in.getLine();
+        }
+    }
+
+    /**
+     * Outputs the header lines followed by each timestamp and all the data records for that timestamp.
+     */
+    private static final class ReorderedReader extends Reader {
+        private final java.util.Iterator<String> header;
+
+        private final LineCursor timestamps;
+        private final LineCursor[] data;
+
+        // index of the next data cursor to read; -1 to read the next timestamp
+        private int nextData = -1;
+        private boolean done = false;
+
+        private String current = "";
+        private int position = 0;
+
+        ReorderedReader(FileChannel channel, Charset charset, List<String> header, LineRuns timestamps,
+                List<LineRuns> data) {
+            this.header = header.iterator();
+            this.timestamps = new LineCursor(channel, charset, timestamps);
+            this.data = new LineCursor[data.size()];
+
+            for (int i = 0; i < this.data.length; i++) {
+                this.data[i] = new LineCursor(channel, charset, data.get(i));
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            int count = 0;
+
+            while (count < len) {
+                if (position == current.length()) {
+                    if (!nextLine()) {
+                        break;
+                    }
+                }
+
+                int n = Math.min(len - count, current.length() - position);
+                current.getChars(position, position + n, cbuf, off + count);
+
+                position += n;
+                count += n;
+            }
+
+            return count == 0 ? -1 : count;
+        }
+
+        private boolean nextLine() throws IOException {
+            String line = null;
+
+            if (header.hasNext()) {
+                line = header.next();
+            }
+            else {
+                // assume all headers have data for every timestamp, in the same order as the timestamps
+                while (!done && (line == null)) {
+                    if (nextData == -1) {
+                        line = timestamps.next();
+
+                        if (line == null) {
+                            done = true;
+                        }
+                    }
+                    else {
+                        line = data[nextData].next();
+                    }
+
+                    if (++nextData == data.length) {
+                        nextData = -1;
+                    }
+                }
+
+                if (line == null) {
+                    return false;
+                }
+            }
+
+            current = line + '\n';
+            position = 0;
+
+            return true;
         }
 
+        @Override
+        public void close() {}
     }
 }
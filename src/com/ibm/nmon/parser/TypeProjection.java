@@ -0,0 +1,172 @@
+package com.ibm.nmon.parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.regex.Pattern;
+
+import com.ibm.nmon.data.DataType;
+
+import com.ibm.nmon.data.definition.DataDefinition;
+import com.ibm.nmon.data.definition.DefaultDataDefinition;
+
+import com.ibm.nmon.data.matcher.ExactTypeMatcher;
+import com.ibm.nmon.data.matcher.ProcessMatcher;
+import com.ibm.nmon.data.matcher.RegexTypeMatcher;
+import com.ibm.nmon.data.matcher.TopProcessMatcher;
+import com.ibm.nmon.data.matcher.TypeMatcher;
+
+/**
+ * <p>
+ * The set of {@link DataType DataTypes} a parser needs to create. Data for types that are not included is skipped
+ * while parsing, so it is not tokenized, transformed or stored. Projections are usually created from the
+ * {@link DataDefinition DataDefinitions} of the charts that will be output. {@link #ALL} includes every type.
+ * </p>
+ *
+ * <p>
+ * Types are matched on <code>toString()</code>, the same as the {@link TypeMatcher TypeMatchers} in the definitions.
+ * Process data is only included if a definition matches processes. Types that are calculated from other types, like
+ * <code>NETTOTAL</code>, also include the types they are calculated from. Definitions that cannot be projected,
+ * e.g. ones that match all types, include everything.
+ * </p>
+ *
+ * @see NMONParser#setProjection(TypeProjection)
+ * @see PerfmonParser#setProjection(TypeProjection)
+ */
+public final class TypeProjection {
+    public static final TypeProjection ALL = new TypeProjection();
+
+    // types added by post processors mapped to a regex matching the types they are calculated from
+    private static final Map<String, String> DERIVED_TYPES;
+
+    // processes are scaled by the number of CPUs, which comes from these types
+    private static final String PROCESS_DEPENDENCIES = "LPAR|P?CPU_ALL|Processor \\(.*\\)";
+
+    static {
+        Map<String, String> temp = new java.util.HashMap<String, String>();
+
+        temp.put("NETTOTAL", "NET(ERROR|PACKET|SIZE)?");
+        temp.put("NETETOTAL", "NET(ERROR|PACKET|SIZE)?");
+        temp.put("SEATOTAL", "SEA(ERROR|PACKET|SIZE)?");
+        temp.put("SEAETOTAL", "SEA(ERROR|PACKET|SIZE)?");
+        temp.put("Network Interface (Total)", "Network Interface \\(.*\\)");
+
+        DERIVED_TYPES = java.util.Collections.unmodifiableMap(temp);
+    }
+
+    private final boolean all;
+    private final boolean processes;
+
+    private final Set<String> types;
+    private final List<Pattern> patterns;
+
+    private TypeProjection() {
+        all = true;
+        processes = true;
+
+        types = java.util.Collections.emptySet();
+        patterns = java.util.Collections.emptyList();
+    }
+
+    public TypeProjection(Iterable<? extends DataDefinition> definitions) {
+        boolean all = false;
+        boolean processes = false;
+
+        // TreeSet and TreeMap so toString() is the same for the same definitions
+        Set<String> types = new java.util.TreeSet<String>();
+        Map<String, Pattern> patterns = new java.util.TreeMap<String, Pattern>();
+
+        for (DataDefinition definition : definitions) {
+            TypeMatcher matcher = null;
+
+            if (definition instanceof DefaultDataDefinition) {
+                matcher = ((DefaultDataDefinition) definition).getTypeMatcher();
+            }
+
+            if (matcher instanceof ExactTypeMatcher) {
+                types.add(((ExactTypeMatcher) matcher).getType());
+            }
+            else if (matcher instanceof RegexTypeMatcher) {
+                Pattern pattern = ((RegexTypeMatcher) matcher).getPattern();
+                patterns.put(pattern.pattern(), pattern);
+            }
+            else if ((matcher instanceof ProcessMatcher) || (matcher instanceof TopProcessMatcher)) {
+                processes = true;
+            }
+            else {
+                // TypeMatcher.ALL, ExactDataDefinitions, etc
+                all = true;
+                break;
+            }
+        }
+
+        if (!all) {
+            for (Map.Entry<String, String> derived : DERIVED_TYPES.entrySet()) {
+                if (matches(derived.getKey(), types, patterns.values())) {
+                    patterns.put(derived.getValue(), Pattern.compile(derived.getValue()));
+                }
+            }
+
+            if (processes) {
+                patterns.put(PROCESS_DEPENDENCIES, Pattern.compile(PROCESS_DEPENDENCIES));
+            }
+        }
+
+        this.all = all;
+        this.processes = all || processes;
+
+        this.types = java.util.Collections.unmodifiableSet(types);
+        this.patterns = java.util.Collections.unmodifiableList(new java.util.ArrayList<Pattern>(patterns.values()));
+    }
+
+    /**
+     * @return <code>true</code> if this projection includes every type, i.e. nothing can be skipped
+     */
+    public boolean includesAll() {
+        return all;
+    }
+
+    /**
+     * @return <code>true</code> if process data, i.e. NMON <code>TOP</code> and <code>UARG</code> data or Perfmon
+     *         <code>Process</code> data, should be parsed
+     */
+    public boolean includesProcesses() {
+        return processes;
+    }
+
+    /**
+     * @param type the type as it would be returned by <code>DataType.toString()</code>
+     */
+    public boolean includes(String type) {
+        return all || matches(type, types, patterns);
+    }
+
+    private static boolean matches(String type, Set<String> types, Iterable<Pattern> patterns) {
+        if (types.contains(type)) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(type).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return a description of the included types; projections created from the same definitions will return the same
+     *         value
+     */
+    @Override
+    public String toString() {
+        if (all) {
+            return "$ALL";
+        }
+        else {
+            return "types=" + types + ";regex=" + patterns + ";processes=" + processes;
+        }
+    }
+}
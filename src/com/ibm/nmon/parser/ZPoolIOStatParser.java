@@ -11,8 +11,6 @@ import java.io.File;
 
 import java.io.LineNumberReader;
 
-import java.util.regex.Pattern;
-
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
 
@@ -21,6 +19,8 @@ import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.SubDataType;
 
+import com.ibm.nmon.parser.util.CSVTokenizer;
+
 import com.ibm.nmon.util.DataHelper;
 
 /**
@@ -29,14 +29,15 @@ import com.ibm.nmon.util.DataHelper;
 public final class ZPoolIOStatParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ZPoolIOStatParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("EEE MMM dd HH:mm:ss z yyyy");
-
-    private static final Pattern DATA_SPLITTER = Pattern.compile("\\s+");
-
     private static final int EXPECTED_DATA_TYPES = 6;
 
     public static final String DEFAULT_HOSTNAME = "zpool";
 
+    // SimpleDateFormat is not thread safe, so do not share across instances
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss z yyyy");
+
+    private final CSVTokenizer tokenizer = CSVTokenizer.forWhitespace();
+
     private LineNumberReader in = null;
 
     private BasicDataSet data = null;
@@ -66,7 +67,7 @@ public final class ZPoolIOStatParser {
             in = new LineNumberReader(new java.io.FileReader(filename));
 
             while ((line = in.readLine()) != null) {
-                long time = TIMESTAMP_FORMAT.parse(line).getTime();
+                long time = timestampFormat.parse(line).getTime();
 
                 DataRecord record = new DataRecord(time, line);
 
@@ -89,11 +90,10 @@ public final class ZPoolIOStatParser {
                         break;
                     }
 
-                    line = line.trim();
-                    String[] data = DATA_SPLITTER.split(line);
+                    tokenizer.tokenize(line);
 
                     if (types.isEmpty()) { // first record; parse out disk names and use those as fields
-                        String disk = data[0].trim();
+                        String disk = tokenizer.getString(0);
 
                         int n = 1;
 
@@ -108,12 +108,12 @@ public final class ZPoolIOStatParser {
                     }
 
                     // transpose values so each data type will have the data for all disks
-                    values.get(0).add(parseValue(data[1], 1));
-                    values.get(1).add(parseValue(data[2], 2));
-                    values.get(2).add(parseValue(data[3], 3));
-                    values.get(3).add(parseValue(data[4], 4));
-                    values.get(4).add(parseValue(data[5], 5));
-                    values.get(5).add(parseValue(data[6], 6));
+                    values.get(0).add(parseValue(1));
+                    values.get(1).add(parseValue(2));
+                    values.get(2).add(parseValue(3));
+                    values.get(3).add(parseValue(4));
+                    values.get(4).add(parseValue(5));
+                    values.get(5).add(parseValue(6));
                 }
 
                 // first record complete => all disk names are available to create the types
@@ -195,8 +195,8 @@ public final class ZPoolIOStatParser {
         }
     }
 
-    private double parseValue(String value, int column) {
-        if ("-".equals(value)) {
+    private double parseValue(int column) {
+        if (tokenizer.equals(column, "-")) {
             return Double.NaN;
         }
 
@@ -208,47 +208,48 @@ public final class ZPoolIOStatParser {
         }
 
         // if the last char is not a number, get the power of 1024 / 1000 it represents
-        char last = value.charAt(value.length() - 1);
+        int length = tokenizer.length(column);
+        char last = tokenizer.charAt(column, length - 1);
         int power = 0;
 
         switch (last) {
         case 'K':
             power = 1;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'M':
             power = 2;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'G':
             power = 3;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'T':
             power = 4;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'P':
             power = 5;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'E':
             power = 6;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'Z':
             power = 7;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         case 'Y':
             power = 8;
-            value = value.substring(0, value.length() - 1);
+            --length;
             break;
         // default, do nothing
         }
 
         try {
-            double toReturn = Double.parseDouble(value) * Math.pow(multiplier, power);
+            double toReturn = tokenizer.getDouble(column, length) * Math.pow(multiplier, power);
 
             // capacity in GB
             if ((column == 1) || (column == 2)) {
@@ -262,7 +263,8 @@ public final class ZPoolIOStatParser {
             return toReturn;
         }
         catch (NumberFormatException nfe) {
-            LOGGER.warn("invalid numeric data '{}' at line {}, column {}", value, in.getLineNumber(), column);
+            LOGGER.warn("invalid numeric data '{}' at line {}, column {}", tokenizer.getString(column),
+                    in.getLineNumber(), column);
 
             return Double.NaN;
         }
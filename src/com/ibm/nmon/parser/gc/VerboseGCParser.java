@@ -23,10 +23,18 @@ import com.ibm.nmon.parser.gc.state.Start;
  * and hostname). As a result the parse methods require these values to be passed in. It is up to
  * the caller to get these values.
  * </p>
+ * 
+ * <p>
+ * The GCState objects are shared singletons, so only one file can be parsed at a time across
+ * <em>all</em> instances of this class.
+ * </p>
  */
 public class VerboseGCParser extends BasicXMLParser {
     // this class delegates all parsing a state machine composed of GCState objects
     // the context is created on each call to parse()
+    // the states are static, so lock on the class to allow instances to be used on different threads
+    private static final Object STATE_LOCK = new Object();
+
     private GCParserContext context;
     private GCState currentState;
 
@@ -46,33 +54,38 @@ public class VerboseGCParser extends BasicXMLParser {
 
         data.setMetadata("jvm_name", jvmName);
 
-        context = new GCParserContext(data, logger, timeZone);
+        synchronized (STATE_LOCK) {
+            context = new GCParserContext(data, logger, timeZone);
 
-        try {
-            parse(filename);
+            try {
+                parse(filename);
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Parse complete for file '{}' in {}ms", data.getSourceFile(),
-                        (System.nanoTime() - start) / 1000000.0d);
-            }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Parse complete for file '{}' in {}ms", data.getSourceFile(),
+                            (System.nanoTime() - start) / 1000000.0d);
+                }
 
-            if (data.getRecordCount() == 0) {
-                throw new IOException("verbose GC log file '" + filename + "' does not appear to have any data records");
-            }
+                if (data.getRecordCount() == 0) {
+                    throw new IOException("verbose GC log file '" + filename
+                            + "' does not appear to have any data records");
+                }
 
-            return data;
-        }
-        finally {
-            reset();
+                return data;
+            }
+            finally {
+                reset();
+            }
         }
     }
 
     protected void reset() {
-        super.reset();
-        context = null;
+        synchronized (STATE_LOCK) {
+            super.reset();
+            context = null;
 
-        currentState = Start.INSTANCE;
-        currentState.reset();
+            currentState = Start.INSTANCE;
+            currentState.reset();
+        }
     }
 
     public void startElement(String element, String unparsedAttributes) {
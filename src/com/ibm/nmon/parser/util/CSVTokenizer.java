@@ -0,0 +1,615 @@
+package com.ibm.nmon.parser.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <p>
+ * Splits delimited lines into fields without creating a String for every field. Lines are read into a reusable char
+ * buffer and each field is stored as a range of that buffer. Numeric fields are parsed directly from the buffer; the
+ * result is always the same as {@link Double#parseDouble(String)} or {@link Long#parseLong(String)}.
+ * </p>
+ *
+ * <p>
+ * Fields can be split on a single delimiter character or on runs of whitespace. Optionally, fields that start with
+ * <code>"</code> are treated as quoted: the quotes are removed, delimiters inside the quotes are not split on and
+ * <code>""</code> is converted to a single <code>"</code>. Unlike <code>Pattern.split()</code>, trailing empty fields
+ * are <em>not</em> removed.
+ * </p>
+ *
+ * <p>
+ * Lines can be read from a {@link Reader} with {@link #nextLine()} or passed in directly with
+ * {@link #tokenize(String)}. Field values are only valid until the next line is read. This class is not thread safe.
+ * </p>
+ */
+public final class CSVTokenizer {
+    // powers of 10 that are exactly representable as doubles
+    private static final double[] POWERS_OF_10 = new double[23];
+
+    static {
+        POWERS_OF_10[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_10.length; i++) {
+            POWERS_OF_10[i] = POWERS_OF_10[i - 1] * 10;
+        }
+    }
+
+    // larger values cannot be multiplied by 10 and still be exactly representable as doubles
+    private static final long MAX_MANTISSA = ((1L << 53) - 9) / 10;
+    // larger values cannot be multiplied by 10 without overflowing
+    private static final long MAX_LONG = (Long.MAX_VALUE - 9) / 10;
+
+    private final char delimiter;
+    private final boolean whitespace;
+
+    private boolean quoted = false;
+    private boolean trimLeadingWhitespace = false;
+
+    private Reader in;
+    private boolean eof;
+    // set when the last line ended in \r; if the next char is \n, it is part of the same line terminator
+    private boolean skipLineFeed;
+    private int lineNumber;
+
+    private char[] buffer = new char[8192];
+    // chars read but not yet returned as lines are at [position, limit)
+    private int position;
+    private int limit;
+
+    private int lineStart;
+    private int lineEnd;
+
+    private int fieldCount;
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+
+    // fixed size cache for getCachedString()
+    private final String[] strings = new String[1024];
+
+    /**
+     * Create a tokenizer that splits fields on the given character.
+     */
+    public CSVTokenizer(char delimiter) {
+        this.delimiter = delimiter;
+        this.whitespace = false;
+    }
+
+    private CSVTokenizer() {
+        this.delimiter = ' ';
+        this.whitespace = true;
+    }
+
+    /**
+     * Create a tokenizer that splits fields on runs of whitespace. Leading and trailing whitespace is ignored, so the
+     * fields are the same as <code>line.trim().split("\\s+")</code>.
+     */
+    public static CSVTokenizer forWhitespace() {
+        return new CSVTokenizer();
+    }
+
+    /**
+     * If <code>true</code>, fields that start with <code>"</code> are unquoted. The default is <code>false</code>.
+     */
+    public void setQuoted(boolean quoted) {
+        this.quoted = quoted;
+    }
+
+    /**
+     * If <code>true</code>, whitespace at the start of each field, i.e. after a delimiter, is skipped. The default is
+     * <code>false</code>.
+     */
+    public void setTrimLeadingWhitespace(boolean trimLeadingWhitespace) {
+        this.trimLeadingWhitespace = trimLeadingWhitespace;
+    }
+
+    /**
+     * Read lines from the given reader with {@link #nextLine()}. The reader does not need to be buffered. The line
+     * number is reset to 0.
+     */
+    public void setInput(Reader in) {
+        this.in = in;
+
+        eof = false;
+        skipLineFeed = false;
+        lineNumber = 0;
+
+        position = 0;
+        limit = 0;
+        lineStart = 0;
+        lineEnd = 0;
+        fieldCount = 0;
+    }
+
+    /**
+     * Read and tokenize the next line. Lines are terminated by <code>\n</code>, <code>\r</code> or
+     * <code>\r\n</code>, the same as {@link java.io.BufferedReader#readLine()}.
+     *
+     * @return <code>false</code> if there are no more lines
+     */
+    public boolean nextLine() throws IOException {
+        if (in == null) {
+            throw new IllegalStateException("no input set");
+        }
+
+        int i = position;
+
+        while (true) {
+            if (i == limit) {
+                if (eof) {
+                    if (position == limit) {
+                        fieldCount = 0;
+                        return false;
+                    }
+
+                    // last line with no terminator
+                    lineStart = position;
+                    lineEnd = limit;
+                    position = limit;
+
+                    break;
+                }
+
+                i = fill(i);
+                continue;
+            }
+
+            char c = buffer[i];
+
+            if (skipLineFeed) {
+                skipLineFeed = false;
+
+                if (c == '\n') {
+                    ++position;
+                    ++i;
+                    continue;
+                }
+            }
+
+            if ((c == '\n') || (c == '\r')) {
+                lineStart = position;
+                lineEnd = i;
+                position = i + 1;
+                skipLineFeed = c == '\r';
+
+                break;
+            }
+
+            ++i;
+        }
+
+        ++lineNumber;
+        split();
+
+        return true;
+    }
+
+    /**
+     * Tokenize the given line instead of reading from the input. The line number is not changed.
+     */
+    public void tokenize(String line) {
+        int length = line.length();
+
+        // keep any unread input
+        if (limit - position + length > buffer.length) {
+            char[] temp = new char[limit - position + length];
+            System.arraycopy(buffer, position, temp, length, limit - position);
+
+            limit = limit - position + length;
+            position = length;
+            buffer = temp;
+        }
+        else if (position < length) {
+            System.arraycopy(buffer, position, buffer, length, limit - position);
+
+            limit = limit - position + length;
+            position = length;
+        }
+
+        line.getChars(0, length, buffer, 0);
+
+        lineStart = 0;
+        lineEnd = length;
+
+        split();
+    }
+
+    /**
+     * @return the number of lines read by {@link #nextLine()} since the input was set
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the current line, without any line terminator; this creates a new String
+     */
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * @return the number of fields in the current line
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the length of the field
+     */
+    public int length(int index) {
+        checkIndex(index);
+
+        return ends[index] - starts[index];
+    }
+
+    public boolean isEmpty(int index) {
+        return length(index) == 0;
+    }
+
+    /**
+     * @return the character at the given position in the field
+     */
+    public char charAt(int index, int charIndex) {
+        if ((charIndex < 0) || (charIndex >= length(index))) {
+            throw new StringIndexOutOfBoundsException(charIndex);
+        }
+
+        return buffer[starts[index] + charIndex];
+    }
+
+    /**
+     * @return the field as a new String
+     */
+    public String getString(int index) {
+        checkIndex(index);
+
+        return new String(buffer, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Get the field as a String, reusing a previously returned String if it has the same value. This avoids creating
+     * Strings for values that repeat on every line like names and ids.
+     */
+    public String getCachedString(int index) {
+        checkIndex(index);
+
+        int start = starts[index];
+        int length = ends[index] - start;
+        int hash = 0;
+
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & (strings.length - 1);
+        String cached = strings[slot];
+
+        if ((cached != null) && (cached.length() == length)) {
+            int i = 0;
+
+            while ((i < length) && (cached.charAt(i) == buffer[start + i])) {
+                ++i;
+            }
+
+            if (i == length) {
+                return cached;
+            }
+        }
+
+        cached = new String(buffer, start, length);
+        strings[slot] = cached;
+
+        return cached;
+    }
+
+    public boolean equals(int index, String value) {
+        return regionMatches(index, value, false);
+    }
+
+    public boolean equalsIgnoreCase(int index, String value) {
+        return regionMatches(index, value, true);
+    }
+
+    public boolean contains(int index, String value) {
+        checkIndex(index);
+
+        int start = starts[index];
+        int last = ends[index] - value.length();
+
+        for (int i = start; i <= last; i++) {
+            int j = 0;
+
+            while ((j < value.length()) && (buffer[i + j] == value.charAt(j))) {
+                ++j;
+            }
+
+            if (j == value.length()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not a valid number
+     * @see Double#parseDouble(String)
+     */
+    public double getDouble(int index) {
+        return getDouble(index, length(index));
+    }
+
+    /**
+     * Parse only the first <code>length</code> characters of the field as a number. This can be used to parse values
+     * that end with a unit suffix.
+     *
+     * @throws NumberFormatException if the characters are not a valid number
+     * @see Double#parseDouble(String)
+     */
+    public double getDouble(int index, int length) {
+        if ((length < 0) || (length > length(index))) {
+            throw new StringIndexOutOfBoundsException(length);
+        }
+
+        int start = starts[index];
+        int end = start + length;
+        int i = start;
+        boolean negative = false;
+
+        if (i < end) {
+            char c = buffer[i];
+
+            if ((c == '-') || (c == '+')) {
+                negative = c == '-';
+                ++i;
+            }
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean decimal = false;
+
+        for (; i < end; i++) {
+            char c = buffer[i];
+
+            if ((c >= '0') && (c <= '9')) {
+                if (mantissa > MAX_MANTISSA) {
+                    return Double.parseDouble(new String(buffer, start, length));
+                }
+
+                mantissa = mantissa * 10 + (c - '0');
+                ++digits;
+
+                if (decimal) {
+                    ++scale;
+                }
+            }
+            else if ((c == '.') && !decimal) {
+                decimal = true;
+            }
+            else {
+                // exponents, NaN, Infinity, whitespace, etc
+                return Double.parseDouble(new String(buffer, start, length));
+            }
+        }
+
+        if ((digits == 0) || (scale >= POWERS_OF_10.length)) {
+            return Double.parseDouble(new String(buffer, start, length));
+        }
+
+        // both the mantissa and the power of 10 are exact so the division is correctly rounded
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_10[scale];
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not a valid long
+     * @see Long#parseLong(String)
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+
+        int start = starts[index];
+        int end = ends[index];
+        int i = start;
+        boolean negative = false;
+
+        if (i < end) {
+            char c = buffer[i];
+
+            if ((c == '-') || (c == '+')) {
+                negative = c == '-';
+                ++i;
+            }
+        }
+
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + getString(index) + '"');
+        }
+
+        long value = 0;
+
+        for (; i < end; i++) {
+            char c = buffer[i];
+
+            if ((c < '0') || (c > '9') || (value > MAX_LONG)) {
+                // let Long handle errors and values near the limits
+                return Long.parseLong(getString(index));
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not a valid integer
+     * @see Integer#parseInt(String)
+     */
+    public int getInt(int index) {
+        long value = getLong(index);
+
+        if ((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)) {
+            throw new NumberFormatException("For input string: \"" + getString(index) + '"');
+        }
+
+        return (int) value;
+    }
+
+    private boolean regionMatches(int index, String value, boolean ignoreCase) {
+        checkIndex(index);
+
+        int start = starts[index];
+        int length = ends[index] - start;
+
+        if (length != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c1 = buffer[start + i];
+            char c2 = value.charAt(i);
+
+            if (c1 != c2) {
+                if (!ignoreCase || (Character.toUpperCase(c1) != Character.toUpperCase(c2))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if ((index < 0) || (index >= fieldCount)) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    // read more data, moving the current line to the start of the buffer
+    // returns the new position of the char at i
+    private int fill(int i) throws IOException {
+        int unread = limit - position;
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+            i -= position;
+            position = 0;
+            limit = unread;
+        }
+        else if (limit == buffer.length) {
+            char[] temp = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, temp, 0, limit);
+            buffer = temp;
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+
+        if (read == -1) {
+            eof = true;
+        }
+        else {
+            limit += read;
+        }
+
+        return i;
+    }
+
+    private void split() {
+        fieldCount = 0;
+
+        int i = lineStart;
+        int end = lineEnd;
+
+        if (whitespace) {
+            while (true) {
+                while ((i < end) && Character.isWhitespace(buffer[i])) {
+                    ++i;
+                }
+
+                if (i == end) {
+                    break;
+                }
+
+                int start = i;
+
+                while ((i < end) && !Character.isWhitespace(buffer[i])) {
+                    ++i;
+                }
+
+                addField(start, i);
+            }
+
+            return;
+        }
+
+        while (true) {
+            if (trimLeadingWhitespace) {
+                while ((i < end) && Character.isWhitespace(buffer[i])) {
+                    ++i;
+                }
+            }
+
+            int start = i;
+
+            if (quoted && (i < end) && (buffer[i] == '"')) {
+                // copy the unquoted value over the quoted one; n is the write position
+                int n = ++start;
+                ++i;
+
+                while (i < end) {
+                    char c = buffer[i++];
+
+                    if (c == '"') {
+                        if ((i < end) && (buffer[i] == '"')) {
+                            ++i;
+                        }
+                        else {
+                            break;
+                        }
+                    }
+
+                    buffer[n++] = c;
+                }
+
+                int fieldEnd = n;
+
+                // ignore anything between the closing quote and the delimiter
+                while ((i < end) && (buffer[i] != delimiter)) {
+                    ++i;
+                }
+
+                addField(start, fieldEnd);
+            }
+            else {
+                while ((i < end) && (buffer[i] != delimiter)) {
+                    ++i;
+                }
+
+                addField(start, i);
+            }
+
+            if (i == end) {
+                break;
+            }
+
+            // skip the delimiter
+            ++i;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = java.util.Arrays.copyOf(starts, fieldCount * 2);
+            ends = java.util.Arrays.copyOf(ends, fieldCount * 2);
+        }
+
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        ++fieldCount;
+    }
+}
@@ -27,6 +27,8 @@ import com.ibm.nmon.data.definition.NamingMode;
 import com.ibm.nmon.data.matcher.ExactFieldMatcher;
 import com.ibm.nmon.data.matcher.ExactTypeMatcher;
 
+import com.ibm.nmon.parser.TypeProjection;
+
 /**
  * A simple cache for storing 'reports', a list of parsed chart definitions. Reports are stored and retrieved using a
  * key, which can be any String. Cached reports can be filtered for a list of data sets to avoid creating charts that
@@ -98,6 +100,25 @@ public final class ReportCache {
         return toReturn;
     }
 
+    /**
+     * Get the data types needed to create all the charts in the given reports. Unknown keys are ignored.
+     * 
+     * @see TypeProjection
+     */
+    public TypeProjection getProjection(Iterable<String> keys) {
+        List<DataDefinition> definitions = new java.util.ArrayList<DataDefinition>();
+
+        for (String key : keys) {
+            for (BaseChartDefinition chartDefinition : getReport(key)) {
+                for (DataDefinition definition : chartDefinition.getData()) {
+                    definitions.add(definition);
+                }
+            }
+        }
+
+        return new TypeProjection(definitions);
+    }
+
     /**
      * Get the report for the given key filtering based on a given data set. Charts that are not applicable to a host in
      * the data set will not be included in the returned list.
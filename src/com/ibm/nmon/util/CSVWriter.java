@@ -11,6 +11,7 @@ import java.text.SimpleDateFormat;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.FieldHandle;
 
 import com.ibm.nmon.data.ProcessDataSet;
 import com.ibm.nmon.data.Process;
@@ -25,16 +26,28 @@ import com.ibm.nmon.interval.Interval;
  * Helper class for writing CSV data to a Writer.
  */
 public final class CSVWriter {
-    private static final SimpleDateFormat DATETIME = new SimpleDateFormat("yyyy-MM-dd,HH:mm:ss");
-    private static final DecimalFormat FORMAT = new DecimalFormat("0.000");
-
-    static {
-        // get and set required because DecimalFormat clones the symbols
-        java.text.DecimalFormatSymbols symbols = FORMAT.getDecimalFormatSymbols();
-        symbols.setNaN(""); // missing data => no output
-        symbols.setDecimalSeparator('.'); // force to avoid locale issues with , as separator
-        FORMAT.setDecimalFormatSymbols(symbols);
-    }
+    // formats are not thread safe and CSV files can be written on multiple threads by the ReportGenerator
+    private static final ThreadLocal<SimpleDateFormat> DATETIME = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd,HH:mm:ss");
+        }
+    };
+
+    private static final ThreadLocal<DecimalFormat> FORMAT = new ThreadLocal<DecimalFormat>() {
+        @Override
+        protected DecimalFormat initialValue() {
+            DecimalFormat format = new DecimalFormat("0.000");
+
+            // get and set required because DecimalFormat clones the symbols
+            java.text.DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+            symbols.setNaN(""); // missing data => no output
+            symbols.setDecimalSeparator('.'); // force to avoid locale issues with , as separator
+            format.setDecimalFormatSymbols(symbols);
+
+            return format;
+        }
+    };
 
     public static final void write(DataSet data, Interval interval, Writer writer) throws IOException {
         StringBuilder builder = new StringBuilder(1024);
@@ -55,19 +68,26 @@ public final class CSVWriter {
         writer.write(builder.toString());
         builder.setLength(0);
 
+        // resolve all the fields once rather than looking them up for every record
+        List<FieldHandle[]> handles = new java.util.ArrayList<FieldHandle[]>(data.getTypeCount());
+
+        for (DataType type : data.getTypes()) {
+            handles.add(data.getFields(type));
+        }
+
         for (DataRecord record : data.getRecords(interval)) {
-            builder.append(DATETIME.format(new java.util.Date(record.getTime())));
+            builder.append(DATETIME.get().format(new java.util.Date(record.getTime())));
             builder.append(',');
 
-            for (DataType type : data.getTypes()) {
-                if (record.hasData(type)) {
-                    for (String field : type.getFields()) {
-                        builder.append(FORMAT.format(record.getData(type, field)));
+            for (FieldHandle[] typeHandles : handles) {
+                if (typeHandles[0].hasData(record)) {
+                    for (FieldHandle handle : typeHandles) {
+                        builder.append(FORMAT.get().format(handle.getValue(record)));
                         builder.append(',');
                     }
                 }
                 else {
-                    for (int i = 0; i < type.getFieldCount(); i++) {
+                    for (int i = 0; i < typeHandles.length; i++) {
                         builder.append(',');
                     }
                 }
@@ -102,17 +122,23 @@ public final class CSVWriter {
         escape(fields.get(fields.size() - 1), writer);
         writer.write('\n');
 
+        FieldHandle[] handles = new FieldHandle[fields.size()];
+
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = data.getField(type, fields.get(i));
+        }
+
         for (DataRecord record : data.getRecords(interval)) {
-            writer.write(DATETIME.format(new java.util.Date(record.getTime())));
+            writer.write(DATETIME.get().format(new java.util.Date(record.getTime())));
             writer.write(',');
 
-            if (record.hasData(type)) {
-                for (int i = 0; i < fields.size() - 1; i++) {
-                    writer.write(FORMAT.format(record.getData(type, fields.get(i))));
+            if (handles[0].hasData(record)) {
+                for (int i = 0; i < handles.length - 1; i++) {
+                    writer.write(FORMAT.get().format(handles[i].getValue(record)));
                     writer.write(',');
                 }
 
-                writer.write(FORMAT.format(record.getData(type, fields.get(fields.size() - 1))));
+                writer.write(FORMAT.get().format(handles[handles.length - 1].getValue(record)));
             }
             else {
                 for (int i = 0; i < fields.size(); i++) {
@@ -135,9 +161,9 @@ public final class CSVWriter {
                 writer.write(',');
                 escape(process.getName(), writer);
                 writer.write(',');
-                writer.write(DATETIME.format(process.getStartTime()));
+                writer.write(DATETIME.get().format(process.getStartTime()));
                 writer.write(',');
-                writer.write(DATETIME.format(process.getEndTime()));
+                writer.write(DATETIME.get().format(process.getEndTime()));
                 writer.write(',');
                 writer.write('"');
                 escape(process.getCommandLine(), writer);
@@ -170,17 +196,17 @@ public final class CSVWriter {
         writer.write('\n');
 
         for (int i = 0; i < data.getItemCount(); i++) {
-            writer.write(DATETIME.format(data.getTimePeriod(i).getEnd()));
+            writer.write(DATETIME.get().format(new java.util.Date(data.getTime(i))));
             writer.write(',');
 
             for (int j = 0; j < seriesCount - 1; j++) {
                 Number n = data.getY(j, i);
 
                 if (n == null) {
-                    writer.write(FORMAT.format(Double.NaN));
+                    writer.write(FORMAT.get().format(Double.NaN));
                 }
                 else {
-                    writer.write(FORMAT.format(n.doubleValue()));
+                    writer.write(FORMAT.get().format(n.doubleValue()));
                 }
 
                 writer.write(',');
@@ -189,10 +215,10 @@ public final class CSVWriter {
             Number n = data.getY(seriesCount - 1, i);
 
             if (n == null) {
-                writer.write(FORMAT.format(Double.NaN));
+                writer.write(FORMAT.get().format(Double.NaN));
             }
             else {
-                writer.write(FORMAT.format(n.doubleValue()));
+                writer.write(FORMAT.get().format(n.doubleValue()));
             }
 
             writer.write('\n');
@@ -224,10 +250,10 @@ public final class CSVWriter {
                 Object o = data.getValue(rowKey, data.getColumnKey(j));
 
                 if (o == null) {
-                    writer.write(FORMAT.format(Double.NaN));
+                    writer.write(FORMAT.get().format(Double.NaN));
                 }
                 else {
-                    writer.write(FORMAT.format(((Double) o).doubleValue()));
+                    writer.write(FORMAT.get().format(((Double) o).doubleValue()));
                 }
 
                 writer.write(',');
@@ -236,10 +262,10 @@ public final class CSVWriter {
             Object o = data.getValue(rowKey, data.getColumnKey(columnCount - 1));
 
             if (o == null) {
-                writer.write(FORMAT.format(Double.NaN));
+                writer.write(FORMAT.get().format(Double.NaN));
             }
             else {
-                writer.write(FORMAT.format(((Double) o).doubleValue()));
+                writer.write(FORMAT.get().format(((Double) o).doubleValue()));
             }
 
             writer.write('\n');
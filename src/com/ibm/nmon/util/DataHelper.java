@@ -7,8 +7,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
-import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.ProcessAggregate;
 import com.ibm.nmon.data.ProcessDataSet;
 import com.ibm.nmon.data.Process;
 import com.ibm.nmon.data.ProcessDataType;
@@ -94,7 +94,7 @@ public final class DataHelper {
         // i.e. different Java web servers
         ProcessDataType processType = data.getType(processes.get(0));
 
-        int fieldCount = processType.getFieldCount() + 1;
+        final int fieldCount = processType.getFieldCount() + 1;
 
         // copy the fields from the Process
         // add a Count field to count the number of processes running at each time period
@@ -111,39 +111,9 @@ public final class DataHelper {
         ProcessDataType aggregateType = new ProcessDataType(aggregate, fields);
 
         data.addProcess(aggregate);
-        data.addType(aggregateType);
 
-        // for every record in the file, sum up all the data for each process and add the aggregated
-        // data to the record
-        for (DataRecord record : data.getRecords()) {
-            double[] totals = new double[fieldCount];
-
-            java.util.Arrays.fill(totals, 0);
-
-            // does any process have data at this time?
-            boolean valid = false;
-
-            for (Process process : processes) {
-                processType = data.getType(process);
-
-                if (record.hasData(processType)) {
-                    valid = true;
-
-                    int n = 0;
-
-                    for (String field : processType.getFields()) {
-                        totals[n++] += record.getData(processType, field);
-                    }
-
-                    // process count
-                    ++totals[n];
-                }
-            }
-
-            if (valid) {
-                record.addData(aggregateType, totals);
-            }
-        }
+        // aggregates are only calculated if they are used
+        data.addDerivedType(aggregateType, new ProcessAggregate(data, processes, fieldCount));
 
         if (logger.isTraceEnabled()) {
             logger.trace("Aggregated process data for {} in {}ms ", name, (System.nanoTime() - start) / 1000000.0d);
@@ -0,0 +1,97 @@
+package com.ibm.nmon.util;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * Base class for listener adapters that coalesce events and deliver them asynchronously. Subclasses implement a
+ * listener interface, queue each event they receive and call {@link #eventQueued()}. All the events queued since the
+ * last delivery are then passed to {@link #deliverEvents()}, which is run by the given {@link Executor}.
+ * </p>
+ *
+ * <p>
+ * With a delay of 0, events are delivered as soon as the executor runs the delivery, so a burst of events fired on
+ * another thread is delivered together. Otherwise delivery is debounced: events are only delivered once no new event
+ * has been queued for the given delay.
+ * </p>
+ */
+public abstract class EventCoalescer {
+    // only used to wait for the delay; events are always delivered by the executor
+    private static final java.util.Timer TIMER = new java.util.Timer("EventCoalescer", true);
+
+    private final Executor executor;
+    private final long delay;
+
+    // guarded by this
+    private boolean scheduled;
+    private long lastEvent;
+
+    private final Runnable delivery = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (EventCoalescer.this) {
+                // events queued while delivering will be delivered next time
+                scheduled = false;
+            }
+
+            deliverEvents();
+        }
+    };
+
+    /**
+     * @param delay the time, in milliseconds, to wait for more events before delivering
+     */
+    protected EventCoalescer(Executor executor, long delay) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay cannot be negative");
+        }
+
+        this.executor = executor;
+        this.delay = delay;
+    }
+
+    /**
+     * Schedule delivery of the queued events, if it is not already scheduled. Subclasses must hold the lock on this
+     * object when queuing events and calling this method.
+     */
+    protected final void eventQueued() {
+        lastEvent = System.nanoTime();
+
+        if (!scheduled) {
+            scheduled = true;
+            schedule(delay);
+        }
+    }
+
+    /**
+     * Deliver all the events queued since the last call. Implementations should remove the events from the queue while
+     * holding the lock on this object but call the delegate listener without holding it. There may not be any queued
+     * events.
+     */
+    protected abstract void deliverEvents();
+
+    private void schedule(long wait) {
+        if (wait <= 0) {
+            executor.execute(delivery);
+        }
+        else {
+            TIMER.schedule(new java.util.TimerTask() {
+                @Override
+                public void run() {
+                    checkForMoreEvents();
+                }
+            }, wait);
+        }
+    }
+
+    private synchronized void checkForMoreEvents() {
+        long remaining = delay - (System.nanoTime() - lastEvent) / 1000000;
+
+        // wait again if there were more events during the delay
+        schedule(remaining);
+    }
+}
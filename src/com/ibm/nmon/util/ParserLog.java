@@ -22,16 +22,24 @@ import com.ibm.nmon.parser.NMONParser;
  * </p>
  * 
  * <p>
+ * Messages, the current filename and whether or not there is data are tracked <em>per thread</em>
+ * so multiple files can be parsed concurrently without mixing their logs.
+ * </p>
+ * 
+ * <p>
  * This class is a singleton to ensure that only on instance is added to the Logger for
  * 'com.ibm.nmon.parser' package.
  * </p>
  */
 public final class ParserLog extends Handler {
     private Logger logger;
-    private String currentFilename;
-    private StringWriter logBuffer;
 
-    private boolean hasData;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
 
     private ParserLog() {
         // note the parser package, not this class' package
@@ -43,10 +51,6 @@ public final class ParserLog extends Handler {
 
         // but expose SLF4J logger
         logger = org.slf4j.LoggerFactory.getLogger(loggerName);
-
-        currentFilename = "";
-        logBuffer = new StringWriter(512);
-        hasData = false;
     }
 
     private static final ParserLog INSTANCE = new ParserLog();
@@ -57,66 +61,63 @@ public final class ParserLog extends Handler {
 
     @Override
     public void close() {
-        try {
-            logBuffer.close();
-        }
-        catch (java.io.IOException ioe) {
-            // ignore
-        }
-        finally {
-            logBuffer = null;
-        }
+        state.remove();
     }
 
     @Override
     public void flush() {}
 
     @Override
-    public synchronized void publish(LogRecord record) {
-        logBuffer.append(record.getLevel().getName());
-        logBuffer.append("  ");
-        logBuffer.append(record.getMessage());
-        logBuffer.append("\n");
+    public void publish(LogRecord record) {
+        State current = state.get();
+
+        current.logBuffer.append(record.getLevel().getName());
+        current.logBuffer.append("  ");
+        current.logBuffer.append(record.getMessage());
+        current.logBuffer.append("\n");
 
         if (record.getThrown() != null) {
-            PrintWriter pw = new PrintWriter(logBuffer);
+            PrintWriter pw = new PrintWriter(current.logBuffer);
             record.getThrown().printStackTrace(pw);
 
             pw.close();
         }
 
-        hasData = true;
+        current.hasData = true;
     }
 
     public Logger getLogger() {
         return logger;
     }
 
-    public synchronized boolean hasData() {
-        return hasData;
+    public boolean hasData() {
+        return state.get().hasData;
     }
 
-    public synchronized String getCurrentFilename() {
-        return currentFilename;
+    public String getCurrentFilename() {
+        return state.get().currentFilename;
     }
 
-    public synchronized void setCurrentFilename(String currentFilename) {
+    public void setCurrentFilename(String currentFilename) {
         if (currentFilename == null) {
-            this.currentFilename = "";
+            state.get().currentFilename = "";
         }
         else {
-            this.currentFilename = currentFilename;
+            state.get().currentFilename = currentFilename;
         }
     }
 
-    public synchronized String getMessages() {
-        String toReturn = logBuffer.toString();
-        close();
-
-        currentFilename = "";
-        logBuffer = new StringWriter(512);
-        hasData = false;
+    public String getMessages() {
+        String toReturn = state.get().logBuffer.toString();
+        state.remove();
 
         return toReturn;
     }
+
+    private static final class State {
+        private String currentFilename = "";
+        private final StringWriter logBuffer = new StringWriter(512);
+
+        private boolean hasData = false;
+    }
 }
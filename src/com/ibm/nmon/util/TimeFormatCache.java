@@ -28,7 +28,7 @@ import com.ibm.nmon.interval.Interval;
 public final class TimeFormatCache {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(TimeFormatCache.class);
 
-    // assume all access to these fields is in the Swing thread, so no need to synchronize
+    // synchronized since charts, and their names, can be created on multiple threads by the ReportGenerator
     private static final Map<Interval, String> FORMATTED_INTERVALS = new LRUMap<Interval, String>(25);
     private static final Map<Long, String> FORMATTED_DATETIMES = new LRUMap<Long, String>(100);
     private static final Map<Long, String> FORMATTED_TIMES = new LRUMap<Long, String>(100);
@@ -39,7 +39,7 @@ public final class TimeFormatCache {
     private static long DEFAULT_INTERVAL_MIN;
     private static long DEFAULT_INTERVAL_MAX;
 
-    public static String formatInterval(Interval interval) {
+    public static synchronized String formatInterval(Interval interval) {
         String formattedInterval = FORMATTED_INTERVALS.get(interval);
 
         if (formattedInterval == null) {
@@ -73,42 +73,54 @@ public final class TimeFormatCache {
         return formattedInterval;
     }
 
-    public static void setDefaultIntervalRange(long minTime, long maxTime) {
+    public static synchronized void setDefaultIntervalRange(long minTime, long maxTime) {
         TimeFormatCache.DEFAULT_INTERVAL_MIN = minTime;
         TimeFormatCache.DEFAULT_INTERVAL_MAX = maxTime;
 
         FORMATTED_INTERVALS.remove(Interval.DEFAULT);
     }
 
-    public static void renameInterval(Interval i) {
+    public static synchronized void renameInterval(Interval i) {
         FORMATTED_INTERVALS.remove(i);
     }
 
-    public static String formatDateTime(long data) {
+    public static synchronized String formatDateTime(long data) {
         String formattedTime = FORMATTED_DATETIMES.get(data);
 
         if (formattedTime == null) {
-            formattedTime = DATETIME_FORMAT.format(data);
+            // chart definitions may use the format directly
+            synchronized (DATETIME_FORMAT) {
+                formattedTime = DATETIME_FORMAT.format(data);
+            }
+
             FORMATTED_DATETIMES.put(data, formattedTime);
         }
 
         return formattedTime;
     }
 
-    public static String formatTime(long data) {
+    public static synchronized String formatTime(long data) {
         String formattedTime = FORMATTED_TIMES.get(data);
 
         if (formattedTime == null) {
-            formattedTime = TIME_FORMAT.format(data);
+            synchronized (TIME_FORMAT) {
+                formattedTime = TIME_FORMAT.format(data);
+            }
+
             FORMATTED_TIMES.put(data, formattedTime);
         }
 
         return formattedTime;
     }
 
-    public static void setTimeZone(TimeZone timeZone) {
-        DATETIME_FORMAT.setTimeZone(timeZone);
-        TIME_FORMAT.setTimeZone(timeZone);
+    public static synchronized void setTimeZone(TimeZone timeZone) {
+        synchronized (DATETIME_FORMAT) {
+            DATETIME_FORMAT.setTimeZone(timeZone);
+        }
+
+        synchronized (TIME_FORMAT) {
+            TIME_FORMAT.setTimeZone(timeZone);
+        }
 
         FORMATTED_INTERVALS.clear();
         FORMATTED_DATETIMES.clear();
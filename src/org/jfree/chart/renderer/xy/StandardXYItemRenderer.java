@@ -898,7 +898,10 @@ public class StandardXYItemRenderer extends AbstractXYItemRenderer
                         double minX = dataset.getXValue(series, 0);
                         double maxX = dataset.getXValue(series, numX - 1);
                         if (this.gapThresholdType == UnitType.ABSOLUTE) {
-                            drawLine = Math.abs(x1 - x0) <= this.gapThreshold;
+                            /* -- begin IBM changes -- */
+                            // use the accessor so subclasses can adjust the threshold
+                            drawLine = Math.abs(x1 - x0) <= getGapThreshold();
+                            /* -- end IBM changes -- */
                         }
                         else {
                             drawLine = Math.abs(x1 - x0) <= ((maxX - minX)
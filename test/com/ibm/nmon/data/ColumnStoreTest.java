@@ -0,0 +1,201 @@
+package com.ibm.nmon.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.nmon.parser.NMONParser;
+
+/**
+ * Checks that data stored in a DataSet's {@link ColumnStore} reads back the same as the data that was added.
+ */
+public final class ColumnStoreTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("columnstore", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(directory);
+    }
+
+    @Test
+    public void testRecordsMatchAddedValues() {
+        DataType dense = new DataType("DENSE", "dense", "a", "b");
+        DataType sparse = new DataType("SPARSE", "sparse", "x", "y", "z");
+
+        BasicDataSet data = new BasicDataSet("test");
+        data.addType(dense);
+        data.addType(sparse);
+
+        // the expected values for each time; records are added out of order
+        Map<Long, Map<DataType, double[]>> expected = new java.util.TreeMap<Long, Map<DataType, double[]>>();
+        java.util.Random random = new java.util.Random(42);
+        List<Long> times = new java.util.ArrayList<Long>();
+
+        for (long i = 1; i <= 1000; i++) {
+            times.add(i * 1000);
+        }
+
+        java.util.Collections.shuffle(times, random);
+
+        for (long time : times) {
+            DataRecord record = new DataRecord(time, "T" + time);
+            Map<DataType, double[]> values = new java.util.HashMap<DataType, double[]>();
+
+            values.put(dense, new double[] { random.nextDouble(), time });
+            record.addData(dense, values.get(dense).clone());
+
+            if ((time % 3000) == 0) {
+                values.put(sparse, new double[] { random.nextDouble(), Double.NaN, -time });
+                record.addData(sparse, values.get(sparse).clone());
+            }
+
+            data.addRecord(record);
+            expected.put(time, values);
+        }
+
+        assertEquals(expected.size(), data.getRecordCount());
+
+        java.util.Iterator<Map.Entry<Long, Map<DataType, double[]>>> entries = expected.entrySet().iterator();
+
+        for (DataRecord record : data.getRecords()) {
+            Map.Entry<Long, Map<DataType, double[]>> entry = entries.next();
+
+            assertEquals(entry.getKey().longValue(), record.getTime());
+
+            for (DataType type : data.getTypes()) {
+                double[] values = entry.getValue().get(type);
+
+                assertEquals(values != null, record.hasData(type));
+
+                if (values != null) {
+                    TestData.assertValuesEqual(type.getId() + " at " + record.getTime(), values,
+                            record.getData(type));
+                }
+            }
+        }
+
+        assertFalse(entries.hasNext());
+    }
+
+    @Test
+    public void testChangeAttachedRecord() {
+        DataType type = new DataType("TYPE", "type", "a", "b");
+        DataType other = new DataType("OTHER", "other", "c");
+
+        BasicDataSet data = new BasicDataSet("test");
+        data.addType(type);
+        data.addType(other);
+
+        DataRecord first = new DataRecord(2000, "T0002");
+        first.addData(type, new double[] { 1, 2 });
+        data.addRecord(first);
+
+        DataRecord second = new DataRecord(1000, "T0001");
+        data.addRecord(second);
+
+        // data added after the record is part of the data set is stored in the data set
+        second.addData(other, new double[] { 3 });
+        first.setValue(type, "b", 4);
+
+        assertTrue(data.getRecord(1000).hasData(other));
+        assertFalse(data.getRecord(1000).hasData(type));
+        assertEquals(3, data.getRecord(1000).getData(other, "c"), 0);
+        TestData.assertValuesEqual("TYPE", new double[] { 1, 4 }, data.getRecord(2000).getData(type));
+
+        assertTrue(first.removeData(type));
+        assertFalse(data.getRecord(2000).hasData(type));
+    }
+
+    @Test
+    public void testParsedValuesMatchFile() throws IOException {
+        File file = new File(directory, "test.nmon");
+        TestData.writeNMON(file, 20);
+
+        NMONDataSet data = new NMONParser().parse(file, UTC, false);
+
+        DataType cpu = data.getType("CPU_ALL");
+        DataType disk = data.getType("DISKBUSY");
+
+        assertNotNull(cpu);
+        assertNotNull(disk);
+        assertEquals(20, data.getRecordCount());
+
+        int i = 1;
+
+        for (DataRecord record : data.getRecords()) {
+            assertEquals((i - 1) * 10000L, record.getTime() - data.getStartTime());
+            assertEquals(i % 50, record.getData(cpu, "User%"), 0);
+            assertEquals(5, record.getData(cpu, "Sys%"), 0);
+            assertEquals((i % 100) + 0.5, record.getData(disk, "sda"), 0);
+            assertEquals((i * 7) % 100, record.getData(disk, "sdb"), 0);
+
+            ++i;
+        }
+    }
+
+    @Test
+    public void testAddParsedDataMatchesParse() throws IOException {
+        File file = new File(directory, "test.nmon");
+        TestData.writeNMON(file, 20);
+
+        NMONDataSet parsed = new NMONParser().parse(file, UTC, false);
+
+        SystemDataSet system = new SystemDataSet(parsed.getHostname());
+        system.addData(file.getAbsolutePath(), parsed);
+
+        TestData.assertDataEquals(parsed, system);
+
+        // aggregated processes are derived from the copied process data, not copied themselves
+        for (Process process : system.getProcesses()) {
+            ProcessDataType type = system.getType(process);
+
+            assertEquals(type.getId(), parsed.getColumnStore().isDerived(parsed.getType(type.getId())),
+                    system.getColumnStore().isDerived(type));
+        }
+    }
+
+    @Test
+    public void testMergedDataMatchesSequentialAdds() throws IOException {
+        File first = new File(directory, "first.nmon");
+        File second = new File(directory, "second.nmon");
+
+        TestData.writeNMON(first, 20);
+        TestData.writeNMON(second, 21, 30);
+
+        NMONParser parser = new NMONParser();
+
+        SystemDataSet sequential = new SystemDataSet("testhost");
+        sequential.addData(first.getAbsolutePath(), parser.parse(first, UTC, false));
+        sequential.addData(second.getAbsolutePath(), parser.parse(second, UTC, false));
+
+        Map<String, DataSet> files = new java.util.LinkedHashMap<String, DataSet>();
+        files.put(first.getAbsolutePath(), parser.parse(first, UTC, false));
+        files.put(second.getAbsolutePath(), parser.parse(second, UTC, false));
+
+        SystemDataSet merged = new SystemDataSet("testhost");
+        merged.addData(files);
+
+        TestData.assertDataEquals(sequential, merged);
+    }
+}
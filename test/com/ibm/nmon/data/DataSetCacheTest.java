@@ -0,0 +1,117 @@
+package com.ibm.nmon.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.nmon.parser.NMONParser;
+
+/**
+ * Checks that data loaded from a {@link DataSetCache} is the same as the data that was saved.
+ */
+public final class DataSetCacheTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private File directory;
+    private File file;
+    private DataSetCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("datasetcache", "");
+        directory.delete();
+        directory.mkdirs();
+
+        file = new File(directory, "test.nmon");
+        TestData.writeNMON(file, 50);
+
+        cache = new DataSetCache(new File(directory, "cache"));
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(directory);
+    }
+
+    @Test
+    public void testNMONRoundTrip() throws IOException {
+        NMONDataSet parsed = new NMONParser().parse(file, UTC, false);
+
+        // the MEM section is defined but never has any data
+        assertNotNull(parsed.getType("MEM"));
+
+        cache.save(file.getAbsolutePath(), "options", parsed);
+        DataSet loaded = cache.load(file.getAbsolutePath(), "options");
+
+        assertNotNull(loaded);
+        assertTrue(loaded instanceof NMONDataSet);
+        TestData.assertDataEquals(parsed, loaded);
+
+        // loaded data must also be the same once added to a system
+        SystemDataSet fromParse = new SystemDataSet(parsed.getHostname());
+        fromParse.addData(file.getAbsolutePath(), parsed);
+
+        SystemDataSet fromCache = new SystemDataSet(loaded.getHostname());
+        fromCache.addData(file.getAbsolutePath(), loaded);
+
+        TestData.assertDataEquals(fromParse, fromCache);
+    }
+
+    @Test
+    public void testBasicRoundTrip() throws IOException {
+        DataType dense = new DataType("DENSE", "dense", "a", "b");
+        DataType sparse = new DataType("SPARSE", "sparse", "x", "y", "z");
+        DataType empty = new DataType("EMPTY", "empty", "e");
+
+        BasicDataSet data = new BasicDataSet(file.getAbsolutePath());
+        data.setHostname("basic");
+        data.setMetadata("loadDrivers", "h1,h2");
+        data.addType(dense);
+        data.addType(sparse);
+        data.addType(empty);
+
+        for (int i = 1; i <= 20000; i++) {
+            DataRecord record = new DataRecord(i * 1000L, "T" + i);
+            record.addData(dense, new double[] { i, i * 0.5 });
+
+            if ((i % 7) == 0) {
+                record.addData(sparse, new double[] { -i, Double.NaN, Double.POSITIVE_INFINITY });
+            }
+
+            data.addRecord(record);
+        }
+
+        cache.save(file.getAbsolutePath(), "", data);
+        DataSet loaded = cache.load(file.getAbsolutePath(), "");
+
+        assertNotNull(loaded);
+        assertEquals(BasicDataSet.class, loaded.getClass());
+        TestData.assertDataEquals(data, loaded);
+    }
+
+    @Test
+    public void testChangedSource() throws IOException {
+        NMONDataSet parsed = new NMONParser().parse(file, UTC, false);
+
+        cache.save(file.getAbsolutePath(), "options", parsed);
+
+        assertNull(cache.load(file.getAbsolutePath(), "other options"));
+        assertNotNull(cache.load(file.getAbsolutePath(), "options"));
+
+        TestData.writeNMON(file, 51);
+        assertNull(cache.load(file.getAbsolutePath(), "options"));
+
+        assertEquals(1, cache.clear());
+        assertNull(cache.load(file.getAbsolutePath(), "options"));
+    }
+}
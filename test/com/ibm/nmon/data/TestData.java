@@ -0,0 +1,171 @@
+package com.ibm.nmon.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test data files and assertions shared by the data and parser tests.
+ */
+public final class TestData {
+    /**
+     * Write an NMON file with the given number of snapshots, 10 seconds apart. The file contains a section with no
+     * data, processes that reuse a PID with a different command and multiple processes with the same command.
+     */
+    public static void writeNMON(File file, int snapshots) throws IOException {
+        writeNMON(file, 1, snapshots);
+    }
+
+    /**
+     * Write an NMON file as {@link #writeNMON(File, int)}, starting at the given snapshot.
+     */
+    public static void writeNMON(File file, int firstSnapshot, int snapshots) throws IOException {
+        PrintWriter out = new PrintWriter(file, "UTF-8");
+
+        try {
+            out.println("AAA,progname,nmon");
+            out.println("AAA,host,testhost");
+            out.println("AAA,cpus,4");
+            out.println("AAA,OS,Linux,2.6,#1,x86_64");
+            out.println("AAA,date,01-JAN-2020");
+            out.println("AAA,time,00:00:00");
+            out.println("AAA,interval,10");
+            out.println("AAA,snapshots," + snapshots);
+            out.println("CPU_ALL,CPU Total testhost,User%,Sys%,Wait%,Idle%,Busy,CPUs");
+            // no data is ever written for MEM
+            out.println("MEM,Memory MB testhost,memtotal,hightotal,lowtotal,swaptotal,memfree,highfree,lowfree,"
+                    + "swapfree,memshared,cached,active,bigfree,buffers,swapcached,inactive");
+            out.println("DISKBUSY,Disk %Busy testhost,sda,sdb");
+            out.println("TOP,%CPU Utilisation");
+            out.println("TOP,+PID,Time,%CPU,%Usr,%Sys,Size,ResSet,ResText,ResData,ShdLib,MinorFault,MajorFault,"
+                    + "Command");
+
+            for (int i = firstSnapshot; i < (firstSnapshot + snapshots); i++) {
+                String timestamp = String.format("T%04d", i);
+                int seconds = i * 10;
+
+                out.printf("ZZZZ,%s,%02d:%02d:%02d,01-JAN-2020%n", timestamp, seconds / 3600, (seconds / 60) % 60,
+                        seconds % 60);
+                out.printf("CPU_ALL,%s,%d.0,5.0,1.0,%d.0,,4%n", timestamp, i % 50, 94 - (i % 50));
+                out.printf("DISKBUSY,%s,%d.5,%d.0%n", timestamp, i % 100, (i * 7) % 100);
+
+                writeTop(out, 100, timestamp, i, "steady");
+                // PID 200 is reused by a different command half way through
+                writeTop(out, 200, timestamp, i + 1, i < (firstSnapshot + (snapshots / 2)) ? "alpha" : "beta");
+                writeTop(out, 300, timestamp, i + 2, "worker");
+                writeTop(out, 301, timestamp, i + 3, "worker");
+                // short lived processes; the same PID restarts with the same command
+                writeTop(out, (i % 2) == 0 ? 400 : 401, timestamp, i + 4, "java");
+
+                if ((i % 3) == 1) {
+                    out.printf("UARG,%s,100,1,1,1,steady -x%n", timestamp);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void writeTop(PrintWriter out, int pid, String timestamp, int cpu, String command) {
+        out.printf("TOP,%d,%s,%d.0,%d.0,1.0,100,50,5,45,1,0,0,%s%n", pid, timestamp, cpu % 100, cpu % 10, command);
+    }
+
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * Assert the two data sets have the same types, processes and values at every time.
+     */
+    public static void assertDataEquals(DataSet expected, DataSet actual) {
+        assertEquals("hostname", expected.getHostname(), actual.getHostname());
+        assertEquals("types", getTypeIds(expected), getTypeIds(actual));
+        assertEquals("records", expected.getRecordCount(), actual.getRecordCount());
+
+        if (expected instanceof ProcessDataSet) {
+            assertTrue("processes", actual instanceof ProcessDataSet);
+            assertEquals("processes", getProcesses((ProcessDataSet) expected), getProcesses((ProcessDataSet) actual));
+        }
+
+        if ((expected instanceof BasicDataSet) && (actual instanceof BasicDataSet)) {
+            assertEquals("metadata", ((BasicDataSet) expected).getMetadata(), ((BasicDataSet) actual).getMetadata());
+        }
+
+        if ((expected instanceof NMONDataSet) && (actual instanceof NMONDataSet)) {
+            assertEquals("metadata", ((NMONDataSet) expected).getMetadata(), ((NMONDataSet) actual).getMetadata());
+            assertEquals("system info", ((NMONDataSet) expected).getSystemInfo(),
+                    ((NMONDataSet) actual).getSystemInfo());
+        }
+
+        java.util.Iterator<DataRecord> actualRecords = actual.getRecords().iterator();
+
+        for (DataRecord expectedRecord : expected.getRecords()) {
+            DataRecord actualRecord = actualRecords.next();
+
+            assertEquals("time", expectedRecord.getTime(), actualRecord.getTime());
+
+            for (DataType expectedType : expected.getTypes()) {
+                DataType actualType = actual.getType(expectedType.getId());
+                String message = expectedType.getId() + " at " + expectedRecord.getTime();
+
+                assertEquals(message + " fields", expectedType.getFields(), actualType.getFields());
+                assertEquals(message, expectedRecord.hasData(expectedType), actualRecord.hasData(actualType));
+
+                if (expectedRecord.hasData(expectedType)) {
+                    assertValuesEqual(message, expectedRecord.getData(expectedType),
+                            actualRecord.getData(actualType));
+                }
+            }
+        }
+    }
+
+    /**
+     * Assert the two arrays contain the same values, treating NaN as equal to itself.
+     */
+    public static void assertValuesEqual(String message, double[] expected, double[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            assertEquals(message, Arrays.toString(expected), Arrays.toString(actual));
+        }
+    }
+
+    private static List<String> getTypeIds(DataSet data) {
+        List<String> ids = new java.util.ArrayList<String>(data.getTypeCount());
+
+        for (DataType type : data.getTypes()) {
+            ids.add(type.getId());
+        }
+
+        java.util.Collections.sort(ids);
+
+        return ids;
+    }
+
+    private static Map<String, String> getProcesses(ProcessDataSet data) {
+        Map<String, String> processes = new java.util.TreeMap<String, String>();
+
+        for (Process process : data.getProcesses()) {
+            processes.put(data.getType(process).getId(), process.getId() + " " + process.getStartTime() + '-'
+                    + process.getEndTime() + ' ' + process.getCommandLine());
+        }
+
+        return processes;
+    }
+
+    private TestData() {}
+}
@@ -0,0 +1,143 @@
+package com.ibm.nmon.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.text.ParseException;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.nmon.data.BasicDataSet;
+import com.ibm.nmon.data.DataRecord;
+import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.TestData;
+
+/**
+ * Checks that parsing a large file in chunks on multiple threads gives the same data as a single threaded parse.
+ */
+public final class JMeterAggregateParserTest {
+    private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,"
+            + "success,failureMessage,bytes,Latency,Hostname";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("jmeter", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(directory);
+    }
+
+    @Test
+    public void testChunkedParseMatchesSingleThreaded() throws IOException, ParseException {
+        File file = new File(directory, "large.csv");
+        PrintWriter out = new PrintWriter(file, "UTF-8");
+
+        String[] labels = { "home", "login", "search", "logout" };
+        java.util.Random random = new java.util.Random(42);
+
+        // successes and maximum response code for each transaction in each second
+        Map<Long, Map<String, double[]>> expected = new java.util.TreeMap<Long, Map<String, double[]>>();
+
+        try {
+            out.println(HEADER);
+
+            for (int i = 0; i < 150000; i++) {
+                // a few samples per second, slightly out of order
+                long time = 1577836800000L + (i * 300L) + random.nextInt(2000);
+                String label = labels[random.nextInt(labels.length)];
+                boolean success = random.nextInt(20) != 0;
+                String responseCode = success ? "200" : (random.nextBoolean() ? "404" : "500");
+                String hostname = (i % 11) == 0 ? "" : "driver" + (i % 3);
+
+                long second = Math.round(time / 1000.0d) * 1000;
+                Map<String, double[]> transactions = expected.get(second);
+
+                if (transactions == null) {
+                    transactions = new java.util.HashMap<String, double[]>();
+                    expected.put(second, transactions);
+                }
+
+                double[] values = transactions.get(label);
+
+                if (values == null) {
+                    values = new double[2];
+                    transactions.put(label, values);
+                }
+
+                values[0] += success ? 1 : 0;
+                values[1] = Math.max(values[1], Integer.parseInt(responseCode));
+
+                out.println(time + "," + random.nextInt(1000) + ',' + label + ',' + responseCode + ",OK,thread "
+                        + (i % 25) + ",text," + success + ",," + random.nextInt(100000) + ',' + random.nextInt(500)
+                        + ',' + hostname);
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        // large enough to be split into multiple chunks
+        assertTrue(file.length() > (8 * 1024 * 1024));
+
+        JMeterAggregateParser parser = new JMeterAggregateParser();
+        BasicDataSet single = parser.parse(file);
+
+        parser.setParseThreads(4);
+        BasicDataSet chunked = parser.parse(file);
+
+        TestData.assertDataEquals(single, chunked);
+        assertEquals(single.getMetadata("loadDrivers"), chunked.getMetadata("loadDrivers"));
+
+        // no samples are lost or counted twice at chunk boundaries
+        DataType successes = chunked.getType("success");
+        DataType responseCodes = chunked.getType("responseCode");
+
+        assertEquals(expected.size(), chunked.getRecordCount());
+
+        for (DataRecord record : chunked.getRecords()) {
+            for (Map.Entry<String, double[]> entry : expected.get(record.getTime()).entrySet()) {
+                String message = entry.getKey() + " at " + record.getTime();
+
+                assertEquals(message, entry.getValue()[0], record.getData(successes, entry.getKey()), 0);
+                assertEquals(message, entry.getValue()[1], record.getData(responseCodes, entry.getKey()), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyHostname() throws IOException, ParseException {
+        File file = new File(directory, "small.csv");
+        PrintWriter out = new PrintWriter(file, "UTF-8");
+
+        try {
+            out.println(HEADER);
+            out.println("1577836800000,100,home,200,OK,t1,text,true,,1000,50,h1");
+            out.println("1577836800200,200,home,200,OK,t1,text,true,,1000,60,");
+            out.println("1577836801000,150,login,200,OK,t2,text,true,,500,40,h2");
+        }
+        finally {
+            out.close();
+        }
+
+        BasicDataSet data = new JMeterAggregateParser().parse(file);
+
+        assertEquals("[h1, h2]", data.getMetadata("loadDrivers"));
+        // the sample without a host name is still included
+        assertEquals(2, data.getRecordCount());
+        assertEquals(2, data.getRecord(1577836800000L).getData(data.getType("success"), "home"), 0);
+    }
+}